@@ -7,11 +7,15 @@ package core;
 import routing.MessageRouter;
 
 /**
- * A constant bit-rate connection between two DTN nodes.
+ * A constant bit-rate connection between two DTN nodes. If the interfaces
+ * of the connection's ends have other ongoing transfers, the bandwidth is
+ * shared equally between the transfers.
  */
 public class CBRConnection extends Connection {
 	private int speed;
 	private double transferDoneTime;
+	/** speed of the ongoing transfer (the share of the connection speed) */
+	private double transferSpeed;
 
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -28,6 +32,7 @@ public class CBRConnection extends Connection {
 		super(fromNode, fromInterface, toNode, toInterface);
 		this.speed = connectionSpeed;
 		this.transferDoneTime = 0;
+		this.transferSpeed = connectionSpeed;
 
 	}
 
@@ -49,13 +54,15 @@ public class CBRConnection extends Connection {
 		"start transfer of " + m + " from " + from;
 
 		this.msgFromNode = from;
-		Message newMessage = m.replicate();
-		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+		/* the receiving router makes its own replicate */
+		int retVal = getOtherNode(from).receiveMessage(m, from);
 
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
+			this.msgOnFly = m;
+			this.transferSpeed = (double)this.speed / getNrofSharingTransfers();
 			this.transferDoneTime = SimClock.getTime() + 
-			(1.0*m.getSize()) / this.speed;
+			(1.0*m.getSize()) / this.transferSpeed;
+			transfersChanged();
 		}
 
 		return retVal;
@@ -73,9 +80,31 @@ public class CBRConnection extends Connection {
 	}
 
 	/**
-	 * Gets the transferdonetime
+	 * Updates the speed of the ongoing transfer so that the remaining bytes
+	 * are transferred with the new share of the bandwidth
+	 */
+	@Override
+	protected void updateSharedSpeed() {
+		double newSpeed = (double)this.speed / getNrofSharingTransfers();
+		if (newSpeed == this.transferSpeed) {
+			return;
+		}
+		double now = SimClock.getTime();
+		double remaining = Math.max(0, this.transferDoneTime - now) *
+			this.transferSpeed;
+		this.transferSpeed = newSpeed;
+		this.transferDoneTime = now + remaining / newSpeed;
+	}
+
+	/**
+	 * Gets the transferdonetime. If the bandwidth is shared with other
+	 * transfers, the transfer may speed up when the other transfers end so
+	 * the current time is returned.
 	 */
 	public double getTransferDoneTime() {
+		if (this.msgOnFly != null && getNrofSharingTransfers() > 1) {
+			return SimClock.getTime();
+		}
 		return transferDoneTime;
 	}
 	
@@ -108,7 +137,7 @@ public class CBRConnection extends Connection {
 		}
 
 		remaining = (int)((this.transferDoneTime - SimClock.getTime()) 
-				* this.speed);
+				* this.transferSpeed);
 
 		return (remaining > 0 ? remaining : 0);
 	}
@@ -106,6 +106,17 @@ public abstract class Connection {
 	 */
 	public abstract int getRemainingByteCount();
 
+	/**
+	 * Returns the simulation time when the ongoing transfer is done. 
+	 * Connections whose speed may change during a transfer can't know that
+	 * in advance and return the current simulation time, i.e., the transfer
+	 * should be checked at every update.
+	 * @return the time when the ongoing transfer is done
+	 */
+	public double getTransferDoneTime() {
+		return SimClock.getTime();
+	}
+
 	/**
 	 * Clears the message that is currently being transferred.
 	 * Calls to {@link #getMessage()} will return null after this.
@@ -113,8 +124,49 @@ public abstract class Connection {
 	protected void clearMsgOnFly() {
 		this.msgOnFly = null;
 		this.msgFromNode = null;		
+		transfersChanged();
+	}
+
+	/**
+	 * Tells the interfaces of both ends of this connection that a transfer
+	 * has started or ended so that the transfers that share the bandwidth
+	 * of the interfaces can update their speeds. Subclasses should call this
+	 * when a transfer starts.
+	 */
+	protected void transfersChanged() {
+		if (this.fromInterface != null) {
+			this.fromInterface.transfersChanged();
+		}
+		if (this.toInterface != null) {
+			this.toInterface.transfersChanged();
+		}
 	}
 
+	/**
+	 * Returns the number of transfers that share the bandwidth with the
+	 * transfer of this connection, i.e., the largest number of ongoing 
+	 * transfers in the interfaces of the connection's ends
+	 * @return the number of transfers sharing the bandwidth (at least 1)
+	 */
+	public int getNrofSharingTransfers() {
+		int n = 1;
+		if (this.fromInterface != null) {
+			n = Math.max(n, this.fromInterface.getNrofActiveTransfers());
+		}
+		if (this.toInterface != null) {
+			n = Math.max(n, this.toInterface.getNrofActiveTransfers());
+		}
+		return n;
+	}
+
+	/**
+	 * Updates the speed of the ongoing transfer after the number of transfers
+	 * sharing the bandwidth has changed (see 
+	 * {@link #getNrofSharingTransfers()}). This implementation does nothing
+	 * but connections that share the bandwidth should override this.
+	 */
+	protected void updateSharedSpeed() { }
+
 	/**
 	 * Finalizes the transfer of the currently transferred message.
 	 * The message that was being transferred can <STRONG>not</STRONG> be
@@ -0,0 +1,97 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose state is kept in the context of the current
+ * run (see {@link RunContext}). Can be stored in a static field and shared
+ * by concurrent runs: every run draws from its own generator, which is 
+ * created with the given factory when the run first needs it.
+ */
+public class ContextRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private final Object key;
+	private final RunContext.StateFactory<Random> factory;
+
+	/**
+	 * Creates a new context random number generator.
+	 * @param key Key of the generator in the run contexts
+	 * @param factory Factory that creates the generator for a run
+	 */
+	public ContextRandom(Object key, RunContext.StateFactory<Random> factory) {
+		this.key = key;
+		this.factory = factory;
+	}
+
+	/**
+	 * Discards the generator of the current run; a new generator is created
+	 * when a random number is needed next time.
+	 */
+	public void reset() {
+		RunContext.current().removeState(this.key);
+	}
+
+	/**
+	 * Returns the generator of the current run
+	 */
+	private Random getRandom() {
+		return RunContext.current().getState(this.key, this.factory);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		if (this.key == null) {
+			return; // called by the superclass constructor
+		}
+		getRandom().setSeed(seed);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int)(getRandom().nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		getRandom().nextBytes(bytes);
+	}
+
+	@Override
+	public int nextInt() {
+		return getRandom().nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return getRandom().nextInt(bound);
+	}
+
+	@Override
+	public long nextLong() {
+		return getRandom().nextLong();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return getRandom().nextBoolean();
+	}
+
+	@Override
+	public float nextFloat() {
+		return getRandom().nextFloat();
+	}
+
+	@Override
+	public double nextDouble() {
+		return getRandom().nextDouble();
+	}
+
+	@Override
+	public double nextGaussian() {
+		return getRandom().nextGaussian();
+	}
+}
@@ -62,6 +62,19 @@ public class Coord implements Cloneable, Comparable<Coord> {
 		
 		return Math.sqrt(dx*dx + dy*dy);
 	}
+
+	/**
+	 * Returns the squared distance to another coordinate. Cheaper than
+	 * {@link #distance(Coord)} when distances are only compared.
+	 * @param other The other coordinate
+	 * @return The squared distance between this and another coordinate
+	 */
+	public double distanceSquared(Coord other) {
+		double dx = this.x - other.x;
+		double dy = this.y - other.y;
+
+		return dx*dx + dy*dy;
+	}
 	
 	/**
 	 * Returns the x coordinate
@@ -121,11 +134,13 @@ public class Coord implements Cloneable, Comparable<Coord> {
 	}
 
 	/**
-	 * Returns a hash code for this coordinate
-	 * (actually a hash of the String made of the coordinates)
+	 * Returns a hash code for this coordinate (computed from the bits of
+	 * the coordinates; zero and negative zero have the same hash)
 	 */
 	public int hashCode() {
-		return (x+","+y).hashCode();
+		long bits = Long.rotateLeft(Double.doubleToLongBits(x + 0.0), 32) ^
+			Double.doubleToLongBits(y + 0.0);
+		return (int)((bits * 0x9E3779B97F4A7C15L) >>> 32);
 	}
 
 	/**
@@ -17,16 +17,22 @@ import routing.RoutingInfo;
  * A DTN capable host.
  */
 public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
 	private int address;
 
-	private Coord location; 	// where is the host
-	private Coord destination;	// where is it going
+	/** positions of the hosts of the run (location, destination, speed) */
+	private HostPositions positions;
+	/** view of this host's location in the position store */
+	private HostPositions.Location location;
+	/** location of the host when the latest move started */
+	private Coord moveStartLocation;
+	/** time when the latest move started */
+	private double moveStartTime;
+	/** time when the latest move ended */
+	private double moveEndTime;
 
 	private MessageRouter router;
 	private MovementModel movement;
 	private Path path;
-	private double speed;
 	private double nextTimeToMove;
 	private String name;
 	private List<MessageListener> msgListeners;
@@ -54,8 +60,9 @@ public class DTNHost implements Comparable<DTNHost> {
 			ModuleCommunicationBus comBus, 
 			MovementModel mmProto, MessageRouter mRouterProto) {
 		this.comBus = comBus;
-		this.location = new Coord(0,0);
+		this.positions = HostPositions.getInstance();
 		this.address = getNextAddress();
+		this.location = positions.createLocation(address, new Coord(0,0));
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
 
@@ -76,7 +83,9 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.movement.setComBus(comBus);
 		setRouter(mRouterProto.replicate());
 
-		this.location = movement.getInitialLocation();
+		setLocation(movement.getInitialLocation());
+		this.moveStartLocation = this.location.clone();
+		this.moveStartTime = this.moveEndTime = Double.NEGATIVE_INFINITY;
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
@@ -93,15 +102,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+	private static int getNextAddress() {
+		return RunContext.current().nextCount(DTNHost.class);
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		RunContext.current().resetCount(DTNHost.class);
+		HostPositions.reset();
 	}
 
 	/**
@@ -179,6 +189,80 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.location;
 	}
 
+	/**
+	 * Returns the x coordinate of the current location of this host (read
+	 * directly from the position store)
+	 * @return The x coordinate
+	 */
+	public double getLocationX() {
+		return this.positions.getX(this.address);
+	}
+
+	/**
+	 * Returns the y coordinate of the current location of this host (read
+	 * directly from the position store)
+	 * @return The y coordinate
+	 */
+	public double getLocationY() {
+		return this.positions.getY(this.address);
+	}
+
+	/**
+	 * Returns the squared distance between the current locations of this
+	 * and another host
+	 * @param other The other host
+	 * @return The squared distance
+	 */
+	double distanceSquared(DTNHost other) {
+		double dx = getLocationX() - other.getLocationX();
+		double dy = getLocationY() - other.getLocationY();
+
+		return dx*dx + dy*dy;
+	}
+
+	/**
+	 * Returns the location of this host at the given time during or after
+	 * its latest move. The host is assumed to have moved on a straight line
+	 * during the move, so the location is exact only if the host did not
+	 * pass any waypoints during it. For times before the latest move, the
+	 * location where the move started is returned.
+	 * @param time The time
+	 * @return The (approximated) location at the given time
+	 */
+	public Coord getLocationAt(double time) {
+		if (time >= this.moveEndTime) {
+			return this.location.clone();
+		}
+		else if (time <= this.moveStartTime) {
+			return this.moveStartLocation.clone();
+		}
+
+		double ratio = (time - this.moveStartTime) /
+			(this.moveEndTime - this.moveStartTime);
+		Coord c = this.moveStartLocation.clone();
+		c.translate(ratio * (this.location.getX() - c.getX()),
+				ratio * (this.location.getY() - c.getY()));
+		return c;
+	}
+
+	/**
+	 * Returns the time when the latest move of this host started
+	 * @return The start time of the latest move (negative infinity if the
+	 * host has not moved)
+	 */
+	public double getMoveStartTime() {
+		return this.moveStartTime;
+	}
+
+	/**
+	 * Returns the time when the latest move of this host ended
+	 * @return The end time of the latest move (negative infinity if the
+	 * host has not moved)
+	 */
+	public double getMoveEndTime() {
+		return this.moveEndTime;
+	}
+
 	/**
 	 * Returns the Path this node is currently traveling or null if no
 	 * path is in use at the moment.
@@ -194,7 +278,10 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param location The location to set
 	 */
 	public void setLocation(Coord location) {
-		this.location = location.clone();
+		if (this.location != null) {
+			this.location.detach();
+		}
+		this.location = this.positions.createLocation(this.address, location);
 	}
 
 	/**
@@ -330,45 +417,150 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Returns the next simulation time when this node has something to do
+	 * even if nothing else happens in the simulation, i.e., when it should
+	 * be updated next. Movement is taken into account only if connections are
+	 * simulated or someone listens to the movement. A time that is not
+	 * greater than the current simulation time means that the node should be
+	 * updated at every update interval.
+	 * @param simulateConnections Are the connections simulated
+	 * @return The next time the node has something to do or
+	 * Double.MAX_VALUE if it is idle until something external happens
+	 */
+	public double getNextActivityTime(boolean simulateConnections) {
+		double next = this.router.getNextActivityTime();
+		boolean listened = this.movListeners != null &&
+			this.movListeners.size() > 0;
+
+		if (!simulateConnections && !listened) {
+			return next;
+		}
+
+		double moveTime;
+		if (this.path == null) { // waiting for the next path
+			moveTime = this.nextTimeToMove;
+		} else if (simulateConnections || 
+				this.positions.getSpeed(this.address) <= 0) {
+			/* connectivity changes continuously while moving */
+			return SimClock.getTime();
+		} else { // listeners only care about the next waypoint
+			moveTime = SimClock.getTime() +
+				this.positions.distanceToDestination(this.address) /
+				this.positions.getSpeed(this.address);
+		}
+
+		return Math.min(next, moveTime);
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is
 	 * not time to move yet
 	 * @param timeIncrement How long time the node moves
 	 */
-	public void move(double timeIncrement) {		
+	public void move(double timeIncrement) {
+		if (!canMove()) {
+			return;
+		}
+		moveForward(timeIncrement);
+	}
+
+	/**
+	 * Returns true if the node should move during this update, i.e., it is
+	 * active and not waiting for the next path to become available.
+	 * @return true if the node should move during this update
+	 */
+	boolean canMove() {
+		return isActive() && !(SimClock.getTime() < this.nextTimeToMove);
+	}
+
+	/**
+	 * Moves the node towards its current destination if that can be done
+	 * without reaching the destination. This does not request new waypoints
+	 * or paths, nor inform movement listeners, so it only touches the state
+	 * of this node and can be run for many nodes concurrently.
+	 * @param timeIncrement How long time the node moves
+	 * @return True if the node was moved; false if the node did not have a
+	 * destination or would reach it, in which case nothing was done and
+	 * {@link #moveForward(double)} must be called instead
+	 */
+	boolean moveOnSegment(double timeIncrement) {
+		if (!this.positions.hasDestination(this.address)) {
+			return false;
+		}
+		startMove(timeIncrement);
+
+		double possibleMovement = timeIncrement * 
+			this.positions.getSpeed(this.address);
+		double distance = this.positions.distanceToDestination(this.address);
+
+		if (possibleMovement >= distance) {
+			return false;
+		}
+
+		translateTowardsDestination(possibleMovement, distance);
+		return true;
+	}
+
+	/**
+	 * Moves the node towards the next waypoint(s) without checking if the
+	 * node should move at all (see {@link #canMove()}).
+	 * @param timeIncrement How long time the node moves
+	 */
+	void moveForward(double timeIncrement) {
 		double possibleMovement;
 		double distance;
-		double dx, dy;
 
-		if (!isActive() || SimClock.getTime() < this.nextTimeToMove) {
-			return; 
-		}
-		if (this.destination == null) {
+		startMove(timeIncrement);
+		if (!this.positions.hasDestination(this.address)) {
 			if (!setNextWaypoint()) {
 				return;
 			}
 		}
 
-		possibleMovement = timeIncrement * speed;
-		distance = this.location.distance(this.destination);
+		possibleMovement = timeIncrement * 
+			this.positions.getSpeed(this.address);
+		distance = this.positions.distanceToDestination(this.address);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
-			this.location.setLocation(this.destination); // snap to destination
+			this.positions.moveToDestination(this.address); // snap to it
+			this.location.sync();
 			possibleMovement -= distance;
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
-			distance = this.location.distance(this.destination);
+			distance = this.positions.distanceToDestination(this.address);
 		}
 
+		translateTowardsDestination(possibleMovement, distance);
+	}
+
+	/**
+	 * Records the start location and the time of a move that starts now
+	 * (see {@link #getLocationAt(double)})
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void startMove(double timeIncrement) {
+		double now = SimClock.getTime();
+		this.moveStartLocation.setLocation(this.location);
+		this.moveStartTime = now;
+		this.moveEndTime = now + timeIncrement;
+	}
+
+	/**
+	 * Moves the node towards the current destination
+	 * @param possibleMovement How far the node moves (must be less than the
+	 * distance to the destination)
+	 * @param distance Distance to the destination
+	 */
+	private void translateTowardsDestination(double possibleMovement,
+			double distance) {
 		// move towards the point for possibleMovement amount
-		dx = (possibleMovement/distance) * (this.destination.getX() -
-				this.location.getX());
-		dy = (possibleMovement/distance) * (this.destination.getY() -
-				this.location.getY());
-		this.location.translate(dx, dy);
-	}	
+		this.positions.moveTowardsDestination(this.address, possibleMovement,
+				distance);
+		this.location.sync();
+	}
 
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
@@ -387,12 +579,13 @@ public class DTNHost implements Comparable<DTNHost> {
 			return false;
 		}
 
-		this.destination = path.getNextWaypoint();
-		this.speed = path.getSpeed();
+		Coord destination = path.getNextWaypoint();
+		double speed = path.getSpeed();
+		this.positions.setDestination(this.address, destination, speed);
 
 		if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
-				l.newDestination(this, this.destination, this.speed);
+				l.newDestination(this, destination, speed);
 			}
 		}
 
@@ -409,20 +602,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Start receiving a message from another host
+	 * Start receiving a message from another host. The router makes its
+	 * own replicate of the message (and adds this node on its path), so the
+	 * given message is not modified.
 	 * @param m The message
 	 * @param from Who the message is from
 	 * @return The value returned by 
 	 * {@link MessageRouter#receiveMessage(Message, DTNHost)}
 	 */
 	public int receiveMessage(Message m, DTNHost from) {
-		int retVal = this.router.receiveMessage(m, from); 
-
-		if (retVal == MessageRouter.RCV_OK) {
-			m.addNodeOnPath(this);	// add this node on the messages path
-		}
-
-		return retVal;	
+		return this.router.receiveMessage(m, from); 
 	}
 
 	/**
@@ -11,6 +11,9 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JOptionPane;
 
@@ -25,6 +28,13 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** If this option ({@value}) is given after the batch mode option and
+	 * the number of runs, the runs are run concurrently in the number of 
+	 * threads given after the option */
+	public static final String PARALLEL_FLAG = "-parallel";
+	/** How often the progress of parallel batch runs is printed 
+	 * (milliseconds) */
+	public static final long PROGRESS_INTERVAL = 10000;
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -40,7 +50,10 @@ public class DTNSim {
 	 * or a with a combination of starting run and the number of runs, 
 	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
 	 * arrays are used for different runs (see 
-	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings 
+	 * {@link Settings#setRunIndex(int)}). The number of runs can be followed
+	 * by the {@value #PARALLEL_FLAG} option and the number of threads, in
+	 * which case that many runs are run concurrently (each with its own
+	 * {@link RunContext}). Following arguments are the settings 
 	 * files for the simulation run (if any). For GUI mode, the number before 
 	 * settings files (if given) is the run index to use for that run.
 	 * @param args Command line arguments
@@ -50,6 +63,7 @@ public class DTNSim {
 		
 		boolean batchMode = false;
 		int nrofRuns[] = {0,1};
+		int nrofThreads = 1;
 		String confFiles[];
 		int firstConfIndex = 0;
 		int guiIndex = 0;
@@ -98,6 +112,11 @@ public class DTNSim {
                     nrofRuns = parseNrofRuns(args[1]);
                     firstConfIndex = 2;
                 }
+				if (args.length > firstConfIndex + 1 && 
+						args[firstConfIndex].equals(PARALLEL_FLAG)) {
+					nrofThreads = parseNrofThreads(args[firstConfIndex + 1]);
+					firstConfIndex += 2;
+				}
 			}
 			else { /* GUI mode */				
 				try { /* is there a run index for the GUI mode ? */
@@ -117,11 +136,16 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			if (nrofThreads > 1) {
+				runInParallel(nrofRuns, nrofThreads);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -179,7 +203,7 @@ public class DTNSim {
 	 * @param className Full name (i.e., containing the packet path) 
 	 * of the class to register. For example: <code>core.SimClock</code> 
 	 */
-	public static void registerForReset(String className) {
+	public static synchronized void registerForReset(String className) {
 		Class<?> c = null;
 		try {
 			c = Class.forName(className);
@@ -214,6 +238,134 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Runs the batch runs concurrently, every run in its own run context,
+	 * and prints the combined progress of the runs every 
+	 * {@link #PROGRESS_INTERVAL} milliseconds.
+	 * @param nrofRuns The first and (last_run_index - 1) in an array
+	 * @param nrofThreads How many runs are run concurrently
+	 */
+	private static void runInParallel(int[] nrofRuns, int nrofThreads) {
+		List<BatchRun> runs = new ArrayList<BatchRun>();
+		ExecutorService executor = Executors.newFixedThreadPool(nrofThreads);
+
+		print("Runs " + (nrofRuns[0]+1) + "-" + nrofRuns[1] + " in " + 
+				nrofThreads + " threads");
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			BatchRun run = new BatchRun(i);
+			runs.add(run);
+			executor.execute(run);
+		}
+		executor.shutdown();
+
+		long startTime = System.currentTimeMillis();
+		try {
+			while (!executor.awaitTermination(PROGRESS_INTERVAL, 
+					TimeUnit.MILLISECONDS)) {
+				printProgress(runs, startTime);
+			}
+		} catch (InterruptedException e) {
+			throw new SimError(e);
+		}
+		printProgress(runs, startTime);
+
+		for (BatchRun run : runs) {
+			if (run.error != null) {
+				System.err.println("Run " + (run.runIndex+1) + " failed");
+				System.exit(-1);
+			}
+		}
+	}
+
+	/**
+	 * Prints a single line that shows how many of the batch runs are done
+	 * and the progress of the runs that are running
+	 * @param runs The batch runs
+	 * @param startTime When the runs were started (milliseconds)
+	 */
+	private static void printProgress(List<BatchRun> runs, long startTime) {
+		StringBuilder running = new StringBuilder();
+		int nrofDone = 0;
+
+		for (BatchRun run : runs) {
+			if (run.done) {
+				nrofDone++;
+			}
+			else if (run.endTime > 0) {
+				running.append(String.format(" %d:%.0f%%", run.runIndex+1,
+						100 * run.context.clock.getCurrentTime() /
+						run.endTime));
+			}
+		}
+
+		double duration = (System.currentTimeMillis() - startTime)/1000.0;
+		print(String.format("%.1f: %d/%d done", duration, nrofDone,
+				runs.size()) + (running.length() > 0 ? 
+						", running" + running : ""));
+	}
+
+	/**
+	 * A single run of a parallel batch
+	 */
+	private static class BatchRun implements Runnable {
+		private final int runIndex;
+		private final RunContext context;
+		/** end time of the run's scenario (or -1 if the run hasn't started) */
+		private volatile double endTime;
+		private volatile boolean done;
+		private volatile Throwable error;
+
+		private BatchRun(int runIndex) {
+			this.runIndex = runIndex;
+			this.context = new RunContext();
+			this.context.bufferSettingsOutput();
+			this.endTime = -1;
+			this.done = false;
+			this.error = null;
+		}
+
+		public void run() {
+			context.bind();
+			try {
+				Settings.setRunIndex(runIndex);
+				Settings s = new Settings(SimScenario.SCENARIO_NS);
+				endTime = s.getDouble(SimScenario.END_TIME_S);
+				new DTNSimTextUI(true).start();
+			} catch (Throwable t) {
+				System.err.println("Run " + (runIndex+1) + ": " + t);
+				t.printStackTrace();
+				error = t;
+			} finally {
+				Settings.flushOutput();
+				done = true;
+				RunContext.unbind();
+			}
+		}
+	}
+
+	/**
+	 * Parses the number of threads for parallel batch runs from a command 
+	 * line argument
+	 * @param arg The argument to parse
+	 * @return The number of threads
+	 */
+	private static int parseNrofThreads(String arg) {
+		int val = 0;
+		try {
+			val = Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			val = 0;
+		}
+
+		if (val < 1) {
+			System.err.println("Invalid argument '" + arg + "' for the " +
+					"number of threads; must be a positive integer");
+			System.exit(-1);
+		}
+
+		return val;
+	}
+
 	/**
 	 * Parses the number of runs, and an optional starting run index, from a 
 	 * command line argument
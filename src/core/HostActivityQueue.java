@@ -0,0 +1,146 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Priority queue of the next activity times of hosts
+ * (see {@link DTNHost#getNextActivityTime(boolean)}). Every host has at most 
+ * one valid time in the queue; old times are left in the queue when a new
+ * time is set and skipped when they reach the head of the queue.
+ * Hosts are identified by their network address.
+ */
+public class HostActivityQueue {
+	/** Activity time of hosts that should be updated at every interval */
+	public static final double REGULAR = Double.NEGATIVE_INFINITY;
+	/** How many entries per host the queue may have before it is cleaned */
+	private static final int MAX_ENTRIES_PER_HOST = 4;
+
+	/** the valid activity times indexed by host address (NaN = none) */
+	private double[] times;
+	private PriorityQueue<Activity> queue;
+
+	/**
+	 * Constructor.
+	 * @param nrofHosts Number of hosts in the simulation
+	 */
+	public HostActivityQueue(int nrofHosts) {
+		this.times = new double[nrofHosts];
+		Arrays.fill(this.times, Double.NaN);
+		this.queue = new PriorityQueue<Activity>(Math.max(nrofHosts, 1));
+	}
+
+	/**
+	 * Sets the next activity time of a host. Times that are not greater than
+	 * the current simulation time are stored as {@link #REGULAR}.
+	 * @param host The host
+	 * @param time The next activity time of the host
+	 */
+	public void set(DTNHost host, double time) {
+		int address = host.getAddress();
+
+		if (time <= SimClock.getTime()) {
+			time = REGULAR;
+		}
+		if (this.times[address] == time) {
+			return; // already in the queue
+		}
+
+		this.times[address] = time;
+		if (time == Double.MAX_VALUE) {
+			return; // never active by itself, no need for an entry
+		}
+
+		this.queue.add(new Activity(time, host));
+		if (this.queue.size() > MAX_ENTRIES_PER_HOST * this.times.length) {
+			removeOldEntries();
+		}
+	}
+
+	/**
+	 * Returns the earliest activity time of all hosts.
+	 * @return The earliest activity time, {@link #REGULAR} if some host
+	 * should be updated at every interval, or Double.MAX_VALUE if no host
+	 * has any activity
+	 */
+	public double nextTime() {
+		Activity head = this.queue.peek();
+		while (head != null && !isValid(head)) {
+			this.queue.poll();
+			head = this.queue.peek();
+		}
+
+		return head == null ? Double.MAX_VALUE : head.time;
+	}
+
+	/**
+	 * Removes and returns all hosts whose activity time is at or before
+	 * the given time. The removed hosts have no activity time until a new
+	 * one is set.
+	 * @param time The time
+	 * @return The due hosts in the order of their activity times
+	 */
+	public List<DTNHost> pollDue(double time) {
+		List<DTNHost> due = new ArrayList<DTNHost>();
+
+		while (nextTime() <= time && !this.queue.isEmpty()) {
+			Activity a = this.queue.poll();
+			this.times[a.host.getAddress()] = Double.NaN;
+			due.add(a.host);
+		}
+
+		return due;
+	}
+
+	/**
+	 * Returns true if the activity is the valid activity of its host
+	 */
+	private boolean isValid(Activity a) {
+		return this.times[a.host.getAddress()] == a.time;
+	}
+
+	/**
+	 * Removes all old (invalid) entries from the queue
+	 */
+	private void removeOldEntries() {
+		PriorityQueue<Activity> valid = new PriorityQueue<Activity>(
+				Math.max(this.times.length, 1));
+		for (Activity a : this.queue) {
+			if (isValid(a)) {
+				valid.add(a);
+				this.times[a.host.getAddress()] = Double.NaN; // drop dups
+			}
+		}
+		for (Activity a : valid) {
+			this.times[a.host.getAddress()] = a.time;
+		}
+		this.queue = valid;
+	}
+
+	/**
+	 * Activity time of a single host. Ties are ordered by host address.
+	 */
+	private static class Activity implements Comparable<Activity> {
+		private final double time;
+		private final DTNHost host;
+
+		private Activity(double time, DTNHost host) {
+			this.time = time;
+			this.host = host;
+		}
+
+		public int compareTo(Activity other) {
+			int c = Double.compare(this.time, other.time);
+			if (c != 0) {
+				return c;
+			}
+			return this.host.getAddress() - other.host.getAddress();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * <P>Positions of the hosts of a run: the locations, the destinations and
+ * the speeds towards the destinations in primitive arrays that are indexed
+ * by the host addresses. The moves of the hosts and the range checks of the
+ * network interfaces and the connectivity grid read the positions from the
+ * arrays instead of following Coord references of every host.</P>
+ *
+ * <P>The location that {@link DTNHost#getLocation()} returns is a
+ * {@link Coord} view of the host's position: it is kept up to date when the
+ * host moves and setting or translating it changes the position in the
+ * store.</P>
+ */
+public class HostPositions {
+	/** initial size of the arrays */
+	private static final int INIT_SIZE = 64;
+
+	/** x coordinates of the locations (indexed by address) */
+	private double[] xs;
+	/** y coordinates of the locations (indexed by address) */
+	private double[] ys;
+	/** x coordinates of the destinations (indexed by address) */
+	private double[] destXs;
+	/** y coordinates of the destinations (indexed by address) */
+	private double[] destYs;
+	/** speeds towards the destinations (indexed by address) */
+	private double[] speeds;
+	/** has a host got a destination (indexed by address) */
+	private boolean[] hasDestination;
+
+	static {
+		DTNSim.registerForReset(HostPositions.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		RunContext.current().removeState(HostPositions.class);
+	}
+
+	/**
+	 * Returns the position store of the current run
+	 * @return The position store
+	 */
+	public static HostPositions getInstance() {
+		return RunContext.current().getState(HostPositions.class,
+				new RunContext.StateFactory<HostPositions>() {
+			public HostPositions create() {
+				return new HostPositions();
+			}
+		});
+	}
+
+	/**
+	 * Creates an empty store
+	 */
+	private HostPositions() {
+		this.xs = new double[INIT_SIZE];
+		this.ys = new double[INIT_SIZE];
+		this.destXs = new double[INIT_SIZE];
+		this.destYs = new double[INIT_SIZE];
+		this.speeds = new double[INIT_SIZE];
+		this.hasDestination = new boolean[INIT_SIZE];
+	}
+
+	/**
+	 * Sets the location of a host and returns a new view of it
+	 * @param address Address of the host
+	 * @param location The location
+	 * @return A view of the host's location
+	 */
+	Location createLocation(int address, Coord location) {
+		ensureSize(address);
+		this.xs[address] = location.getX();
+		this.ys[address] = location.getY();
+		return new Location(this, address);
+	}
+
+	/**
+	 * Returns the x coordinate of a host's location
+	 * @param address Address of the host
+	 * @return The x coordinate
+	 */
+	public double getX(int address) {
+		return this.xs[address];
+	}
+
+	/**
+	 * Returns the y coordinate of a host's location
+	 * @param address Address of the host
+	 * @return The y coordinate
+	 */
+	public double getY(int address) {
+		return this.ys[address];
+	}
+
+	/**
+	 * Returns true if a host has got a destination
+	 * @param address Address of the host
+	 * @return true if the host has a destination
+	 */
+	public boolean hasDestination(int address) {
+		return this.hasDestination[address];
+	}
+
+	/**
+	 * Returns the speed of a host towards its destination
+	 * @param address Address of the host
+	 * @return The speed
+	 */
+	public double getSpeed(int address) {
+		return this.speeds[address];
+	}
+
+	/**
+	 * Sets the destination and the speed of a host
+	 * @param address Address of the host
+	 * @param destination The destination
+	 * @param speed The speed towards the destination
+	 */
+	void setDestination(int address, Coord destination, double speed) {
+		this.destXs[address] = destination.getX();
+		this.destYs[address] = destination.getY();
+		this.speeds[address] = speed;
+		this.hasDestination[address] = true;
+	}
+
+	/**
+	 * Returns the distance from a host's location to its destination
+	 * @param address Address of the host
+	 * @return The distance
+	 */
+	public double distanceToDestination(int address) {
+		double dx = this.xs[address] - this.destXs[address];
+		double dy = this.ys[address] - this.destYs[address];
+
+		return Math.sqrt(dx*dx + dy*dy);
+	}
+
+	/**
+	 * Moves a host to its destination
+	 * @param address Address of the host
+	 */
+	void moveToDestination(int address) {
+		this.xs[address] = this.destXs[address];
+		this.ys[address] = this.destYs[address];
+	}
+
+	/**
+	 * Moves a host towards its destination
+	 * @param address Address of the host
+	 * @param possibleMovement How far the host moves (must be less than the
+	 * distance to the destination)
+	 * @param distance Distance to the destination
+	 */
+	void moveTowardsDestination(int address, double possibleMovement,
+			double distance) {
+		double dx = (possibleMovement/distance) *
+			(this.destXs[address] - this.xs[address]);
+		double dy = (possibleMovement/distance) *
+			(this.destYs[address] - this.ys[address]);
+		this.xs[address] += dx;
+		this.ys[address] += dy;
+	}
+
+	/**
+	 * Makes sure that the arrays can hold the given address
+	 * @param address The address
+	 */
+	private void ensureSize(int address) {
+		if (address < this.xs.length) {
+			return;
+		}
+
+		int newSize = this.xs.length;
+		while (newSize <= address) {
+			newSize *= 2;
+		}
+		this.xs = Arrays.copyOf(this.xs, newSize);
+		this.ys = Arrays.copyOf(this.ys, newSize);
+		this.destXs = Arrays.copyOf(this.destXs, newSize);
+		this.destYs = Arrays.copyOf(this.destYs, newSize);
+		this.speeds = Arrays.copyOf(this.speeds, newSize);
+		this.hasDestination = Arrays.copyOf(this.hasDestination, newSize);
+	}
+
+	/**
+	 * A Coord view of a host's location. Changes made through the view are
+	 * written to the store until the view is detached (when the host gets
+	 * a new location object). Clones are plain coordinates.
+	 */
+	static class Location extends Coord {
+		private HostPositions positions;
+		private int address;
+		private boolean attached;
+
+		private Location(HostPositions positions, int address) {
+			super(positions.xs[address], positions.ys[address]);
+			this.positions = positions;
+			this.address = address;
+			this.attached = true;
+		}
+
+		/**
+		 * Updates the view to the location in the store
+		 */
+		void sync() {
+			super.setLocation(this.positions.xs[this.address],
+					this.positions.ys[this.address]);
+		}
+
+		/**
+		 * Detaches the view from the store
+		 */
+		void detach() {
+			this.attached = false;
+		}
+
+		@Override
+		public void setLocation(double x, double y) {
+			super.setLocation(x, y);
+			store();
+		}
+
+		@Override
+		public void setLocation(Coord c) {
+			super.setLocation(c);
+			store();
+		}
+
+		@Override
+		public void translate(double dx, double dy) {
+			super.translate(dx, dy);
+			store();
+		}
+
+		@Override
+		public Coord clone() {
+			return new Coord(getX(), getY());
+		}
+
+		/**
+		 * Writes the location of the view to the store (if attached)
+		 */
+		private void store() {
+			if (this.attached) {
+				this.positions.xs[this.address] = getX();
+				this.positions.ys[this.address] = getY();
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash map with primitive long (or int) keys. Uses open addressing with
+ * linear probing so no objects are allocated for the keys or the entries.
+ * Null values are not allowed.
+ * @param <V> Type of the values
+ */
+public class LongHashMap<V> {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	/** capacity - 1 (capacity is always a power of two) */
+	private int mask;
+
+	/**
+	 * Creates a new empty map
+	 */
+	public LongHashMap() {
+		clear();
+	}
+
+	/**
+	 * Returns the value for the key or null if there's no such key
+	 * @param key The key
+	 * @return The value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V)this.values[i];
+	}
+
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return true if the map contains the key
+	 */
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Puts a value for the key
+	 * @param key The key
+	 * @param value The value (not null)
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new SimError("Null values are not allowed");
+		}
+
+		int i = slot(key);
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				V old = (V)this.values[i];
+				this.values[i] = value;
+				return old;
+			}
+			i = (i + 1) & this.mask;
+		}
+
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.size++;
+		if (this.size * 2 > this.values.length) {
+			resize(this.values.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the key and its value from the map
+	 * @param key The key
+	 * @return The removed value or null if there was no such key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		V old = (V)this.values[i];
+
+		/* shift the following entries of the cluster back so that the
+		 * probe sequences stay unbroken */
+		int hole = i;
+		int j = (i + 1) & this.mask;
+		while (this.values[j] != null) {
+			int home = slot(this.keys[j]);
+			if (((j - home) & this.mask) >= ((j - hole) & this.mask)) {
+				this.keys[hole] = this.keys[j];
+				this.values[hole] = this.values[j];
+				hole = j;
+			}
+			j = (j + 1) & this.mask;
+		}
+		this.values[hole] = null;
+		this.size--;
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return the number of keys in the map
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all keys and values
+	 */
+	public void clear() {
+		this.keys = new long[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.mask = INITIAL_CAPACITY - 1;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns a new list of the values in the map (in no particular order)
+	 * @return The values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> list = new ArrayList<V>(this.size);
+		for (Object v : this.values) {
+			if (v != null) {
+				list.add((V)v);
+			}
+		}
+		return list;
+	}
+
+	private int indexOf(long key) {
+		int i = slot(key);
+		while (this.values[i] != null) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & this.mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				put(oldKeys[i], (V)oldValues[i]);
+			}
+		}
+	}
+}
@@ -5,10 +5,10 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
@@ -20,12 +20,13 @@ public class Message implements Comparable<Message> {
 	private DTNHost to;
 	/** Identifier of the message */
 	private String id;
+	/** Dense integer handle of the identifier (see {@link #getIdHandle()}) */
+	private int idHandle;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** The last node on the path this message has passed (the earlier
+	 * nodes are shared with the replicates of the message) */
+	private Hop lastHop;
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
@@ -45,6 +46,9 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** true if the properties are shared with a replicate and must be
+	 * copied before modifying them */
+	private boolean propertiesShared;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -66,9 +70,10 @@ public class Message implements Comparable<Message> {
 		this.from = from;
 		this.to = to;
 		this.id = id;
+		this.idHandle = internId(id);
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.lastHop = null;
+		this.uniqueId = RunContext.current().nextCount(Message.class);
 		
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -78,9 +83,63 @@ public class Message implements Comparable<Message> {
 		this.properties = null;
 		this.appID = null;
 		
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
+
+	/**
+	 * Creates a replicate of a message
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		this.from = m.from;
+		this.to = m.to;
+		this.id = m.id;
+		this.idHandle = m.idHandle;
+		this.size = m.size;
+		this.uniqueId = RunContext.current().nextCount(Message.class);
+		this.timeReceived = SimClock.getTime();
+		copyFrom(m);
+	}
+
+	/**
+	 * Returns the handles of the message IDs of the current run
+	 * @return The handles of the message IDs
+	 */
+	private static HashMap<String, Integer> getIdHandles() {
+		return RunContext.current().getState(Message.class,
+				new RunContext.StateFactory<HashMap<String, Integer>>() {
+			public HashMap<String, Integer> create() {
+				return new HashMap<String, Integer>();
+			}
+		});
+	}
+
+	/**
+	 * Returns the handle of a message ID, creating a new one if the ID
+	 * doesn't have a handle yet
+	 * @param id The message ID
+	 * @return The handle
+	 */
+	private static int internId(String id) {
+		HashMap<String, Integer> handles = getIdHandles();
+		Integer handle = handles.get(id);
+		if (handle == null) {
+			handle = handles.size();
+			handles.put(id, handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Returns the handle of a message ID
+	 * @param id The message ID
+	 * @return The handle (see {@link #getIdHandle()}) or -1 if no message
+	 * with the ID has been created
+	 */
+	public static int getIdHandle(String id) {
+		Integer handle = getIdHandles().get(id);
+		return handle == null ? -1 : handle;
+	}
 	
 	/**
 	 * Returns the node this message is originally from
@@ -106,6 +165,16 @@ public class Message implements Comparable<Message> {
 		return this.id;
 	}
 	
+	/**
+	 * Returns a dense integer handle of the message ID. All messages with
+	 * the same ID (e.g., the replicates of a message) have the same handle
+	 * and the handles of a run are numbered from zero.
+	 * @return The handle of the message ID
+	 */
+	public int getIdHandle() {
+		return this.idHandle;
+	}
+	
 	/**
 	 * Returns an ID that is unique per message instance 
 	 * (different for replicates too)
@@ -128,15 +197,21 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.lastHop = new Hop(node, this.lastHop);
 	}
 	
 	/**
-	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * Returns a list of nodes this message has passed so far. The list is
+	 * a new copy, so changes to it don't affect the message.
+	 * @return The list of nodes, starting from the source
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		int nrofNodes = this.lastHop == null ? 0 : this.lastHop.depth + 1;
+		DTNHost[] nodes = new DTNHost[nrofNodes];
+		for (Hop h = this.lastHop; h != null; h = h.previous) {
+			nodes[h.depth] = h.node;
+		}
+		return new ArrayList<DTNHost>(Arrays.asList(nodes));
 	}
 	
 	/**
@@ -144,7 +219,22 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.lastHop == null ? -1 : this.lastHop.depth;
+	}
+
+	/**
+	 * Returns true if the message has passed the given node (i.e., the node
+	 * is on the list returned by {@link #getHops()})
+	 * @param node The node to look for
+	 * @return true if the node is on the path of this message
+	 */
+	public boolean isOnPath(DTNHost node) {
+		for (Hop h = this.lastHop; h != null; h = h.previous) {
+			if (h.node == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/** 
@@ -174,6 +264,18 @@ public class Message implements Comparable<Message> {
 		this.initTtl = ttl;
 	}
 	
+	/**
+	 * Returns the simulation time when the TTL of the message runs out,
+	 * i.e., the time the initial TTL has passed since the creation
+	 * @return The expiry time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getExpiryTime() {
+		if (this.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.timeCreated + this.initTtl * 60.0;
+	}
+	
 	/**
 	 * Sets the time when this message was received.
 	 * @param time The time to set
@@ -256,7 +358,7 @@ public class Message implements Comparable<Message> {
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		this.lastHop = m.lastHop;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -264,10 +366,10 @@ public class Message implements Comparable<Message> {
 		this.appID = m.appID;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			/* copy-on-write; see updateProperty() */
+			this.properties = m.properties;
+			this.propertiesShared = true;
+			m.propertiesShared = true;
 		}
 	}
 	
@@ -316,19 +418,23 @@ public class Message implements Comparable<Message> {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
-		}		
+		}
+		else if (this.propertiesShared) {
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
 	
 	/**
-	 * Returns a replicate of this message (identical except for the unique id)
+	 * Returns a replicate of this message (identical except for the unique
+	 * id). The replicate shares the path and the properties with this
+	 * message until either one of them changes.
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -343,7 +449,8 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		RunContext.current().resetCount(Message.class);
+		RunContext.current().removeState(Message.class);
 	}
 
 	/**
@@ -359,5 +466,21 @@ public class Message implements Comparable<Message> {
 	public void setAppID(String appID) {
 		this.appID = appID;
 	}
-	
+
+	/**
+	 * A node on the path of a message. The hops are immutable so the
+	 * replicates of a message can share the path they have in common.
+	 */
+	private static class Hop {
+		private final DTNHost node;
+		private final Hop previous;
+		/** index of the node on the path (0 for the source) */
+		private final int depth;
+
+		private Hop(DTNHost node, Hop previous) {
+			this.node = node;
+			this.previous = previous;
+			this.depth = previous == null ? 0 : previous.depth + 1;
+		}
+	}
 }
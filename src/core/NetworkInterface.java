@@ -4,10 +4,10 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
@@ -34,8 +34,12 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
-	private static int nextAddress = 0;
-	private static Random rng;
+	private static final ContextRandom rng = new ContextRandom(
+			NetworkInterface.class, new RunContext.StateFactory<Random>() {
+		public Random create() {
+			return new Random(0);
+		}
+	});
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -48,6 +52,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** near interfaces prepared for the next update, or null if none */
+	private Collection<NetworkInterface> preparedNearInterfaces;
+	/** should the listeners be informed at the exact range crossing times */
+	private boolean exactContactTimes;
 
 
 	static {
@@ -59,8 +67,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		nextAddress = 0;
-		rng = new Random(0);
+		RunContext.current().resetCount(NetworkInterface.class);
+		rng.reset();
 	}
 	
 	/**
@@ -80,6 +88,13 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		} else {
 			this.scanInterval = 0;
 		}
+
+		Settings optimization = new Settings(World.SETTINGS_NS);
+		this.exactContactTimes = World.DEF_EXACT_CONTACT_TIMES;
+		if (optimization.contains(World.EXACT_CONTACT_TIMES_S)) {
+			this.exactContactTimes =
+				optimization.getBoolean(World.EXACT_CONTACT_TIMES_S);
+		}
 	}
 	
 	/**
@@ -102,6 +117,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.exactContactTimes = ni.exactContactTimes;
 		
 		/* draw lastScanTime of [0 -- scanInterval] */
 		this.lastScanTime = rng.nextDouble() * scanInterval;
@@ -124,7 +140,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
+		optimizer = ConnectivityOptimizer.getOptimizer(
 				this.interfacetype.hashCode(), transmitRange);
 		optimizer.addInterface(this);		
 	}
@@ -149,8 +165,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * subsequent calls.
 	 * @return The next address.
 	 */
-	private synchronized static int getNextNetAddress() {
-		return nextAddress++;	
+	private static int getNextNetAddress() {
+		return RunContext.current().nextCount(NetworkInterface.class);
 	}
 
 	/**
@@ -185,6 +201,34 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 	
+	/**
+	 * Returns the number of connections of this interface that are
+	 * transferring a message
+	 * @return the number of ongoing transfers
+	 */
+	public int getNrofActiveTransfers() {
+		int n = 0;
+		for (int i = 0, size = this.connections.size(); i < size; i++) {
+			if (this.connections.get(i).getMessage() != null) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Informs the ongoing transfers of this interface that a transfer has
+	 * started or ended so they can update their share of the bandwidth
+	 */
+	void transfersChanged() {
+		for (int i = 0, size = this.connections.size(); i < size; i++) {
+			Connection con = this.connections.get(i);
+			if (con.getMessage() != null) {
+				con.updateSharedSpeed();
+			}
+		}
+	}
+
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -228,7 +272,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 
 		this.connections.add(con);
-		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
+		notifyConnectionListeners(CON_UP, anotherInterface);
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
@@ -246,7 +290,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void disconnect(Connection con, 
 			NetworkInterface anotherInterface) {
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
@@ -271,10 +315,116 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		return this.host.distanceSquared(anotherInterface.getHost()) <=
+				smallerRange * smallerRange;
 	}
 	
+	/**
+	 * Returns the time when the distance between this and another interface
+	 * crossed the radio range (the smaller of the two) during the latest
+	 * move of the hosts. The hosts are assumed to have moved on straight
+	 * lines at constant speeds during the move. If the hosts did not just
+	 * move in or out of range (e.g., they did not move at all or the
+	 * connection changed for some other reason), the current time is
+	 * returned.
+	 * @param anotherInterface The another interface
+	 * @param entering True if the hosts got in range, false if they got
+	 * out of range
+	 * @return The time when the range was crossed
+	 */
+	protected double getRangeCrossingTime(NetworkInterface anotherInterface,
+			boolean entering) {
+		double now = SimClock.getTime();
+		DTNHost other = anotherInterface.getHost();
+		double start = now;
+		if (this.host.getMoveEndTime() == now) {
+			start = this.host.getMoveStartTime();
+		}
+		if (other.getMoveEndTime() == now) {
+			start = Math.min(start, other.getMoveStartTime());
+		}
+		if (start >= now) {
+			return now; /* neither one of the hosts moved */
+		}
+
+		double range = Math.min(getTransmitRange(),
+				anotherInterface.getTransmitRange());
+		Coord a = this.host.getLocationAt(start);
+		Coord b = other.getLocationAt(start);
+		Coord aNow = this.host.getLocation();
+		Coord bNow = other.getLocation();
+
+		/* relative location at the start and its change during the move */
+		double dx = a.getX() - b.getX();
+		double dy = a.getY() - b.getY();
+		double vx = (aNow.getX() - bNow.getX()) - dx;
+		double vy = (aNow.getY() - bNow.getY()) - dy;
+
+		/* solve |d + s*v| = range for s in [0,1] */
+		double qa = vx * vx + vy * vy;
+		double qb = 2 * (dx * vx + dy * vy);
+		double qc = dx * dx + dy * dy - range * range;
+		double endDist = qa + qb + qc; /* squared distance minus range^2 */
+		if (entering ? (qc <= 0 || endDist > 0) : (qc > 0 || endDist <= 0)) {
+			return now; /* did not just cross the range */
+		}
+		double disc = qb * qb - 4 * qa * qc;
+		if (qa == 0 || disc < 0) {
+			return now;
+		}
+		double sqrtDisc = Math.sqrt(disc);
+		double s = entering ? (-qb - sqrtDisc) / (2 * qa) :
+			(-qb + sqrtDisc) / (2 * qa);
+		s = Math.max(0, Math.min(1, s));
+
+		return start + s * (now - start);
+	}
+
+	/**
+	 * Returns the interfaces that might be close enough to be connected with
+	 * this interface. If the interfaces were prepared (see
+	 * {@link #setPreparedNearInterfaces(Collection)}) for this update, those
+	 * are returned (only once), otherwise the connectivity optimizer is asked.
+	 * The location of this interface must be updated to the optimizer before
+	 * calling this method.
+	 * @return The interfaces near this interface
+	 */
+	protected Collection<NetworkInterface> getNearInterfaces() {
+		Collection<NetworkInterface> near = this.preparedNearInterfaces;
+		if (near != null) {
+			this.preparedNearInterfaces = null;
+			return near;
+		}
+		return optimizer.getNearInterfaces(this);
+	}
+
+	/**
+	 * Sets the near interfaces that the next call of
+	 * {@link #getNearInterfaces()} returns. The collection must be the same
+	 * the connectivity optimizer would return at that point.
+	 * @param near The near interfaces or null to clear prepared interfaces
+	 */
+	public void setPreparedNearInterfaces(Collection<NetworkInterface> near) {
+		this.preparedNearInterfaces = near;
+	}
+
+	/**
+	 * Returns true if this interface has prepared near interfaces that have
+	 * not been used yet
+	 * @return true if there are unused prepared near interfaces
+	 */
+	public boolean hasPreparedNearInterfaces() {
+		return this.preparedNearInterfaces != null;
+	}
+
+	/**
+	 * Returns the connectivity optimizer this interface is registered to
+	 * @return The connectivity optimizer (or null if host is not set yet)
+	 */
+	public ConnectivityOptimizer getOptimizer() {
+		return this.optimizer;
+	}
+
 	/**
 	 * Returns true if the given NetworkInterface is connected to this host. 
 	 * @param netinterface The other NetworkInterface to check 
@@ -311,20 +461,45 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 
 	/**
 	 * Notifies all the connection listeners about a change in connections.
+	 * If exact contact times are used, the {@link TimedConnectionListener}s
+	 * are told the time when the range was crossed (see
+	 * {@link #getRangeCrossingTime(NetworkInterface, boolean)}).
 	 * @param type Type of the change (e.g. {@link #CON_DOWN} )
-	 * @param otherHost The other host on the other end of the connection.
+	 * @param otherInterface The interface on the other end of the connection.
 	 */
-	private void notifyConnectionListeners(int type, DTNHost otherHost) {
+	private void notifyConnectionListeners(int type,
+			NetworkInterface otherInterface) {
 		if (this.cListeners == null) {
 			return;
 		}
+
+		DTNHost otherHost = otherInterface.getHost();
+		double time = SimClock.getTime();
+		if (this.exactContactTimes) {
+			time = getRangeCrossingTime(otherInterface, type == CON_UP);
+		}
+
 		for (ConnectionListener cl : this.cListeners) {
+			TimedConnectionListener tcl = null;
+			if (cl instanceof TimedConnectionListener) {
+				tcl = (TimedConnectionListener)cl;
+			}
 			switch (type) {
 			case CON_UP:
-				cl.hostsConnected(this.host, otherHost);
+				if (tcl != null) {
+					tcl.hostsConnected(this.host, otherHost, time);
+				}
+				else {
+					cl.hostsConnected(this.host, otherHost);
+				}
 				break;
 			case CON_DOWN:
-				cl.hostsDisconnected(this.host, otherHost);
+				if (tcl != null) {
+					tcl.hostsDisconnected(this.host, otherHost, time);
+				}
+				else {
+					cl.hostsDisconnected(this.host, otherHost);
+				}
 				break;
 			default:
 				assert false : type;	// invalid type code
@@ -387,7 +562,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
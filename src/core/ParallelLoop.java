@@ -0,0 +1,98 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the iterations of an index loop in parallel using a fork-join pool.
+ * The iterations must be independent of each other, i.e., an iteration may
+ * only modify state that no other iteration reads or modifies. The 
+ * iterations are run in the run context of the calling thread 
+ * (see {@link RunContext}).
+ */
+public class ParallelLoop {
+	/** Smallest number of iterations that is given to a single task */
+	public static final int MIN_CHUNK_SIZE = 16;
+	/** How many tasks per thread the loop is (at most) split to */
+	private static final int TASKS_PER_THREAD = 4;
+
+	/**
+	 * Body of the parallel loop
+	 */
+	public interface Body {
+		/**
+		 * Runs one iteration of the loop
+		 * @param index Index of the iteration
+		 */
+		public void run(int index);
+	}
+
+	/**
+	 * Runs iterations 0...n-1 of the loop body and returns when all of
+	 * them are done. If the pool is null, the iterations are run in the
+	 * calling thread (in index order).
+	 * @param pool The pool that runs the iterations (or null)
+	 * @param n Number of iterations
+	 * @param body The loop body
+	 */
+	public static void run(ForkJoinPool pool, int n, Body body) {
+		if (pool == null || n <= MIN_CHUNK_SIZE) {
+			for (int i=0; i<n; i++) {
+				body.run(i);
+			}
+			return;
+		}
+
+		int chunk = n / (pool.getParallelism() * TASKS_PER_THREAD);
+		if (chunk < MIN_CHUNK_SIZE) {
+			chunk = MIN_CHUNK_SIZE;
+		}
+		pool.invoke(new RangeTask(body, RunContext.getBound(), 0, n, chunk));
+	}
+
+	/**
+	 * Task that runs a range of iterations and splits itself in halves if the
+	 * range is larger than the chunk size.
+	 */
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Body body;
+		private final RunContext context;
+		private final int start;
+		private final int end;
+		private final int chunk;
+
+		private RangeTask(Body body, RunContext context, int start, int end,
+				int chunk) {
+			this.body = body;
+			this.context = context;
+			this.start = start;
+			this.end = end;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > chunk) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangeTask(body, context, start, middle, chunk),
+						new RangeTask(body, context, middle, end, chunk));
+				return;
+			}
+
+			RunContext previous = RunContext.getBound();
+			RunContext.setBound(context);
+			try {
+				for (int i=start; i<end; i++) {
+					body.run(i);
+				}
+			} finally {
+				RunContext.setBound(previous);
+			}
+		}
+	}
+}
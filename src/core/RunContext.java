@@ -0,0 +1,194 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of a single simulation run. Classes that would otherwise keep
+ * run specific state in static fields (e.g., the simulation clock, address 
+ * counters and random number generators) keep it in the context of the
+ * current run instead. This way several runs can be executed concurrently
+ * in different threads (see {@link DTNSim}). A context is bound to a
+ * thread with {@link #bind()}; threads without a bound context (e.g., the
+ * GUI threads) share the default context. As long as no thread has a bound
+ * context, {@link #current()} returns the default context without looking
+ * up the thread's context.
+ */
+public class RunContext {
+	private static final ThreadLocal<RunContext> boundContext =
+		new ThreadLocal<RunContext>();
+	/** number of threads that have a bound context */
+	private static final AtomicInteger nrofBound = new AtomicInteger();
+	/** the context of the threads that have no bound context */
+	private static final RunContext DEFAULT_CONTEXT = new RunContext();
+
+	/** the simulation clock of the run */
+	final SimClock clock;
+	/** run index for run-specific settings */
+	int runIndex;
+	/** settings that have already been written to the settings output */
+	Set<String> writtenSettings;
+	/** settings output lines waiting to be written, or null if the lines
+	 * are written immediately (see {@link Settings#flushOutput()}) */
+	List<String> settingsOutput;
+
+	private Map<Object, Object> states;
+	private Map<Object, Integer> counters;
+
+	/**
+	 * Factory for per-run state objects
+	 * @see RunContext#getState(Object, StateFactory)
+	 */
+	public interface StateFactory<T> {
+		/**
+		 * Creates a new state object for a run
+		 * @return The new state object
+		 */
+		public T create();
+	}
+
+	/**
+	 * Creates a new context for a run.
+	 */
+	public RunContext() {
+		this.clock = new SimClock();
+		this.runIndex = 0;
+		this.writtenSettings = new HashSet<String>();
+		this.settingsOutput = null;
+		this.states = new HashMap<Object, Object>();
+		this.counters = new HashMap<Object, Integer>();
+	}
+
+	/**
+	 * Returns the context of the calling thread's run
+	 * @return The bound context or the default context if the thread has
+	 * no bound context
+	 */
+	public static RunContext current() {
+		if (nrofBound.get() == 0) {
+			return DEFAULT_CONTEXT; /* no thread has a bound context */
+		}
+		RunContext context = boundContext.get();
+		return context == null ? DEFAULT_CONTEXT : context;
+	}
+
+	/**
+	 * Binds this context to the calling thread. All subsequent run 
+	 * specific state the thread accesses is read from this context.
+	 */
+	public void bind() {
+		setBound(this);
+	}
+
+	/**
+	 * Unbinds the context of the calling thread; the thread uses the
+	 * default context after this.
+	 */
+	public static void unbind() {
+		setBound(null);
+	}
+
+	/**
+	 * Makes the settings output of this context buffered: the settings
+	 * are written only when {@link Settings#flushOutput()} is called in
+	 * the run. This keeps the settings of concurrent runs from
+	 * interleaving in the output.
+	 */
+	void bufferSettingsOutput() {
+		this.settingsOutput = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the context bound to the calling thread
+	 * @return The bound context or null if the thread has no bound context
+	 */
+	static RunContext getBound() {
+		return boundContext.get();
+	}
+
+	/**
+	 * Binds the given context to the calling thread, or unbinds the current
+	 * context if the given context is null
+	 * @param context The context to bind (or null)
+	 */
+	static void setBound(RunContext context) {
+		boolean wasBound = boundContext.get() != null;
+		if (context == null) {
+			boundContext.remove();
+			if (wasBound) {
+				nrofBound.decrementAndGet();
+			}
+		}
+		else {
+			boundContext.set(context);
+			if (!wasBound) {
+				nrofBound.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Returns the state object stored with the given key. If there's no
+	 * such object, a new one is created with the factory and stored.
+	 * @param key Key of the state object (e.g., the class that owns it)
+	 * @param factory Factory that creates the state object if needed
+	 * @return The state object
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getState(Object key, StateFactory<T> factory) {
+		Object state = this.states.get(key);
+		if (state == null) {
+			state = factory.create();
+			this.states.put(key, state);
+		}
+		return (T)state;
+	}
+
+	/**
+	 * Removes the state object stored with the given key (the next
+	 * {@link #getState(Object, StateFactory)} call creates a new one).
+	 * @param key Key of the state object
+	 */
+	public void removeState(Object key) {
+		this.states.remove(key);
+	}
+
+	/**
+	 * Returns the next value of a counter. Counters start from zero.
+	 * @param key Key of the counter (e.g., the class that owns it)
+	 * @return The value of the counter before increasing it
+	 */
+	public int nextCount(Object key) {
+		Integer count = this.counters.get(key);
+		int value = count == null ? 0 : count;
+		this.counters.put(key, value + 1);
+		return value;
+	}
+
+	/**
+	 * Returns the current value of a counter without increasing it.
+	 * @param key Key of the counter
+	 * @return The current value of the counter
+	 */
+	public int getCount(Object key) {
+		Integer count = this.counters.get(key);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Resets a counter back to zero
+	 * @param key Key of the counter
+	 */
+	public void resetCount(Object key) {
+		this.counters.remove(key);
+	}
+}
@@ -12,11 +12,13 @@ import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 /**
  * Interface for simulation settings stored in setting file(s). Settings 
@@ -35,7 +37,8 @@ import java.util.Stack;
  * </P> 
  */
 public class Settings {
-	/** properties object where the setting files are read into */
+	/** properties object where the setting files are read into (shared by
+	 * all runs) */
 	protected static Properties props;
 	/** file name of the default settings file ({@value}) */
 	public static final String DEF_SETTINGS_FILE ="default_settings.txt";
@@ -53,10 +56,7 @@ public class Settings {
 	
 	/** Stream where all read settings are written to */
 	private static PrintStream out = null;
-	private static Set<String> writtenSettings = new HashSet<String>();
 	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -92,13 +92,15 @@ public class Settings {
 	 * <CODE>runIndex % arrayLength</CODE>). 
 	 * To disable whole run-index-thing, set index to value smaller than
 	 * zero (e.g. -1). When disabled, run-arrays are returned as normal values,
-	 * including the brackets.
+	 * including the brackets. The index is stored in the context of the
+	 * current run (see {@link RunContext}).
 	 * @param index The run index to use for subsequent settings calls, or
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		RunContext context = RunContext.current();
+		context.runIndex = index;
+		context.writtenSettings.clear();
 	}
 	
 	/**
@@ -247,6 +249,23 @@ public class Settings {
 		} catch (IOException e) {
 			throw new SettingsError(e);
 		}
+	}
+	
+	/**
+	 * Returns the names and values of all the settings. Run-specific values
+	 * are resolved for the current run (see {@link #setRunIndex(int)}).
+	 * The settings are not written to the settings output.
+	 * @return The settings sorted by their names
+	 */
+	public static SortedMap<String, String> getAllSettings() {
+		if (props == null) {
+			init(null);
+		}
+		SortedMap<String, String> all = new TreeMap<String, String>();
+		for (String name : props.stringPropertyNames()) {
+			all.put(name, parseRunSetting(props.getProperty(name).trim()));
+		}
+		return all;
 	}
 	
 	/**
@@ -254,13 +273,48 @@ public class Settings {
 	 * @param setting The string to write
 	 */
 	private static void outputSetting(String setting) {
+		RunContext context = RunContext.current();
+		Set<String> writtenSettings = context.writtenSettings;
+
 		if (out != null && !writtenSettings.contains(setting)) {
-			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+			List<String> buffer = context.settingsOutput;
+			if (buffer != null) { /* written when the run is done */
+				if (writtenSettings.size() == 0) {
+					buffer.add("# Settings for run " + (context.runIndex + 1));
+				}
+				buffer.add(setting);
+			}
+			else {
+				synchronized (out) {
+					if (writtenSettings.size() == 0) {
+						out.println("# Settings for run " + 
+								(context.runIndex + 1));
+					}
+					out.println(setting);
+				}
 			}
-			out.println(setting);
 			writtenSettings.add(setting);
 		}
+	}
+
+	/**
+	 * Writes the buffered settings output lines of the current run (if
+	 * any) to the settings output as one block
+	 * @see RunContext#bufferSettingsOutput()
+	 */
+	static void flushOutput() {
+		List<String> buffer = RunContext.current().settingsOutput;
+		if (out == null || buffer == null || buffer.isEmpty()) {
+			return;
+		}
+
+		synchronized (out) {
+			for (String line : buffer) {
+				out.println(line);
+			}
+			out.flush();
+		}
+		buffer.clear();
 	}
 	
 	/**
@@ -353,6 +407,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = RunContext.current().runIndex;
 		
 		if (!value.startsWith(RUN_ARRAY_START) || 
 			!value.endsWith(RUN_ARRAY_END) || 
@@ -6,28 +6,32 @@ package core;
 
 
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. Every run has its own clock
+ * in its context (see {@link RunContext}); the static methods use the clock
+ * of the current run.
  */
 public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+	/** current simulation time */
+	private double time;
 	
-	private SimClock() {}
+	/**
+	 * Creates a clock for a run
+	 */
+	SimClock() {
+		this.time = 0;
+	}
 	
 	static {
+		/* no reset here: the clock of every new run starts from zero */
 		DTNSim.registerForReset(SimClock.class.getCanonicalName());
-		reset();
 	}
 	
 	/**
 	 * Get the instance of the class that can also change the time.
-	 * @return The instance of this clock
+	 * @return The clock of the current run
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
-		return clock;
+		return RunContext.current().clock;
 	}
 	
 	/**
@@ -35,7 +39,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return RunContext.current().clock.time;
 	}
 	
 	/**
@@ -43,7 +47,16 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
+	}
+	
+	/**
+	 * Returns the current time of this clock. Unlike {@link #getTime()},
+	 * doesn't look up the context of the current run.
+	 * @return Time as a double
+	 */
+	public double getCurrentTime() {
+		return this.time;
 	}
 	
 	/**
@@ -51,7 +64,7 @@ public class SimClock {
 	 * @param time Nrof seconds to increase the time
 	 */
 	public void advance(double time) {
-		clockTime += time;
+		this.time += time;
 	}
 	
 	/**
@@ -59,7 +72,7 @@ public class SimClock {
 	 * @param time the time to set
 	 */
 	public void setTime(double time) {
-		clockTime = time;
+		this.time = time;
 	}
 	
 	/**
@@ -67,13 +80,13 @@ public class SimClock {
 	 * @return the current simulation time in a string 
 	 */
 	public String toString() {
-		return "SimTime: " + clockTime;
+		return "SimTime: " + this.time;
 	}
 	
 	/**
-	 * Resets the static fields of the class
+	 * Resets the clock of the current run
 	 */
 	public static void reset() {
-		clockTime = 0;
+		RunContext.current().clock.time = 0;
 	}
 }
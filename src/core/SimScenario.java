@@ -6,13 +6,17 @@ package core;
 
 import input.EventQueue;
 import input.EventQueueHandler;
+import input.ExternalEventsQueue;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import movement.MapBasedMovement;
+import movement.CachedTrajectoryMovement;
 import movement.MovementModel;
+import movement.StationaryMovement;
+import movement.TrajectoryCache;
 import movement.map.SimMap;
 import routing.MessageRouter;
 
@@ -22,9 +26,6 @@ import routing.MessageRouter;
  */
 public class SimScenario implements Serializable {
 	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
-
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
 	/** number of host groups -setting id ({@value})*/
@@ -108,6 +109,10 @@ public class SimScenario implements Serializable {
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
+	/** Cache of the hosts' trajectories (if enabled) */
+	private TrajectoryCache trajectoryCache;
+	/** Are the connections replayed from a contact trace */
+	private boolean contactTraceReplay;
 
 	/** Global connection event listeners */
 	private List<ConnectionListener> connectionListeners;
@@ -126,7 +131,7 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
+		RunContext.current().removeState(SimScenario.class);
 	}
 
 	/**
@@ -160,22 +165,51 @@ public class SimScenario implements Serializable {
 		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE, 2);
 		this.worldSizeX = worldSize[0];
 		this.worldSizeY = worldSize[1];
+		
+		this.contactTraceReplay = isContactTraceReplay();
+		s.setNameSpace(TrajectoryCache.TRAJECTORY_CACHE_NS);
+		if (!contactTraceReplay && s.contains(TrajectoryCache.CACHE_DIR_S)) {
+			this.trajectoryCache = new TrajectoryCache(s);
+		}
 		
 		createHosts();
 		
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval, 
 				updateListeners, simulateConnections, 
 				eqHandler.getEventQueues());
+		this.world.setMoveHosts(!contactTraceReplay);
+	}
+
+	/**
+	 * Returns true if the connections are not simulated but replayed from
+	 * a contact trace. The locations of the hosts don't matter then, so the
+	 * hosts are kept stationary instead of moving them with the movement
+	 * models.
+	 * @return true if the connections are replayed from a contact trace
+	 */
+	private boolean isContactTraceReplay() {
+		if (this.simulateConnections) {
+			return false;
+		}
+		for (EventQueue eq : this.eqHandler.getEventQueues()) {
+			if (eq instanceof ExternalEventsQueue &&
+					((ExternalEventsQueue)eq).isContactTrace()) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
-		}
-		return myinstance;
+		return RunContext.current().getState(SimScenario.class,
+				new RunContext.StateFactory<SimScenario>() {
+			public SimScenario create() {
+				return new SimScenario();
+			}
+		});
 	}
 
 	/**
@@ -338,9 +372,19 @@ public class SimScenario implements Serializable {
 			int appCount;
 
 			// creates prototypes of MessageRouter and MovementModel
-			MovementModel mmProto = 
-				(MovementModel)s.createIntializedObject(MM_PACKAGE + 
+			MovementModel mmProto;
+			if (contactTraceReplay) {
+				// the contacts come from the trace; no need to move the hosts
+				mmProto = new StationaryMovement(s, new Coord(0, 0));
+			}
+			else if (trajectoryCache != null && trajectoryCache.isCached()) {
+				// replay the cached trajectories instead of computing them
+				mmProto = new CachedTrajectoryMovement(s, trajectoryCache);
+			}
+			else {
+				mmProto = (MovementModel)s.createIntializedObject(MM_PACKAGE + 
 						s.getSetting(MOVEMENT_MODEL_S));
+			}
 			MessageRouter mRouterProto = 
 				(MessageRouter)s.createIntializedObject(ROUTING_PACKAGE + 
 						s.getSetting(ROUTER_S));
@@ -393,6 +437,10 @@ public class SimScenario implements Serializable {
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
 			}
+			
+			if (trajectoryCache != null && !trajectoryCache.isCached()) {
+				mmProto = trajectoryCache.record(mmProto);
+			}
 
 			// creates hosts of ith group
 			for (int j=0; j<nrofHosts; j++) {
@@ -408,6 +456,14 @@ public class SimScenario implements Serializable {
 		}
 	}
 
+	/**
+	 * Returns the cache of the hosts' trajectories
+	 * @return The cache or null if the trajectories are not cached
+	 */
+	public TrajectoryCache getTrajectoryCache() {
+		return this.trajectoryCache;
+	}
+
 	/**
 	 * Returns the list of nodes for this scenario.
 	 * @return the list of nodes for this scenario.
@@ -0,0 +1,32 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Connection listener that is told the time of each connection change.
+ * With the exact contact times (see {@link World#EXACT_CONTACT_TIMES_S})
+ * the time is when the hosts got in or out of range, which can be earlier
+ * than the current simulation time. Listeners that only implement
+ * {@link ConnectionListener} are informed at the current time.
+ */
+public interface TimedConnectionListener extends ConnectionListener {
+
+	/**
+	 * Method is called when two hosts are connected.
+	 * @param host1 Host that initiated the connection
+	 * @param host2 Host that was connected to
+	 * @param time Time when the hosts got connected
+	 */
+	public void hostsConnected(DTNHost host1, DTNHost host2, double time);
+
+	/**
+	 * Method is called when connection between hosts is disconnected.
+	 * @param host1 Host that initiated the disconnection
+	 * @param host2 Host at the other end of the connection
+	 * @param time Time when the hosts got disconnected
+	 */
+	public void hostsDisconnected(DTNHost host1, DTNHost host2, double time);
+
+}
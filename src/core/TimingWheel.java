@@ -0,0 +1,351 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <P>Hierarchical timing wheel for items that are due at some simulation
+ * time. The time is divided into ticks and every level of the wheel has
+ * {@value #NROF_SLOTS} slots. The slots of the lowest level are one tick
+ * long and the slots of each upper level are as long as the whole level
+ * below it. An item is put to the lowest level whose slot can tell its tick
+ * apart from the current tick and, when the wheel advances to an upper
+ * level slot, the items of the slot are spread to the lower levels. Items
+ * that are due further away than the top level can reach are kept in a
+ * separate overflow list.</P>
+ *
+ * <P>Scheduling an item is a constant time operation and advancing the
+ * wheel only touches the slots that have items so the wheel can jump over
+ * long idle periods. Items can't be cancelled; the users of the wheel should
+ * check, when an item is due, whether it is still valid.</P>
+ * @param <E> Type of the items
+ */
+public class TimingWheel<E> {
+	/** number of bits in the slot index of a level */
+	private static final int SLOT_BITS = 6;
+	/** number of slots in a level */
+	public static final int NROF_SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = NROF_SLOTS - 1;
+	/** number of levels in the wheel */
+	private static final int NROF_LEVELS = 4;
+
+	/** orders the due items by their times */
+	private static final Comparator<Node<?>> TIME_COMPARATOR =
+		new Comparator<Node<?>>() {
+		public int compare(Node<?> n1, Node<?> n2) {
+			return Double.compare(n1.time, n2.time);
+		}
+	};
+
+	/** length of a tick (seconds) */
+	private final double tickLength;
+	/** the tick the wheel is at */
+	private long currentTick;
+	/** slots of the levels (created when needed) */
+	private Node<E>[][] slots;
+	/** number of items in each level */
+	private int[] levelSizes;
+	/** items that are too far in the future for the levels */
+	private Node<E> overflow;
+	/** number of items in the wheel */
+	private int size;
+
+	/**
+	 * Creates a new, empty, wheel that is at time 0
+	 * @param tickLength Length of a tick (seconds). All the items scheduled
+	 * within the same tick are handled together when the wheel advances.
+	 */
+	public TimingWheel(double tickLength) {
+		if (tickLength <= 0) {
+			throw new SimError("Tick length must be positive");
+		}
+		this.tickLength = tickLength;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Node<E>[][] levels = new Node[NROF_LEVELS][];
+		this.slots = levels;
+		this.levelSizes = new int[NROF_LEVELS];
+		this.currentTick = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Schedules an item to be due at the given time. Items whose time has
+	 * already passed are due at the next {@link #pollDue(double)} call.
+	 * @param item The item
+	 * @param time The time when the item is due
+	 */
+	public void schedule(E item, double time) {
+		Node<E> node = new Node<E>(item, time, toTick(time));
+		place(node);
+		this.size++;
+	}
+
+	/**
+	 * Advances the wheel to the given time and removes and returns the
+	 * items that are due by then
+	 * @param now The current time
+	 * @return The items whose time is not greater than the current time in
+	 * the order of their times (or an empty list if no items are due)
+	 */
+	public List<E> pollDue(double now) {
+		if (this.size == 0) {
+			this.currentTick = Math.max(this.currentTick, toTick(now));
+			return Collections.emptyList();
+		}
+
+		List<Node<E>> due = new ArrayList<Node<E>>();
+		advance(toTick(now), due);
+
+		/* the current slot may have items that are due later in the tick */
+		int slot = (int)(this.currentTick & SLOT_MASK);
+		Node<E> keep = null;
+		for (Node<E> n = takeSlot(0, slot); n != null; ) {
+			Node<E> next = n.next;
+			if (n.time <= now) {
+				due.add(n);
+			}
+			else {
+				n.next = keep;
+				keep = n;
+			}
+			n = next;
+		}
+		for (Node<E> n = keep; n != null; ) {
+			Node<E> next = n.next;
+			pushToLevel(n, 0, slot);
+			n = next;
+		}
+
+		this.size -= due.size();
+		Collections.sort(due, TIME_COMPARATOR);
+		List<E> items = new ArrayList<E>(due.size());
+		for (Node<E> n : due) {
+			items.add(n.item);
+		}
+		return items;
+	}
+
+	/**
+	 * Returns the time of the item that is due next
+	 * @return The time of the item that is due next or Double.MAX_VALUE
+	 * if the wheel is empty
+	 */
+	public double getNextTime() {
+		if (this.size == 0) {
+			return Double.MAX_VALUE;
+		}
+
+		/* the lower levels have always the earlier items */
+		for (int level = 0; level < NROF_LEVELS; level++) {
+			if (this.levelSizes[level] == 0) {
+				continue;
+			}
+			int slot = nextSlot(level, slotIndex(this.currentTick, level));
+			return minTime(this.slots[level][slot]);
+		}
+		return minTime(this.overflow);
+	}
+
+	/**
+	 * Returns the number of items in the wheel
+	 * @return the number of items in the wheel
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the wheel has no items
+	 * @return true if the wheel has no items
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Advances the current tick to the target tick. The items of the slots
+	 * that are passed on the lowest level are added to the due list.
+	 * @param target The target tick
+	 * @param due The list where the due items are added to
+	 */
+	private void advance(long target, List<Node<E>> due) {
+		while (this.currentTick < target) {
+			/* all items in the current lowest level slot are due */
+			for (Node<E> n = takeSlot(0, slotIndex(this.currentTick, 0));
+					n != null; n = n.next) {
+				due.add(n);
+			}
+
+			long next = nextBusyTick();
+			if (next > target) {
+				break;
+			}
+			this.currentTick = next;
+			cascade();
+		}
+
+		if (this.currentTick < target) {
+			this.currentTick = target;
+		}
+	}
+
+	/**
+	 * Returns the first tick after the current tick where some items
+	 * need to be moved or are due
+	 * @return The tick (Long.MAX_VALUE if there are no items)
+	 */
+	private long nextBusyTick() {
+		for (int level = 0; level < NROF_LEVELS; level++) {
+			if (this.levelSizes[level] == 0) {
+				continue;
+			}
+			int slot = nextSlot(level, slotIndex(this.currentTick, level) + 1);
+			int shift = SLOT_BITS * (level + 1);
+			return ((this.currentTick >>> shift) << shift) |
+				((long)slot << (SLOT_BITS * level));
+		}
+
+		if (this.overflow != null) {
+			int shift = SLOT_BITS * NROF_LEVELS;
+			return ((this.currentTick >>> shift) + 1) << shift;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Spreads the items of the upper level slots, that the current tick has
+	 * just entered, to the lower levels
+	 */
+	private void cascade() {
+		int shift = SLOT_BITS * NROF_LEVELS;
+		if ((this.currentTick & ((1L << shift) - 1)) == 0) {
+			Node<E> n = this.overflow;
+			this.overflow = null;
+			replace(n);
+		}
+
+		for (int level = NROF_LEVELS - 1; level > 0; level--) {
+			shift = SLOT_BITS * level;
+			if ((this.currentTick & ((1L << shift) - 1)) == 0) {
+				replace(takeSlot(level, slotIndex(this.currentTick, level)));
+			}
+		}
+	}
+
+	/**
+	 * Places all the nodes of a list again
+	 * @param n The first node of the list
+	 */
+	private void replace(Node<E> n) {
+		while (n != null) {
+			Node<E> next = n.next;
+			place(n);
+			n = next;
+		}
+	}
+
+	/**
+	 * Places a node to the right slot based on the current tick
+	 * @param node The node to place
+	 */
+	private void place(Node<E> node) {
+		long tick = Math.max(node.tick, this.currentTick);
+		long diff = tick ^ this.currentTick;
+		int level = 0;
+		while (level < NROF_LEVELS && (diff >>> (SLOT_BITS*(level+1))) != 0) {
+			level++;
+		}
+
+		if (level == NROF_LEVELS) {
+			node.next = this.overflow;
+			this.overflow = node;
+		}
+		else {
+			pushToLevel(node, level, slotIndex(tick, level));
+		}
+	}
+
+	private void pushToLevel(Node<E> node, int level, int slot) {
+		if (this.slots[level] == null) {
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			Node<E>[] levelSlots = new Node[NROF_SLOTS];
+			this.slots[level] = levelSlots;
+		}
+		node.next = this.slots[level][slot];
+		this.slots[level][slot] = node;
+		this.levelSizes[level]++;
+	}
+
+	/**
+	 * Removes all nodes from a slot
+	 * @return The first node of the slot or null if the slot was empty
+	 */
+	private Node<E> takeSlot(int level, int slot) {
+		if (this.slots[level] == null) {
+			return null;
+		}
+		Node<E> first = this.slots[level][slot];
+		this.slots[level][slot] = null;
+		for (Node<E> n = first; n != null; n = n.next) {
+			this.levelSizes[level]--;
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the index of the first non-empty slot of a level starting from
+	 * the given index
+	 */
+	private int nextSlot(int level, int from) {
+		Node<E>[] levelSlots = this.slots[level];
+		for (int i = from; i < NROF_SLOTS; i++) {
+			if (levelSlots[i] != null) {
+				return i;
+			}
+		}
+		throw new SimError("No items after slot " + from + " of level " +
+				level + " in the timing wheel");
+	}
+
+	private int slotIndex(long tick, int level) {
+		return (int)((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+	}
+
+	private long toTick(double time) {
+		if (time <= 0) {
+			return 0;
+		}
+		return (long)Math.min(Math.floor(time / this.tickLength),
+				Long.MAX_VALUE / 2);
+	}
+
+	private double minTime(Node<E> n) {
+		double min = Double.MAX_VALUE;
+		for (; n != null; n = n.next) {
+			min = Math.min(min, n.time);
+		}
+		return min;
+	}
+
+	/**
+	 * Scheduled item in a slot's list
+	 */
+	private static class Node<E> {
+		private final E item;
+		private final double time;
+		private final long tick;
+		private Node<E> next;
+
+		private Node(E item, double time, long tick) {
+			this.item = item;
+			this.time = time;
+			this.tick = tick;
+		}
+	}
+}
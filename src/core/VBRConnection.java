@@ -8,12 +8,20 @@ import routing.MessageRouter;
 
 /**
  * A connection between two DTN nodes.  The transmission speed
- * is updated every round from the end point transmission speeds
+ * is updated every round from the end point transmission speeds. The speed
+ * is shared equally with the other ongoing transfers of the end points.
+ * The transferred bytes are counted from the time that has passed since the
+ * previous update, so updating the connection more than once at the same
+ * time doesn't transfer any extra bytes.
  */
 public class VBRConnection extends Connection {
 	private int msgsize;
-	private int msgsent;
-	private int currentspeed = 0;
+	/** bytes of the current message sent so far */
+	private double msgsent;
+	/** the speed of this connection's share of the bandwidth (bytes/s) */
+	private double currentspeed = 0;
+	/** the time when the sent bytes were last updated */
+	private double lastUpdate;
 	
 	/**
 	 * Creates a new connection between nodes and sets the connection
@@ -47,32 +55,51 @@ public class VBRConnection extends Connection {
 			"start transfer of " + m + " from " + from;
 		
 		this.msgFromNode = from;
-		Message newMessage = m.replicate();
-		int retVal = getOtherNode(from).receiveMessage(newMessage, from);
+		/* the receiving router makes its own replicate */
+		int retVal = getOtherNode(from).receiveMessage(m, from);
 		
 		if (retVal == MessageRouter.RCV_OK) {
-			this.msgOnFly = newMessage;
+			this.msgOnFly = m;
 			this.msgsize = m.getSize();
 			this.msgsent = 0;
+			this.lastUpdate = SimClock.getTime();
+			transfersChanged();
 		}
 
 		return retVal;
 	}
 
 	/**
-	 * Calculate the current transmission speed from the information
-	 * given by the interfaces, and calculate the missing data amount.
+	 * Calculate the missing data amount using the speed of the previous
+	 * update and the time passed since that, and the new transmission speed
+	 * from the information given by the interfaces.
 	 *
 	 */
 	public void update() {
+		double now = SimClock.getTime();
+		if (this.msgOnFly != null) {
+			msgsent += currentspeed * (now - this.lastUpdate);
+		}
+		this.lastUpdate = now;
+
 		currentspeed =  this.fromInterface.getTransmitSpeed();
 		int othspeed =  this.toInterface.getTransmitSpeed();
 		
 		if (othspeed < currentspeed) {
 			currentspeed = othspeed;
 		}
-		
-		msgsent = msgsent + currentspeed;
+		if (this.msgOnFly != null) {
+			currentspeed /= getNrofSharingTransfers();
+		}
+	}
+
+	/**
+	 * Updates the sent bytes with the old speed and shares the speed with
+	 * the changed number of transfers
+	 */
+	@Override
+	protected void updateSharedSpeed() {
+		update();
 	}
 	
 	/**
@@ -89,8 +116,8 @@ public class VBRConnection extends Connection {
      * @return the amount of bytes to be transferred
      */
     public int getRemainingByteCount() {
-    	int bytesLeft = msgsize - msgsent; 
-    	return (bytesLeft > 0 ? bytesLeft : 0);
+    	double bytesLeft = msgsize - msgsent; 
+    	return (bytesLeft >= 1 ? (int)Math.ceil(bytesLeft) : 0);
     }
     
 	/**
@@ -98,7 +125,7 @@ public class VBRConnection extends Connection {
 	 * @return True if the transfer is done, false if not
 	 */
 	public boolean isMessageTransferred() {
-		if (msgsent >= msgsize) {
+		if (getRemainingByteCount() == 0) {
 			return true;
 		} else {
 			return false;
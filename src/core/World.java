@@ -10,9 +10,16 @@ import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import interfaces.ConnectivityOptimizer;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -37,11 +44,92 @@ public class World {
 	 * Default is @link {@link #DEF_RANDOMIZE_UPDATES}.
 	 */
 	public static final String RANDOMIZE_UPDATES_S = "randomizeUpdateOrder";
+	/**
+	 * Should the hosts be updated in parallel phases -setting id ({@value}).
+	 * Boolean (true/false) variable. If enabled, hosts are moved and their 
+	 * connectivity checks are prepared in parallel but everything that can
+	 * affect other hosts (new paths, connection and router events) is done
+	 * in the same order as in the serial mode, so the results are identical.
+	 * Default is {@link #DEF_PARALLEL_UPDATE}.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+	/**
+	 * Number of threads for the parallel updates -setting id ({@value}).
+	 * Default is the number of available processors.
+	 * @see #PARALLEL_UPDATE_S
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+	/**
+	 * Should the simulation advance from one activity to the next instead
+	 * of using fixed update intervals -setting id ({@value}).
+	 * Boolean (true/false) variable. If enabled, the world jumps directly to
+	 * the next external event or to the next time some host has something
+	 * to do (see {@link DTNHost#getNextActivityTime(boolean)}) and updates
+	 * only the hosts that had something to do or were affected by the
+	 * external events, and the hosts near them. Fixed interval updates are used whenever
+	 * some host needs them (e.g., it moves and connections are simulated).
+	 * The results are not identical to the fixed interval updates since
+	 * the updates happen at different times.
+	 * Default is {@link #DEF_EVENT_DRIVEN_UPDATES}.
+	 */
+	public static final String EVENT_DRIVEN_UPDATES_S = "eventDrivenUpdates";
+	/**
+	 * Should the connection listeners be informed about the connections at
+	 * the exact times the hosts got in or out of range -setting id
+	 * ({@value}). Boolean (true/false) variable. If enabled, the time when
+	 * the distance of the hosts crossed the range during the latest move is
+	 * solved (assuming straight line movement during the move) and the
+	 * time is passed to the {@link TimedConnectionListener}s (e.g., the
+	 * contact time reports). The simulation clock is not changed.
+	 * This keeps the contact times accurate also with longer update
+	 * intervals. The connections themselves are still created and torn down
+	 * at the updates.
+	 * Default is {@link #DEF_EXACT_CONTACT_TIMES}.
+	 */
+	public static final String EXACT_CONTACT_TIMES_S = "exactContactTimes";
+	/**
+	 * Should the active routers drop the messages at the exact times their
+	 * TTLs run out -setting id ({@value}). Boolean (true/false) variable.
+	 * If disabled, the expired messages are dropped at the periodic TTL
+	 * checks (see {@link routing.ActiveRouter#TTL_CHECK_INTERVAL}) when
+	 * nothing is being sent. If enabled, a message is dropped at the first
+	 * update after its expiry unless it is being sent at the time.
+	 * Default is {@link #DEF_EXACT_TTL_DROPS}.
+	 */
+	public static final String EXACT_TTL_DROPS_S = "exactTtlDrops";
+	/**
+	 * Which connectivity optimizer is used for finding the interfaces near
+	 * each other -setting id ({@value}). Valid values are
+	 * {@link #GRID_OPTIMIZER} ({@link interfaces.ConnectivityGrid}) and
+	 * {@link #SWEEP_OPTIMIZER} ({@link interfaces.SweepAndPruneOptimizer}).
+	 * Default is {@link #DEF_CONNECTIVITY_OPTIMIZER}.
+	 */
+	public static final String CONNECTIVITY_OPTIMIZER_S =
+		"connectivityOptimizer";
+	/** value of {@link #CONNECTIVITY_OPTIMIZER_S} for the grid ({@value}) */
+	public static final String GRID_OPTIMIZER = "grid";
+	/** value of {@link #CONNECTIVITY_OPTIMIZER_S} for sweep and prune
+	 * ({@value}) */
+	public static final String SWEEP_OPTIMIZER = "sweep";
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/** should the hosts be updated in parallel -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_UPDATE = false;
+	/** should the updates be event driven -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_EVENT_DRIVEN_UPDATES = false;
+	/** should the exact contact times be used -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_EXACT_CONTACT_TIMES = false;
+	/** should the messages be dropped at the exact TTL expiry times
+	 * -setting's default value ({@value}) */
+	public static final boolean DEF_EXACT_TTL_DROPS = false;
+	/** connectivity optimizer -setting's default value ({@value}) */
+	public static final String DEF_CONNECTIVITY_OPTIMIZER = GRID_OPTIMIZER;
 
 	private int sizeX;
 	private int sizeY;
@@ -64,6 +152,21 @@ public class World {
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
+	/** pool for the parallel update phases or null if updates are serial */
+	private ForkJoinPool updatePool;
+	/** next activity times of hosts or null if updates are not event driven */
+	private HostActivityQueue activities;
+	/** has any activity time been set to the activity queue yet */
+	private boolean activitiesInitialized;
+	/** hosts looked up by the external events being processed (or null if
+	 * the lookups are not recorded) */
+	private Set<DTNHost> eventHosts;
+	/** has a host been looked up by the latest external event */
+	private boolean hostLookedUp;
+	/** end time of the scenario (used with event driven updates) */
+	private double endTime;
+	/** should the hosts be moved at all */
+	private boolean moveHosts;
 
 	/**
 	 * Constructor.
@@ -82,6 +185,7 @@ public class World {
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;		
+		this.moveHosts = true;
 
 		setNextEventQueue();
 		initSettings();
@@ -117,6 +221,49 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		boolean parallelUpdate = DEF_PARALLEL_UPDATE;
+		if (s.contains(PARALLEL_UPDATE_S)) {
+			parallelUpdate = s.getBoolean(PARALLEL_UPDATE_S);
+		}
+		if (parallelUpdate) {
+			int nrofThreads = Runtime.getRuntime().availableProcessors();
+			if (s.contains(NROF_THREADS_S)) {
+				nrofThreads = s.getInt(NROF_THREADS_S);
+			}
+			if (nrofThreads < 1) {
+				throw new SettingsError("Too small value (" + nrofThreads +
+						") for " + SETTINGS_NS + "." + NROF_THREADS_S);
+			}
+			this.updatePool = new ForkJoinPool(nrofThreads);
+		}
+		else {
+			this.updatePool = null;
+		}
+
+		boolean eventDriven = DEF_EVENT_DRIVEN_UPDATES;
+		if (s.contains(EVENT_DRIVEN_UPDATES_S)) {
+			eventDriven = s.getBoolean(EVENT_DRIVEN_UPDATES_S);
+		}
+		if (eventDriven) {
+			Settings scen = new Settings(SimScenario.SCENARIO_NS);
+			this.endTime = scen.getDouble(SimScenario.END_TIME_S);
+			this.activities = new HostActivityQueue(this.hosts.size());
+		}
+		else {
+			this.activities = null;
+		}
+		this.activitiesInitialized = false;
+	}
+
+	/**
+	 * Sets whether the hosts are moved. Hosts that never move (e.g., when
+	 * the connections are replayed from a contact trace) don't need to be
+	 * asked to move on every update.
+	 * @param moveHosts If false, the hosts are never moved
+	 */
+	public void setMoveHosts(boolean moveHosts) {
+		this.moveHosts = moveHosts;
 	}
 
 	/**
@@ -130,12 +277,12 @@ public class World {
 			return;
 		}
 
-		while(SimClock.getTime() < -updateInterval) {
+		while(simClock.getCurrentTime() < -updateInterval) {
 			moveHosts(updateInterval);
 			simClock.advance(updateInterval);
 		}
 
-		double finalStep = -SimClock.getTime();
+		double finalStep = -simClock.getCurrentTime();
 
 		moveHosts(finalStep);
 		simClock.setTime(0);	
@@ -167,7 +314,20 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
-		double runUntil = SimClock.getTime() + this.updateInterval;
+		if (this.activities != null) {
+			updateEventDriven();
+		}
+		else {
+			updateFixedInterval();
+		}
+	}
+
+	/**
+	 * Runs one update interval: processes the events that are due during it,
+	 * moves all hosts for the interval and updates them.
+	 */
+	private void updateFixedInterval() {
+		double runUntil = simClock.getCurrentTime() + this.updateInterval;
 
 		setNextEventQueue();
 
@@ -183,13 +343,109 @@ public class World {
 		moveHosts(this.updateInterval);
 		simClock.setTime(runUntil);
 
-		updateHosts();
+		if (this.updatePool != null && simulateConnections) {
+			updateHostsWithPreparedConnectivity();
+		}
+		else {
+			updateHosts();
+		}
+
+		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Advances the simulation to the next external event or host activity
+	 * time, whichever comes first (but never past the end time) and updates
+	 * the hosts. All the external events of that time are processed first.
+	 * Then the hosts that the events concerned and the hosts whose activity
+	 * time was due are updated, together with their connected hosts and the
+	 * hosts connected to those, since e.g. a finished transfer can give the
+	 * receiver something to forward and free the receiver for others. Events
+	 * that don't concern any host (e.g., scheduled updates) update all
+	 * hosts. If some host needs regular updates, a fixed update interval is
+	 * run instead.
+	 */
+	private void updateEventDriven() {
+		if (!this.activitiesInitialized) {
+			updateActivityTimes(this.hosts);
+			this.activitiesInitialized = true;
+		}
+
+		double now = simClock.getCurrentTime();
+		double activityTime = this.activities.nextTime();
+
+		if (activityTime == HostActivityQueue.REGULAR) {
+			updateFixedInterval();
+			updateActivityTimes(this.hosts);
+			return;
+		}
+
+		setNextEventQueue();
+		double runUntil = Math.min(activityTime, this.nextQueueEventTime);
+		if (runUntil > this.endTime) {
+			runUntil = this.endTime;
+		}
+		if (runUntil < now) {
+			runUntil = now;
+		}
+
+		moveHosts(runUntil - now);
+		simClock.setTime(runUntil);
+
+		Set<DTNHost> toUpdate = new LinkedHashSet<DTNHost>();
+		boolean updateAll = false;
+		this.eventHosts = toUpdate;
+		while (this.nextQueueEventTime <= runUntil) {
+			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			this.hostLookedUp = false;
+			ee.processEvent(this);
+			updateAll |= !this.hostLookedUp;
+			setNextEventQueue();
+		}
+		this.eventHosts = null;
+
+		if (updateAll) {
+			updateHosts();
+			updateActivityTimes(this.hosts);
+		}
+		else {
+			toUpdate.addAll(this.activities.pollDue(runUntil));
+			for (int hops = 0; hops < 2; hops++) {
+				for (DTNHost h : new ArrayList<DTNHost>(toUpdate)) {
+					for (Connection c : h.getConnections()) {
+						toUpdate.add(c.getOtherNode(h));
+					}
+				}
+			}
+
+			for (DTNHost h : toUpdate) {
+				if (this.isCancelled) {
+					break;
+				}
+				h.update(simulateConnections);
+			}
+			updateActivityTimes(toUpdate);
+		}
 
 		/* inform all update listeners */
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
 	}
+
+	/**
+	 * Sets the current next activity times of the hosts to the activity queue
+	 * @param hostsToSet The hosts whose activity times are set
+	 */
+	private void updateActivityTimes(Collection<DTNHost> hostsToSet) {
+		for (DTNHost h : hostsToSet) {
+			this.activities.set(h,
+					h.getNextActivityTime(this.simulateConnections));
+		}
+	}
 
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
@@ -206,10 +462,7 @@ public class World {
 			}
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
@@ -219,17 +472,142 @@ public class World {
 		}
 	}
 
+	/**
+	 * Shuffles the update order array using the current (integer) sim time
+	 * as the seed.
+	 */
+	private void shuffleUpdateOrder() {
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng); 
+	}
+
+	/**
+	 * Updates all hosts like {@link #updateHosts()} but first prepares the
+	 * near interfaces of all network interfaces in parallel (see 
+	 * {@link ConnectivityOptimizer#prepareNearInterfaces(List, ForkJoinPool)}).
+	 * The updates themselves are done in the same order as in
+	 * {@link #updateHosts()}. If some host doesn't update its interfaces
+	 * (e.g., because it is inactive) and the prepared interfaces expected it
+	 * to, the rest of the prepared interfaces are discarded and the
+	 * interfaces query the optimizers as usual.
+	 */
+	private void updateHostsWithPreparedConnectivity() {
+		List<DTNHost> order = this.hosts;
+		if (this.updateOrder != null) {
+			shuffleUpdateOrder();
+			order = this.updateOrder;
+		}
+
+		/* prepare the near interfaces for every optimizer */
+		List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>();
+		Set<ConnectivityOptimizer> optimizers = 
+			new HashSet<ConnectivityOptimizer>();
+		for (DTNHost host : order) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				interfaces.add(ni);
+				if (ni.getOptimizer() != null) {
+					optimizers.add(ni.getOptimizer());
+				}
+			}
+		}
+		Set<NetworkInterface> movers = new HashSet<NetworkInterface>();
+		for (ConnectivityOptimizer co : optimizers) {
+			movers.addAll(co.prepareNearInterfaces(interfaces, updatePool));
+		}
+
+		int next = 0; // index of the next interface to update
+		for (int i=0, n = order.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			DTNHost host = order.get(i);
+			host.update(simulateConnections);
+
+			for (NetworkInterface ni : host.getInterfaces()) {
+				next++;
+				if (ni.hasPreparedNearInterfaces()) { // wasn't updated
+					ni.setPreparedNearInterfaces(null);
+					if (movers.contains(ni)) { // others expected it to move
+						discardPreparedNearInterfaces(interfaces, next);
+						break;
+					}
+				}
+			}
+		}
+
+		discardPreparedNearInterfaces(interfaces, 0);
+	}
+
+	/**
+	 * Discards the prepared near interfaces of network interfaces
+	 * @param interfaces The network interfaces
+	 * @param start Index of the first interface whose prepared near
+	 * interfaces are discarded
+	 */
+	private void discardPreparedNearInterfaces(
+			List<NetworkInterface> interfaces, int start) {
+		for (int i=start, n = interfaces.size(); i < n; i++) {
+			interfaces.get(i).setPreparedNearInterfaces(null);
+		}
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (!this.moveHosts) {
+			return;
+		}
+		if (this.updatePool != null) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
 
+	/**
+	 * Moves all hosts in the world for a given amount of time using the
+	 * update pool. First the hosts that should move are checked (in order,
+	 * since hosts may share activeness state), then all hosts that stay on
+	 * their current path segment are moved in parallel, and finally the rest
+	 * of the hosts are moved in order (they need new waypoints and paths,
+	 * which use random numbers shared by all movement models and inform 
+	 * movement listeners). The end result is the same as with 
+	 * {@link DTNHost#move(double)} called for every host in order.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(final double timeIncrement) {
+		final List<DTNHost> hosts = this.hosts;
+		final int n = hosts.size();
+		final boolean[] moving = new boolean[n];
+		final boolean[] moved = new boolean[n];
+
+		for (int i=0; i<n; i++) {
+			moving[i] = hosts.get(i).canMove();
+		}
+
+		ParallelLoop.run(updatePool, n, new ParallelLoop.Body() {
+			public void run(int index) {
+				if (moving[index]) {
+					moved[index] = hosts.get(index).moveOnSegment(timeIncrement);
+				}
+			}
+		});
+
+		for (int i=0; i<n; i++) {
+			if (moving[i] && !moved[i]) {
+				hosts.get(i).moveForward(timeIncrement);
+			}
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -237,6 +615,17 @@ public class World {
 		this.isCancelled = true;
 	}
 
+	/**
+	 * Releases the resources of the world when the run is done: shuts down
+	 * the threads of the parallel updates. Any later updates are serial.
+	 */
+	public void done() {
+		if (this.updatePool != null) {
+			this.updatePool.shutdown();
+			this.updatePool = null;
+		}
+	}
+
 	/**
 	 * Returns the hosts in a list
 	 * @return the hosts in a list
@@ -276,6 +665,11 @@ public class World {
 		assert node.getAddress() == address : "Node indexing failed. " + 
 			"Node " + node + " in index " + address;
 
+		if (this.eventHosts != null) { // an external event is processed
+			this.eventHosts.add(node);
+			this.hostLookedUp = true;
+		}
+
 		return node; 
 	}
 
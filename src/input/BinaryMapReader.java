@@ -0,0 +1,304 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import movement.map.MapNode;
+import movement.map.SimMap;
+import core.Coord;
+import core.SimError;
+
+/**
+ * <P>Reads SimMaps from precompiled binary map files. The files are created
+ * from WKT map files with {@link #storeToBinaryFile(String, SimMap, int)} or
+ * from the command line:</P>
+ * <PRE>java -cp target input.BinaryMapReader output.binmap map1.wkt ...</PRE>
+ *
+ * <P>The file has a header (magic number, version, number of the WKT map
+ * files, flags, number of nodes and neighbor references and the bounds of
+ * the map) followed by the coordinates and type bit masks of the nodes and
+ * the neighbors of the nodes as offset and index arrays. The map's
+ * connectedness is checked when the file is created and the result is
+ * stored to the header, so it doesn't have to be checked on every load.
+ * The file is read using a memory mapped buffer.</P>
+ */
+public class BinaryMapReader {
+	/** Extension of binary map files */
+	public static final String BINARY_EXT = ".binmap";
+	/** Magic number in the beginning of binary map files */
+	public static final int MAGIC = 0x4F4E454D;
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Header flag for maps whose all nodes can be reached from all nodes */
+	public static final int CONNECTED_FLAG = 1;
+
+	/** size of the header in bytes */
+	private static final int HEADER_SIZE = 6 * 4 + 4 * 8;
+	/** size of a node record in bytes */
+	private static final int NODE_SIZE = 2 * 8 + 4;
+
+	private SimMap map;
+	private int nrofMapFiles;
+	private boolean connected;
+
+	/**
+	 * Constructor. Reads a map from a binary map file.
+	 * @param mapFile The file where the map is read
+	 */
+	public BinaryMapReader(File mapFile) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(mapFile, "r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			readMap(buf, mapFile);
+		} catch (IOException e) {
+			throw new SimError("Couldn't read binary map file " +
+					mapFile.getAbsolutePath(), e);
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+					// ignored
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the map from a buffer
+	 * @param buf The buffer
+	 * @param mapFile The file whose contents are in the buffer
+	 */
+	private void readMap(ByteBuffer buf, File mapFile) {
+		if (buf.capacity() < HEADER_SIZE || buf.getInt() != MAGIC ||
+				buf.getInt() != VERSION) {
+			throw new SimError("Invalid binary map file " +
+					mapFile.getAbsolutePath());
+		}
+		this.nrofMapFiles = buf.getInt();
+		this.connected = (buf.getInt() & CONNECTED_FLAG) != 0;
+		int nrofNodes = buf.getInt();
+		int nrofNeighbors = buf.getInt();
+		buf.position(HEADER_SIZE); // the bounds are not needed for reading
+
+		if (buf.capacity() != HEADER_SIZE + nrofNodes * NODE_SIZE +
+				(nrofNodes + 1 + nrofNeighbors) * 4) {
+			throw new SimError("Invalid size of binary map file " +
+					mapFile.getAbsolutePath());
+		}
+
+		MapNode[] nodes = new MapNode[nrofNodes];
+		Map<Coord, MapNode> nodesMap = new LinkedHashMap<Coord, MapNode>();
+		for (int i = 0; i < nrofNodes; i++) {
+			Coord c = new Coord(buf.getDouble(), buf.getDouble());
+			int types = buf.getInt();
+			nodes[i] = new MapNode(c);
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if ((types & (1 << t)) != 0) {
+					nodes[i].addType(t);
+				}
+			}
+			nodesMap.put(c, nodes[i]);
+		}
+
+		int neighborsStart = buf.position() + (nrofNodes + 1) * 4;
+		int offset = buf.getInt();
+		for (int i = 0; i < nrofNodes; i++) {
+			int end = buf.getInt();
+			for (int j = offset; j < end; j++) {
+				nodes[i].addNeighbor(nodes[buf.getInt(neighborsStart + j*4)]);
+			}
+			offset = end;
+		}
+
+		this.map = new SimMap(nodesMap);
+	}
+
+	/**
+	 * Returns the map that was read
+	 * @return the map
+	 */
+	public SimMap getMap() {
+		return this.map;
+	}
+
+	/**
+	 * Returns the number of WKT map files the map was created from
+	 * @return the number of map files
+	 */
+	public int getNrofMapFiles() {
+		return this.nrofMapFiles;
+	}
+
+	/**
+	 * Returns true if all the nodes of the map can be reached from all the
+	 * other nodes (as checked when the file was created)
+	 * @return true if the map is connected
+	 */
+	public boolean isConnected() {
+		return this.connected;
+	}
+
+	/**
+	 * Checks if the given file is a binary map file
+	 * @param file The file to check
+	 * @return True if the file is a binary map file, false if not
+	 */
+	public static boolean isBinaryMapFile(File file) {
+		if (!file.getName().endsWith(BINARY_EXT)) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignored
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores a map to a binary map file
+	 * @param fileName Path to the file where the map is stored
+	 * @param map The map to store
+	 * @param nrofMapFiles Number of WKT map files the map was read from
+	 * (the node types of the map are the indexes of the files)
+	 * @throws IOException if something in storing went wrong
+	 */
+	public static void storeToBinaryFile(String fileName, SimMap map,
+			int nrofMapFiles) throws IOException {
+		List<MapNode> nodes = map.getNodes();
+		Map<MapNode, Integer> indexes = new IdentityHashMap<MapNode, Integer>();
+		int nrofNeighbors = 0;
+		for (MapNode n : nodes) {
+			indexes.put(n, indexes.size());
+			nrofNeighbors += n.getNeighbors().size();
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(nrofMapFiles);
+		out.writeInt(isConnected(nodes, indexes) ? CONNECTED_FLAG : 0);
+		out.writeInt(nodes.size());
+		out.writeInt(nrofNeighbors);
+		out.writeDouble(map.getMinBound().getX());
+		out.writeDouble(map.getMinBound().getY());
+		out.writeDouble(map.getMaxBound().getX());
+		out.writeDouble(map.getMaxBound().getY());
+
+		for (MapNode n : nodes) {
+			int types = 0;
+			for (int t = MapNode.MIN_TYPE; t <= MapNode.MAX_TYPE; t++) {
+				if (n.isType(t)) {
+					types |= 1 << t;
+				}
+			}
+			out.writeDouble(n.getLocation().getX());
+			out.writeDouble(n.getLocation().getY());
+			out.writeInt(types);
+		}
+
+		int offset = 0;
+		out.writeInt(offset);
+		for (MapNode n : nodes) {
+			offset += n.getNeighbors().size();
+			out.writeInt(offset);
+		}
+		for (MapNode n : nodes) {
+			for (MapNode neighbor : n.getNeighbors()) {
+				out.writeInt(indexes.get(neighbor));
+			}
+		}
+
+		out.close();
+	}
+
+	/**
+	 * Checks if all the nodes can be reached from the first node
+	 * @param nodes The nodes
+	 * @param indexes Indexes of the nodes
+	 * @return true if all the nodes can be reached
+	 */
+	private static boolean isConnected(List<MapNode> nodes,
+			Map<MapNode, Integer> indexes) {
+		if (nodes.size() == 0) {
+			return false;
+		}
+
+		boolean[] seen = new boolean[nodes.size()];
+		Queue<MapNode> queue = new ArrayDeque<MapNode>();
+		queue.add(nodes.get(0));
+		seen[0] = true;
+		int nrofSeen = 1;
+		MapNode next;
+		while ((next = queue.poll()) != null) {
+			for (MapNode n : next.getNeighbors()) {
+				Integer i = indexes.get(n);
+				if (i == null) {
+					return false; // neighbor that is not part of the map
+				}
+				if (!seen[i]) {
+					seen[i] = true;
+					nrofSeen++;
+					queue.add(n);
+				}
+			}
+		}
+		return nrofSeen == nodes.size();
+	}
+
+	/**
+	 * Converts WKT map files to a binary map file.
+	 * @param args The name of the binary map file and the WKT map files
+	 * (in the order of their node types)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: BinaryMapReader output" + BINARY_EXT +
+					" map1.wkt [map2.wkt ...]");
+			System.exit(1);
+		}
+
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i = 1; i < args.length; i++) {
+			r.addPaths(new File(args[i]), i);
+		}
+		SimMap map = r.getMap();
+		storeToBinaryFile(args[0], map, args.length - 1);
+		System.out.println("Stored " + map.getNodes().size() + " map nodes " +
+				"to " + args[0]);
+	}
+}
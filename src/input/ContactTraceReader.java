@@ -0,0 +1,194 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * <P>Reads connection events from a compact binary contact trace (e.g.,
+ * one recorded with {@link report.ContactTraceReport}). The file starts
+ * with the {@link #MAGIC} number and is followed by records of the time
+ * (double), the addresses of the hosts (two ints) and the connection state
+ * (byte; 1 for up and 0 for down).</P>
+ *
+ * <P>A trace is decoded only once per JVM: the decoded traces are shared by
+ * all the readers (and all the parallel batch runs) that read the same
+ * file, so replaying the contacts into many runs with different routing
+ * settings doesn't read the file again for every run. If the connections
+ * are not simulated (<CODE>Scenario.simulateConnections = false</CODE>),
+ * the hosts of a replay run stay stationary and are not moved at all.</P>
+ */
+public class ContactTraceReader implements ExternalEventsReader {
+	/** Extension of the contact trace files */
+	public static final String TRACE_EXT = ".ctr";
+	/** Magic number in the beginning of contact trace files */
+	public static final int MAGIC = 0x4F4E4531;
+
+	/** the decoded traces by their canonical paths */
+	private static final Map<String, SoftReference<Trace>> traces =
+		new HashMap<String, SoftReference<Trace>>();
+
+	private Trace trace;
+	/** index of the next record to read */
+	private int next;
+
+	/**
+	 * Constructor.
+	 * @param traceFile The file where the contacts are read
+	 */
+	public ContactTraceReader(File traceFile) {
+		this.trace = getTrace(traceFile);
+		this.next = 0;
+	}
+
+	/**
+	 * Reads connection events from the trace
+	 * @param nrof Maximum number of events to read
+	 * @return Events in a List (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		int n = Math.min(nrof, this.trace.size - this.next);
+		List<ExternalEvent> events = new ArrayList<ExternalEvent>(n);
+		for (int i = 0; i < n; i++, this.next++) {
+			events.add(new ConnectionEvent(this.trace.from[this.next],
+					this.trace.to[this.next], null, this.trace.up[this.next],
+					this.trace.times[this.next]));
+		}
+		return events;
+	}
+
+	public void close() {
+		// nothing to close; the file was read when the trace was decoded
+	}
+
+	/**
+	 * Checks if the given file is a contact trace file
+	 * @param file The file to check
+	 * @return True if the file is a contact trace file, false if not
+	 */
+	public static boolean isContactTraceFile(File file) {
+		if (!file.getName().endsWith(TRACE_EXT)) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignored
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the decoded trace of a file. The file is read only if it
+	 * hasn't been read already (or has been modified since).
+	 * @param file The trace file
+	 * @return The decoded trace
+	 */
+	private static Trace getTrace(File file) {
+		String key;
+		try {
+			key = file.getCanonicalPath();
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+
+		synchronized (traces) {
+			SoftReference<Trace> ref = traces.get(key);
+			Trace trace = (ref != null ? ref.get() : null);
+			if (trace == null || trace.lastModified != file.lastModified()) {
+				trace = new Trace(file);
+				traces.put(key, new SoftReference<Trace>(trace));
+			}
+			return trace;
+		}
+	}
+
+	/**
+	 * Decoded contact trace
+	 */
+	private static class Trace {
+		private double[] times;
+		private int[] from;
+		private int[] to;
+		private boolean[] up;
+		private int size;
+		private long lastModified;
+
+		/**
+		 * Reads a trace from a file
+		 * @param file The file
+		 */
+		public Trace(File file) {
+			this.lastModified = file.lastModified();
+			int capacity = (int)Math.max(16, (file.length() - 4) / 17);
+			this.times = new double[capacity];
+			this.from = new int[capacity];
+			this.to = new int[capacity];
+			this.up = new boolean[capacity];
+			this.size = 0;
+
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(file)));
+				if (in.readInt() != MAGIC) {
+					throw new SimError("Invalid contact trace file " +
+							file.getAbsolutePath());
+				}
+				while (true) {
+					double time;
+					try {
+						time = in.readDouble();
+					} catch (EOFException e) {
+						break; // end of the trace
+					}
+					add(time, in.readInt(), in.readInt(), in.readByte() != 0);
+				}
+				in.close();
+			} catch (IOException e) {
+				throw new SimError("Couldn't read contact trace file " +
+						file.getAbsolutePath(), e);
+			}
+		}
+
+		private void add(double time, int h1, int h2, boolean isUp) {
+			if (this.size == this.times.length) {
+				int capacity = this.size * 2;
+				this.times = Arrays.copyOf(this.times, capacity);
+				this.from = Arrays.copyOf(this.from, capacity);
+				this.to = Arrays.copyOf(this.to, capacity);
+				this.up = Arrays.copyOf(this.up, capacity);
+			}
+			this.times[this.size] = time;
+			this.from[this.size] = h1;
+			this.to[this.size] = h2;
+			this.up[this.size] = isUp;
+			this.size++;
+		}
+	}
+}
@@ -36,7 +36,8 @@ public class ExternalEventsQueue implements EventQueue {
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file. Files with extension
+	 * {@link ContactTraceReader#TRACE_EXT} are read as binary contact traces.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
@@ -74,10 +75,22 @@ public class ExternalEventsQueue implements EventQueue {
 		this.nrofPreload = nrof;
 	}
 	
+	/**
+	 * Returns true if the events are read from a binary contact trace
+	 * (see {@link ContactTraceReader})
+	 * @return true if the events are read from a contact trace
+	 */
+	public boolean isContactTrace() {
+		return this.reader instanceof ContactTraceReader;
+	}
+
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ContactTraceReader.isContactTraceFile(eventsFile)) {
+			this.reader = new ContactTraceReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
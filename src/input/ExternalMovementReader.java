@@ -4,17 +4,30 @@
  */
 package input;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import core.Coord;
 import core.SettingsError;
+import core.SimError;
 import core.Tuple;
 
 
@@ -25,7 +38,7 @@ import core.Tuple;
  * should be:<BR>
  * <CODE>minTime maxTime minX maxX minY maxY minZ maxZ</CODE>
  * <BR>
- * Last two values (Z-axis) are ignored at the moment but can be present 
+ * Last two values (Z-axis) are ignored at the moment but can be present
  * in the file.
  * <P>
  * Following lines' syntax should be:<BR>
@@ -37,13 +50,35 @@ import core.Tuple;
  * All lines must be sorted by time. Sampling interval (time difference between
  * two time instances) must be same for the whole file.
  * </P>
+ * <P>
+ * The file is read in big chunks and parsed without creating strings for the
+ * lines; the node IDs are interned to integer indexes. Files with extension
+ * {@link #BINARY_EXT} are read as binary traces (see
+ * {@link #storeToBinaryFile(String, String)}). If prefetching is enabled
+ * (see {@link #setPrefetch(int)}), the next time instances are read by a
+ * background thread while the simulation runs.
+ * </P>
  */
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
-	public static final String COMMENT_PREFIX = "#";	
-	private BufferedReader br;
+	public static final String COMMENT_PREFIX = "#";
+	/** Extension of binary movement trace files */
+	public static final String BINARY_EXT = ".binmt";
+	/** Magic number in the beginning of binary movement trace files */
+	public static final int MAGIC = 0x4F4E4558;
+	public static final int DEFAULT_READLIMIT=8192;
+	/** Size of the chunks the text files are read in */
+	private static final int CHUNK_SIZE = 1 << 20;
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private MovementSource source;
+	/** the time instances read by the prefetch thread (or null) */
+	private BlockingQueue<Movements> prefetched;
+	/** true when all the time instances have been read */
+	private boolean allRead = false;
+	/** the node IDs by their indexes */
+	private List<String> ids;
 	private double lastTimeStamp = -1;
-	private String lastLine;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -51,9 +86,8 @@ public class ExternalMovementReader {
 	private double minY;
 	private double maxY;
 	private boolean normalize;
-	public static final int DEFAULT_READLIMIT=8192;
 
-		
+
 	/**
 	 * Constructor. Creates a new reader that reads the data from a file.
 	 * @param inFilePath Path to the file where the data is read
@@ -61,36 +95,34 @@ public class ExternalMovementReader {
 	 */
 	public ExternalMovementReader(String inFilePath) {
 		this.normalize = true;
+		this.ids = new ArrayList<String>();
 		File inFile = new File(inFilePath);
 		try {
-			br = new BufferedReader(new FileReader(inFile));
+			if (isBinaryFile(inFile)) {
+				this.source = new BinarySource(inFile);
+			}
+			else {
+				this.source = new TextSource(inFile);
+			}
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input "
 					+ "file " + inFile);
-		}
-	
-
-		String offsets = null;
-		try {
-
-			offsets = br.readLine();		
-			String tokens[] = offsets.split(" "); 
-			
-			minTime = Double.parseDouble(tokens[0]);
-			maxTime = Double.parseDouble(tokens[1]);
-			minX = Double.parseDouble(tokens[2]);
-			maxX = Double.parseDouble(tokens[3]);
-			minY = Double.parseDouble(tokens[4]);
-			maxY = Double.parseDouble(tokens[5]);
-			lastLine = br.readLine();
-		} catch (Exception e) {
-			throw new SettingsError("Invalid offset line '" + offsets + "'");
+		} catch (IOException e) {
+			throw new SimError("Couldn't read external movement input file "
+					+ inFile, e);
 		}
 
+		double[] offsets = this.source.getOffsets();
+		minTime = offsets[0];
+		maxTime = offsets[1];
+		minX = offsets[2];
+		maxX = offsets[3];
+		minY = offsets[4];
+		maxY = offsets[5];
 	}
-	
+
 	/**
-	 * Sets normalizing of read values on/off. If on, values returned by 
+	 * Sets normalizing of read values on/off. If on, values returned by
 	 * {@link #readNextMovements()} are decremented by minimum values of the
 	 * offsets. Default is on (normalize).
 	 * @param normalize If true, normalizing is on (false -> off).
@@ -98,123 +130,122 @@ public class ExternalMovementReader {
 	public void setNormalize(boolean normalize) {
 		this.normalize = normalize;
 	}
-	
+
+	/**
+	 * Starts reading the time instances in a background thread. The thread
+	 * stays at most the given number of time instances ahead of the
+	 * reads. Must be called before the first read.
+	 * @param nrofInstances How many time instances to read ahead
+	 */
+	public void setPrefetch(int nrofInstances) {
+		if (this.prefetched != null || nrofInstances <= 0) {
+			return;
+		}
+		this.prefetched = new ArrayBlockingQueue<Movements>(nrofInstances);
+		Thread t = new Thread(new Prefetcher(this.source, this.prefetched,
+				this), "ExternalMovementReader prefetch");
+		t.setDaemon(true);
+		t.start();
+	}
+
 	/**
 	 * Reads all new id-coordinate tuples that belong to the same time instance
 	 * @return A list of tuples or empty list if there were no more moves
 	 * @throws SettingError if an invalid line was read
 	 */
 	public List<Tuple<String, Coord>> readNextMovements() {
-		ArrayList<Tuple<String, Coord>> moves = 
-			new ArrayList<Tuple<String, Coord>>();
-		
-		try {
+		Movements m = readNextMovementsByIndex();
+		List<Tuple<String, Coord>> moves =
+			new ArrayList<Tuple<String, Coord>>(m.size());
+		for (int i = 0; i < m.size(); i++) {
+			moves.add(new Tuple<String, Coord>(getId(m.getIdIndex(i)),
+					m.getLocation(i)));
+		}
+		return moves;
+	}
 
-			br.mark(DEFAULT_READLIMIT);
-			if ((br.readLine()) != null) {
-				br.reset();
-			} else {
-				br.reset();
-				return moves;
-			}
+	/**
+	 * Reads the movements of the next time instance with the node IDs as
+	 * indexes (see {@link #getId(int)})
+	 * @return The movements (no movements if there were no more moves)
+	 * @throws SettingError if an invalid line was read
+	 */
+	public Movements readNextMovementsByIndex() {
+		Movements m = null;
+		if (!this.allRead) {
+			m = (this.prefetched != null ? takePrefetched() : readSource());
+		}
 
+		if (m == null) {
+			this.allRead = true;
+			return new Movements(this.lastTimeStamp); // no more moves
+		}
 
-			lastLine = lastLine.replace("  ", " ");
-			String[] tokens = lastLine.split(" ");
-			double time = Double.parseDouble(tokens[0]);
-			String id = tokens[1];
-			double x = Double.parseDouble(tokens[2]);
-			double y = Double.parseDouble(tokens[3]);
+		this.ids.addAll(m.newIds);
+		m.newIds = null;
+		if (this.normalize) {
+			m.normalize(minTime, minX, minY);
+		}
+		this.lastTimeStamp = m.time;
+		return m;
+	}
 
-			if (normalize) {
-				time -= minTime;
-				x -= minX;
-				y -= minY;
-			}
+	/**
+	 * Reads the next time instance from the source in this thread
+	 * @return The movements or null if there are no more moves
+	 */
+	private Movements readSource() {
+		try {
+			return this.source.read();
+		} catch (IOException e) {
+			throw new SimError("Couldn't read external movement input", e);
+		}
+	}
 
-			lastTimeStamp = time;
+	/**
+	 * Takes the next time instance read by the prefetch thread
+	 * @return The movements or null if there are no more moves
+	 */
+	private Movements takePrefetched() {
+		Movements m;
+		try {
+			m = this.prefetched.take();
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while reading movements", e);
+		}
 
-			br.mark(8192);
-			if ((br.readLine()) != null) {
-				br.reset();
-			} else {
-				br.reset();
-				return moves;
+		if (m.error != null) {
+			if (m.error instanceof RuntimeException) {
+				throw (RuntimeException)m.error;
 			}
-
-			// while (scanner.hasNextLine() && lastTimeStamp == time) {
-			while (lastTimeStamp == time) {
-				br.mark(DEFAULT_READLIMIT);
-				if ((br.readLine()) != null) {
-					br.reset();
-				} else {
-					br.reset();
-					break;
-				}
-
-				lastLine = br.readLine();
-			
-
-				if (lastLine.trim().length() == 0
-						|| lastLine.startsWith(COMMENT_PREFIX)) {
-
-					continue; /* skip empty and comment lines */
-				}
-
-				// add previous line's tuple
-			
-				moves.add(new Tuple<String, Coord>(id, new Coord(x, y)));
-
-				lastLine = lastLine.replace("  ", " ");
-				tokens = lastLine.split(" ");
-				time = Double.parseDouble(tokens[0]);
-				id = tokens[1];
-				x = Double.parseDouble(tokens[2]);
-				y = Double.parseDouble(tokens[3]);
-
-				// lineScan = new Scanner(lastLine);
-
-				try {
-					time = Double.parseDouble(tokens[0]);
-					id = tokens[1];
-					x = Double.parseDouble(tokens[2]);
-					y = Double.parseDouble(tokens[3]);
-				} catch (Exception e) {
-					System.out.println("nextline = null");
-					throw new SettingsError("Invalid line '" + lastLine + "'");
-
-				}
-
-				if (normalize) {
-					time -= minTime;
-					x -= minX;
-					y -= minY;
-				}
+			if (m.error instanceof Error) {
+				throw (Error)m.error;
 			}
+			throw new SimError("Couldn't read external movement input",
+					(Exception)m.error);
+		}
+		return m.time == Prefetcher.END ? null : m;
+	}
 
-			// if (!scanner.hasNextLine()) { // add the last tuple of the file
-			// moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
-			// }
-			
-			br.mark(DEFAULT_READLIMIT);
-			if ((br.readLine()) == null) {
-				br.reset();
-				moves.add(new Tuple<String, Coord>(id, new Coord(x, y)));
-			} else {
-				br.reset();				
-			}
-			
-			
-		} catch (IOException e1) {
+	/**
+	 * Returns the node ID of an index
+	 * @param index Index of the ID in the movements read so far
+	 * @return The node ID
+	 */
+	public String getId(int index) {
+		return this.ids.get(index);
+	}
 
-			e1.printStackTrace();
-		}
+	/**
+	 * Returns the number of different node IDs in the movements read so far
+	 * @return The number of IDs
+	 */
+	public int getNrofIds() {
+		return this.ids.size();
+	}
 
-		return moves;
-	}
-	
-	/**
-	 * Returns the time stamp where the last moves read with 
+	/**
+	 * Returns the time stamp where the last moves read with
 	 * {@link #readNextMovements()} belong to.
 	 * @return The time stamp
 	 */
@@ -269,5 +300,693 @@ public class ExternalMovementReader {
 	public double getMinY() {
 		return minY;
 	}
-	
+
+	/**
+	 * Checks if the given file is a binary movement trace file
+	 * @param file The file to check
+	 * @return True if the file is a binary trace file, false if not
+	 */
+	public static boolean isBinaryFile(File file) {
+		if (!file.getName().endsWith(BINARY_EXT)) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignored
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts a text movement trace to a binary trace. The binary file has
+	 * the offsets of the header line and the time instances: the time, the
+	 * number of locations and the ID index and the coordinates of each
+	 * location. An ID is written (as UTF) after its index when the index
+	 * is used for the first time.
+	 * @param inFileName Path to the text file
+	 * @param outFileName Path to the binary file to create
+	 * @throws IOException if something in converting went wrong
+	 */
+	public static void storeToBinaryFile(String inFileName,
+			String outFileName) throws IOException {
+		TextSource in = new TextSource(new File(inFileName));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(outFileName), CHUNK_SIZE));
+		out.writeInt(MAGIC);
+		for (double d : in.getOffsets()) {
+			out.writeDouble(d);
+		}
+
+		int nrofIds = 0;
+		Movements m;
+		while ((m = in.read()) != null) {
+			out.writeDouble(m.time);
+			out.writeInt(m.size);
+			for (int i = 0; i < m.size; i++) {
+				out.writeInt(m.idIndexes[i]);
+				if (m.idIndexes[i] == nrofIds) {
+					out.writeUTF(m.newIds.get(m.idIndexes[i] - m.firstNewId));
+					nrofIds++;
+				}
+				out.writeDouble(m.xs[i]);
+				out.writeDouble(m.ys[i]);
+			}
+		}
+
+		in.close();
+		out.close();
+	}
+
+	/**
+	 * Converts a text movement trace to a binary trace
+	 * @param args Paths to the text file and the binary file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: ExternalMovementReader input.txt " +
+					"output" + BINARY_EXT);
+			System.exit(1);
+		}
+		storeToBinaryFile(args[0], args[1]);
+	}
+
+	/**
+	 * Locations of nodes at one time instance
+	 */
+	public static class Movements {
+		private double time;
+		private int size;
+		private int[] idIndexes;
+		private double[] xs;
+		private double[] ys;
+		/** IDs that were seen for the first time in these movements */
+		private List<String> newIds;
+		/** index of the first new ID */
+		private int firstNewId;
+		/** error in reading (for prefetched movements) */
+		private Throwable error;
+
+		private Movements(double time) {
+			this.time = time;
+			this.idIndexes = new int[4];
+			this.xs = new double[4];
+			this.ys = new double[4];
+			this.newIds = new ArrayList<String>(0);
+		}
+
+		private void add(int idIndex, double x, double y) {
+			if (this.size == this.idIndexes.length) {
+				int capacity = this.size * 2;
+				this.idIndexes = Arrays.copyOf(this.idIndexes, capacity);
+				this.xs = Arrays.copyOf(this.xs, capacity);
+				this.ys = Arrays.copyOf(this.ys, capacity);
+			}
+			this.idIndexes[this.size] = idIndex;
+			this.xs[this.size] = x;
+			this.ys[this.size] = y;
+			this.size++;
+		}
+
+		private void normalize(double minTime, double minX, double minY) {
+			this.time -= minTime;
+			for (int i = 0; i < this.size; i++) {
+				this.xs[i] -= minX;
+				this.ys[i] -= minY;
+			}
+		}
+
+		/**
+		 * Returns the time of the movements
+		 * @return the time
+		 */
+		public double getTime() {
+			return this.time;
+		}
+
+		/**
+		 * Returns the number of locations
+		 * @return the number of locations
+		 */
+		public int size() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the ID index of the i:th location
+		 * @param i Index of the location
+		 * @return The ID index
+		 */
+		public int getIdIndex(int i) {
+			return this.idIndexes[i];
+		}
+
+		/**
+		 * Returns the i:th location
+		 * @param i Index of the location
+		 * @return The location
+		 */
+		public Coord getLocation(int i) {
+			return new Coord(this.xs[i], this.ys[i]);
+		}
+	}
+
+	/**
+	 * Source of movements
+	 */
+	private interface MovementSource {
+		/**
+		 * Returns the offsets of the header
+		 * @return minTime, maxTime, minX, maxX, minY and maxY
+		 */
+		public double[] getOffsets();
+
+		/**
+		 * Reads the next time instance
+		 * @return The movements or null if there are no more movements
+		 */
+		public Movements read() throws IOException;
+
+		/**
+		 * Closes the source
+		 */
+		public void close();
+	}
+
+	/**
+	 * Reads movements from a text file. The file is read in chunks and the
+	 * lines are parsed from the bytes.
+	 */
+	private static class TextSource implements MovementSource {
+		private FileInputStream in;
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		private byte[] buf;
+		/** start of the current line in the buffer */
+		private int lineStart;
+		/** end of the current line in the buffer (exclusive) */
+		private int lineEnd;
+		/** position where the next line starts */
+		private int pos;
+		/** end of the read data in the buffer */
+		private int limit;
+		private boolean eof;
+		private double[] offsets;
+		private IdTable idTable;
+
+		/** the first location of the next time instance */
+		private boolean hasPending;
+		private double pendingTime;
+		private int pendingId;
+		private double pendingX;
+		private double pendingY;
+
+		/** fields of the latest parsed line */
+		private double time;
+		private int id;
+		private double x;
+		private double y;
+		/** start and end of the tokens of the latest line */
+		private int[] tokens = new int[8];
+
+		public TextSource(File file) throws IOException {
+			this.in = new FileInputStream(file);
+			this.channel = in.getChannel();
+			this.buffer = ByteBuffer.allocate(CHUNK_SIZE);
+			this.buf = buffer.array();
+			this.idTable = new IdTable();
+
+			String header = null;
+			try {
+				nextLine();
+				header = lineString();
+				int n = tokenize(6);
+				if (n < 6) {
+					throw new NumberFormatException();
+				}
+				this.offsets = new double[6];
+				for (int i = 0; i < 6; i++) {
+					this.offsets[i] = parseDouble(tokens[2*i], tokens[2*i+1]);
+				}
+			} catch (Exception e) {
+				throw new SettingsError("Invalid offset line '" + header + "'");
+			}
+		}
+
+		public double[] getOffsets() {
+			return this.offsets;
+		}
+
+		public Movements read() throws IOException {
+			if (!this.hasPending && !nextLocation()) {
+				return null;
+			}
+
+			Movements m = new Movements(this.pendingTime);
+			m.firstNewId = this.idTable.getNrofNewIdsTaken();
+			do {
+				m.add(this.pendingId, this.pendingX, this.pendingY);
+				this.hasPending = false;
+			} while (nextLocation() && this.pendingTime == m.time);
+			m.newIds = this.idTable.takeNewIds();
+			return m;
+		}
+
+		/**
+		 * Reads the next location line to the pending location
+		 * @return true if a location was read, false if the file ended
+		 */
+		private boolean nextLocation() throws IOException {
+			while (nextLine()) {
+				if (isSkipped()) {
+					continue; /* skip empty and comment lines */
+				}
+				if (tokenize(4) < 4) {
+					throw new SettingsError("Invalid line '" + lineString() +
+							"'");
+				}
+				try {
+					this.pendingTime = parseDouble(tokens[0], tokens[1]);
+					this.pendingX = parseDouble(tokens[4], tokens[5]);
+					this.pendingY = parseDouble(tokens[6], tokens[7]);
+				} catch (NumberFormatException e) {
+					throw new SettingsError("Invalid line '" + lineString() +
+							"'");
+				}
+				this.pendingId = this.idTable.intern(buf, tokens[2],
+						tokens[3] - tokens[2]);
+				this.hasPending = true;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns true if the current line is empty or a comment line
+		 */
+		private boolean isSkipped() {
+			boolean comment = true;
+			byte[] prefix = COMMENT_PREFIX.getBytes();
+			for (int i = 0; i < prefix.length; i++) {
+				if (lineStart + i >= lineEnd || buf[lineStart + i] != prefix[i]) {
+					comment = false;
+					break;
+				}
+			}
+			if (comment) {
+				return true;
+			}
+			for (int i = lineStart; i < lineEnd; i++) {
+				if (buf[i] > ' ') {
+					return false;
+				}
+			}
+			return true; // only white space
+		}
+
+		/**
+		 * Finds the start and end positions of the first tokens of the line
+		 * @param max Maximum number of tokens to find
+		 * @return The number of tokens found
+		 */
+		private int tokenize(int max) {
+			if (this.tokens.length < 2 * max) {
+				this.tokens = new int[2 * max];
+			}
+			int n = 0;
+			int i = lineStart;
+			while (n < max) {
+				while (i < lineEnd && (buf[i] == ' ' || buf[i] == '\t')) {
+					i++;
+				}
+				if (i >= lineEnd) {
+					break;
+				}
+				this.tokens[2 * n] = i;
+				while (i < lineEnd && buf[i] != ' ' && buf[i] != '\t') {
+					i++;
+				}
+				this.tokens[2 * n + 1] = i;
+				n++;
+			}
+			return n;
+		}
+
+		/**
+		 * Returns the current line as a string (for error messages)
+		 */
+		private String lineString() {
+			return new String(buf, lineStart, lineEnd - lineStart, CHARSET);
+		}
+
+		/**
+		 * Moves to the next line
+		 * @return true if there was a next line, false if the file ended
+		 */
+		private boolean nextLine() throws IOException {
+			int nl = indexOfNewline(this.pos);
+			while (nl < 0 && !this.eof) {
+				fill();
+				nl = indexOfNewline(this.pos);
+			}
+
+			if (nl < 0) { // last line without a new line character
+				if (this.pos >= this.limit) {
+					return false;
+				}
+				nl = this.limit;
+			}
+			this.lineStart = this.pos;
+			this.lineEnd = nl;
+			if (this.lineEnd > this.lineStart && buf[this.lineEnd-1] == '\r') {
+				this.lineEnd--;
+			}
+			this.pos = nl + 1;
+			return true;
+		}
+
+		private int indexOfNewline(int from) {
+			for (int i = from; i < this.limit; i++) {
+				if (buf[i] == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Reads more data to the buffer. The unread data is moved to the
+		 * beginning of the buffer (and the buffer is grown if it's full).
+		 */
+		private void fill() throws IOException {
+			int unread = this.limit - this.pos;
+			if (this.pos > 0) {
+				System.arraycopy(buf, this.pos, buf, 0, unread);
+			}
+			else if (unread == buf.length) { // a line longer than the buffer
+				this.buffer = ByteBuffer.allocate(buf.length * 2);
+				System.arraycopy(buf, 0, this.buffer.array(), 0, unread);
+				this.buf = this.buffer.array();
+			}
+			this.pos = 0;
+			this.limit = unread;
+
+			this.buffer.clear();
+			this.buffer.position(unread);
+			int read = this.channel.read(this.buffer);
+			if (read < 0) {
+				this.eof = true;
+			}
+			else {
+				this.limit += read;
+			}
+		}
+
+		/**
+		 * Parses a decimal number from the buffer. Numbers with at most 15
+		 * significant digits and a small exponent are parsed directly
+		 * (giving the same result as {@link Double#parseDouble(String)}),
+		 * other numbers with Double.parseDouble.
+		 * @param start Start of the number in the buffer
+		 * @param end End of the number in the buffer (exclusive)
+		 * @return The number
+		 */
+		private double parseDouble(int start, int end) {
+			int i = start;
+			boolean negative = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+				negative = buf[i] == '-';
+				i++;
+			}
+
+			long mantissa = 0;
+			int digits = 0;
+			int exponent = 0;
+			boolean dot = false;
+			boolean valid = true;
+			boolean anyDigits = false;
+			for (; i < end; i++) {
+				byte b = buf[i];
+				if (b >= '0' && b <= '9') {
+					anyDigits = true;
+					if (mantissa > 0 || b != '0') {
+						digits++;
+					}
+					mantissa = mantissa * 10 + (b - '0');
+					if (dot) {
+						exponent--;
+					}
+					if (digits > 15) {
+						valid = false;
+						break;
+					}
+				}
+				else if (b == '.' && !dot) {
+					dot = true;
+				}
+				else {
+					valid = false; // exponent or something else
+					break;
+				}
+			}
+
+			if (!valid || !anyDigits || exponent < -22) {
+				return Double.parseDouble(
+						new String(buf, start, end - start, CHARSET));
+			}
+
+			/* exact mantissa and power of ten -> correctly rounded result */
+			double value = (exponent < 0 ? mantissa / POWERS[-exponent] :
+				mantissa);
+			return negative ? -value : value;
+		}
+
+		public void close() {
+			try {
+				this.in.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
+
+	/** Powers of ten that are exact doubles */
+	private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+		1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+		1e18, 1e19, 1e20, 1e21, 1e22};
+
+	/**
+	 * Reads movements from a binary trace file
+	 */
+	private static class BinarySource implements MovementSource {
+		private DataInputStream in;
+		private double[] offsets;
+		private int nrofIds;
+
+		public BinarySource(File file) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), CHUNK_SIZE));
+			this.in.readInt(); // magic
+			this.offsets = new double[6];
+			for (int i = 0; i < 6; i++) {
+				this.offsets[i] = this.in.readDouble();
+			}
+		}
+
+		public double[] getOffsets() {
+			return this.offsets;
+		}
+
+		public Movements read() throws IOException {
+			double time;
+			try {
+				time = this.in.readDouble();
+			} catch (EOFException e) {
+				return null;
+			}
+
+			Movements m = new Movements(time);
+			m.firstNewId = this.nrofIds;
+			int size = this.in.readInt();
+			for (int i = 0; i < size; i++) {
+				int id = this.in.readInt();
+				if (id == this.nrofIds) {
+					m.newIds.add(this.in.readUTF());
+					this.nrofIds++;
+				}
+				m.add(id, this.in.readDouble(), this.in.readDouble());
+			}
+			return m;
+		}
+
+		public void close() {
+			try {
+				this.in.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
+
+	/**
+	 * Interns node IDs (byte sequences) to indexes without creating
+	 * strings for the IDs that have been seen already
+	 */
+	private static class IdTable {
+		private byte[][] keys = new byte[64][];
+		private int[] indexes = new int[64];
+		private int size;
+		/** IDs that haven't been taken by {@link #takeNewIds()} */
+		private List<String> newIds = new ArrayList<String>();
+		private int nrofTaken;
+
+		/**
+		 * Returns the index of an ID
+		 * @param b Buffer with the ID
+		 * @param start Start of the ID in the buffer
+		 * @param length Length of the ID
+		 * @return The index (new IDs get the next free index)
+		 */
+		public int intern(byte[] b, int start, int length) {
+			int hash = 0x811C9DC5;
+			for (int i = start; i < start + length; i++) {
+				hash = (hash ^ b[i]) * 0x01000193;
+			}
+
+			int mask = this.keys.length - 1;
+			int slot = hash & mask;
+			while (this.keys[slot] != null) {
+				byte[] key = this.keys[slot];
+				if (key.length == length && equals(key, b, start)) {
+					return this.indexes[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			this.keys[slot] = Arrays.copyOfRange(b, start, start + length);
+			this.indexes[slot] = this.size;
+			this.newIds.add(new String(b, start, length, CHARSET));
+			this.size++;
+			if (this.size * 2 > this.keys.length) {
+				rehash();
+			}
+			return this.size - 1;
+		}
+
+		private static boolean equals(byte[] key, byte[] b, int start) {
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != b[start + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash() {
+			byte[][] oldKeys = this.keys;
+			int[] oldIndexes = this.indexes;
+			this.keys = new byte[oldKeys.length * 2][];
+			this.indexes = new int[oldKeys.length * 2];
+			int mask = this.keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == null) {
+					continue;
+				}
+				int hash = 0x811C9DC5;
+				for (byte x : oldKeys[i]) {
+					hash = (hash ^ x) * 0x01000193;
+				}
+				int slot = hash & mask;
+				while (this.keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.indexes[slot] = oldIndexes[i];
+			}
+		}
+
+		/**
+		 * Returns the number of IDs taken with {@link #takeNewIds()}
+		 */
+		public int getNrofNewIdsTaken() {
+			return this.nrofTaken;
+		}
+
+		/**
+		 * Returns the IDs that have been interned since the last call
+		 * @return The new IDs in the order of their indexes
+		 */
+		public List<String> takeNewIds() {
+			List<String> taken = this.newIds;
+			this.nrofTaken += taken.size();
+			this.newIds = new ArrayList<String>();
+			return taken;
+		}
+	}
+
+	/**
+	 * Reads the time instances from a source to a queue in a background
+	 * thread. The thread stops when the source ends or when the reader
+	 * that uses the queue is not used anymore.
+	 */
+	private static class Prefetcher implements Runnable {
+		/** time of the marker that ends the queue */
+		private static final double END = Double.NEGATIVE_INFINITY;
+		private MovementSource source;
+		private BlockingQueue<Movements> queue;
+		private WeakReference<ExternalMovementReader> reader;
+
+		public Prefetcher(MovementSource source,
+				BlockingQueue<Movements> queue, ExternalMovementReader reader){
+			this.source = source;
+			this.queue = queue;
+			this.reader = new WeakReference<ExternalMovementReader>(reader);
+		}
+
+		public void run() {
+			try {
+				Movements m;
+				while ((m = this.source.read()) != null) {
+					if (!put(m)) {
+						return; // the reader is gone
+					}
+				}
+				put(new Movements(END));
+			} catch (Throwable t) {
+				Movements error = new Movements(END);
+				error.error = t;
+				put(error);
+			} finally {
+				this.source.close();
+			}
+		}
+
+		/**
+		 * Puts movements to the queue when there is room
+		 * @return true if the movements were put, false if the reader is
+		 * not used anymore
+		 */
+		private boolean put(Movements m) {
+			try {
+				while (!this.queue.offer(m, 1, TimeUnit.SECONDS)) {
+					if (this.reader.get() == null) {
+						return false;
+					}
+				}
+				return true;
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+	}
 }
@@ -9,7 +9,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,7 +24,7 @@ import core.Coord;
  * Other data causes IOException.
  */
 public class WKTMapReader extends WKTReader {
-	private Hashtable<Coord, MapNode> nodes;
+	private LinkedHashMap<Coord, MapNode> nodes;
 	/** are all paths bidirectional */
 	private boolean bidirectionalPaths = true;
 	private int nodeType = -1;
@@ -36,7 +36,7 @@ public class WKTMapReader extends WKTReader {
 	 */
 	public WKTMapReader(boolean bidi) {
 		this.bidirectionalPaths = bidi;
-		this.nodes = new Hashtable<Coord, MapNode>();
+		this.nodes = new LinkedHashMap<Coord, MapNode>();
 	}
 	
 	/**
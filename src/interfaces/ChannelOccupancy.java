@@ -0,0 +1,190 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import movement.MovementModel;
+
+import core.Connection;
+import core.Coord;
+import core.DTNSim;
+import core.RunContext;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * <P>
+ * Occupancy of a shared radio channel. The world is divided into cells
+ * whose edge is as long as the transmit range of the interfaces (like in
+ * {@link ConnectivityGrid}) and the collision domain of an interface is the
+ * cell it is in and the neighboring cells.</P>
+ *
+ * <P>Once per update round, the number of transmitting interfaces is counted
+ * for every cell and the contention of every interface is the number of
+ * transmitting interfaces in its collision domain. The transmit speeds of
+ * all the interfaces are then set from the contention, and all the ongoing
+ * transfers are updated with the new speeds in one pass, instead of every
+ * interface checking its peers and updating its connections
+ * separately.</P>
+ */
+public class ChannelOccupancy {
+	/** the interfaces sharing the channel */
+	private List<InterferenceLimitedInterface> interfaces;
+	/** number of transmitting interfaces in the cells */
+	private int[][] counts;
+	private int cellSize;
+	private int rows;
+	private int cols;
+	/** the time when the occupancy was last updated */
+	private double lastUpdate;
+
+	static {
+		DTNSim.registerForReset(ChannelOccupancy.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		RunContext.current().removeState(ChannelOccupancy.class);
+	}
+
+	/**
+	 * Returns the channels of the current run by the interface types
+	 */
+	private static HashMap<String,ChannelOccupancy> getChannels() {
+		return RunContext.current().getState(ChannelOccupancy.class,
+				new RunContext.StateFactory<HashMap<String,ChannelOccupancy>>() {
+			public HashMap<String,ChannelOccupancy> create() {
+				return new HashMap<String,ChannelOccupancy>();
+			}
+		});
+	}
+
+	/**
+	 * Creates a new channel
+	 * @param cellSize Cell's edge's length
+	 */
+	private ChannelOccupancy(int cellSize) {
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		this.rows = worldSize[1]/cellSize + 1;
+		this.cols = worldSize[0]/cellSize + 1;
+		// leave empty cells on both sides to make neighbor sums easier
+		this.counts = new int[rows+2][cols+2];
+		this.cellSize = cellSize;
+		this.interfaces = new ArrayList<InterferenceLimitedInterface>();
+		this.lastUpdate = -1;
+	}
+
+	/**
+	 * Returns the channel of the interfaces of the given type
+	 * @param interfaceType The type of the interfaces (see
+	 * {@link core.NetworkInterface#getInterfaceType()})
+	 * @param range The transmit range of the interfaces
+	 * @return The channel for a specific interface type
+	 */
+	public static ChannelOccupancy getChannel(String interfaceType,
+			double range) {
+		HashMap<String,ChannelOccupancy> channels = getChannels();
+		ChannelOccupancy channel = channels.get(interfaceType);
+		if (channel == null) {
+			channel = new ChannelOccupancy((int)Math.ceil(range));
+			channels.put(interfaceType, channel);
+		}
+		return channel;
+	}
+
+	/**
+	 * Adds an interface to the channel
+	 * @param ni The interface
+	 */
+	public void addInterface(InterferenceLimitedInterface ni) {
+		this.interfaces.add(ni);
+	}
+
+	/**
+	 * Updates the occupancy, the transmit speeds of the interfaces and the
+	 * ongoing transfers if this hasn't been done yet at the current
+	 * simulation time
+	 */
+	public void update() {
+		double now = SimClock.getTime();
+		if (now == this.lastUpdate) {
+			return;
+		}
+		this.lastUpdate = now;
+
+		for (int i=0; i<rows+2; i++) {
+			for (int j=0; j<cols+2; j++) {
+				this.counts[i][j] = 0;
+			}
+		}
+
+		int n = this.interfaces.size();
+		int[] rowOf = new int[n];
+		int[] colOf = new int[n];
+		boolean[] transmitting = new boolean[n];
+
+		for (int i=0; i<n; i++) {
+			InterferenceLimitedInterface ni = this.interfaces.get(i);
+			Coord c = ni.getLocation();
+			rowOf[i] = index(c.getY(), rows);
+			colOf[i] = index(c.getX(), cols);
+			transmitting[i] = ni.getNrofActiveTransfers() > 0;
+			if (transmitting[i]) {
+				this.counts[rowOf[i]][colOf[i]]++;
+			}
+		}
+
+		for (int i=0; i<n; i++) {
+			int active = 0;
+			for (int r = rowOf[i]-1; r <= rowOf[i]+1; r++) {
+				for (int c = colOf[i]-1; c <= colOf[i]+1; c++) {
+					active += this.counts[r][c];
+				}
+			}
+			if (!transmitting[i]) {
+				active++; // contention if this interface starts to transmit
+			}
+			this.interfaces.get(i).setContention(active);
+		}
+
+		/* transfer the bytes of the last interval and set the new speeds */
+		for (int i=0; i<n; i++) {
+			if (!transmitting[i]) {
+				continue;
+			}
+			InterferenceLimitedInterface ni = this.interfaces.get(i);
+			for (Connection con : ni.getConnections()) {
+				if (con.getMessage() != null && con.isInitiator(ni.getHost())) {
+					con.update();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the cell index of a coordinate
+	 * @param value The coordinate value
+	 * @param max The number of cells in the direction
+	 * @return The index (between 1 and max)
+	 */
+	private int index(double value, int max) {
+		// +1 due empty cells on both sides of the matrix
+		int i = (int)(value/cellSize) + 1;
+		return Math.max(1, Math.min(max, i));
+	}
+
+	/**
+	 * Returns a string representation of the channel
+	 * @return a string representation of the channel
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	}
+}
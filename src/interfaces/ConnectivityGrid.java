@@ -7,12 +7,18 @@ package interfaces;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import movement.MovementModel;
 
-import core.Coord;
+import core.DTNHost;
 import core.DTNSim;
 import core.NetworkInterface;
+import core.ParallelLoop;
+import core.RunContext;
 import core.Settings;
 
 /**
@@ -43,10 +49,6 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
@@ -54,12 +56,19 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 	
 	public static void reset() {
-		gridobjects = new HashMap<Integer,ConnectivityGrid>();
+		RunContext.current().removeState(ConnectivityGrid.class);
+	}
 
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
+	/**
+	 * Returns the grid objects of the current run
+	 */
+	private static HashMap<Integer,ConnectivityGrid> getGridObjects() {
+		return RunContext.current().getState(ConnectivityGrid.class,
+				new RunContext.StateFactory<HashMap<Integer,ConnectivityGrid>>() {
+			public HashMap<Integer,ConnectivityGrid> create() {
+				return new HashMap<Integer,ConnectivityGrid>();
+			}
+		});
 	}
 
 	/**
@@ -69,8 +78,10 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * 	radio coverage's diameter)
 	 */
 	private ConnectivityGrid(int cellSize) {
-		this.rows = worldSizeY/cellSize + 1;
-		this.cols = worldSizeX/cellSize + 1;
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+		this.rows = worldSize[1]/cellSize + 1;
+		this.cols = worldSize[0]/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
 		this.cells = new GridCell[rows+2][cols+2];
 		this.cellSize = cellSize;
@@ -92,6 +103,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double cellSize) {
+		HashMap<Integer,ConnectivityGrid> gridobjects = getGridObjects();
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
@@ -107,7 +119,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
+		GridCell c = cellOf(ni);
 		c.addInterface(ni);
 		ginterfaces.put(ni,c);
 	}
@@ -140,7 +152,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public void updateLocation(NetworkInterface ni) {
 		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		GridCell newCell = cellOf(ni);
 
 		if (newCell != oldCell) {
 			oldCell.moveInterface(ni, newCell);
@@ -149,14 +161,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
+	 * Finds all neighboring cells and the cell itself based on the location
+	 * of an interface
+	 * @param ni The interface
 	 * @return Array of neighboring cells 
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
+	private GridCell[] getNeighborCellsOf(NetworkInterface ni) {
+		DTNHost host = ni.getHost();
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(host.getLocationY()/cellSize) + 1;
+		int col = (int)(host.getLocationX()/cellSize) + 1;
 		return getNeighborCells(row,col);
 	}
 
@@ -176,17 +190,18 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
-	 * @param c Coordinates
+	 * Get the cell where an interface is located
+	 * @param ni The interface
 	 * @return The cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private GridCell cellOf(NetworkInterface ni) {
+		DTNHost host = ni.getHost();
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1; 
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(host.getLocationY()/cellSize) + 1; 
+		int col = (int)(host.getLocationX()/cellSize) + 1;
 
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
-		c + " is out of world's bounds";
+		host.getLocation() + " is out of world's bounds";
 		
 		return this.cells[row][col];
 	}
@@ -210,7 +225,7 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		GridCell loc = (GridCell)ginterfaces.get(netinterf);
 		if (loc != null) {	
 			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
+				getNeighborCellsOf(netinterf);
 			for (int i=0; i < neighbors.length; i++) {
 				ni.addAll(neighbors[i].getInterfaces());
 			}
@@ -219,6 +234,80 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 
+	/**
+	 * Prepares the near interfaces for the interfaces updated next. For every
+	 * interface, the cell contents are resolved as they will be at the time
+	 * of the interface's update: the interfaces updated before it (and itself)
+	 * have moved to their new cells, in the order of their updates, and the
+	 * rest are still in the cells they were at the beginning. The (read only)
+	 * resolving is done in parallel for all interfaces.
+	 */
+	@Override
+	public Set<NetworkInterface> prepareNearInterfaces(
+			List<NetworkInterface> updateOrder, ForkJoinPool pool) {
+		final List<NetworkInterface> order = new ArrayList<NetworkInterface>();
+		for (NetworkInterface ni : updateOrder) {
+			if (ginterfaces.containsKey(ni)) {
+				order.add(ni);
+			}
+		}
+
+		/* update order indexes of the interfaces that change cells */
+		final IdentityHashMap<NetworkInterface, Integer> movers = 
+			new IdentityHashMap<NetworkInterface, Integer>();
+		/* update order indexes of the interfaces entering a cell */
+		final HashMap<GridCell, List<Integer>> entrants = 
+			new HashMap<GridCell, List<Integer>>();
+
+		for (int i=0, n=order.size(); i<n; i++) {
+			NetworkInterface ni = order.get(i);
+			GridCell newCell = cellOf(ni);
+			if (newCell != ginterfaces.get(ni)) {
+				movers.put(ni, i);
+				List<Integer> cellEntrants = entrants.get(newCell);
+				if (cellEntrants == null) {
+					cellEntrants = new ArrayList<Integer>(2);
+					entrants.put(newCell, cellEntrants);
+				}
+				cellEntrants.add(i);
+			}
+		}
+
+		ParallelLoop.run(pool, order.size(), new ParallelLoop.Body() {
+			public void run(int index) {
+				NetworkInterface ni = order.get(index);
+				ArrayList<NetworkInterface> near = 
+					new ArrayList<NetworkInterface>();
+				GridCell[] neighbors = 
+					getNeighborCellsOf(ni);
+
+				for (int i=0; i < neighbors.length; i++) {
+					for (NetworkInterface other : 
+							neighbors[i].getInterfaces()) {
+						Integer moved = movers.get(other);
+						if (moved == null || moved > index) {
+							near.add(other); // still in the cell
+						}
+					}
+					List<Integer> cellEntrants = entrants.get(neighbors[i]);
+					if (cellEntrants == null) {
+						continue;
+					}
+					for (int entrant : cellEntrants) {
+						if (entrant > index) {
+							break; // the rest enter after this update
+						}
+						near.add(order.get(entrant));
+					}
+				}
+
+				ni.setPreparedNearInterfaces(near);
+			}
+		});
+
+		return movers.keySet();
+	}
+
 	/**
 	 * Returns a string representation of the ConnectivityCells object
 	 * @return a string representation of the ConnectivityCells object
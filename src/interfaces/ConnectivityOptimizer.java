@@ -5,8 +5,15 @@
 package interfaces;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
@@ -14,6 +21,34 @@ import core.NetworkInterface;
  */
 abstract public class ConnectivityOptimizer {
 
+	/**
+	 * Returns the connectivity optimizer of the current run for the given key.
+	 * The type of the optimizer is read from the
+	 * {@link World#CONNECTIVITY_OPTIMIZER_S} setting.
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param range The (largest) range of the interfaces of the optimizer
+	 * @return The connectivity optimizer for a specific interface
+	 */
+	public static ConnectivityOptimizer getOptimizer(int key, double range) {
+		Settings s = new Settings(World.SETTINGS_NS);
+		String type = World.DEF_CONNECTIVITY_OPTIMIZER;
+		if (s.contains(World.CONNECTIVITY_OPTIMIZER_S)) {
+			type = s.getSetting(World.CONNECTIVITY_OPTIMIZER_S);
+		}
+
+		if (type.equals(World.GRID_OPTIMIZER)) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, range);
+		}
+		else if (type.equals(World.SWEEP_OPTIMIZER)) {
+			return SweepAndPruneOptimizer.getOptimizer(key, range);
+		}
+		else {
+			throw new SettingsError("Invalid value '" + type + "' for " +
+					World.SETTINGS_NS + "." + World.CONNECTIVITY_OPTIMIZER_S);
+		}
+	}
+
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
 	 */
@@ -45,4 +80,24 @@ abstract public class ConnectivityOptimizer {
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Prepares (see {@link NetworkInterface#setPreparedNearInterfaces(
+	 * Collection)}) the near interfaces of the interfaces that are updated
+	 * next, so that each interface gets the same near interfaces it would get
+	 * from {@link #getNearInterfaces(NetworkInterface)} when the interfaces
+	 * are updated (and their locations updated to the optimizer) in the given
+	 * order. This version doesn't prepare anything; optimizers that can do
+	 * the work concurrently should override this.
+	 * @param updateOrder The interfaces in the order they will be updated
+	 * (may also contain interfaces of other optimizers)
+	 * @param pool The pool for running the work in parallel
+	 * @return The prepared interfaces whose location in the optimizer is
+	 * expected to change during their update. If such an interface doesn't
+	 * get updated, the interfaces prepared after it are not valid anymore.
+	 */
+	public Set<NetworkInterface> prepareNearInterfaces(
+			List<NetworkInterface> updateOrder, ForkJoinPool pool) {
+		return Collections.emptySet();
+	}
 }
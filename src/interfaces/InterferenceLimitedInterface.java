@@ -15,17 +15,18 @@ import core.VBRConnection;
 /**
  * A simple Network Interface that provides a variable bit-rate service, where
  * the bit-rate depends on the number of other transmitting stations within
- * range The current transmit speed is updated only if there are ongoing
- * transmissions. The configured transmit speed is the maximum obtainable speed.
+ * the collision domain (see {@link ChannelOccupancy}). The configured
+ * transmit speed is the maximum obtainable speed. The speed is shared
+ * equally by the ongoing transmissions of the interface.
  */
 public class InterferenceLimitedInterface extends NetworkInterface {
 	protected int currentTransmitSpeed;
-	protected int numberOfTransmissions;
+	/** the channel shared with the other interfaces of the same type */
+	protected ChannelOccupancy channel;
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
 		this.currentTransmitSpeed = 0;
-		this.numberOfTransmissions = 0;
 	}
 
 	/**
@@ -37,7 +38,6 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
 		this.currentTransmitSpeed = 0;
-		this.numberOfTransmissions = 0;
 	}
 
 	
@@ -45,6 +45,19 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		return new InterferenceLimitedInterface(this);
 	}
 
+	/**
+	 * Sets the host of the interface and adds the interface to the channel
+	 * of its interface type
+	 * @param host The host where the network interface is
+	 */
+	@Override
+	public void setHost(DTNHost host) {
+		super.setHost(host);
+		this.channel = ChannelOccupancy.getChannel(this.interfacetype,
+				this.transmitRange);
+		this.channel.addInterface(this);
+	}
+
 	/**
 	 * Returns the transmit speed of this network layer
 	 * @return the transmit speed
@@ -78,7 +91,10 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 	 * that are out of range).
 	 */
 	public void update() {
-		// First break the old ones
+		// Update the speeds and the transferred bytes of all the transfers
+		channel.update();
+
+		// Then break the old ones
 		optimizer.updateLocation(this);
 		for (int i=0; i<this.connections.size(); ) {
 			Connection con = this.connections.get(i);
@@ -96,38 +112,26 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 		}
 		// Then find new possible connections
 		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
+			getNearInterfaces();
 		for (NetworkInterface i : interfaces) 
 			connect(i);
+	}
 
-		// Find the current number of transmissions
-		// (to calculate the current transmission speed
-		numberOfTransmissions = 0;
-		int numberOfActive = 1;
-		for (Connection con : this.connections) {
-			if (con.getMessage() != null) {
-				numberOfTransmissions++;
-			}
-			if (((InterferenceLimitedInterface)con.getOtherInterface(this)).
-					isTransferring() == true) {
-				numberOfActive++;
-			}
-		}
-
-		int ntrans = numberOfTransmissions;
-		if ( numberOfTransmissions < 1) ntrans = 1;
+	/**
+	 * Sets the current transmit speed of this interface based on the
+	 * number of transmitting stations in the collision domain. The
+	 * transmissions of this interface share the speed (see
+	 * {@link VBRConnection}).
+	 * @param numberOfActive Number of transmitting stations in the collision
+	 * domain, including this interface
+	 */
+	public void setContention(int numberOfActive) {
 		if ( numberOfActive <2 ) numberOfActive = 2;
 
-		// Based on the equation of Gupta and Kumar - and the transmission speed
-		// is divided equally to all the ongoing transmissions 
+		// Based on the equation of Gupta and Kumar
 		currentTransmitSpeed = (int)Math.floor((double)transmitSpeed / 
 				(Math.sqrt((1.0*numberOfActive) *
-						Math.log(1.0*numberOfActive))) /
-							ntrans );
-		
-		for (Connection con : getConnections()) {
-			con.update();
-		}
+						Math.log(1.0*numberOfActive))));
 	}
 
 	/** 
@@ -149,7 +153,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 	 * Returns true if this interface is actually transmitting data
 	 */
 	public boolean isTransferring() {
-		return (numberOfTransmissions > 0);
+		return (getNrofActiveTransfers() > 0);
 	}
 
 	/**
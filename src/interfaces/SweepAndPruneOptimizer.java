@@ -0,0 +1,349 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.RunContext;
+
+/**
+ * <P>
+ * Connectivity optimizer that keeps track of the interfaces whose
+ * x-coordinates are close enough for a connection using the sweep and prune
+ * approach. Every interface has an interval on the x-axis (its x-coordinate
+ * plus-minus half of the range) and the end points of all intervals are kept
+ * in a sorted list. When an interface moves, its end points are moved in
+ * the list by swapping them with their neighbors and only the pairs whose
+ * end points are swapped can start or stop overlapping. Since the interfaces
+ * move only a bit between the updates, only a few swaps are needed.</P>
+ *
+ * <P>The near interfaces of an interface are the interfaces whose intervals
+ * overlap with the interval of the interface and whose (cached)
+ * y-coordinates are within the range.</P>
+ *
+ * <P>Compared to {@link ConnectivityGrid}, the near interfaces are a much
+ * smaller superset of the interfaces within range, and nothing is
+ * allocated when the interfaces move. The order of the near interfaces is
+ * different so the connections may be created in a different order.</P>
+ */
+public class SweepAndPruneOptimizer extends ConnectivityOptimizer {
+	/** how much the intervals are extended (relative to the range) so that
+	 * rounding errors can't drop pairs that are exactly at the range */
+	private static final double RANGE_MARGIN = 1e-9;
+
+	/** half of the length of the x-axis intervals */
+	private double halfWidth;
+	/** largest accepted distance of the y-coordinates */
+	private double maxDy;
+	/** end points of the intervals in order */
+	private ArrayList<EndPoint> endPoints;
+	/** entries of the interfaces (in the order they were added) */
+	private LinkedHashMap<NetworkInterface, Entry> entries;
+
+	static {
+		DTNSim.registerForReset(SweepAndPruneOptimizer.class.
+				getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		RunContext.current().removeState(SweepAndPruneOptimizer.class);
+	}
+
+	/**
+	 * Creates a new optimizer
+	 * @param range The largest range of the interfaces of this optimizer
+	 */
+	private SweepAndPruneOptimizer(double range) {
+		double extendedRange = range * (1 + RANGE_MARGIN);
+		this.halfWidth = extendedRange / 2;
+		this.maxDy = extendedRange;
+		this.endPoints = new ArrayList<EndPoint>();
+		this.entries = new LinkedHashMap<NetworkInterface, Entry>();
+	}
+
+	/**
+	 * Returns the optimizer of the current run for the given key
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param range The largest range of the interfaces of the optimizer
+	 * @return The optimizer for a specific interface
+	 */
+	public static SweepAndPruneOptimizer getOptimizer(int key, double range) {
+		HashMap<Integer, SweepAndPruneOptimizer> optimizers =
+			RunContext.current().getState(SweepAndPruneOptimizer.class,
+				new RunContext.StateFactory<
+				HashMap<Integer, SweepAndPruneOptimizer>>() {
+			public HashMap<Integer, SweepAndPruneOptimizer> create() {
+				return new HashMap<Integer, SweepAndPruneOptimizer>();
+			}
+		});
+
+		SweepAndPruneOptimizer optimizer = optimizers.get(key);
+		if (optimizer == null) {
+			optimizer = new SweepAndPruneOptimizer(range);
+			optimizers.put(key, optimizer);
+		}
+		return optimizer;
+	}
+
+	/**
+	 * Adds a network interface to the optimizer (unless it is already present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (this.entries.containsKey(ni)) {
+			return;
+		}
+
+		Entry entry = new Entry(ni);
+		for (Entry other : this.entries.values()) {
+			if (entry.overlaps(other)) {
+				entry.addOverlap(other);
+			}
+		}
+
+		insert(entry.min);
+		insert(entry.max);
+		this.entries.put(ni, entry);
+	}
+
+	/**
+	 * Adds interfaces to the optimizer
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface ni : interfaces) {
+			addInterface(ni);
+		}
+	}
+
+	/**
+	 * Updates the interface's location and the overlapping intervals
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		Entry entry = this.entries.get(ni);
+		Coord loc = ni.getLocation();
+		double oldX = entry.x;
+
+		entry.setLocation(loc);
+		if (entry.x > oldX) { // move the leading end point first
+			moveUp(entry.max);
+			moveUp(entry.min);
+		}
+		else if (entry.x < oldX) {
+			moveDown(entry.min);
+			moveDown(entry.max);
+		}
+	}
+
+	/**
+	 * Returns the interfaces whose intervals overlap with the interface's
+	 * interval and whose y-coordinates are within the range
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		Entry entry = this.entries.get(ni);
+		List<NetworkInterface> near = new ArrayList<NetworkInterface>();
+		if (entry == null) {
+			return near;
+		}
+
+		for (Entry other : entry.overlaps) {
+			if (Math.abs(other.y - entry.y) <= this.maxDy) {
+				near.add(other.ni);
+			}
+		}
+		return near;
+	}
+
+	/**
+	 * Returns all interfaces of this optimizer
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return this.entries.keySet();
+	}
+
+	/**
+	 * Inserts an end point to its place in the sorted end point list
+	 * @param e The end point to insert
+	 */
+	private void insert(EndPoint e) {
+		int low = 0;
+		int high = this.endPoints.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.endPoints.get(middle).isBefore(e)) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		this.endPoints.add(low, e);
+		for (int i = low, n = this.endPoints.size(); i < n; i++) {
+			this.endPoints.get(i).index = i;
+		}
+	}
+
+	/**
+	 * Moves an end point whose value has increased up in the list
+	 * @param e The end point to move
+	 */
+	private void moveUp(EndPoint e) {
+		int i = e.index;
+		int last = this.endPoints.size() - 1;
+
+		while (i < last) {
+			EndPoint next = this.endPoints.get(i + 1);
+			if (!next.isBefore(e)) {
+				break;
+			}
+			if (e.isMax && !next.isMax) { // e's max passed next's min
+				startOverlap(e.owner, next.owner);
+			}
+			else if (!e.isMax && next.isMax) { // e's min passed next's max
+				endOverlap(e.owner, next.owner);
+			}
+			swap(i, i + 1);
+			i++;
+		}
+	}
+
+	/**
+	 * Moves an end point whose value has decreased down in the list
+	 * @param e The end point to move
+	 */
+	private void moveDown(EndPoint e) {
+		int i = e.index;
+
+		while (i > 0) {
+			EndPoint prev = this.endPoints.get(i - 1);
+			if (!e.isBefore(prev)) {
+				break;
+			}
+			if (!e.isMax && prev.isMax) { // e's min passed prev's max
+				startOverlap(e.owner, prev.owner);
+			}
+			else if (e.isMax && !prev.isMax) { // e's max passed prev's min
+				endOverlap(e.owner, prev.owner);
+			}
+			swap(i, i - 1);
+			i--;
+		}
+	}
+
+	/**
+	 * Swaps two end points in the list
+	 */
+	private void swap(int i, int j) {
+		EndPoint ei = this.endPoints.get(i);
+		EndPoint ej = this.endPoints.get(j);
+		this.endPoints.set(i, ej);
+		this.endPoints.set(j, ei);
+		ej.index = i;
+		ei.index = j;
+	}
+
+	/**
+	 * Marks the entries overlapping if their intervals really overlap
+	 */
+	private void startOverlap(Entry a, Entry b) {
+		if (a != b && a.overlaps(b)) {
+			a.addOverlap(b);
+		}
+	}
+
+	/**
+	 * Marks the entries not overlapping
+	 */
+	private void endOverlap(Entry a, Entry b) {
+		a.overlaps.remove(b);
+		b.overlaps.remove(a);
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + this.entries.size() +
+			" interfaces, range=" + this.maxDy;
+	}
+
+	/**
+	 * An interface and its (cached) location and interval
+	 */
+	private class Entry {
+		private final NetworkInterface ni;
+		private double x;
+		private double y;
+		private final EndPoint min;
+		private final EndPoint max;
+		/** entries whose intervals overlap with this entry's interval */
+		private LinkedHashSet<Entry> overlaps;
+
+		private Entry(NetworkInterface ni) {
+			this.ni = ni;
+			this.min = new EndPoint(this, false);
+			this.max = new EndPoint(this, true);
+			this.overlaps = new LinkedHashSet<Entry>();
+			setLocation(ni.getLocation());
+		}
+
+		private void setLocation(Coord loc) {
+			this.x = loc.getX();
+			this.y = loc.getY();
+			this.min.value = this.x - halfWidth;
+			this.max.value = this.x + halfWidth;
+		}
+
+		private boolean overlaps(Entry other) {
+			return this.min.value <= other.max.value &&
+				other.min.value <= this.max.value;
+		}
+
+		private void addOverlap(Entry other) {
+			this.overlaps.add(other);
+			other.overlaps.add(this);
+		}
+	}
+
+	/**
+	 * Start or end point of an entry's interval
+	 */
+	private static class EndPoint {
+		private final Entry owner;
+		private final boolean isMax;
+		private double value;
+		/** index of this end point in the sorted list */
+		private int index;
+
+		private EndPoint(Entry owner, boolean isMax) {
+			this.owner = owner;
+			this.isMax = isMax;
+		}
+
+		/**
+		 * Returns true if this end point should be before the other one
+		 * in the list. Start points go before end points with the same
+		 * value so that touching intervals overlap.
+		 */
+		private boolean isBefore(EndPoint other) {
+			if (this.value != other.value) {
+				return this.value < other.value;
+			}
+			return !this.isMax && other.isMax;
+		}
+	}
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.RunContext;
 
 /**
  * This class controls busses and passengers that can use the bus. 
@@ -22,8 +23,6 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 	
-	private static HashMap<Integer, BusControlSystem> systems;
-	
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
 	private List<Coord> busStops;
@@ -46,7 +45,19 @@ public class BusControlSystem {
 	}
 	
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		RunContext.current().removeState(BusControlSystem.class);
+	}
+
+	/**
+	 * Returns the control systems of the current run
+	 */
+	private static HashMap<Integer, BusControlSystem> getSystems() {
+		return RunContext.current().getState(BusControlSystem.class,
+				new RunContext.StateFactory<HashMap<Integer, BusControlSystem>>() {
+			public HashMap<Integer, BusControlSystem> create() {
+				return new HashMap<Integer, BusControlSystem>();
+			}
+		});
 	}
 	
 	/**
@@ -84,6 +95,7 @@ public class BusControlSystem {
 	 */
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
+		HashMap<Integer, BusControlSystem> systems = getSystems();
 		
 		if (systems.containsKey(id)) {
 			return systems.get(id);
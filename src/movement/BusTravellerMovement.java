@@ -11,6 +11,7 @@ import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.RunContext;
 import core.Settings;
 
 /**
@@ -52,8 +53,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	
 	private boolean takeBus;
 	
-	private static int nextID = 0;
-	
 	/**
 	 * Creates a BusTravellerModel 
 	 * @param settings
@@ -62,7 +61,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = RunContext.current().nextCount(BusTravellerMovement.class);
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -73,7 +72,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			probTakeOtherBus = settings.getDouble(PROBABILITY_TAKE_OTHER_BUS);
 		}
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = getMap().getPathFinder(null);
 		takeBus = true;
 	}
 	
@@ -89,7 +88,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = RunContext.current().nextCount(BusTravellerMovement.class);
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -351,7 +350,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 	
 	public static void reset() {
-		nextID = 0;
+		RunContext.current().resetCount(BusTravellerMovement.class);
 	}
 	
 }
@@ -0,0 +1,110 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement;
+
+import core.Coord;
+import core.Settings;
+import core.SimError;
+
+/**
+ * Movement model that replays the trajectories recorded to a
+ * {@link TrajectoryCache}. The paths and the times of the next paths are
+ * returned in the same order as the recorded movement model returned them,
+ * so no movement is computed. The hosts get the trajectories in the order
+ * they are created. Used automatically for all the groups when the cache
+ * has the trajectories of the scenario.
+ */
+public class CachedTrajectoryMovement extends MovementModel {
+	private TrajectoryCache cache;
+	private TrajectoryCache.Track track;
+	private int nextOp;
+	private int nextTime;
+	private int nextPath;
+	private int nextWaypoint;
+
+	/**
+	 * Creates a prototype that replays the trajectories of a cache
+	 * @param settings Settings of the group (for the activeness settings)
+	 * @param cache The cache whose trajectories are replayed
+	 */
+	public CachedTrajectoryMovement(Settings settings, TrajectoryCache cache) {
+		super(settings);
+		this.cache = cache;
+	}
+
+	/**
+	 * Copy constructor. Takes the trajectory of the next host.
+	 * @param proto The prototype
+	 */
+	private CachedTrajectoryMovement(CachedTrajectoryMovement proto) {
+		super(proto);
+		this.cache = proto.cache;
+		this.track = this.cache.nextTrack();
+	}
+
+	@Override
+	public Coord getInitialLocation() {
+		return new Coord(this.track.initX, this.track.initY);
+	}
+
+	@Override
+	public Path getPath() {
+		if (this.nextOp >= this.track.nrofOps) {
+			return null; // end of the recording
+		}
+
+		byte op = this.track.ops[this.nextOp++];
+		if (op == TrajectoryCache.OP_NO_PATH) {
+			return null;
+		}
+		checkOp(op, TrajectoryCache.OP_PATH);
+
+		Path p = new Path();
+		int size = this.track.pathSizes[this.nextPath++];
+		for (int i = 0; i < size; i++, this.nextWaypoint++) {
+			p.addWaypoint(new Coord(this.track.xs[this.nextWaypoint],
+					this.track.ys[this.nextWaypoint]),
+					this.track.speeds[this.nextWaypoint]);
+		}
+		return p;
+	}
+
+	@Override
+	public double nextPathAvailable() {
+		if (this.nextOp >= this.track.nrofOps) {
+			return Double.MAX_VALUE; // end of the recording
+		}
+
+		checkOp(this.track.ops[this.nextOp++], TrajectoryCache.OP_NEXT_TIME);
+		return this.track.times[this.nextTime++];
+	}
+
+	@Override
+	public boolean isActive() {
+		if (this.track == null ||
+				this.track.activeness == TrajectoryCache.ACTIVE_BY_SETTINGS) {
+			return super.isActive();
+		}
+		return this.track.activeness == TrajectoryCache.ALWAYS_ACTIVE;
+	}
+
+	@Override
+	public MovementModel replicate() {
+		return new CachedTrajectoryMovement(this);
+	}
+
+	/**
+	 * Checks that the recorded call is the same as the current call
+	 * @param op The recorded call
+	 * @param expected The current call
+	 * @throws SimError if the calls differ
+	 */
+	private void checkOp(byte op, byte expected) {
+		if (op != expected) {
+			throw new SimError("Movement doesn't follow the trajectory " +
+					"recorded to " + this.cache.getCacheFile());
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.RunContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,9 +26,6 @@ public class EveningActivityControlSystem {
 	
 	private Random rng;
 	
-	private static HashMap<Integer, EveningActivityControlSystem> 
-		controlSystems;
-	
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
 				getCanonicalName());
@@ -44,7 +42,21 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		RunContext.current().removeState(EveningActivityControlSystem.class);
+	}
+
+	/**
+	 * Returns the control systems of the current run
+	 */
+	private static HashMap<Integer, EveningActivityControlSystem> 
+			getControlSystems() {
+		return RunContext.current().getState(
+				EveningActivityControlSystem.class, new RunContext.
+				StateFactory<HashMap<Integer, EveningActivityControlSystem>>() {
+			public HashMap<Integer, EveningActivityControlSystem> create() {
+				return new HashMap<Integer, EveningActivityControlSystem>();
+			}
+		});
 	}
 	
 	/**
@@ -127,6 +139,8 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		HashMap<Integer, EveningActivityControlSystem> controlSystems =
+			getControlSystems();
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
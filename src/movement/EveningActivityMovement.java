@@ -14,6 +14,7 @@ import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
+import core.RunContext;
 import core.Settings;
 
 /**
@@ -44,7 +45,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING = 
 		"maxAfterShoppingStopTime";
 	
-	private static int nrOfMeetingSpots = 10;
+	private int nrOfMeetingSpots = 10;
 	
 	private int mode;
 	private boolean ready;
@@ -60,8 +61,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int id;
 	
-	private static int nextID = 0;
-	
 	private int minGroupSize;
 	private int maxGroupSize;
 	
@@ -72,7 +71,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public EveningActivityMovement(Settings settings) {
 		super(settings);
 		super.backAllowed = false;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = getMap().getPathFinder(null);
 		mode = WALKING_TO_MEETING_SPOT_MODE;
 		
 		nrOfMeetingSpots = settings.getInt(NR_OF_MEETING_SPOTS_SETTING);
@@ -120,7 +119,8 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 		
-		this.id = nextID++;
+		this.id = RunContext.current().nextCount(
+				EveningActivityMovement.class);
 		
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 		
@@ -144,7 +144,8 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = RunContext.current().nextCount(
+				EveningActivityMovement.class);
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -277,7 +278,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		RunContext.current().resetCount(EveningActivityMovement.class);
 	}
 
 	public int getMinGroupSize() {
@@ -6,14 +6,14 @@ package movement;
 
 import input.ExternalMovementReader;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
 
 import core.Coord;
 import core.DTNSim;
+import core.RunContext;
 import core.Settings;
 import core.SimClock;
 import core.Tuple;
@@ -31,21 +31,6 @@ public class ExternalMovement extends MovementModel {
 	
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-	
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 		
@@ -63,6 +48,8 @@ public class ExternalMovement extends MovementModel {
 	
 	/** is this node active */
 	private boolean isActive;
+	/** state shared by all the nodes of the current run */
+	private SharedState st;
 	
 	static {
 		DTNSim.registerForReset(ExternalMovement.class.getCanonicalName());
@@ -75,26 +62,29 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public ExternalMovement(Settings settings) {
 		super(settings);
+		this.st = getSharedState();
 		
-		if (idMapping == null) {
+		if (st.idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
-			
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
-			
-			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
+			st.idMapping = new ArrayList<ExternalMovement>();
+			st.inputFileName = s.getSetting(MOVEMENT_FILE_S);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				st.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (st.nrofPreload <= 0) {
+					st.nrofPreload = 1;
 				}
 			}
+			
+			st.reader = new ExternalMovementReader(st.inputFileName);
+			/* read the next preload run in the background */
+			st.reader.setPrefetch((int)st.nrofPreload);
+			
+			st.initLocations = st.reader.readNextMovementsByIndex();
+			st.nrofInitLocationsUsed = 0;
+			st.initTime = st.reader.getLastTimeStamp();
+			st.samplingInterval = -1;
+			st.lastPreloadTime = -1;
 		}
 	}
 	
@@ -105,18 +95,24 @@ public class ExternalMovement extends MovementModel {
 	 */
 	private ExternalMovement(MovementModel mm) {
 		super(mm);
+		this.st = getSharedState();
 		
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 		
-		if (initLocations.size() > 0) { // we have location data left
-			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0); 
-			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+		if (st.nrofInitLocationsUsed < st.initLocations.size()) {
+			// we have location data left -> gets the next location
+			int i = st.nrofInitLocationsUsed++;
+			this.intialLocation = this.latestLocation = 
+				st.initLocations.getLocation(i);
+			this.latestPathStartTime = st.initTime;
 			
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			int id = st.initLocations.getIdIndex(i);
+			while (st.idMapping.size() <= id) {
+				st.idMapping.add(null);
+			}
+			st.idMapping.set(id, this);
 			isActive = true;
 		}
 		else {
@@ -130,16 +126,17 @@ public class ExternalMovement extends MovementModel {
 	 * Checks if more paths should be preloaded and preloads them if
 	 * needed.
 	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
+	private static void checkPathNeed(SharedState st) {
+		if (st.samplingInterval == -1) { // first preload
+			st.lastPreloadTime = readMorePaths(st);
 		}
 		
-		if (lastPreloadTime != Double.NaN && SimClock.getTime() >= 
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload && 
-					lastPreloadTime != Double.NaN; i++) {
-				lastPreloadTime = readMorePaths();
+		if (st.lastPreloadTime != Double.NaN && SimClock.getTime() >= 
+				st.lastPreloadTime - 
+				(st.samplingInterval * MIN_AHEAD_INTERVALS) ) {
+			for (int i=0; i < st.nrofPreload && 
+					st.lastPreloadTime != Double.NaN; i++) {
+				st.lastPreloadTime = readMorePaths(st);
 			}
 		}
 	}
@@ -162,7 +159,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert st.samplingInterval > 0 : "Non-positive sampling interval!";
 		
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
@@ -180,7 +177,7 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();			
 		}
 			
-		double speed = loc.distance(this.latestLocation) / samplingInterval;		
+		double speed = loc.distance(this.latestLocation) / st.samplingInterval;		
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -204,7 +201,7 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 		
-		checkPathNeed(); // check if we should preload more paths		
+		checkPathNeed(st); // check if we should preload more paths		
 		
 		if (SimClock.getTime() < this.nextPathAvailable()) {
 			return null;
@@ -223,12 +220,12 @@ public class ExternalMovement extends MovementModel {
 	
 	@Override
 	public int getMaxX() {
-		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
+		return (int)(st.reader.getMaxX() - st.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
+		return (int)(st.reader.getMaxY() - st.reader.getMinY()) + 1;
 	}
 
 	
@@ -238,27 +235,30 @@ public class ExternalMovement extends MovementModel {
 	}
 	
 	/**
-	 * Reads paths for the next time instance from the reader
+	 * Reads paths for the next time instance from the st.reader
 	 * @return The time stamp of the reading or Double.NaN if no movements
 	 * were read.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private static double readMorePaths(SharedState st) {
+		ExternalMovementReader.Movements moves = 
+			st.reader.readNextMovementsByIndex();
+		double time = st.reader.getLastTimeStamp();
 		
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
+		if (st.samplingInterval == -1) {
+			st.samplingInterval = time - st.initTime;
 		}
 		
-		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+		for (int i = 0, n = moves.size(); i < n; i++) {
+			int id = moves.getIdIndex(i);
+			ExternalMovement em = (id < st.idMapping.size() ? 
+					st.idMapping.get(id) : null);
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
-				em.addLocation(t.getValue(), time);
+				em.addLocation(moves.getLocation(i), time);
 			}
 		}
 		
-		if (list.size() > 0) {
+		if (moves.size() > 0) {
 			return time;
 		}
 		else {
@@ -270,7 +270,42 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
-		idMapping = null;
+		RunContext.current().removeState(ExternalMovement.class);
+	}
+
+	/**
+	 * Returns the shared state of the current run
+	 */
+	private static SharedState getSharedState() {
+		return RunContext.current().getState(ExternalMovement.class,
+				new RunContext.StateFactory<SharedState>() {
+			public SharedState create() {
+				return new SharedState();
+			}
+		});
+	}
+
+	/**
+	 * State that is shared by all the nodes of a run
+	 */
+	private static class SharedState {
+		private ExternalMovementReader reader;
+		private String inputFileName;
+
+		/** movement models by the indexes of the external ids */
+		private List<ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private ExternalMovementReader.Movements initLocations;
+		/** how many of the initial locations have been given to nodes */
+		private int nrofInitLocationsUsed;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
 	}
 
 }
@@ -4,13 +4,13 @@
  */
 package movement;
 
+import input.BinaryMapReader;
 import input.WKTMapReader;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -43,7 +43,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	public static final String MAP_BASE_MOVEMENT_NS = "MapBasedMovement";
 	/** number of map files -setting id ({@value})*/
 	public static final String NROF_FILES_S = "nrofMapFiles";
-	/** map file -setting id ({@value})*/
+	/** map file -setting id ({@value}). If the only map file is a binary
+	 * map file (see {@link BinaryMapReader}), the map is read from it. */
 	public static final String FILE_S = "mapFile";
 	
 	/** 
@@ -60,10 +61,13 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
+	/** map cache -- in case last mm read the same map, use it without loading
+	 * (shared by all runs, access only when synchronized to this class) */
 	private static SimMap cachedMap = null;
 	/** names of the previously cached map's files (for hit comparison) */
 	private static List<String> cachedMapFiles = null;
+	/** number of (WKT) map files the cached map was created from */
+	private static int cachedNrofMapFiles = 0;
 	
 	/**
 	 * Creates a new MapBasedMovement based on a Settings object's settings.
@@ -263,50 +267,68 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
-		SimMap simMap;
-		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
-		WKTMapReader r = new WKTMapReader(true);
+		/* the map cache is shared by all (concurrent) runs */
+		synchronized (MapBasedMovement.class) {
+			SimMap simMap;
+			Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
+			WKTMapReader r = new WKTMapReader(true);
 		
-		if (cachedMap == null) {
-			cachedMapFiles = new ArrayList<String>(); // no cache present
-		}
-		else { // something in cache
-			// check out if previously asked map was asked again
-			SimMap cached = checkCache(settings);
-			if (cached != null) {
-				nrofMapFilesRead = cachedMapFiles.size();
-				return cached; // we had right map cached -> return it
+			if (cachedMap == null) {
+				cachedMapFiles = new ArrayList<String>(); // no cache present
 			}
-			else { // no hit -> reset cache
-				cachedMapFiles = new ArrayList<String>();
-				cachedMap = null;
+			else { // something in cache
+				// check out if previously asked map was asked again
+				SimMap cached = checkCache(settings);
+				if (cached != null) {
+					nrofMapFilesRead = cachedNrofMapFiles;
+					return cached; // we had right map cached -> return it
+				}
+				else { // no hit -> reset cache
+					cachedMapFiles = new ArrayList<String>();
+					cachedMap = null;
+				}
 			}
-		}
 
-		try {
 			int nrofMapFiles = settings.getInt(NROF_FILES_S);
-
-			for (int i = 1; i <= nrofMapFiles; i++ ) {
-				String pathFile = settings.getSetting(FILE_S + i);
-				cachedMapFiles.add(pathFile);
-				r.addPaths(new File(pathFile), i);
+			File firstFile = new File(settings.getSetting(FILE_S + 1));
+			boolean connected = false;
+			
+			if (nrofMapFiles == 1 && 
+					BinaryMapReader.isBinaryMapFile(firstFile)) {
+				BinaryMapReader br = new BinaryMapReader(firstFile);
+				cachedMapFiles.add(settings.getSetting(FILE_S + 1));
+				simMap = br.getMap();
+				connected = br.isConnected(); // checked when file was created
+				nrofMapFilesRead = br.getNrofMapFiles();
+			}
+			else {
+				try {
+					for (int i = 1; i <= nrofMapFiles; i++ ) {
+						String pathFile = settings.getSetting(FILE_S + i);
+						cachedMapFiles.add(pathFile);
+						r.addPaths(new File(pathFile), i);
+					}
+				
+					nrofMapFilesRead = nrofMapFiles;
+				} catch (IOException e) {
+					throw new SimError(e.toString(),e);
+				}
+				simMap = r.getMap();
 			}
 			
-			nrofMapFilesRead = nrofMapFiles;
-		} catch (IOException e) {
-			throw new SimError(e.toString(),e);
-		}
-
-		simMap = r.getMap();
-		checkMapConnectedness(simMap.getNodes());
-		// mirrors the map (y' = -y) and moves its upper left corner to origo
-		simMap.mirror();
-		Coord offset = simMap.getMinBound().clone();		
-		simMap.translate(-offset.getX(), -offset.getY());
-		checkCoordValidity(simMap.getNodes());
+			if (!connected) {
+				checkMapConnectedness(simMap.getNodes());
+			}
+			// mirrors the map (y' = -y) and moves its upper left corner to origo
+			simMap.mirror();
+			Coord offset = simMap.getMinBound().clone();		
+			simMap.translate(-offset.getX(), -offset.getY());
+			checkCoordValidity(simMap.getNodes());
 		
-		cachedMap = simMap;
-		return simMap;
+			cachedMap = simMap;
+			cachedNrofMapFiles = nrofMapFilesRead;
+			return simMap;
+		}
 	}
 	
 	/**
@@ -326,13 +348,13 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		
 		firstNode = nodes.get(0);
 		
+		/* nodes are marked visited when they are queued */
 		visited.add(firstNode);
-		unvisited.addAll(firstNode.getNeighbors());
+		unvisited.add(firstNode);
 		
 		while ((next = unvisited.poll()) != null) {
-			visited.add(next);
 			for (MapNode n: next.getNeighbors()) {
-				if (!visited.contains(n) && ! unvisited.contains(n)) {
+				if (visited.add(n)) {
 					unvisited.add(n);
 				}
 			}
@@ -410,19 +432,7 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	}
 
 	public void setLocation(Coord lastWaypoint) {
-		// TODO: This should be optimized
-		MapNode nearest = null;
-		double minDistance = Double.MAX_VALUE;
-		Iterator<MapNode> iterator = getMap().getNodes().iterator();
-		while (iterator.hasNext()) {
-			MapNode temp = iterator.next();
-			double distance = temp.getLocation().distance(lastWaypoint);
-			if (distance < minDistance) {
-				minDistance = distance;
-				nearest = temp;
-			}
-		}
-		lastMapNode = nearest;
+		lastMapNode = getMap().getNearestNode(lastWaypoint);
 	}
 
 	public boolean isReady() {
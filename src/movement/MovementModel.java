@@ -7,8 +7,10 @@ package movement;
 import java.util.Random;
 
 import core.Coord;
+import core.ContextRandom;
 import core.DTNSim;
 import core.ModuleCommunicationBus;
+import core.RunContext;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -43,7 +45,16 @@ public abstract class MovementModel {
 	public static final String RNG_SEED = "rngSeed";
 	
 	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	protected static final ContextRandom rng = new ContextRandom(
+			MovementModel.class, new RunContext.StateFactory<Random>() {
+		public Random create() {
+			Settings s = new Settings(MOVEMENT_MODEL_NS);
+			if (s.contains(RNG_SEED)) {
+				return new Random(s.getInt(RNG_SEED));
+			}
+			return new Random(0);
+		}
+	});
 	
 	private ActivenessHandler ah;
 		
@@ -254,14 +265,7 @@ public abstract class MovementModel {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		Settings s = new Settings(MOVEMENT_MODEL_NS);
-		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
-		}
-		else {
-			rng = new Random(0);
-		}
+		rng.reset();
 	}
 	
 }
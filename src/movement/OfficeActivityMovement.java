@@ -46,7 +46,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public static final String OFFICE_LOCATIONS_FILE_SETTING = 
 		"officeLocationsFile";
 	
-	private static int nrOfOffices = 50;
+	private int nrOfOffices = 50;
 	
 	private int mode;
 	private int workDayLength;
@@ -86,7 +86,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 		officeMaxWaitTime = settings.getDouble(OFFICE_MAX_WAIT_TIME_SETTING);
 		
 		startedWorkingTime = -1;
-		pathFinder = new DijkstraPathFinder(null);
+		pathFinder = getMap().getPathFinder(null);
 		mode = WALKING_TO_OFFICE_MODE;
 		
 		String officeLocationsFile = null;
@@ -137,6 +137,7 @@ public class OfficeActivityMovement extends MapBasedMovement implements
 	public OfficeActivityMovement(OfficeActivityMovement proto) {
 		super(proto);
 		this.workDayLength = proto.workDayLength;
+		this.nrOfOffices = proto.nrOfOffices;
 		startedWorkingTime = -1;
 		this.distance = proto.distance;
 		this.pathFinder = proto.pathFinder;
@@ -28,6 +28,16 @@ public class StationaryMovement extends MovementModel {
 		this.loc = new Coord(coords[0],coords[1]);
 	}
 	
+	/**
+	 * Creates a new movement model where the nodes stay at the given location.
+	 * @param s The Settings object where the other settings are read from
+	 * @param location The location of the nodes
+	 */
+	public StationaryMovement(Settings s, Coord location) {
+		super(s);
+		this.loc = location;
+	}
+
 	/**
 	 * Copy constructor. 
 	 * @param sm The StationaryMovement prototype
@@ -0,0 +1,586 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Coord;
+import core.ModuleCommunicationBus;
+import core.Settings;
+import core.SimError;
+import core.SimScenario;
+import core.World;
+
+/**
+ * <P>Cache of the trajectories of all the hosts of a scenario. Movement is
+ * deterministic for the same movement settings and random number seed, so
+ * the batch runs that only vary, e.g., routing or buffer settings can
+ * replay the trajectories recorded by an earlier run instead of computing
+ * the movement again.</P>
+ *
+ * <P>The cache is enabled by defining the directory of the cache files
+ * (see {@link #CACHE_DIR_S}). The files are keyed by a hash of the settings
+ * that can affect the movement: the {@link SimScenario#SCENARIO_NS}
+ * (except the name), {@link MovementModel#MOVEMENT_MODEL_NS} and
+ * {@link World#SETTINGS_NS} settings, the settings of the namespaces named
+ * after the classes of the movement packages, and the group settings
+ * except the router, interface, application and buffer settings. If a
+ * file with the key exists, all the hosts replay it with
+ * {@link CachedTrajectoryMovement} and the movement models are not created
+ * at all. Otherwise the movement models are wrapped to record their
+ * trajectories and the file is written when the run is done.</P>
+ *
+ * <P>The file has a header (magic number, version, the key and the number
+ * of hosts) followed by the trajectories of the hosts in columns: the
+ * order of the movement model calls, the times of the next paths, the
+ * sizes of the paths and the coordinates and speeds of the waypoints.
+ * The key also covers the files the movement settings refer to (e.g.,
+ * maps, points of interest, routes or movement traces) by their sizes and
+ * modification times, the version of the file format and the version of
+ * the movement code ({@link #CODE_VERSION}).</P>
+ */
+public class TrajectoryCache {
+	/** Trajectory cache settings namespace ({@value}) */
+	public static final String TRAJECTORY_CACHE_NS = "TrajectoryCache";
+	/** Directory where the trajectory files are stored -setting id
+	 * ({@value}). The cache is used only if this is defined. */
+	public static final String CACHE_DIR_S = "dir";
+	/** Extension of the trajectory files */
+	public static final String CACHE_EXT = ".trj";
+	/** Magic number in the beginning of trajectory files */
+	public static final int MAGIC = 0x4F4E4554;
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Version of the movement code. Increase when a change to the
+	 * movement models changes the trajectories of the same settings. */
+	public static final int CODE_VERSION = 1;
+
+	/** group settings that don't affect the movement */
+	private static final String[] NON_MOVEMENT_GROUP_SETTINGS = {
+		SimScenario.ROUTER_S, SimScenario.GROUP_ID_S,
+		SimScenario.NROF_INTERF_S, SimScenario.INTERFACENAME_S,
+		SimScenario.APPCOUNT_S, SimScenario.GAPPNAME_S,
+		SimScenario.SCAN_INTERVAL_S, "bufferSize", "msgTtl", "sendQueue"};
+	/** packages whose classes' namespaces belong to the key */
+	private static final String[] MOVEMENT_PACKAGES = {"movement.",
+		"movement.map."};
+
+	/** call of {@link MovementModel#getPath()} that returned a path */
+	static final byte OP_PATH = 0;
+	/** call of {@link MovementModel#getPath()} that returned null */
+	static final byte OP_NO_PATH = 1;
+	/** call of {@link MovementModel#nextPathAvailable()} */
+	static final byte OP_NEXT_TIME = 2;
+
+	/** activeness is decided by the activeness settings of the group */
+	static final byte ACTIVE_BY_SETTINGS = 0;
+	/** host is always active */
+	static final byte ALWAYS_ACTIVE = 1;
+	/** host is never active */
+	static final byte NEVER_ACTIVE = 2;
+
+	/** the loaded trajectories by their canonical paths (shared by runs) */
+	private static final Map<String, SoftReference<List<Track>>> loaded =
+		new HashMap<String, SoftReference<List<Track>>>();
+
+	private File cacheFile;
+	private String key;
+	/** the cached trajectories or null if they are being recorded */
+	private List<Track> tracks;
+	/** the trajectories recorded in this run */
+	private List<Track> recorded;
+	/** index of the next host's trajectory */
+	private int nextTrack;
+
+	/**
+	 * Creates a trajectory cache for the current run. Loads the cached
+	 * trajectories if the settings of the run have been recorded already.
+	 * @param s Settings where the cache directory is read from
+	 */
+	public TrajectoryCache(Settings s) {
+		File dir = new File(s.getSetting(CACHE_DIR_S));
+		this.key = createKey();
+		this.cacheFile = new File(dir, "trajectories_" + this.key +
+				CACHE_EXT);
+		this.nextTrack = 0;
+
+		if (this.cacheFile.exists()) {
+			this.tracks = load(this.cacheFile, this.key);
+		}
+		else {
+			this.recorded = new ArrayList<Track>();
+		}
+	}
+
+	/**
+	 * Returns true if the trajectories are replayed from the cache
+	 * @return true if the trajectories are cached, false if they are
+	 * recorded in this run
+	 */
+	public boolean isCached() {
+		return this.tracks != null;
+	}
+
+	/**
+	 * Returns a prototype that records the trajectories of the hosts that
+	 * use the given movement model
+	 * @param proto Prototype of the movement model
+	 * @return The recording prototype
+	 */
+	public MovementModel record(MovementModel proto) {
+		return new RecordingMovement(proto, this, null);
+	}
+
+	/**
+	 * Returns the trajectory of the next host
+	 * @return The trajectory
+	 */
+	Track nextTrack() {
+		if (this.nextTrack >= this.tracks.size()) {
+			throw new SimError("More hosts than trajectories in " +
+					this.cacheFile.getAbsolutePath());
+		}
+		return this.tracks.get(this.nextTrack++);
+	}
+
+	/**
+	 * Returns the cache file of this run
+	 * @return the cache file
+	 */
+	public File getCacheFile() {
+		return this.cacheFile;
+	}
+
+	/**
+	 * Stores the recorded trajectories to the cache file (if they were
+	 * recorded in this run and no other run has stored them already)
+	 */
+	public void store() {
+		if (this.recorded == null || this.cacheFile.exists()) {
+			return;
+		}
+
+		File dir = this.cacheFile.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		try {
+			/* parallel runs may store the same file -> write and rename */
+			File tmp = File.createTempFile("trajectories", ".tmp", dir);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(this.key);
+			out.writeInt(this.recorded.size());
+			for (Track t : this.recorded) {
+				t.write(out);
+			}
+			out.close();
+
+			if (!tmp.renameTo(this.cacheFile)) {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			throw new SimError("Couldn't store trajectories to " +
+					this.cacheFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Creates the key of the movement settings of the current run
+	 * @return The key (a hash of the settings, the files they refer to
+	 * and the versions as a hex string)
+	 */
+	private static String createKey() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(VERSION).append(':').append(CODE_VERSION).append('\n');
+		Map<String, String> all = Settings.getAllSettings();
+		for (Map.Entry<String, String> e : all.entrySet()) {
+			if (isMovementSetting(e.getKey())) {
+				sb.append(e.getKey()).append('=').append(e.getValue());
+				sb.append('\n');
+				appendFiles(sb, e.getValue());
+			}
+		}
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(sb.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Appends the sizes and modification times of the files a setting
+	 * value refers to (if any)
+	 * @param sb The builder of the key
+	 * @param value The value of the setting (one or more comma separated
+	 * values)
+	 */
+	private static void appendFiles(StringBuilder sb, String value) {
+		for (String part : value.split(",")) {
+			File f = new File(part.trim());
+			if (f.isFile()) {
+				sb.append("file ").append(f.getAbsolutePath()).append(' ');
+				sb.append(f.length()).append(' ').append(f.lastModified());
+				sb.append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a setting can affect the movement
+	 * @param name Full name of the setting
+	 * @return true if the setting belongs to the key of the movement
+	 */
+	private static boolean isMovementSetting(String name) {
+		int dot = name.indexOf('.');
+		if (dot < 0) {
+			return false;
+		}
+		String ns = name.substring(0, dot);
+		String setting = name.substring(dot + 1);
+
+		if (ns.equals(TRAJECTORY_CACHE_NS)) {
+			return false;
+		}
+		if (ns.equals(SimScenario.SCENARIO_NS)) {
+			return !setting.equals(SimScenario.NAME_S);
+		}
+		if (ns.equals(MovementModel.MOVEMENT_MODEL_NS) ||
+				ns.equals(World.SETTINGS_NS)) {
+			return true;
+		}
+		if (ns.matches(SimScenario.GROUP_NS + "\\d*")) {
+			for (String s : NON_MOVEMENT_GROUP_SETTINGS) {
+				if (setting.matches(s + "\\d*")) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		for (String pkg : MOVEMENT_PACKAGES) {
+			try {
+				Class.forName(pkg + ns);
+				return true;
+			} catch (ClassNotFoundException e) {
+				// not a movement class
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the trajectories of a cache file. The file is read only if
+	 * it hasn't been read already by some run.
+	 * @param file The cache file
+	 * @param key The key of the settings of the file
+	 * @return The trajectories
+	 */
+	private static List<Track> load(File file, String key) {
+		String path;
+		try {
+			path = file.getCanonicalPath();
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+
+		synchronized (loaded) {
+			SoftReference<List<Track>> ref = loaded.get(path);
+			List<Track> tracks = (ref != null ? ref.get() : null);
+			if (tracks == null) {
+				tracks = read(file, key);
+				loaded.put(path, new SoftReference<List<Track>>(tracks));
+			}
+			return tracks;
+		}
+	}
+
+	/**
+	 * Reads the trajectories from a cache file
+	 * @param file The cache file
+	 * @param key The key of the settings of the file
+	 * @return The trajectories
+	 */
+	private static List<Track> read(File file, String key) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+					!in.readUTF().equals(key)) {
+				in.close();
+				throw new SimError("Invalid trajectory file " +
+						file.getAbsolutePath());
+			}
+			int nrofTracks = in.readInt();
+			List<Track> tracks = new ArrayList<Track>(nrofTracks);
+			for (int i = 0; i < nrofTracks; i++) {
+				tracks.add(new Track(in));
+			}
+			in.close();
+			return tracks;
+		} catch (IOException e) {
+			throw new SimError("Couldn't read trajectory file " +
+					file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Trajectory of one host: the calls to the movement model in the order
+	 * they were made and the values they returned
+	 */
+	static class Track {
+		double initX;
+		double initY;
+		byte activeness = ACTIVE_BY_SETTINGS;
+		byte[] ops = new byte[16];
+		int nrofOps;
+		double[] times = new double[8];
+		int nrofTimes;
+		int[] pathSizes = new int[8];
+		int nrofPaths;
+		double[] xs = new double[16];
+		double[] ys = new double[16];
+		double[] speeds = new double[16];
+		int nrofWaypoints;
+
+		private Track() {}
+
+		/**
+		 * Reads a trajectory
+		 * @param in Where the trajectory is read from
+		 */
+		private Track(DataInputStream in) throws IOException {
+			this.initX = in.readDouble();
+			this.initY = in.readDouble();
+			this.activeness = in.readByte();
+			this.nrofOps = in.readInt();
+			this.nrofTimes = in.readInt();
+			this.nrofPaths = in.readInt();
+			this.nrofWaypoints = in.readInt();
+
+			this.ops = new byte[this.nrofOps];
+			in.readFully(this.ops);
+			this.times = readDoubles(in, this.nrofTimes);
+			this.pathSizes = new int[this.nrofPaths];
+			for (int i = 0; i < this.nrofPaths; i++) {
+				this.pathSizes[i] = in.readInt();
+			}
+			this.xs = readDoubles(in, this.nrofWaypoints);
+			this.ys = readDoubles(in, this.nrofWaypoints);
+			this.speeds = readDoubles(in, this.nrofWaypoints);
+		}
+
+		private static double[] readDoubles(DataInputStream in, int n)
+				throws IOException {
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = in.readDouble();
+			}
+			return values;
+		}
+
+		/**
+		 * Writes the trajectory
+		 * @param out Where the trajectory is written to
+		 */
+		private void write(DataOutputStream out) throws IOException {
+			out.writeDouble(this.initX);
+			out.writeDouble(this.initY);
+			out.writeByte(this.activeness);
+			out.writeInt(this.nrofOps);
+			out.writeInt(this.nrofTimes);
+			out.writeInt(this.nrofPaths);
+			out.writeInt(this.nrofWaypoints);
+
+			out.write(this.ops, 0, this.nrofOps);
+			for (int i = 0; i < this.nrofTimes; i++) {
+				out.writeDouble(this.times[i]);
+			}
+			for (int i = 0; i < this.nrofPaths; i++) {
+				out.writeInt(this.pathSizes[i]);
+			}
+			for (int i = 0; i < this.nrofWaypoints; i++) {
+				out.writeDouble(this.xs[i]);
+			}
+			for (int i = 0; i < this.nrofWaypoints; i++) {
+				out.writeDouble(this.ys[i]);
+			}
+			for (int i = 0; i < this.nrofWaypoints; i++) {
+				out.writeDouble(this.speeds[i]);
+			}
+		}
+
+		private void addOp(byte op) {
+			if (this.nrofOps == this.ops.length) {
+				this.ops = Arrays.copyOf(this.ops, this.nrofOps * 2);
+			}
+			this.ops[this.nrofOps++] = op;
+		}
+
+		private void addTime(double time) {
+			addOp(OP_NEXT_TIME);
+			if (this.nrofTimes == this.times.length) {
+				this.times = Arrays.copyOf(this.times, this.nrofTimes * 2);
+			}
+			this.times[this.nrofTimes++] = time;
+		}
+
+		private void addPath(Path path) {
+			if (path == null) {
+				addOp(OP_NO_PATH);
+				return;
+			}
+
+			addOp(OP_PATH);
+			List<Coord> coords = path.getCoords();
+			List<Double> pathSpeeds = path.getSpeeds();
+			if (this.nrofPaths == this.pathSizes.length) {
+				this.pathSizes = Arrays.copyOf(this.pathSizes,
+						this.nrofPaths * 2);
+			}
+			this.pathSizes[this.nrofPaths++] = coords.size();
+
+			for (int i = 0, n = coords.size(); i < n; i++) {
+				if (this.nrofWaypoints == this.xs.length) {
+					int capacity = this.nrofWaypoints * 2;
+					this.xs = Arrays.copyOf(this.xs, capacity);
+					this.ys = Arrays.copyOf(this.ys, capacity);
+					this.speeds = Arrays.copyOf(this.speeds, capacity);
+				}
+				double speed = 0;
+				if (pathSpeeds.size() == 1) { // constant speed
+					speed = pathSpeeds.get(0);
+				}
+				else if (i < pathSpeeds.size()) {
+					speed = pathSpeeds.get(i);
+				}
+				this.xs[this.nrofWaypoints] = coords.get(i).getX();
+				this.ys[this.nrofWaypoints] = coords.get(i).getY();
+				this.speeds[this.nrofWaypoints] = speed;
+				this.nrofWaypoints++;
+			}
+		}
+	}
+
+	/**
+	 * Movement model that records the trajectory of another movement model
+	 */
+	private static class RecordingMovement extends MovementModel {
+		private MovementModel model;
+		private TrajectoryCache cache;
+		private Track track;
+
+		/**
+		 * Creates a recording movement model
+		 * @param model The movement model to record
+		 * @param cache The cache where the trajectory is recorded
+		 * @param track The trajectory to record to (null for prototypes)
+		 */
+		public RecordingMovement(MovementModel model, TrajectoryCache cache,
+				Track track) {
+			super(model);
+			this.model = model;
+			this.cache = cache;
+			this.track = track;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = this.model.getPath();
+			this.track.addPath(p);
+			return p;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			Coord c = this.model.getInitialLocation();
+			this.track.initX = c.getX();
+			this.track.initY = c.getY();
+			return c;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			double time = this.model.nextPathAvailable();
+			this.track.addTime(time);
+			return time;
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.model.isActive();
+		}
+
+		@Override
+		public void setComBus(ModuleCommunicationBus comBus) {
+			super.setComBus(comBus);
+			this.model.setComBus(comBus);
+		}
+
+		@Override
+		public int getMaxX() {
+			return this.model.getMaxX();
+		}
+
+		@Override
+		public int getMaxY() {
+			return this.model.getMaxY();
+		}
+
+		@Override
+		public MovementModel replicate() {
+			MovementModel mm = this.model.replicate();
+			Track t = new Track();
+			if (overridesIsActive(mm)) {
+				/* activeness decided by the model itself (at creation) */
+				t.activeness = mm.isActive() ? ALWAYS_ACTIVE : NEVER_ACTIVE;
+			}
+			this.cache.recorded.add(t);
+			return new RecordingMovement(mm, this.cache, t);
+		}
+
+		@Override
+		public String toString() {
+			return this.model.toString();
+		}
+
+		/**
+		 * Returns true if the model decides the activeness of the host
+		 * instead of the activeness settings
+		 */
+		private static boolean overridesIsActive(MovementModel mm) {
+			try {
+				return mm.getClass().getMethod("isActive").getDeclaringClass()
+					!= MovementModel.class;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+	}
+}
@@ -4,65 +4,75 @@
  */
 package movement.map;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
 
 /**
- * Implementation of the Dijkstra's shortest path algorithm.
+ * <P>Implementation of the Dijkstra's shortest path algorithm.</P>
+ *
+ * <P>The map graph is stored in arrays (the neighbors of all the nodes in
+ * one array and the edge lengths in another) and the searches use an
+ * indexed binary heap whose arrays are reused between the searches. Ties
+ * between equally distant nodes are broken by the node locations, so the
+ * paths are always the same for the same map. The latest paths are cached.
+ * </P>
+ *
+ * <P>The path finder is thread safe and the same finder can be shared by
+ * all the movement models that use the same map and the same OK map node
+ * types (see {@link SimMap#getPathFinder(int[])}).</P>
  */
 public class DijkstraPathFinder {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distances;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<MapNode> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<MapNode> unvisited;
-	/** Map of previous nodes on the shortest path(s) */
-	private Map<MapNode, MapNode> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** How many of the latest paths are cached */
+	public static final int PATH_CACHE_SIZE = 1024;
+
+	/** the map graph (created when needed for finders without a map) */
+	private volatile Graph graph;
+	/** search data structures of the threads */
+	private ThreadLocal<Search> searches;
+	/** the latest paths (node indexes) by the source and destination */
+	private Map<Long, int[]> pathCache;
 
 	private int [] okMapNodes;
-	
+
 	/**
-	 * Constructor.
+	 * Constructor. The map graph is created from the nodes that are
+	 * reachable from the nodes of the queries.
 	 * @param okMapNodes The map node types that are OK for paths or null if
 	 * all nodes are OK
 	 */
 	public DijkstraPathFinder(int [] okMapNodes) {
-		super();
-		this.okMapNodes = okMapNodes;
+		this(null, okMapNodes);
 	}
 
 	/**
-	 * Initializes a new search with a source node
-	 * @param node The path's source node
+	 * Constructor.
+	 * @param nodes The nodes of the map (or null if the map graph should
+	 * be created from the nodes of the queries)
+	 * @param okMapNodes The map node types that are OK for paths or null if
+	 * all nodes are OK
 	 */
-	private void initWith(MapNode node) {
-		assert (okMapNodes != null ? node.isType(okMapNodes) : true);
-		
-		// create needed data structures
-		this.unvisited = new PriorityQueue<MapNode>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<MapNode>();
-		this.prevNodes = new HashMap<MapNode, MapNode>();
-		this.distances = new DistanceMap();
-		
-		// set distance to source 0 and initialize unvisited queue
-		this.distances.put(node, 0);
-		this.unvisited.add(node);
+	public DijkstraPathFinder(Collection<MapNode> nodes, int [] okMapNodes) {
+		this.okMapNodes = okMapNodes;
+		this.searches = new ThreadLocal<Search>();
+		this.pathCache = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+				return size() > PATH_CACHE_SIZE;
+			}
+		};
+		if (nodes != null) {
+			this.graph = new Graph(nodes);
+		}
 	}
-	
+
 	/**
 	 * Finds and returns a shortest path between two map nodes
 	 * @param from The source of the path
@@ -72,157 +82,355 @@ public class DijkstraPathFinder {
 	 */
 	public List<MapNode> getShortestPath(MapNode from, MapNode to) {
 		List<MapNode> path = new LinkedList<MapNode>();
-		
+
 		if (from.compareTo(to) == 0) { // source and destination are the same
 			path.add(from); // return a list containing only source node
 			return path;
 		}
-		
-		initWith(from);
-		MapNode node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (node == to) {
-				break; // we found the destination -> no need to search further
-			}
-			
-			visited.add(node); // mark the node as visited
-			relax(node); // add/update neighbor nodes' distances
-		}
-		
-		// now we either have the path or such path wasn't available
-		if (node == to) { // found a path
-			path.add(0,to); 
-			MapNode prev = prevNodes.get(to); 
-			while (prev != from) { 
-				path.add(0, prev);	// always put previous node to beginning
-				prev = prevNodes.get(prev);
-			}
-			
-			path.add(0, from); // finally put the source node to first node
-		}
-		
+		assert (okMapNodes != null ? from.isType(okMapNodes) : true);
+
+		Graph g = getGraph(from, to);
+		int source = g.indexes.get(from);
+		int target = g.indexes.get(to);
+		Long key = (((long)source) << 32) | target;
+
+		int[] nodes;
+		synchronized (pathCache) {
+			nodes = pathCache.get(key);
+		}
+		if (nodes == null) {
+			nodes = getSearch(g).find(source, target);
+			synchronized (pathCache) {
+				pathCache.put(key, nodes);
+			}
+		}
+
+		for (int n : nodes) {
+			path.add(g.nodes[n]);
+		}
 		return path;
 	}
-	
+
 	/**
-	 * Relaxes the neighbors of a node (updates the shortest distances).
-	 * @param node The node whose neighbors are relaxed
+	 * Returns a graph that contains the given nodes
+	 * @param from The first node
+	 * @param to The second node
+	 * @return The graph
 	 */
-	private void relax(MapNode node) {
-		double nodeDist = distances.get(node);
-		for (MapNode n : node.getNeighbors()) {
-			if (visited.contains(n)) {
-				continue; // skip visited nodes
-			}
-			
-			if (okMapNodes != null && !n.isType(okMapNodes)) {
-				continue; // skip nodes that are not OK
-			}
-			
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distances.get(n) > nDist) { // stored distance > found dist?
-				prevNodes.put(n, node);
-				setDistance(n, nDist);
+	private Graph getGraph(MapNode from, MapNode to) {
+		Graph g = this.graph;
+		if (g != null && g.indexes.containsKey(from) &&
+				g.indexes.containsKey(to)) {
+			return g;
+		}
+
+		synchronized (this) {
+			g = this.graph;
+			if (g == null || !g.indexes.containsKey(from) ||
+					!g.indexes.containsKey(to)) {
+				/* the old nodes come first so their indexes don't change */
+				List<MapNode> nodes = new ArrayList<MapNode>();
+				if (g != null) {
+					nodes.addAll(Arrays.asList(g.nodes));
+				}
+				nodes.add(from);
+				nodes.add(to);
+				g = new Graph(nodes);
+				this.graph = g;
 			}
+			return g;
 		}
 	}
-	
-	/**
-	 * Sets the distance from source node to a node
-	 * @param n The node whose distance is set
-	 * @param distance The distance of the node from the source node
-	 */
-	private void setDistance(MapNode n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distances.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
-	}
-	
+
 	/**
-	 * Returns the (euclidean) distance between the two map nodes
-	 * @param from The first node
-	 * @param to The second node
-	 * @return Euclidean distance between the two map nodes
+	 * Returns the search data structures of the calling thread
+	 * @param g The graph to search
+	 * @return The search data structures for the graph
 	 */
-	private double getDistance(MapNode from, MapNode to) {
-		return from.getLocation().distance(to.getLocation());
+	private Search getSearch(Graph g) {
+		Search s = searches.get();
+		if (s == null || s.graph != g) {
+			s = new Search(g);
+			searches.set(s);
+		}
+		return s;
 	}
-	
+
 	/**
-	 * Comparator that compares two map nodes by their distance from
-	 * the source node.
+	 * The map graph in arrays. The nodes are given dense indexes and the
+	 * neighbors of node i are in {@link #neighbors} between the offsets
+	 * i and i+1. Only the neighbors that are OK for paths are included.
 	 */
-	private class DistanceComparator implements Comparator<MapNode> {
-		
+	private class Graph {
+		private MapNode[] nodes;
+		private Map<MapNode, Integer> indexes;
+		private int[] offsets;
+		private int[] neighbors;
+		private double[] lengths;
+		/** order of the nodes by location (for breaking distance ties) */
+		private int[] ranks;
+
 		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
+		 * Creates a graph from the given nodes and all the nodes that are
+		 * reachable from them
+		 * @param seeds The nodes (they get the first indexes in this order)
 		 */
-		public int compare(MapNode node1, MapNode node2) {
-			double dist1 = distances.get(node1);
-			double dist2 = distances.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+		public Graph(Collection<MapNode> seeds) {
+			List<MapNode> list = new ArrayList<MapNode>();
+			this.indexes = new HashMap<MapNode, Integer>();
+			for (MapNode n : seeds) {
+				index(n, list);
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			for (int i = 0; i < list.size(); i++) {
+				for (MapNode n : list.get(i).getNeighbors()) {
+					index(n, list); // add also the nodes reachable from seeds
+				}
+			}
+
+			int size = list.size();
+			this.nodes = list.toArray(new MapNode[size]);
+			this.offsets = new int[size + 1];
+			List<Integer> nbrs = new ArrayList<Integer>();
+			List<Double> lens = new ArrayList<Double>();
+			for (int i = 0; i < size; i++) {
+				this.offsets[i] = nbrs.size();
+				for (MapNode n : this.nodes[i].getNeighbors()) {
+					if (okMapNodes != null && !n.isType(okMapNodes)) {
+						continue; // skip nodes that are not OK
+					}
+					nbrs.add(this.indexes.get(n));
+					lens.add(this.nodes[i].getLocation().distance(
+							n.getLocation()));
+				}
+			}
+			this.offsets[size] = nbrs.size();
+			this.neighbors = new int[nbrs.size()];
+			this.lengths = new double[lens.size()];
+			for (int i = 0; i < this.neighbors.length; i++) {
+				this.neighbors[i] = nbrs.get(i);
+				this.lengths[i] = lens.get(i);
+			}
+
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
 			}
-			else {
-				return node1.compareTo(node2);
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer i1, Integer i2) {
+					return nodes[i1].compareTo(nodes[i2]);
+				}
+			});
+			this.ranks = new int[size];
+			for (int i = 0; i < size; i++) {
+				this.ranks[order[i]] = i;
+			}
+		}
+
+		/**
+		 * Gives an index to a node if it doesn't have one yet
+		 * @param n The node
+		 * @param list List of the indexed nodes
+		 */
+		private void index(MapNode n, List<MapNode> list) {
+			if (!this.indexes.containsKey(n)) {
+				this.indexes.put(n, list.size());
+				list.add(n);
 			}
 		}
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Data structures of a search. The arrays are reused between the
+	 * searches and the values of the previous searches are recognized from
+	 * the search number.
 	 */
-	private class DistanceMap {
-		private HashMap<MapNode, Double> map;
-		
+	private static class Search {
+		private Graph graph;
+		/** distances from the source node */
+		private double[] distances;
+		/** previous nodes on the shortest paths */
+		private int[] prevNodes;
+		/** number of the search that last reached the node */
+		private int[] reached;
+		/** number of the search that last visited the node */
+		private int[] visited;
+		/** the unvisited nodes discovered so far (binary heap) */
+		private int[] heap;
+		/** positions of the nodes in the heap (-1 for none) */
+		private int[] heapPos;
+		private int heapSize;
+		private int searchNumber;
+
 		/**
-		 * Constructor. Creates an empty distance map
+		 * Creates the data structures for a graph
+		 * @param graph The graph
 		 */
-		public DistanceMap() {
-			this.map = new HashMap<MapNode, Double>(); 
+		public Search(Graph graph) {
+			int size = graph.nodes.length;
+			this.graph = graph;
+			this.distances = new double[size];
+			this.prevNodes = new int[size];
+			this.reached = new int[size];
+			this.visited = new int[size];
+			this.heap = new int[size];
+			this.heapPos = new int[size];
+			this.searchNumber = 0;
 		}
-		
+
 		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link DijkstraPathFinder#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
+		 * Finds a shortest path between two nodes
+		 * @param from Index of the source node
+		 * @param to Index of the destination node
+		 * @return Indexes of the nodes of the path or an empty array if
+		 * there is no path
 		 */
-		public double get(MapNode node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
+		public int[] find(int from, int to) {
+			this.searchNumber++;
+			this.heapSize = 0;
+			setDistance(from, 0);
+
+			boolean found = false;
+			// always take the node with shortest distance
+			while (this.heapSize > 0) {
+				int node = poll();
+				if (node == to) {
+					found = true;
+					break; // we found the destination
+				}
+				this.visited[node] = this.searchNumber;
+				relax(node); // add/update neighbor nodes' distances
+			}
+
+			if (!found) {
+				return new int[0];
+			}
+
+			int length = 1;
+			for (int n = to; n != from; n = this.prevNodes[n]) {
+				length++;
 			}
-			else {
-				return INFINITY;
+			int[] path = new int[length];
+			for (int n = to, i = length - 1; i >= 0; i--) {
+				path[i] = n;
+				n = this.prevNodes[n];
 			}
+			return path;
 		}
-		
+
 		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
+		 * Relaxes the neighbors of a node (updates the shortest distances).
+		 * @param node The node whose neighbors are relaxed
 		 */
-		public void  put(MapNode node, double distance) {
-			map.put(node, distance);
+		private void relax(int node) {
+			double nodeDist = this.distances[node];
+			for (int e = graph.offsets[node], end = graph.offsets[node + 1];
+					e < end; e++) {
+				int n = graph.neighbors[e];
+				if (this.visited[n] == this.searchNumber) {
+					continue; // skip visited nodes
+				}
+
+				double nDist = nodeDist + graph.lengths[e];
+				if (getDistance(n) > nDist) { // stored dist > found dist?
+					this.prevNodes[n] = node;
+					setDistance(n, nDist);
+				}
+			}
 		}
-		
+
 		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
+		 * Returns the distance of a node from the source node
+		 * @param n The node
+		 * @return The distance or infinity if the node hasn't been reached
 		 */
-		public String toString() {
-			return map.toString();
+		private double getDistance(int n) {
+			return this.reached[n] == this.searchNumber ?
+					this.distances[n] : INFINITY;
+		}
+
+		/**
+		 * Sets the distance from source node to a node and adds the node to
+		 * the heap or moves it to its new place in the heap
+		 * @param n The node whose distance is set
+		 * @param distance The distance of the node from the source node
+		 */
+		private void setDistance(int n, double distance) {
+			this.distances[n] = distance;
+			if (this.reached[n] != this.searchNumber) {
+				this.reached[n] = this.searchNumber;
+				this.heapPos[n] = this.heapSize;
+				this.heap[this.heapSize++] = n;
+			}
+			siftUp(this.heapPos[n]); // distances only decrease
+		}
+
+		/**
+		 * Removes and returns the node with the shortest distance
+		 * @return The node
+		 */
+		private int poll() {
+			int first = this.heap[0];
+			this.heapSize--;
+			if (this.heapSize > 0) {
+				int last = this.heap[this.heapSize];
+				this.heap[0] = last;
+				this.heapPos[last] = 0;
+				siftDown(0);
+			}
+			return first;
+		}
+
+		private void siftUp(int pos) {
+			int n = this.heap[pos];
+			while (pos > 0) {
+				int parentPos = (pos - 1) >>> 1;
+				int parent = this.heap[parentPos];
+				if (!isCloser(n, parent)) {
+					break;
+				}
+				this.heap[pos] = parent;
+				this.heapPos[parent] = pos;
+				pos = parentPos;
+			}
+			this.heap[pos] = n;
+			this.heapPos[n] = pos;
+		}
+
+		private void siftDown(int pos) {
+			int n = this.heap[pos];
+			int half = this.heapSize >>> 1;
+			while (pos < half) {
+				int childPos = 2 * pos + 1;
+				int child = this.heap[childPos];
+				int rightPos = childPos + 1;
+				if (rightPos < this.heapSize &&
+						isCloser(this.heap[rightPos], child)) {
+					childPos = rightPos;
+					child = this.heap[childPos];
+				}
+				if (!isCloser(child, n)) {
+					break;
+				}
+				this.heap[pos] = child;
+				this.heapPos[child] = pos;
+				pos = childPos;
+			}
+			this.heap[pos] = n;
+			this.heapPos[n] = pos;
+		}
+
+		/**
+		 * Compares two nodes by their distance from the source node and
+		 * by their location if the distances are equal
+		 * @return true if node1 comes before node2
+		 */
+		private boolean isCloser(int node1, int node2) {
+			double dist1 = this.distances[node1];
+			double dist2 = this.distances[node2];
+			if (dist1 != dist2) {
+				return dist1 < dist2;
+			}
+			return graph.ranks[node1] < graph.ranks[node2];
 		}
 	}
 }
\ No newline at end of file
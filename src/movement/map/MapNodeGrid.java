@@ -0,0 +1,261 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package movement.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.Coord;
+
+/**
+ * <P>Uniform grid index of the nodes of a map for nearest node and range
+ * queries. The nodes are placed in square cells so that there are a few
+ * nodes per cell on average and the queries only check the cells near the
+ * query location.</P>
+ *
+ * <P>The results are the same as with a linear search over the node list
+ * of the map: the nodes are ordered by their distance from the query
+ * location and equally distant nodes by their position in the node list.
+ * The index doesn't change after it is created, so it can be shared by all
+ * the movement models (and threads) that use the map.</P>
+ */
+public class MapNodeGrid {
+	/** Average number of nodes per cell */
+	private static final int NODES_PER_CELL = 4;
+	/** Relative margin for the distances of the unchecked cells */
+	private static final double EPSILON = 1e-9;
+
+	/** the nodes in the order of the map's node list */
+	private MapNode[] nodes;
+	/** indexes of the nodes in the cells (cell by cell) */
+	private int[] cellNodes;
+	/** where the nodes of each cell start in {@link #cellNodes} */
+	private int[] cellStarts;
+	private double minX;
+	private double minY;
+	private double cellSize;
+	private int cols;
+	private int rows;
+
+	/**
+	 * Creates an index for the nodes
+	 * @param nodeList The nodes to index
+	 */
+	public MapNodeGrid(List<MapNode> nodeList) {
+		this.nodes = nodeList.toArray(new MapNode[nodeList.size()]);
+		double maxX, maxY;
+		minX = minY = Double.MAX_VALUE;
+		maxX = maxY = -Double.MAX_VALUE;
+		for (MapNode n : this.nodes) {
+			Coord c = n.getLocation();
+			minX = Math.min(minX, c.getX());
+			minY = Math.min(minY, c.getY());
+			maxX = Math.max(maxX, c.getX());
+			maxY = Math.max(maxY, c.getY());
+		}
+
+		double width = Math.max(maxX - minX, 0);
+		double height = Math.max(maxY - minY, 0);
+		double cellArea = (width * height * NODES_PER_CELL) /
+			Math.max(this.nodes.length, 1);
+		this.cellSize = Math.max(Math.sqrt(cellArea),
+				Math.max(width, height) / Math.max(this.nodes.length, 1));
+		if (this.cellSize <= 0) {
+			this.cellSize = 1; // all the nodes in the same place
+		}
+		this.cols = (int)(width / this.cellSize) + 1;
+		this.rows = (int)(height / this.cellSize) + 1;
+
+		/* count the nodes per cell and place them (in node list order) */
+		int[] cellOf = new int[this.nodes.length];
+		this.cellStarts = new int[this.cols * this.rows + 1];
+		for (int i = 0; i < this.nodes.length; i++) {
+			Coord c = this.nodes[i].getLocation();
+			cellOf[i] = col(c.getX()) + row(c.getY()) * this.cols;
+			this.cellStarts[cellOf[i] + 1]++;
+		}
+		for (int i = 0; i < this.cols * this.rows; i++) {
+			this.cellStarts[i + 1] += this.cellStarts[i];
+		}
+		int[] next = Arrays.copyOf(this.cellStarts, this.cellStarts.length);
+		this.cellNodes = new int[this.nodes.length];
+		for (int i = 0; i < this.nodes.length; i++) {
+			this.cellNodes[next[cellOf[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Returns the node nearest to a location
+	 * @param c The location
+	 * @return The nearest node or null if there are no nodes
+	 */
+	public MapNode getNearestNode(Coord c) {
+		List<MapNode> nearest = getNearestNodes(c, 1);
+		return nearest.isEmpty() ? null : nearest.get(0);
+	}
+
+	/**
+	 * Returns the k nodes nearest to a location
+	 * @param c The location
+	 * @param k How many nodes to return
+	 * @return The nearest nodes, nearest first (less than k if there are
+	 * less than k nodes)
+	 */
+	public List<MapNode> getNearestNodes(Coord c, int k) {
+		k = Math.min(k, this.nodes.length);
+		int[] best = new int[k];
+		double[] bestDist = new double[k];
+		int found = 0;
+
+		int cx = col(c.getX());
+		int cy = row(c.getY());
+		for (int r = 0; k > 0; r++) {
+			/* check the cells of the square ring r cells from the center */
+			for (int y = cy - r; y <= cy + r; y++) {
+				if (y < 0 || y >= this.rows) {
+					continue;
+				}
+				int step = (y == cy - r || y == cy + r) ? 1 : 2 * r;
+				for (int x = cx - r; x <= cx + r; x += Math.max(step, 1)) {
+					if (x < 0 || x >= this.cols) {
+						continue;
+					}
+					int cell = x + y * this.cols;
+					for (int i = this.cellStarts[cell];
+							i < this.cellStarts[cell + 1]; i++) {
+						int n = this.cellNodes[i];
+						double d = this.nodes[n].getLocation().distance(c);
+						found = insert(best, bestDist, found, n, d);
+					}
+				}
+			}
+
+			/* the margin covers rounding errors of the distances (and ties
+			 * with nodes on the border of the checked cells) */
+			double outside = outsideDistance(c, cx, cy, r);
+			if (found == k && bestDist[k - 1] <
+					outside - EPSILON * (outside + this.cellSize)) {
+				break; // no node outside the checked cells can be nearer
+			}
+			if (cx - r <= 0 && cy - r <= 0 && cx + r >= this.cols - 1 &&
+					cy + r >= this.rows - 1) {
+				break; // all the cells checked
+			}
+		}
+
+		List<MapNode> result = new ArrayList<MapNode>(found);
+		for (int i = 0; i < found; i++) {
+			result.add(this.nodes[best[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the nodes that are within a distance from a location
+	 * @param c The location
+	 * @param distance The maximum distance
+	 * @return The nodes within the distance (in the order of the map's node
+	 * list)
+	 */
+	public List<MapNode> getNodesWithin(Coord c, double distance) {
+		int x1 = Math.max(col(c.getX() - distance), 0);
+		int x2 = Math.min(col(c.getX() + distance), this.cols - 1);
+		int y1 = Math.max(row(c.getY() - distance), 0);
+		int y2 = Math.min(row(c.getY() + distance), this.rows - 1);
+
+		List<Integer> within = new ArrayList<Integer>();
+		for (int y = y1; y <= y2; y++) {
+			for (int x = x1; x <= x2; x++) {
+				int cell = x + y * this.cols;
+				for (int i = this.cellStarts[cell];
+						i < this.cellStarts[cell + 1]; i++) {
+					int n = this.cellNodes[i];
+					if (this.nodes[n].getLocation().distance(c) <= distance) {
+						within.add(n);
+					}
+				}
+			}
+		}
+
+		Integer[] sorted = within.toArray(new Integer[within.size()]);
+		Arrays.sort(sorted);
+		List<MapNode> result = new ArrayList<MapNode>(sorted.length);
+		for (int n : sorted) {
+			result.add(this.nodes[n]);
+		}
+		return result;
+	}
+
+	/**
+	 * Inserts a node to the sorted list of the best nodes found so far if
+	 * it is better than the worst of them
+	 * @return The new number of nodes in the list
+	 */
+	private int insert(int[] best, double[] bestDist, int found, int n,
+			double d) {
+		int k = best.length;
+		int pos = found;
+		while (pos > 0 && (bestDist[pos - 1] > d ||
+				(bestDist[pos - 1] == d && best[pos - 1] > n))) {
+			pos--;
+		}
+		if (pos >= k) {
+			return found; // not among the k best
+		}
+		int last = Math.min(found, k - 1);
+		System.arraycopy(best, pos, best, pos + 1, last - pos);
+		System.arraycopy(bestDist, pos, bestDist, pos + 1, last - pos);
+		best[pos] = n;
+		bestDist[pos] = d;
+		return Math.min(found + 1, k);
+	}
+
+	/**
+	 * Returns the smallest distance from a location to the cells that are
+	 * outside the checked square of cells (cells outside the grid don't
+	 * count)
+	 * @param c The location
+	 * @param cx Column of the center cell of the square
+	 * @param cy Row of the center cell of the square
+	 * @param r How many cells from the center cell the square reaches
+	 * @return The distance
+	 */
+	private double outsideDistance(Coord c, int cx, int cy, int r) {
+		double d = Double.MAX_VALUE;
+		if (cx - r > 0) {
+			d = Math.min(d, c.getX() - (this.minX + (cx - r) * this.cellSize));
+		}
+		if (cx + r < this.cols - 1) {
+			d = Math.min(d, this.minX + (cx + r + 1) * this.cellSize -
+					c.getX());
+		}
+		if (cy - r > 0) {
+			d = Math.min(d, c.getY() - (this.minY + (cy - r) * this.cellSize));
+		}
+		if (cy + r < this.rows - 1) {
+			d = Math.min(d, this.minY + (cy + r + 1) * this.cellSize -
+					c.getY());
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the column of the cells for an x coordinate (clamped to the
+	 * grid)
+	 */
+	private int col(double x) {
+		int col = (int)Math.floor((x - this.minX) / this.cellSize);
+		return Math.max(0, Math.min(col, this.cols - 1));
+	}
+
+	/**
+	 * Returns the row of the cells for an y coordinate (clamped to the grid)
+	 */
+	private int row(double y) {
+		int row = (int)Math.floor((y - this.minY) / this.cellSize);
+		return Math.max(0, Math.min(row, this.rows - 1));
+	}
+}
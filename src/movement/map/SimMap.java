@@ -6,6 +6,7 @@ package movement.map;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,11 @@ public class SimMap implements Serializable {
 	/** is re-hash needed before using hash mode (some coordinates changed) */
 	private boolean needsRehash = false;
 	
+	/** shared path finders of the map by the OK map node type bit masks */
+	private transient Map<Integer, DijkstraPathFinder> pathFinders;
+	/** spatial index of the nodes (created when needed) */
+	private transient MapNodeGrid grid;
+	
 	public SimMap(Map<Coord, MapNode> nodes) {
 		this.offset = new Coord(0,0);
 		this.nodes = new ArrayList<MapNode>(nodes.values());
@@ -51,17 +57,88 @@ public class SimMap implements Serializable {
 	 * @param c The coordinate
 	 * @return The map node in that location or null if it doesn't exist
 	 */
-	public MapNode getNodeByCoord(Coord c) {
+	public synchronized MapNode getNodeByCoord(Coord c) {
 		if (needsRehash) { // some coordinates have changed after creating hash
 			nodesMap.clear();
 			for (MapNode node : getNodes()) {
 				nodesMap.put(node.getLocation(), node); // re-hash
 			}
+			needsRehash = false;
 		}
 	
 		return nodesMap.get(c);
 	}
 	
+	/**
+	 * Returns the map node nearest to the given coordinate
+	 * @param c The coordinate
+	 * @return The nearest map node (the first one in the node list if
+	 * several nodes are equally near)
+	 */
+	public MapNode getNearestNode(Coord c) {
+		return getGrid().getNearestNode(c);
+	}
+	
+	/**
+	 * Returns the k map nodes nearest to the given coordinate
+	 * @param c The coordinate
+	 * @param k How many nodes to return
+	 * @return The nearest nodes, nearest first
+	 */
+	public List<MapNode> getNearestNodes(Coord c, int k) {
+		return getGrid().getNearestNodes(c, k);
+	}
+	
+	/**
+	 * Returns the map nodes within a distance from the given coordinate
+	 * @param c The coordinate
+	 * @param distance The maximum distance
+	 * @return The nodes in the order of the node list
+	 */
+	public List<MapNode> getNodesWithin(Coord c, double distance) {
+		return getGrid().getNodesWithin(c, distance);
+	}
+	
+	/**
+	 * Returns the spatial index of the map nodes (creates it if needed)
+	 * @return The index
+	 */
+	private synchronized MapNodeGrid getGrid() {
+		if (grid == null) {
+			grid = new MapNodeGrid(getNodes());
+		}
+		return grid;
+	}
+	
+	/**
+	 * Returns a shortest path finder for this map. All the callers that
+	 * ask for a finder with the same OK map node types get the same
+	 * (thread safe) finder.
+	 * @param okMapNodeTypes The map node types that are OK for paths or null
+	 * if all nodes are OK
+	 * @return The path finder
+	 */
+	public synchronized DijkstraPathFinder getPathFinder(int[] okMapNodeTypes){
+		if (pathFinders == null) {
+			pathFinders = new HashMap<Integer, DijkstraPathFinder>();
+		}
+		
+		/* the types as a bit mask (bit 0 is not used by any type) */
+		int key = -1;
+		if (okMapNodeTypes != null) {
+			key = 0;
+			for (int t : okMapNodeTypes) {
+				key |= 1 << t;
+			}
+		}
+		DijkstraPathFinder finder = pathFinders.get(key);
+		if (finder == null) {
+			finder = new DijkstraPathFinder(getNodes(), okMapNodeTypes);
+			pathFinders.put(key, finder);
+		}
+		return finder;
+	}
+	
 	/**
 	 * Returns the upper left corner coordinate of the map
 	 * @return the upper left corner coordinate of the map
@@ -111,6 +188,8 @@ public class SimMap implements Serializable {
 		offset.translate(dx, dy);
 		
 		needsRehash = true;
+		pathFinders = null; // distances may have changed
+		grid = null;
 	}
 	
 	/**
@@ -127,6 +206,8 @@ public class SimMap implements Serializable {
 		setBounds();
 		this.isMirrored = true;
 		needsRehash = true;
+		pathFinders = null;
+		grid = null;
 	}
 	
 	/**
@@ -4,15 +4,15 @@
  */
 package report;
 
-import core.ConnectionListener;
 import core.DTNHost;
+import core.TimedConnectionListener;
 
 /**
  * Link connectivity report generator for ONE StandardEventsReader input.
  * Connections that start during the warm up period are ignored.
  */
 public class ConnectivityONEReport extends Report 
-	implements ConnectionListener {	
+	implements TimedConnectionListener {	
 	
 	/**
 	 * Constructor.
@@ -22,32 +22,41 @@ public class ConnectivityONEReport extends Report
 	}
 		
 	public void hostsConnected(DTNHost h1, DTNHost h2) {
-		if (isWarmup()) {
+		hostsConnected(h1, h2, getSimTime());
+	}
+	
+	public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+		hostsDisconnected(h1, h2, getSimTime());
+	}
+
+	public void hostsConnected(DTNHost h1, DTNHost h2, double time) {
+		if (isWarmup(time)) {
 			addWarmupID(connectionString(h1, h2));
 			return;
 		}
 		newEvent();
-		write(createTimeStamp() + " CONN " + connectionString(h1, h2) + " up");
+		write(createTimeStamp(time) + " CONN " + connectionString(h1, h2) +
+				" up");
 	}
 	
-	public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+	public void hostsDisconnected(DTNHost h1, DTNHost h2, double time) {
 		String conString = connectionString(h1, h2);
 		
-		if (isWarmup() || isWarmupID(conString)) {
+		if (isWarmup(time) || isWarmupID(conString)) {
 			removeWarmupID(conString);
 			return;
 		} 
 		 		
-		write(createTimeStamp() + " CONN " + conString + " down");
+		write(createTimeStamp(time) + " CONN " + conString + " down");
 	}
 	
 	/**
-	 * Creates and returns a "@" prefixed time stamp of the current simulation
-	 * time
-	 * @return time stamp of the current simulation time
+	 * Creates and returns a time stamp of the given simulation time
+	 * @param time The simulation time
+	 * @return time stamp of the simulation time
 	 */
-	private String createTimeStamp() {
-		return String.format("%.2f", getSimTime());
+	private String createTimeStamp(double time) {
+		return String.format("%.2f", time);
 	}
 	
 	/**
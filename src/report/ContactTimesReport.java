@@ -7,9 +7,9 @@ package report;
 import java.util.HashMap;
 import java.util.Vector;
 
-import core.ConnectionListener;
 import core.DTNHost;
 import core.Settings;
+import core.TimedConnectionListener;
 
 /**
  * Reports the node contact time (i.e., how long they were in the range
@@ -17,7 +17,8 @@ import core.Settings;
  * that lasted for certain amount of time. Syntax:<br>
  * <code>time nrofContacts</code>
  */
-public class ContactTimesReport extends Report implements ConnectionListener {
+public class ContactTimesReport extends Report
+	implements TimedConnectionListener {
 	protected HashMap<ConnectionInfo, ConnectionInfo> connections;
 	private Vector<Integer> nrofContacts;
 	
@@ -50,13 +51,22 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 	}
 		
 	public void hostsConnected(DTNHost host1, DTNHost host2) {
-		if (isWarmup()) {
-			return;
-		}
-		addConnection(host1, host2);
+		hostsConnected(host1, host2, getSimTime());
 	}
 
 	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		hostsDisconnected(host1, host2, getSimTime());
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2, double time) {
+		if (isWarmup(time)) {
+			return;
+		}
+		addConnection(host1, host2, time);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2,
+			double time) {
 		newEvent();
 		ConnectionInfo ci = removeConnection(host1, host2);
 		
@@ -64,12 +74,22 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 			return; /* the connection was started during the warm up period */
 		}
 		
-		ci.connectionEnd();
+		ci.connectionEnd(time);
 		increaseTimeCount(ci.getConnectionTime());
 	}
 	
 	protected void addConnection(DTNHost host1, DTNHost host2) {
-		ConnectionInfo ci = new ConnectionInfo(host1, host2);
+		addConnection(host1, host2, getSimTime());
+	}
+
+	/**
+	 * Adds a connection that started at the given time
+	 * @param host1 The other host of the connection
+	 * @param host2 The other host of the connection
+	 * @param time Start time of the connection
+	 */
+	protected void addConnection(DTNHost host1, DTNHost host2, double time) {
+		ConnectionInfo ci = new ConnectionInfo(host1, host2, time);
 		
 		assert !connections.containsKey(ci) : "Already contained "+
 			" a connection of " + host1 + " and " + host2;
@@ -131,9 +151,13 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 		private DTNHost h2;
 		
 		public ConnectionInfo (DTNHost h1, DTNHost h2){
+			this(h1, h2, getSimTime());
+		}
+
+		public ConnectionInfo (DTNHost h1, DTNHost h2, double startTime){
 			this.h1 = h1;
 			this.h2 = h2;
-			this.startTime = getSimTime();
+			this.startTime = startTime;
 			this.endTime = -1;
 		}
 		
@@ -143,7 +167,15 @@ public class ContactTimesReport extends Report implements ConnectionListener {
 		 * the time of the request.
 		 */
 		public void connectionEnd() {
-			this.endTime = getSimTime();
+			connectionEnd(getSimTime());
+		}
+
+		/**
+		 * Records the end time of the connection
+		 * @param time The time when the connection ended
+		 */
+		public void connectionEnd(double time) {
+			this.endTime = time;
 		}
 		
 		/**
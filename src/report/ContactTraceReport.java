@@ -0,0 +1,114 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package report;
+
+import input.ContactTraceReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import core.DTNHost;
+import core.SimError;
+import core.TimedConnectionListener;
+
+/**
+ * Records all the connections of the simulation to a compact binary contact
+ * trace that can be replayed (e.g., with different routing settings) using
+ * an ExternalEventsQueue and {@link ContactTraceReader}. The trace is
+ * written to a file that has the same name as the report's output but
+ * {@link ContactTraceReader#TRACE_EXT} extension; the report itself only
+ * tells the number of recorded connection events. Also the connections
+ * during the warm up period are recorded so that the replayed simulation
+ * has the same contacts as the recorded one.
+ */
+public class ContactTraceReport extends Report
+	implements TimedConnectionListener {
+	private DataOutputStream trace;
+	private String traceFileName;
+	private int nrofEvents;
+
+	/**
+	 * Constructor.
+	 */
+	public ContactTraceReport() {
+		init();
+	}
+
+	@Override
+	protected void init() {
+		super.init();
+		String name = getOutputFileName();
+		if (name.endsWith(OUT_SUFFIX)) {
+			name = name.substring(0, name.length() - OUT_SUFFIX.length());
+		}
+		this.traceFileName = name + ContactTraceReader.TRACE_EXT;
+		this.nrofEvents = 0;
+
+		try {
+			this.trace = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(this.traceFileName)));
+			this.trace.writeInt(ContactTraceReader.MAGIC);
+		} catch (IOException e) {
+			throw new SimError("Couldn't create contact trace file '" +
+					this.traceFileName + "'", e);
+		}
+	}
+
+	public void hostsConnected(DTNHost h1, DTNHost h2) {
+		writeEvent(h1, h2, true, getSimTime());
+	}
+
+	public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+		writeEvent(h1, h2, false, getSimTime());
+	}
+
+	public void hostsConnected(DTNHost h1, DTNHost h2, double time) {
+		writeEvent(h1, h2, true, time);
+	}
+
+	public void hostsDisconnected(DTNHost h1, DTNHost h2, double time) {
+		writeEvent(h1, h2, false, time);
+	}
+
+	/**
+	 * Writes a connection event to the trace. The node with the lower
+	 * network address is written first.
+	 * @param h1 The other node of the connection
+	 * @param h2 The other node of the connection
+	 * @param up True if the connection went up, false if down
+	 * @param time Time of the event
+	 */
+	private void writeEvent(DTNHost h1, DTNHost h2, boolean up,
+			double time) {
+		int a1 = Math.min(h1.getAddress(), h2.getAddress());
+		int a2 = Math.max(h1.getAddress(), h2.getAddress());
+		try {
+			this.trace.writeDouble(time);
+			this.trace.writeInt(a1);
+			this.trace.writeInt(a2);
+			this.trace.writeByte(up ? 1 : 0);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write to contact trace file '" +
+					this.traceFileName + "'", e);
+		}
+		this.nrofEvents++;
+	}
+
+	@Override
+	public void done() {
+		try {
+			this.trace.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write to contact trace file '" +
+					this.traceFileName + "'", e);
+		}
+		write("Contact trace for scenario " + getScenarioName());
+		write("trace: " + this.traceFileName);
+		write("connection_events: " + this.nrofEvents);
+		super.done();
+	}
+}
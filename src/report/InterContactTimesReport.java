@@ -14,22 +14,23 @@ import core.DTNHost;
 public class InterContactTimesReport extends ContactTimesReport {
 	
 	@Override
-	public void hostsConnected(DTNHost host1, DTNHost host2) {
+	public void hostsConnected(DTNHost host1, DTNHost host2, double time) {
 		ConnectionInfo ci = this.removeConnection(host1, host2);
 		
 		if (ci != null) { // connected again
 			newEvent();
-			ci.connectionEnd();			
+			ci.connectionEnd(time);
 			increaseTimeCount(ci.getConnectionTime());
 		}		
 	}
 	
 	@Override
-	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
-		if (isWarmup()) {
+	public void hostsDisconnected(DTNHost host1, DTNHost host2,
+			double time) {
+		if (isWarmup(time)) {
 			return;
 		}
 		// start counting time to next connection
-		this.addConnection(host1, host2);
+		this.addConnection(host1, host2, time);
 	}
 }
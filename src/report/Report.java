@@ -264,6 +264,15 @@ public abstract class Report {
 		return this.scenarioName;
 	}
 	
+	/**
+	 * Returns the name of the report's output file (without the interval
+	 * suffix of intervalled reports)
+	 * @return the name of the report's output file
+	 */
+	protected String getOutputFileName() {
+		return this.outFileName;
+	}
+	
 	/**
 	 * Returns the current simulation time from the SimClock
 	 * @return the current simulation time from the SimClock
@@ -277,7 +286,16 @@ public abstract class Report {
 	 * @return true if the warm up period is still ongoing, false if not
 	 */
 	protected boolean isWarmup() {
-		return this.warmupTime > SimClock.getTime();
+		return isWarmup(SimClock.getTime());
+	}
+
+	/**
+	 * Returns true if the given time is within the warm up period
+	 * @param time The time
+	 * @return true if the time is less than the warm up time
+	 */
+	protected boolean isWarmup(double time) {
+		return this.warmupTime > time;
 	}
 	
 	/**
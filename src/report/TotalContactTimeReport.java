@@ -38,7 +38,8 @@ public class TotalContactTimeReport extends ContactTimesReport implements
 	}
 
 	@Override
-	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+	public void hostsDisconnected(DTNHost host1, DTNHost host2,
+			double time) {
 		newEvent();
 		ConnectionInfo ci = removeConnection(host1, host2);
 		
@@ -46,6 +47,7 @@ public class TotalContactTimeReport extends ContactTimesReport implements
 			return; // connection started during the warm up period
 		}
 		
+		ci.connectionEnd(time);
 		oldContactTimes += ci.getConnectionTime();		
 	}
 
@@ -7,7 +7,10 @@ package routing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import core.Connection;
@@ -15,13 +18,21 @@ import core.DTNHost;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
+import core.SettingsError;
 import core.SimClock;
+import core.TimingWheel;
 import core.Tuple;
+import core.World;
 
 /**
  * Superclass of active routers. Contains convenience methods (e.g. 
  * {@link #getOldestMessage(boolean)}) and watching of sending connections (see
- * {@link #update()}).
+ * {@link #update()}). The buffered messages are also kept in a
+ * {@link MessageIndex} ordered by the drop policy so that the message to
+ * drop first is found without scanning the whole buffer.
+ * If summary vectors are enabled, routers exchange {@link SummaryVector}s
+ * when they start to use a connection and don't offer the messages the other
+ * host is known to have.
  */
 public abstract class ActiveRouter extends MessageRouter {
 	/** Delete delivered messages -setting id ({@value}). Boolean valued.
@@ -31,6 +42,47 @@ public abstract class ActiveRouter extends MessageRouter {
 	/** should messages that final recipient marks as delivered be deleted
 	 * from message buffer */
 	protected boolean deleteDelivered;
+	/** Concurrent transfers -setting id ({@value}). Integer valued.
+	 * How many transfers (sending or receiving) the router can have at the
+	 * same time using different connections. The transfers of a network
+	 * interface share its bandwidth. Default=1. */
+	public static final String CONCURRENT_TRANSFERS_S = "concurrentTransfers";
+	/** how many transfers the router can have at the same time */
+	private int concurrentTransfers;
+	
+	/** Summary vectors -setting id ({@value}). Boolean valued.
+	 * If set to true, routers exchange summary vectors of their messages
+	 * when they start to use a connection and don't try to send the messages
+	 * the other host is known to have. Default=false. */
+	public static final String SUMMARY_VECTORS_S = "summaryVectors";
+	/** Summary vector entry size -setting id ({@value}). Integer valued.
+	 * How many bytes one message takes in a summary vector. The connection
+	 * can't be used for messages until both summary vectors have been
+	 * transferred. Default=4. */
+	public static final String SUMMARY_ENTRY_SIZE_S = "summaryVectorEntrySize";
+	/** Default value for the summary vector entry size ({@value}) */
+	public static final int DEF_SUMMARY_ENTRY_SIZE = 4;
+	/** Drop policy -setting id ({@value}). Integer valued.
+	 * Which message is dropped first when the buffer is full:
+	 * <UL>
+	 * <LI/> 1 : the oldest message by receive time (default option)
+	 * <LI/> 2 : the message whose TTL runs out first
+	 * </UL>
+	 */
+	public static final String DROP_POLICY_S = "dropPolicy";
+	/** Setting value for dropping the oldest received messages first */
+	public static final int DROP_OLDEST = 1;
+	/** Setting value for dropping the soonest expiring messages first */
+	public static final int DROP_EXPIRING = 2;
+	/** which message is dropped first */
+	private int dropPolicy;
+	/** should summary vectors be exchanged */
+	private boolean summaryVectors;
+	/** how many bytes one message takes in a summary vector */
+	private int summaryEntrySize;
+	/** summary vectors received from the other hosts by connection (null
+	 * if summary vectors are not used) */
+	private Map<Connection, SummaryVector> peerSummaries;
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
@@ -40,6 +92,19 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
+	/** length of the expiry wheel's ticks (seconds) */
+	private static final double EXPIRY_TICK = 1.0;
+	/** the buffered messages scheduled by their expiry times. Messages that
+	 * leave the buffer are not removed from the wheel but ignored when
+	 * they are due. */
+	private TimingWheel<Message> expiryWheel;
+	/** time when the next scheduled message expires */
+	private double nextExpiry;
+	/** should the messages be dropped at the exact TTL expiry times */
+	private boolean exactTtlDrops;
+	/** the messages in the buffer in the order they are dropped (see
+	 * {@link #getOldestMessage(boolean)}) */
+	private MessageIndex dropOrder;
 	
 
 	/**
@@ -56,6 +121,49 @@ public abstract class ActiveRouter extends MessageRouter {
 		else {
 			this.deleteDelivered = false;
 		}
+		
+		if (s.contains(CONCURRENT_TRANSFERS_S)) {
+			this.concurrentTransfers = s.getInt(CONCURRENT_TRANSFERS_S);
+			if (this.concurrentTransfers < 1) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(CONCURRENT_TRANSFERS_S));
+			}
+		}
+		else {
+			this.concurrentTransfers = 1;
+		}
+		
+		if (s.contains(DROP_POLICY_S)) {
+			this.dropPolicy = s.getInt(DROP_POLICY_S);
+			if (this.dropPolicy < DROP_OLDEST || 
+					this.dropPolicy > DROP_EXPIRING) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(DROP_POLICY_S));
+			}
+		}
+		else {
+			this.dropPolicy = DROP_OLDEST;
+		}
+		
+		if (s.contains(SUMMARY_VECTORS_S)) {
+			this.summaryVectors = s.getBoolean(SUMMARY_VECTORS_S);
+		}
+		else {
+			this.summaryVectors = false;
+		}
+		if (s.contains(SUMMARY_ENTRY_SIZE_S)) {
+			this.summaryEntrySize = s.getInt(SUMMARY_ENTRY_SIZE_S);
+		}
+		else {
+			this.summaryEntrySize = DEF_SUMMARY_ENTRY_SIZE;
+		}
+		
+		Settings optimization = new Settings(World.SETTINGS_NS);
+		this.exactTtlDrops = World.DEF_EXACT_TTL_DROPS;
+		if (optimization.contains(World.EXACT_TTL_DROPS_S)) {
+			this.exactTtlDrops =
+				optimization.getBoolean(World.EXACT_TTL_DROPS_S);
+		}
 	}
 	
 	/**
@@ -65,6 +173,11 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.concurrentTransfers = r.concurrentTransfers;
+		this.dropPolicy = r.dropPolicy;
+		this.exactTtlDrops = r.exactTtlDrops;
+		this.summaryVectors = r.summaryVectors;
+		this.summaryEntrySize = r.summaryEntrySize;
 	}
 	
 	@Override
@@ -72,6 +185,15 @@ public abstract class ActiveRouter extends MessageRouter {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
 		this.lastTtlCheck = 0;
+		this.dropOrder = new SortedMessageIndex(
+				this.dropPolicy == DROP_EXPIRING ?
+				SortedMessageIndex.EXPIRY_TIME_ORDER :
+				SortedMessageIndex.RECEIVE_TIME_ORDER);
+		this.expiryWheel = new TimingWheel<Message>(EXPIRY_TICK);
+		this.nextExpiry = Double.MAX_VALUE;
+		if (this.summaryVectors) {
+			this.peerSummaries = new HashMap<Connection, SummaryVector>();
+		}
 	}
 	
 	/**
@@ -163,7 +285,27 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY;
 		}
 		
-		retVal = con.startTransfer(getHost(), m);
+		SummaryVector summary = null;
+		if (this.peerSummaries != null) {
+			summary = getPeerSummary(con);
+		}
+		
+		if (summary == null) {
+			retVal = con.startTransfer(getHost(), m);
+		}
+		else if (summary.getReceiveTime() > SimClock.getTime()) {
+			return TRY_LATER_BUSY; // summary vectors are still transferred
+		}
+		else if (summary.contains(m.getIdHandle())) {
+			retVal = DENIED_OLD; // no need to ask the other host
+		}
+		else {
+			retVal = con.startTransfer(getHost(), m);
+			if (retVal == DENIED_OLD) {
+				summary.add(m.getIdHandle());
+			}
+		}
+		
 		if (retVal == RCV_OK) { // started transfer
 			addToSendingConnections(con);
 		}
@@ -176,6 +318,63 @@ public abstract class ActiveRouter extends MessageRouter {
 		return retVal;
 	}
 	
+	/**
+	 * Returns true if the host in the other end of the connection is known
+	 * to have the message. If summary vectors are used, the summary vector
+	 * of the other host is checked. Otherwise the other host's buffer is
+	 * checked directly.
+	 * @param m The message
+	 * @param con The connection to the other host
+	 * @return true if the other host is known to have the message
+	 */
+	protected boolean peerHasMessage(Message m, Connection con) {
+		if (this.peerSummaries != null) {
+			SummaryVector summary = getPeerSummary(con);
+			if (summary != null) {
+				return summary.contains(m.getIdHandle());
+			}
+		}
+		return con.getOtherNode(getHost()).getRouter().hasMessage(
+				m.getIdHandle());
+	}
+	
+	/**
+	 * Returns the summary vector received from the host in the other end of
+	 * the connection. If the summary vectors haven't been exchanged yet, the
+	 * summary vectors of both hosts are taken now and they are received
+	 * after the time it takes to transfer both of them over the connection.
+	 * @param con The connection
+	 * @return The summary vector of the other host or null if the other
+	 * host doesn't exchange summary vectors
+	 */
+	private SummaryVector getPeerSummary(Connection con) {
+		SummaryVector summary = this.peerSummaries.get(con);
+		if (summary != null) {
+			return summary;
+		}
+		
+		MessageRouter otherRouter = con.getOtherNode(getHost()).getRouter();
+		if (!(otherRouter instanceof ActiveRouter) ||
+				((ActiveRouter)otherRouter).peerSummaries == null) {
+			return null;
+		}
+		
+		summary = otherRouter.createSummaryVector();
+		SummaryVector ownSummary = createSummaryVector();
+		double speed = con.getSpeed();
+		double receiveTime = SimClock.getTime();
+		if (speed > 0) {
+			receiveTime += (summary.size() + ownSummary.size()) * 
+				(double)this.summaryEntrySize / speed;
+		}
+		summary.setReceiveTime(receiveTime);
+		ownSummary.setReceiveTime(receiveTime);
+		
+		this.peerSummaries.put(con, summary);
+		((ActiveRouter)otherRouter).peerSummaries.put(con, ownSummary);
+		return summary;
+	}
+	
 	/**
 	 * Makes rudimentary checks (that we have at least one message and one
 	 * connection) about can this router start transfer.
@@ -209,7 +408,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ){
+		if ( hasMessage(m.getIdHandle()) || isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
@@ -256,16 +455,44 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. Only the messages whose
+	 * expiry time has passed are checked. Messages that are being sent
+	 * are not dropped (they are checked again later).
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		double now = SimClock.getTime();
+		if (this.nextExpiry > now) {
+			return;
+		}
+		
+		for (Message m : this.expiryWheel.pollDue(now)) {
+			if (getMessage(m.getId()) != m) {
+				continue; /* not in the buffer anymore */
+			}
+			if (isSending(m.getId()) || 
+					(!this.exactTtlDrops && m.getTtl() > 0)) {
+				this.expiryWheel.schedule(m, getDropTime(m));
+				continue;
 			}
+			deleteMessage(m.getId(), true);
+		}
+		this.nextExpiry = this.expiryWheel.getNextTime();
+	}
+	
+	/**
+	 * Returns the time when a message should be dropped. With exact TTL
+	 * drops it is the expiry time of the message. With the periodic TTL
+	 * checks it is the first time the TTL can be zero (the TTL is rounded
+	 * down to full minutes), i.e., one minute before the expiry time.
+	 * @param m The message
+	 * @return The drop time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	private double getDropTime(Message m) {
+		double expiry = m.getExpiryTime();
+		if (this.exactTtlDrops || expiry == Double.MAX_VALUE) {
+			return expiry;
 		}
+		return expiry - 60;
 	}
 	
 	/**
@@ -282,7 +509,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/**
 	 * Returns the oldest (by receive time) message in the message buffer 
-	 * (that is not being sent if excludeMsgBeingSent is true).
+	 * (that is not being sent if excludeMsgBeingSent is true). If the
+	 * {@link #DROP_POLICY_S drop policy} is {@link #DROP_EXPIRING}, the
+	 * message whose TTL runs out first is returned instead.
 	 * @param excludeMsgBeingSent If true, excludes message(s) that are
 	 * being sent from the oldest message check (i.e. if oldest message is
 	 * being sent, the second oldest message is returned)
@@ -291,23 +520,39 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getOldestMessage(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
+		for (Message m : this.dropOrder) {
 			if (excludeMsgBeingSent && isSending(m.getId())) {
 				continue; // skip the message(s) that router is sending
 			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
-			}
+			return m;
+		}
+		
+		return null;
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m.getId());
+		if (old != null) {
+			this.dropOrder.remove(old);
 		}
+		this.dropOrder.add(m);
 		
-		return oldest;
+		double expiry = getDropTime(m);
+		if (expiry < Double.MAX_VALUE) {
+			this.expiryWheel.schedule(m, expiry);
+			this.nextExpiry = Math.min(this.nextExpiry, expiry);
+		}
+		super.addToMessages(m, newMessage);
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.dropOrder.remove(m);
+		}
+		return m;
 	}
 	
 	/**
@@ -488,11 +733,13 @@ public abstract class ActiveRouter extends MessageRouter {
 		
 	/**
 	 * Returns true if this router is transferring something at the moment or
-	 * some transfer has not been finalized.
+	 * some transfer has not been finalized. If the router can have
+	 * concurrent transfers (see {@link #CONCURRENT_TRANSFERS_S}), returns
+	 * true only if all the allowed transfers are in use.
 	 * @return true if this router is transferring something
 	 */
 	public boolean isTransferring() {
-		if (this.sendingConnections.size() > 0) {
+		if (this.sendingConnections.size() >= this.concurrentTransfers) {
 			return true; // sending something
 		}
 		
@@ -500,11 +747,15 @@ public abstract class ActiveRouter extends MessageRouter {
 			return false; // not connected
 		}
 		
+		int busy = 0;
 		List<Connection> connections = getConnections();
 		for (int i=0, n=connections.size(); i<n; i++) {
 			Connection con = connections.get(i);
 			if (!con.isReadyForTransfer()) {
-				return true;	// a connection isn't ready for new transfer
+				busy++;	// a connection isn't ready for new transfer
+				if (busy >= this.concurrentTransfers) {
+					return true;
+				}
 			}
 		}
 		
@@ -532,7 +783,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	/**
 	 * Checks out all sending connections to finalize the ready ones 
 	 * and abort those whose connection went down. Also drops messages
-	 * whose TTL <= 0 (checking every one simulated minute).
+	 * whose TTL <= 0 (checking every one simulated minute or, if
+	 * {@link World#EXACT_TTL_DROPS_S} is enabled, whenever some message
+	 * has expired).
 	 * @see #addToSendingConnections(Connection)
 	 */
 	@Override
@@ -540,8 +793,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		
 		super.update();
 		
-		/* in theory we can have multiple sending connections even though
-		  currently all routers allow only one concurrent sending connection */
+		/* there can be multiple sending connections if the router allows
+		  concurrent transfers */
 		for (int i=0; i<this.sendingConnections.size(); ) {
 			boolean removeCurrent = false;
 			Connection con = sendingConnections.get(i);
@@ -549,6 +802,12 @@ public abstract class ActiveRouter extends MessageRouter {
 			/* finalize ready transfers */
 			if (con.isMessageTransferred()) {
 				if (con.getMessage() != null) {
+					if (this.peerSummaries != null) {
+						SummaryVector summary = this.peerSummaries.get(con);
+						if (summary != null) { // the other host has it now
+							summary.add(con.getMessage().getIdHandle());
+						}
+					}
 					transferDone(con);
 					con.finalizeTransfer();
 				} /* else: some other entity aborted transfer */
@@ -576,13 +835,70 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
+		/* forget the summary vectors of the connections that are down */
+		if (this.peerSummaries != null && !this.peerSummaries.isEmpty()) {
+			for (Iterator<Connection> i = this.peerSummaries.keySet().
+					iterator(); i.hasNext();) {
+				if (!i.next().isUp()) {
+					i.remove();
+				}
+			}
+		}
+		
+		if (this.exactTtlDrops) {
+			if (SimClock.getTime() >= this.nextExpiry) {
+				dropExpiredMessages();
+			}
+		}
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
+		else if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
 		}
 	}
+
+	/**
+	 * Returns the time when the next sending transfer is done or, if
+	 * nothing is being sent, the time of the next TTL check (if there are
+	 * messages to check). With exact TTL drops, the next expiry time is
+	 * returned also while sending unless the only expired messages are
+	 * the ones being sent.
+	 */
+	@Override
+	public double getNextActivityTime() {
+		double next = super.getNextActivityTime();
+
+		for (Connection con : this.sendingConnections) {
+			if (con.getMessage() == null || !con.isUp()) {
+				return SimClock.getTime(); // needs to be removed
+			}
+			next = Math.min(next, con.getTransferDoneTime());
+		}
+		
+		if (this.peerSummaries != null) {
+			/* transfers can start when the summary vectors are received */
+			for (SummaryVector summary : this.peerSummaries.values()) {
+				if (summary.getReceiveTime() > SimClock.getTime()) {
+					next = Math.min(next, summary.getReceiveTime());
+				}
+			}
+		}
+
+		if (this.exactTtlDrops) {
+			if (this.sendingConnections.size() == 0 ||
+					this.nextExpiry > SimClock.getTime()) {
+				next = Math.min(next, this.nextExpiry);
+			}
+		}
+		else if (this.sendingConnections.size() == 0 &&
+				this.getNrofMessages() > 0 &&
+				this.nextExpiry < Double.MAX_VALUE) {
+			next = Math.min(next, this.lastTtlCheck + TTL_CHECK_INTERVAL);
+		}
+
+		return next;
+	}
 	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
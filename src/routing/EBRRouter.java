@@ -10,9 +10,6 @@
 
 package routing;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -21,6 +18,7 @@ import java.util.HashSet;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageListener;
 import core.Settings;
 import core.SimClock;
 import core.Tuple;
@@ -52,6 +50,8 @@ public class EBRRouter extends ActiveRouter {
 
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
+	/** the message-connection tuples that could be forwarded */
+	private ForwardingCandidates candidates;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -80,6 +80,13 @@ public class EBRRouter extends ActiveRouter {
 		this.windowCounter = r.windowCounter;
 	}
 
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		this.candidates = new ForwardingCandidates(this,
+				new EBRForwardingPolicy(), new TupleComparator());
+	}
+
 	@Override
 	public int receiveMessage(Message m, DTNHost from) {
 		return super.receiveMessage(m, from);
@@ -129,6 +136,7 @@ public class EBRRouter extends ActiveRouter {
 		msg.setTtl(this.msgTtl);
 		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
 		addToMessages(msg, true);				
+		candidates.messageAdded(msg);
 		return true;
 	}
 
@@ -137,7 +145,11 @@ public class EBRRouter extends ActiveRouter {
 		super.update();
 		// Update popularity counter if need be
 		if (SimClock.getTime() >= timeToUpdate) {
+			double oldEV = EV;
 			EV = alpha * windowCounter + (1-alpha) * EV;
+			if (EV != oldEV) {
+				candidates.stateChanged(); // popularity affects forwarding
+			}
 			windowCounter = 0;
 			timeToUpdate = SimClock.getTime() + updateInterval;
 		}
@@ -156,52 +168,56 @@ public class EBRRouter extends ActiveRouter {
 	}
 
 	private Tuple<Message, Connection> tryOtherMessages() {
+		// the sorted tuples are built again only when the popularities or
+		// the numbers of copies change
 		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
-
-		Collection<Message> msgCollection = getMessageCollection();
-
-		// for all connected hosts collect all messages that have a higher
-		// probability of delivery by the other host
-		for (Connection con : getConnections()) {
-			DTNHost other = con.getOtherNode(getHost());
-			EBRRouter othRouter = (EBRRouter)other.getRouter();
-
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
-
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
-
-				/** Assume our popularity is x and the other router's
-				 *  popularity is y.  Let n be the number of copies of
-				 *  the message we have.  Then we want to transfer
-				 *  floor( y/x+y  *  n) messages to the other router
-				 */;
-				 double y = othRouter.getEV();
-				 double x = this.getEV();
-				 int n = ((Integer)m.getProperty(MSG_COUNT_PROPERTY)).intValue();
-
-				 /** The other nodes popularity is high enough to send message */
-				 if (Math.floor((y*n)/(x+y)) > 1) {
-					 messages.add(new Tuple<Message, Connection>(m,con));
-				 }
-
-			}			
-		}
+			candidates.getCandidates();
 
 		if (messages.size() == 0) {
 			return null;
 		}
 
-		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
 		return tryMessagesForConnected(messages);	// try to send messages
 	}
 	
+	/**
+	 * Forwarding policy that selects the messages whose copies should be
+	 * shared with the other host
+	 */
+	private class EBRForwardingPolicy implements ForwardingCandidates.Policy {
+
+		public boolean isCandidate(Message m, Connection con) {
+			EBRRouter othRouter = 
+				(EBRRouter)con.getOtherNode(getHost()).getRouter();
+
+			/** Assume our popularity is x and the other router's
+			 *  popularity is y.  Let n be the number of copies of
+			 *  the message we have.  Then we want to transfer
+			 *  floor( y/x+y  *  n) messages to the other router
+			 */
+			double y = othRouter.getEV();
+			double x = getEV();
+			int n = ((Integer)m.getProperty(MSG_COUNT_PROPERTY)).intValue();
+
+			/** The other nodes popularity is high enough to send message */
+			return Math.floor((y*n)/(x+y)) > 1;
+		}
+
+		public boolean canTryNow(Message m, Connection con) {
+			EBRRouter othRouter = 
+				(EBRRouter)con.getOtherNode(getHost()).getRouter();
+			// skip hosts that are transferring and messages that the other
+			// one has
+			return !othRouter.isTransferring() &&
+				!peerHasMessage(m, con);
+		}
+
+		public int getPeerVersion(Connection con) {
+			return ((EBRRouter)con.getOtherNode(getHost()).getRouter()).
+				candidates.getVersion();
+		}
+	}
+	
 	/**
 	 * Comparator for Message-Connection-Tuples that orders the tuples by
 	 * their connection's popularity
@@ -263,6 +279,7 @@ public class EBRRouter extends ActiveRouter {
 		// Transfered floor( y/(x+y) * n), and kept rest for self
 		int newCount = n - (int)Math.floor((y*n)/(x+y));
 		msg.updateProperty(MSG_COUNT_PROPERTY, new Integer(newCount));
+		candidates.stateChanged(); // number of copies affects forwarding
 
 	}
 
@@ -287,6 +304,7 @@ public class EBRRouter extends ActiveRouter {
 		// "from" transfered floor( y/(x+y) * n) to self
 		int newCount = (int)Math.floor((y*n)/(x+y));
 		msg.updateProperty(MSG_COUNT_PROPERTY, new Integer(newCount));
+		candidates.messageAdded(msg);
 
 		return msg;
 	}
@@ -0,0 +1,243 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+
+/**
+ * <P>Encounter history of a router: the last time each host was seen, the
+ * number of meetings with each host and the mean inter-meeting time with
+ * each host. The values are stored in arrays that are indexed by the host
+ * addresses.</P>
+ *
+ * <P>Every change of a last seen time increments the version of the history
+ * and is recorded to a ring buffer of the latest changes, so another router
+ * that has read the history before can read only the hosts that have
+ * changed since that (see {@link #getChangedSince(int)}).</P>
+ */
+public class EncounterHistory {
+	/** initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+	/** how many of the latest changes are kept */
+	private static final int LOG_SIZE = 256;
+
+	/** the last seen times (indexed by address) */
+	private double[] lastSeen;
+	/** number of meetings (indexed by address) */
+	private int[] meetings;
+	/** mean inter-meeting times (indexed by address) */
+	private double[] meanIMT;
+	/** total number of meetings when the host was last met
+	 * (indexed by address) */
+	private int[] meetingIndex;
+	/** hosts of the history (indexed by address; null for unknown hosts) */
+	private DTNHost[] hosts;
+	/** addresses of the known hosts in the order they became known */
+	private int[] known;
+	/** number of known hosts */
+	private int size;
+	/** total number of meetings with all the hosts */
+	private int nrofMeetings;
+
+	/** addresses of the latest changes (ring buffer) */
+	private int[] changeLog;
+	/** number of changes so far */
+	private int version;
+
+	/**
+	 * Creates a new empty encounter history
+	 */
+	public EncounterHistory() {
+		this.lastSeen = new double[INIT_SIZE];
+		this.meetings = new int[INIT_SIZE];
+		this.meanIMT = new double[INIT_SIZE];
+		this.meetingIndex = new int[INIT_SIZE];
+		this.hosts = new DTNHost[INIT_SIZE];
+		this.known = new int[INIT_SIZE];
+		this.changeLog = new int[LOG_SIZE];
+		this.size = 0;
+		this.nrofMeetings = 0;
+		this.version = 0;
+	}
+
+	/**
+	 * Records a meeting with a host: updates the number of meetings, the
+	 * mean inter-meeting time and the last seen time of the host
+	 * @param host The met host
+	 * @param time The time of the meeting
+	 */
+	public void meet(DTNHost host, double time) {
+		int address = host.getAddress();
+		boolean met = meetings(address) > 0;
+		double previous = met ? this.lastSeen[address] : 0;
+
+		setLastSeenTime(host, time);
+		int n = ++this.meetings[address];
+		if (met) {
+			this.meanIMT[address] = ((n - 2.0) / (n - 1.0)) *
+				this.meanIMT[address] + (1 / (n - 1.0)) * (time - previous);
+		}
+		this.meetingIndex[address] = ++this.nrofMeetings;
+	}
+
+	/**
+	 * Sets the last seen time of a host without counting it as a meeting
+	 * (e.g., when a connection goes down or when the time is estimated from
+	 * other hosts' histories)
+	 * @param host The host
+	 * @param time The last seen time
+	 */
+	public void setLastSeenTime(DTNHost host, double time) {
+		int address = host.getAddress();
+		ensureSize(address);
+		if (this.hosts[address] == null) {
+			this.hosts[address] = host;
+			this.known[this.size++] = address;
+		}
+		this.lastSeen[address] = time;
+		this.changeLog[this.version % LOG_SIZE] = address;
+		this.version++;
+	}
+
+	/**
+	 * Returns true if the history has a last seen time for the host
+	 * @param host The host
+	 * @return true if the host is known
+	 */
+	public boolean isKnown(DTNHost host) {
+		int address = host.getAddress();
+		return address < this.hosts.length && this.hosts[address] != null;
+	}
+
+	/**
+	 * Returns the last seen time of a host
+	 * @param host The host
+	 * @return The last seen time or 0 if the host is not known
+	 */
+	public double getLastSeenTime(DTNHost host) {
+		return isKnown(host) ? this.lastSeen[host.getAddress()] : 0;
+	}
+
+	/**
+	 * Returns the number of meetings with a host
+	 * @param host The host
+	 * @return The number of meetings
+	 */
+	public int getNrofMeetings(DTNHost host) {
+		return meetings(host.getAddress());
+	}
+
+	/**
+	 * Returns the mean time between the meetings with a host
+	 * @param host The host
+	 * @return The mean inter-meeting time or 0 if the host has been met less
+	 * than twice
+	 */
+	public double getMeanInterMeetingTime(DTNHost host) {
+		return meetings(host.getAddress()) > 1 ?
+				this.meanIMT[host.getAddress()] : 0;
+	}
+
+	/**
+	 * Returns the number of meetings with any host since the last meeting
+	 * with the given host
+	 * @param host The host
+	 * @return The number of meetings since the last meeting with the host or
+	 * -1 if the host hasn't been met
+	 */
+	public int getMeetingsSince(DTNHost host) {
+		if (meetings(host.getAddress()) == 0) {
+			return -1;
+		}
+		return this.nrofMeetings - this.meetingIndex[host.getAddress()];
+	}
+
+	/**
+	 * Returns the number of known hosts
+	 * @return the number of known hosts
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the i:th known host. The hosts are in the order they became
+	 * known.
+	 * @param i Index of the host (0 -- {@link #size()}-1)
+	 * @return The host
+	 */
+	public DTNHost getHostAt(int i) {
+		return this.hosts[this.known[i]];
+	}
+
+	/**
+	 * Returns the version of the history. The version changes every time
+	 * a last seen time changes.
+	 * @return The version
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the hosts whose last seen time has changed since the given
+	 * version. Every host is included only once, in the order of their first
+	 * change since the version.
+	 * @param version The version of the history when it was last read
+	 * @return The changed hosts or null if the changes since the version are
+	 * not known anymore (and the whole history should be read)
+	 */
+	public DTNHost[] getChangedSince(int version) {
+		int nrofChanges = this.version - version;
+		if (nrofChanges < 0 || nrofChanges > LOG_SIZE) {
+			return null;
+		}
+
+		boolean[] included = new boolean[this.hosts.length];
+		DTNHost[] changed = new DTNHost[nrofChanges];
+		int nrofChanged = 0;
+		for (int i = 0; i < nrofChanges; i++) {
+			int address = this.changeLog[(version + i) % LOG_SIZE];
+			if (!included[address]) {
+				included[address] = true;
+				changed[nrofChanged++] = this.hosts[address];
+			}
+		}
+		return nrofChanged == nrofChanges ? changed :
+			Arrays.copyOf(changed, nrofChanged);
+	}
+
+	/**
+	 * Returns the number of meetings with the host of an address
+	 * @param address The address
+	 * @return The number of meetings
+	 */
+	private int meetings(int address) {
+		return address < this.meetings.length ? this.meetings[address] : 0;
+	}
+
+	/**
+	 * Makes sure that the arrays can hold the given address
+	 * @param address The address
+	 */
+	private void ensureSize(int address) {
+		if (address < this.lastSeen.length) {
+			return;
+		}
+
+		int newSize = this.lastSeen.length;
+		while (newSize <= address) {
+			newSize *= 2;
+		}
+		this.lastSeen = Arrays.copyOf(this.lastSeen, newSize);
+		this.meetings = Arrays.copyOf(this.meetings, newSize);
+		this.meanIMT = Arrays.copyOf(this.meanIMT, newSize);
+		this.meetingIndex = Arrays.copyOf(this.meetingIndex, newSize);
+		this.hosts = Arrays.copyOf(this.hosts, newSize);
+		this.known = Arrays.copyOf(this.known, newSize);
+	}
+}
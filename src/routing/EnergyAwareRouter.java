@@ -42,7 +42,6 @@ public class EnergyAwareRouter extends ActiveRouter
 	private double lastUpdate;
 	private double scanInterval;	
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -80,14 +79,19 @@ public class EnergyAwareRouter extends ActiveRouter
 	 * @param range The min and max values of the range, or if only one value
 	 * is given, that is used as the energy level
 	 */
-	protected void setEnergy(double range[]) {
+	protected void setEnergy(final double range[]) {
 		if (range.length == 1) {
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
-			}
+			/* one generator per run, seeded by the first range */
+			Random rng = RunContext.current().getState(
+					EnergyAwareRouter.class, 
+					new RunContext.StateFactory<Random>() {
+				public Random create() {
+					return new Random((int)(range[0] + range[1]));
+				}
+			});
 			this.currentEnergy = range[0] + 
 				rng.nextDouble() * (range[1] - range[0]);
 		}
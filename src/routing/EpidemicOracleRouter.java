@@ -1,31 +1,51 @@
-/* 
- * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
- */
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
 package routing;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
 import core.*;
 
-/**
+/**
  * <P>
- * Epidemic message router with an oracle that tells when a message is delivered
- * and that message is then removed from all nodes that use this routing module.
- * This router also <B>ignores message size and all messages are delivered 
- * immediately</B>.</P><P>
+ * Epidemic message router with an oracle that tells when a message is delivered
+ * and that message is then removed from all nodes that use this routing module.
+ * This router also <B>ignores message size and all messages are delivered 
+ * immediately</B>.</P><P>
+ * The oracle keeps a registry of the delivered messages and an index of the
+ * routers holding a copy of each message, so a delivery removes the message
+ * only from the routers that have it. With the lazy removal setting, the
+ * delivered messages are not removed at the delivery time but the next time
+ * the holding router is used (a connection changes or it receives a
+ * message).</P><P>
  * <B>Note:</B> This router module also bypasses ActiveRouter.update()
  */
 public class EpidemicOracleRouter extends ActiveRouter {
-	
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
-
-	static {
-		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
-		reset();
-	}
+	/** Epidemic oracle router's setting namespace ({@value})*/ 
+	public static final String EPIDEMIC_ORACLE_NS = "EpidemicOracleRouter";
+	/**
+	 * Lazy removal -setting id ({@value}). Boolean valued.
+	 * If true, delivered messages are removed from the other routers only
+	 * when the routers are used the next time. Default = false.
+	 */
+	public static final String LAZY_REMOVAL_S = "lazyRemoval";
+
+	/** should delivered messages be removed lazily */
+	private boolean lazyRemoval;
+	/** position of this router in the oracle's router list */
+	private int index;
+	/** number of delivered messages when this router was last purged */
+	private int purgedDeliveries;
+	
+	static {
+		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
+		reset();
+	}
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -34,6 +54,13 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	public EpidemicOracleRouter(Settings s) {
 		super(s);		
+		Settings oracleSettings = new Settings(EPIDEMIC_ORACLE_NS);
+		if (oracleSettings.contains(LAZY_REMOVAL_S)) {
+			this.lazyRemoval = oracleSettings.getBoolean(LAZY_REMOVAL_S);
+		}
+		else {
+			this.lazyRemoval = false;
+		}
 	}
 	
 	/**
@@ -41,139 +68,299 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * @param r The router prototype where setting values are copied from
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
-		super(r);
-		allRouters.add(this);
-	}
-	
-	@Override
-	public void changedConnection(Connection con) {
-		if (con.isUp()) {
-			DTNHost peer = con.getOtherNode(getHost());
-			List<Message> newMessages = new ArrayList<Message>();
-			
-			for (Message m : peer.getMessageCollection()) {
-				if (!this.hasMessage(m.getId())) {
-					newMessages.add(m);
-				}
-			}
-			for (Message m : newMessages) {
-				/* try to start transfer from peer */
-				if (con.startTransfer(peer, m) == RCV_OK) {
-					con.finalizeTransfer(); /* and finalize it right away */
-				}
-			}
-		}
-	}
-
-	private void sendMessageToConnected(Message m) {
-		DTNHost host = getHost();
-		
-		for (Connection c : getConnections()) {
-			if (c.isReadyForTransfer() && c.startTransfer(host, m) == RCV_OK) {
-				c.finalizeTransfer(); /* and finalize it right away */
-			}			
-		}
-	}
-		
-	public boolean createNewMessage(Message m) {
-		boolean ok = super.createNewMessage(m);
-		
-		if (!ok) {
-			throw new SimError("Can't create message " + m);
-		}
-
-		sendMessageToConnected(m);
-		
-		return true;
-	}
-	
-	/**
-	 * Removes the message with the given ID from this router, if the router
-	 * has that message; otherwise does nothing. If the router was transferring
-	 * the message, the transfer is aborted.
-	 * @param id ID of the message to be removed
-	 */
-	public void removeDeliveredMessage(String id) {
-		if (this.hasMessage(id)) {
-			for (Connection c : this.sendingConnections) {
-				/* if sending the message-to-be-removed, cancel transfer */
-				if (c.getMessage().getId().equals(id)) {
-					c.abortTransfer();
-				}
-			}
-			this.deleteMessage(id, false);			
-		}
-	}
-	
-	@Override
-	public Message messageTransferred(String id, DTNHost from) {
-		Message m = super.messageTransferred(id, from);
-
-		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
-				if (r != this && r != from.getRouter()) {
-					r.removeDeliveredMessage(id);
-				}
-			}
-		} else {
-			sendMessageToConnected(m);
-		}
-		
-		return m;
-	}
-	
-	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) || 
-				isDeliveredMessage(m) ){
-			return DENIED_OLD; // already seen this message -> reject it
-		}
-		
-		if (m.getTtl() <= 0 && m.getTo() != getHost()) {
-			/* TTL has expired and this host is not the final recipient */
-			return DENIED_TTL; 
-		}
-
-		/* remove oldest messages but not the ones being sent */
-		if (!makeRoomForMessage(m.getSize())) {
-			return DENIED_NO_SPACE; // couldn't fit into buffer -> reject
-		}
-		
-		return RCV_OK;
-	}
-	
-	@Override
-	protected void transferDone(Connection con) {
-		Message m = con.getMessage();
-		
-		if (m == null) {
-			core.Debug.p("Null message for con " + con);
-			return;
-		}
-		
-		/* was the message delivered to the final recipient? */
-		if (m.getTo() == con.getOtherNode(getHost())) { 
-			this.deleteMessage(m.getId(), false);
-		}
-	}
+		super(r);
+		this.lazyRemoval = r.lazyRemoval;
+		Oracle oracle = getOracle();
+		this.index = oracle.routers.size();
+		this.purgedDeliveries = 0;
+		oracle.routers.add(this);
+	}
+	
+	@Override
+	public void changedConnection(Connection con) {
+		if (con.isUp()) {
+			DTNHost peer = con.getOtherNode(getHost());
+			List<Message> newMessages = new ArrayList<Message>();
+			Oracle oracle = getOracle();
+
+			purgeDelivered();
+			if (peer.getRouter() instanceof EpidemicOracleRouter) {
+				((EpidemicOracleRouter)peer.getRouter()).purgeDelivered();
+			}
+			
+			for (Message m : peer.getMessageCollection()) {
+				if (!this.hasMessage(m.getIdHandle()) &&
+						!(lazyRemoval && oracle.isDelivered(m.getIdHandle()))) {
+					newMessages.add(m);
+				}
+			}
+			for (Message m : newMessages) {
+				/* try to start transfer from peer */
+				if (con.startTransfer(peer, m) == RCV_OK) {
+					con.finalizeTransfer(); /* and finalize it right away */
+				}
+			}
+		}
+	}
+
+	private void sendMessageToConnected(Message m) {
+		DTNHost host = getHost();
+		
+		for (Connection c : getConnections()) {
+			if (c.isReadyForTransfer() && c.startTransfer(host, m) == RCV_OK) {
+				c.finalizeTransfer(); /* and finalize it right away */
+			}			
+		}
+	}
+		
+	public boolean createNewMessage(Message m) {
+		boolean ok = super.createNewMessage(m);
+		
+		if (!ok) {
+			throw new SimError("Can't create message " + m);
+		}
+
+		sendMessageToConnected(m);
+		
+		return true;
+	}
+	
+	/**
+	 * Removes the message with the given ID from this router, if the router
+	 * has that message; otherwise does nothing. If the router was transferring
+	 * the message, the transfer is aborted.
+	 * @param id ID of the message to be removed
+	 */
+	public void removeDeliveredMessage(String id) {
+		if (this.hasMessage(id)) {
+			for (Connection c : this.sendingConnections) {
+				/* if sending the message-to-be-removed, cancel transfer */
+				if (c.getMessage().getId().equals(id)) {
+					c.abortTransfer();
+				}
+			}
+			this.deleteMessage(id, false);			
+		}
+	}
+	
+	/**
+	 * Removes the messages that have been delivered since the previous
+	 * purge from this router (only if lazy removal is used)
+	 */
+	private void purgeDelivered() {
+		Oracle oracle = getOracle();
+		if (!this.lazyRemoval || this.purgedDeliveries == oracle.nrofDelivered) {
+			return; // nothing new delivered
+		}
+		this.purgedDeliveries = oracle.nrofDelivered;
+
+		List<String> delivered = new ArrayList<String>();
+		for (Message m : getMessageCollection()) {
+			if (oracle.isDelivered(m.getIdHandle())) {
+				delivered.add(m.getId());
+			}
+		}
+		for (String id : delivered) {
+			removeDeliveredMessage(id);
+		}
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		boolean isNew = !hasMessage(m.getIdHandle());
+		super.addToMessages(m, newMessage);
+		if (isNew && !this.lazyRemoval) {
+			getOracle().addHolder(m.getIdHandle(), this);
+		}
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null && !this.lazyRemoval) {
+			getOracle().removeHolder(m.getIdHandle(), this);
+		}
+		return m;
+	}
+	
+	@Override
+	public Message messageTransferred(String id, DTNHost from) {
+		Message m = super.messageTransferred(id, from);
+
+		if (m.getTo() == this.getHost()) {
+			Oracle oracle = getOracle();
+			boolean first = oracle.setDelivered(m.getIdHandle());
+			if (first && !this.lazyRemoval) {
+				BitSet holders = oracle.removeHolders(m.getIdHandle());
+				for (int i = holders.nextSetBit(0); i >= 0;
+						i = holders.nextSetBit(i + 1)) {
+					EpidemicOracleRouter r = oracle.routers.get(i);
+					if (r != this && r != from.getRouter()) {
+						r.removeDeliveredMessage(id);
+					}
+				}
+			}
+		} else {
+			sendMessageToConnected(m);
+		}
+		
+		return m;
+	}
+	
+	protected int checkReceiving(Message m) {
+		int idHandle = m.getIdHandle();
+		if ( isIncomingMessage(idHandle) || hasMessage(idHandle) || 
+				isDeliveredMessage(m) ){
+			return DENIED_OLD; // already seen this message -> reject it
+		}
+
+		if (lazyRemoval && getOracle().isDelivered(idHandle)) {
+			return DENIED_OLD; // delivered to the final recipient already
+		}
+		purgeDelivered();
+		
+		if (m.getTtl() <= 0 && m.getTo() != getHost()) {
+			/* TTL has expired and this host is not the final recipient */
+			return DENIED_TTL; 
+		}
+
+		/* remove oldest messages but not the ones being sent */
+		if (!makeRoomForMessage(m.getSize())) {
+			return DENIED_NO_SPACE; // couldn't fit into buffer -> reject
+		}
+		
+		return RCV_OK;
+	}
+	
+	@Override
+	protected void transferDone(Connection con) {
+		Message m = con.getMessage();
+		
+		if (m == null) {
+			core.Debug.p("Null message for con " + con);
+			return;
+		}
+		
+		/* was the message delivered to the final recipient? */
+		if (m.getTo() == con.getOtherNode(getHost())) { 
+			this.deleteMessage(m.getId(), false);
+		}
+	}
 	
 	@Override
 	public void update() {
-		/* nothing to do; all transfers are started only when new connections
-		   are created or new messages are created or received, and transfers
-		   are finalized immediately */
+		/* nothing to do; all transfers are started only when new connections
+		   are created or new messages are created or received, and transfers
+		   are finalized immediately */
 	}
 	
 	
 	@Override
 	public EpidemicOracleRouter replicate() {
 		return new EpidemicOracleRouter(this);
-	}
-	
-	/**
-	 * Resets the static router list
-	 */
-	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+	}
+	
+	/**
+	 * Resets the static oracle
+	 */
+	public static void reset() {
+		RunContext.current().removeState(EpidemicOracleRouter.class);
+	}
+
+	/**
+	 * Returns the oracle of all routers in this node group in the current run
+	 */
+	private static Oracle getOracle() {
+		return RunContext.current().getState(EpidemicOracleRouter.class,
+				new RunContext.StateFactory<Oracle>() {
+			public Oracle create() {
+				return new Oracle();
+			}
+		});
+	}
+
+	/**
+	 * The oracle: the routers, the delivered messages and the routers
+	 * holding each message (by message ID handles)
+	 */
+	private static class Oracle {
+		/** all the routers in the order they were created */
+		private List<EpidemicOracleRouter> routers =
+			new ArrayList<EpidemicOracleRouter>();
+		/** ID handles of the delivered messages */
+		private BitSet delivered = new BitSet();
+		/** number of delivered messages */
+		private int nrofDelivered = 0;
+		/** indexes of the routers holding a copy of a message */
+		private HashMap<Integer, BitSet> holders = new HashMap<Integer, BitSet>();
+
+		/**
+		 * Marks a message delivered
+		 * @param idHandle ID handle of the message
+		 * @return true if the message was not delivered before
+		 */
+		public boolean setDelivered(int idHandle) {
+			if (this.delivered.get(idHandle)) {
+				return false;
+			}
+			this.delivered.set(idHandle);
+			this.nrofDelivered++;
+			return true;
+		}
+
+		/**
+		 * Returns true if a message has been delivered
+		 * @param idHandle ID handle of the message
+		 * @return true if the message has been delivered
+		 */
+		public boolean isDelivered(int idHandle) {
+			return this.delivered.get(idHandle);
+		}
+
+		/**
+		 * Marks a router holding a copy of a message
+		 * @param idHandle ID handle of the message
+		 * @param r The router
+		 */
+		public void addHolder(int idHandle, EpidemicOracleRouter r) {
+			BitSet set = this.holders.get(idHandle);
+			if (set == null) {
+				set = new BitSet();
+				this.holders.put(idHandle, set);
+			}
+			set.set(r.index);
+		}
+
+		/**
+		 * Marks a router not holding a copy of a message anymore. Does
+		 * nothing if the holders of the message were already removed.
+		 * @param idHandle ID handle of the message
+		 * @param r The router
+		 */
+		public void removeHolder(int idHandle, EpidemicOracleRouter r) {
+			BitSet set = this.holders.get(idHandle);
+			if (set == null) {
+				return;
+			}
+			set.clear(r.index);
+			if (set.isEmpty()) {
+				this.holders.remove(idHandle);
+			}
+		}
+
+		/**
+		 * Removes and returns the indexes of the routers holding a copy of
+		 * a message. The indexes are in the order the routers were created.
+		 * @param idHandle ID handle of the message
+		 * @return the indexes of the routers holding the message
+		 */
+		public BitSet removeHolders(int idHandle) {
+			BitSet set = this.holders.remove(idHandle);
+			if (set == null) {
+				return new BitSet(0);
+			}
+			return set;
+		}
 	}
 
 }
\ No newline at end of file
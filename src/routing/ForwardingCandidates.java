@@ -0,0 +1,294 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import core.Connection;
+import core.Message;
+import core.Tuple;
+
+/**
+ * <P>Sorted list of the message-connection tuples that a router would like
+ * to forward. Instead of collecting and sorting the tuples of all the
+ * buffered messages for all the connections on every update, the list is
+ * built once and then kept up to date:</P>
+ * <UL>
+ * <LI>When the router's own routing state changes, the router calls
+ * {@link #stateChanged()} and the whole list is built again.</LI>
+ * <LI>When a connection comes up or the routing state of the host on the
+ * other end of a connection changes (see
+ * {@link Policy#getPeerVersion(Connection)}), only the tuples of that
+ * connection are built again.</LI>
+ * <LI>New messages are inserted to their places in the list
+ * ({@link #messageAdded(Message)}).</LI>
+ * <LI>Tuples of removed messages and connections that went down are removed
+ * from the list when the candidates are requested the next time.</LI>
+ * <LI>When only the order of the tuples changes (e.g., a parameter of the
+ * comparator), the router calls {@link #orderChanged()} and the tuples
+ * in the list are sorted again.</LI>
+ * </UL>
+ * <P>The order of the tuples must not change between the state changes;
+ * e.g., if all the values that the comparator uses age at the same rate,
+ * aging doesn't require building the list again.</P>
+ */
+public class ForwardingCandidates {
+	/** the router whose messages are forwarded */
+	private ActiveRouter router;
+	/** decides which tuples are candidates */
+	private Policy policy;
+	/** the order of the tuples */
+	private Comparator<Tuple<Message, Connection>> comparator;
+	/** the candidate tuples in order */
+	private List<Tuple<Message, Connection>> tuples;
+	/** peer versions of the connections whose tuples are in the list */
+	private Map<Connection, Integer> peerVersions;
+	/** is the list up to date with the router's own state */
+	private boolean valid;
+	/** is the list in the order of the comparator */
+	private boolean sorted;
+	/** version of the routing state of the router (see {@link #getVersion()})*/
+	private int version;
+
+	/**
+	 * Interface for the routers' forwarding policies
+	 */
+	public interface Policy {
+		/**
+		 * Returns true if the message should be forwarded using the
+		 * connection. Called when the tuples are built so the result should
+		 * only depend on the routing state of the hosts and the message.
+		 * @param m The message
+		 * @param con The connection
+		 * @return true if the tuple is a candidate
+		 */
+		public boolean isCandidate(Message m, Connection con);
+
+		/**
+		 * Returns true if a candidate tuple can be tried right now (e.g.,
+		 * the other host doesn't have the message already and isn't
+		 * transferring)
+		 * @param m The message
+		 * @param con The connection
+		 * @return true if the tuple can be tried
+		 */
+		public boolean canTryNow(Message m, Connection con);
+
+		/**
+		 * Returns the version of the routing state of the host in the other
+		 * end of the connection. If the version changes, the tuples of the
+		 * connection are built again.
+		 * @param con The connection
+		 * @return The version (or a constant if the tuples don't depend on
+		 * the other host's state)
+		 */
+		public int getPeerVersion(Connection con);
+	}
+
+	/**
+	 * Creates a new candidate list
+	 * @param router The router whose messages are forwarded
+	 * @param policy The policy that decides which tuples are candidates
+	 * @param comparator The comparator that defines the order of the tuples
+	 */
+	public ForwardingCandidates(ActiveRouter router, Policy policy,
+			Comparator<Tuple<Message, Connection>> comparator) {
+		this.router = router;
+		this.policy = policy;
+		this.comparator = comparator;
+		this.tuples = new ArrayList<Tuple<Message, Connection>>();
+		this.peerVersions = new HashMap<Connection, Integer>();
+		this.valid = false;
+		this.sorted = false;
+		this.version = 0;
+	}
+
+	/**
+	 * Tells the list that the routing state of the router has changed. The
+	 * list is built again when the candidates are requested the next time.
+	 */
+	public void stateChanged() {
+		this.valid = false;
+		this.version++;
+	}
+
+	/**
+	 * Tells the list that the order of the tuples has changed but the
+	 * tuples themselves haven't (e.g., a parameter of the comparator has
+	 * changed). The tuples are sorted again when the candidates are
+	 * requested the next time.
+	 */
+	public void orderChanged() {
+		this.sorted = false;
+	}
+
+	/**
+	 * Returns the version of the routing state of the router. The version
+	 * changes every time {@link #stateChanged()} is called so other routers
+	 * can use it as the peer version of their connections to this router.
+	 * @return The version of the routing state
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Inserts the tuples of a new message to the list
+	 * @param m The message that was added to the router's buffer
+	 */
+	public void messageAdded(Message m) {
+		if (!this.valid) {
+			return; // the message is included when the list is built
+		}
+
+		for (Connection con : this.router.getConnections()) {
+			if (!this.peerVersions.containsKey(con) ||
+					!policy.isCandidate(m, con)) {
+				continue; // new connections are handled when they're checked
+			}
+			Tuple<Message, Connection> t = new Tuple<Message, Connection>(m,con);
+			if (!this.sorted) {
+				this.tuples.add(t); // put to its place when the list is sorted
+				continue;
+			}
+			int pos = Collections.binarySearch(this.tuples, t, this.comparator);
+			if (pos < 0) {
+				pos = -(pos + 1);
+			}
+			/* after all the equal tuples */
+			while (pos < this.tuples.size() &&
+					comparator.compare(this.tuples.get(pos), t) <= 0) {
+				pos++;
+			}
+			this.tuples.add(pos, t);
+		}
+	}
+
+	/**
+	 * Returns the candidate tuples that can be tried now in order. Stale
+	 * parts of the list are built again first.
+	 * @return The candidate tuples that can be tried now
+	 */
+	public List<Tuple<Message, Connection>> getCandidates() {
+		if (!this.valid) {
+			build();
+		}
+		else {
+			if (!this.sorted) {
+				Collections.sort(this.tuples, this.comparator);
+				this.sorted = true;
+			}
+			checkConnections();
+		}
+
+		List<Tuple<Message, Connection>> candidates =
+			new ArrayList<Tuple<Message, Connection>>();
+		int kept = 0;
+		for (int i = 0, n = this.tuples.size(); i < n; i++) {
+			Tuple<Message, Connection> t = this.tuples.get(i);
+			Message m = t.getKey();
+			Connection con = t.getValue();
+			if (!con.isUp() || router.getMessage(m.getIdHandle()) != m) {
+				continue; // message is not in the buffer or connection is down
+			}
+			this.tuples.set(kept++, t);
+			if (policy.canTryNow(m, con)) {
+				candidates.add(t);
+			}
+		}
+		this.tuples.subList(kept, this.tuples.size()).clear();
+
+		return candidates;
+	}
+
+	/**
+	 * Builds the whole list
+	 */
+	private void build() {
+		this.tuples.clear();
+		this.peerVersions.clear();
+		for (Connection con : this.router.getConnections()) {
+			this.peerVersions.put(con, policy.getPeerVersion(con));
+			addTuplesFor(con, this.tuples);
+		}
+		Collections.sort(this.tuples, this.comparator);
+		this.valid = true;
+		this.sorted = true;
+	}
+
+	/**
+	 * Builds the tuples of the new connections and the connections whose
+	 * peer version has changed
+	 */
+	private void checkConnections() {
+		for (Iterator<Connection> i = this.peerVersions.keySet().iterator();
+				i.hasNext();) {
+			if (!i.next().isUp()) {
+				i.remove();
+			}
+		}
+
+		for (Connection con : this.router.getConnections()) {
+			Integer oldVersion = this.peerVersions.get(con);
+			int peerVersion = policy.getPeerVersion(con);
+			if (oldVersion != null && oldVersion == peerVersion) {
+				continue;
+			}
+			this.peerVersions.put(con, peerVersion);
+			rebuildConnection(con);
+		}
+	}
+
+	/**
+	 * Builds the tuples of one connection again and merges them to the list
+	 * @param con The connection
+	 */
+	private void rebuildConnection(Connection con) {
+		List<Tuple<Message, Connection>> added =
+			new ArrayList<Tuple<Message, Connection>>();
+		addTuplesFor(con, added);
+		Collections.sort(added, this.comparator);
+
+		List<Tuple<Message, Connection>> merged =
+			new ArrayList<Tuple<Message, Connection>>(
+					this.tuples.size() + added.size());
+		int j = 0;
+		for (Tuple<Message, Connection> t : this.tuples) {
+			if (t.getValue() == con) {
+				continue; // old tuple of the connection
+			}
+			while (j < added.size() &&
+					comparator.compare(added.get(j), t) < 0) {
+				merged.add(added.get(j++));
+			}
+			merged.add(t);
+		}
+		while (j < added.size()) {
+			merged.add(added.get(j++));
+		}
+		this.tuples = merged;
+	}
+
+	/**
+	 * Adds the candidate tuples of the buffered messages for a connection to
+	 * a list
+	 * @param con The connection
+	 * @param list The list where the tuples are added
+	 */
+	private void addTuplesFor(Connection con,
+			List<Tuple<Message, Connection>> list) {
+		for (Message m : this.router.getMessageCollection()) {
+			if (policy.isCandidate(m, con)) {
+				list.add(new Tuple<Message, Connection>(m, con));
+			}
+		}
+	}
+}
@@ -19,6 +19,7 @@ import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageListener;
 import core.Settings;
 import core.Tuple;
 
@@ -43,7 +44,7 @@ public class MaxPropRouter extends ActiveRouter {
 	public static final String PROB_SET_MAX_SIZE_S = "probSetMaxSize";
     /** Default value for the meeting probability set maximum size ({@value}).*/
     public static final int DEFAULT_PROB_SET_MAX_SIZE = 50;
-    private static int probSetMaxSize;
+    private int probSetMaxSize;
 
 	/** probabilities of meeting hosts */
 	private MeetingProbabilitySet probs;
@@ -54,12 +55,18 @@ public class MaxPropRouter extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** costs from the source hosts (mapped using host's network address) to
+	 * all the other hosts. This should be cleared always when the meeting
+	 * probabilities change (a host is met) */
+	private Map<Integer, double[]> costsFrom;
+	/** the message-connection tuples that could be forwarded (ordered using
+	 * {@link #candidateOrder}) */
+	private ForwardingCandidates candidates;
+	/** the order of the candidates */
+	private MaxPropTupleComparator candidateOrder;
+	/** cached value of the threshold (see {@link #calcThreshold()}) or -1
+	 * if the threshold must be calculated again */
+	private int threshold;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -108,17 +115,32 @@ public class MaxPropRouter extends ActiveRouter {
 	protected MaxPropRouter(MaxPropRouter r) {
 		super(r);
 		this.alpha = r.alpha;
+		this.probSetMaxSize = r.probSetMaxSize;
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
+		this.costsFrom = new HashMap<Integer, double[]>();
 		this.ackedMessageIds = new HashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
 
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		/* the costs are always calculated with the current meeting
+		 * probabilities of this host */
+		this.allProbs.put(host.getAddress(), this.probs);
+		this.threshold = -1;
+		this.candidateOrder = new MaxPropTupleComparator(0);
+		this.candidates = new ForwardingCandidates(this,
+				new MaxPropForwardingPolicy(), this.candidateOrder);
+	}
+
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsFrom.clear(); // invalidate old cost estimates
+			this.candidates.stateChanged(); // ...and the order of messages
 			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -183,9 +205,24 @@ public class MaxPropRouter extends ActiveRouter {
 		}
 	}
 	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		this.threshold = -1;
+		this.candidates.messageAdded(m);
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			this.threshold = -1;
+		}
+		return m;
+	}
+	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -237,6 +274,7 @@ public class MaxPropRouter extends ActiveRouter {
 		else { // no samples or all samples are zero
 			this.avgTransferredBytes = 0;
 		}
+		this.threshold = -1;
 	}
 	
 	/**
@@ -285,33 +323,25 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs from a host to all other hosts
+	 * are calculated at once and cached until the meeting probabilities
+	 * change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
-			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+		/* check if the costs from the host are cached */
+		double[] costs = this.costsFrom.get(from.getAddress());
+		if (costs == null) {
+			/* no cached costs -> calculate new costs */
+			costs = dijkstra.getAllCosts(from.getAddress());
+			this.costsFrom.put(from.getAddress(), costs);
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		if (to.getAddress() < costs.length) {
+			return costs[to.getAddress()];
 		}
 		else {
 			/* there's no known path to the given host */
@@ -321,46 +351,62 @@ public class MaxPropRouter extends ActiveRouter {
 	
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
-	 * hop counts and their delivery probability
+	 * hop counts and their delivery probability. The sorted
+	 * message-connection tuples are kept in a {@link ForwardingCandidates}
+	 * list that is built again only when a new host is met (the costs
+	 * change) and sorted again when the threshold changes.
 	 * @return The return value of {@link #tryMessagesForConnected(List)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
-	
-		Collection<Message> msgCollection = getMessageCollection();
-		
-		/* for all connected hosts that are not transferring at the moment,
-		 * collect all the messages that could be sent */
-		for (Connection con : getConnections()) {
-			DTNHost other = con.getOtherNode(getHost());
-			MaxPropRouter othRouter = (MaxPropRouter)other.getRouter();
-			
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
-			
-			for (Message m : msgCollection) {
-				/* skip messages that the other host has or that have
-				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
-					continue; 
-				}
-				messages.add(new Tuple<Message, Connection>(m,con));
-			}			
+		if (this.threshold < 0) {
+			this.threshold = calcThreshold();
+		}
+		if (this.threshold != this.candidateOrder.getThreshold()) {
+			/* sort the message-connection tuples according to the criteria
+			 * defined in MaxPropTupleComparator with the new threshold */ 
+			this.candidateOrder.setThreshold(this.threshold);
+			this.candidates.orderChanged();
 		}
 		
+		List<Tuple<Message, Connection>> messages = 
+			candidates.getCandidates();
+		
 		if (messages.size() == 0) {
 			return null;
 		}
 		
-		/* sort the message-connection tuples according to the criteria
-		 * defined in MaxPropTupleComparator */ 
-		Collections.sort(messages, new MaxPropTupleComparator(calcThreshold()));
 		return tryMessagesForConnected(messages);	
 	}
 	
+	/**
+	 * Forwarding policy that selects all the messages that haven't passed
+	 * the other host. The order of the messages depends only on this host's
+	 * state (the costs from the other host are calculated with this host's
+	 * meeting probabilities, which change only when this host meets
+	 * someone) so the peer version is always the same.
+	 */
+	private class MaxPropForwardingPolicy 
+		implements ForwardingCandidates.Policy {
+		
+		public boolean isCandidate(Message m, Connection con) {
+			/* skip messages that have passed the other host */
+			return !m.isOnPath(con.getOtherNode(getHost()));
+		}
+		
+		public boolean canTryNow(Message m, Connection con) {
+			MaxPropRouter othRouter = 
+				(MaxPropRouter)con.getOtherNode(getHost()).getRouter();
+			/* skip hosts that are transferring and messages that the other
+			 * host has */
+			return !othRouter.isTransferring() && 
+				!peerHasMessage(m, con);
+		}
+		
+		public int getPeerVersion(Connection con) {
+			return 0;
+		}
+	}
+	
 	/**
 	 * Calculates and returns the current threshold value for the buffer's split
 	 * based on the average number of bytes transferred per transfer opportunity
@@ -529,6 +575,22 @@ public class MaxPropRouter extends ActiveRouter {
 		public MaxPropTupleComparator(int threshold) {
 			this.threshold = threshold;
 		}
+
+		/**
+		 * Returns the threshold the tuples are compared with
+		 * @return The threshold
+		 */
+		public int getThreshold() {
+			return this.threshold;
+		}
+
+		/**
+		 * Sets the threshold the tuples are compared with
+		 * @param threshold The new threshold
+		 */
+		public void setThreshold(int threshold) {
+			this.threshold = threshold;
+		}
 		
 		/**
 		 * Compares two message-connection tuples using the 
@@ -52,12 +52,10 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** costs from the source hosts (mapped using host's network address) to
+	 * all the other hosts. This should be cleared always when the meeting
+	 * probabilities change (a host is met) */
+	private Map<Integer, double[]> costsFrom;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -86,15 +84,12 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	private int timescale;
 
 	/** last meeting time with a node */
-	private Map<DTNHost, Double> meetings;
+	private EncounterHistory meetings;
 	private int nrofSamplesIET;
 	private double meanIET;
 	
-	/** number of encounters between encounters */
-	private Map<DTNHost, Integer> encounters;
 	private int nrofSamplesENC;
 	private double meanENC;
-	private int nrofTotENC;
 	
 	/**
 	 * Constructor. Creates a new prototype router based on the settings in
@@ -121,6 +116,7 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 				MeetingProbabilitySet.INFINITE_SET_SIZE, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
+		this.costsFrom = new HashMap<Integer, double[]>();
 		this.ackedMessageIds = new HashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 		initMeetings();
@@ -130,19 +126,17 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	 * Initializes interencounter estimators
 	 */
 	private void initMeetings() {
-		this.meetings = new HashMap<DTNHost, Double>();
-		this.encounters = new HashMap<DTNHost, Integer>();
+		this.meetings = new EncounterHistory();
 		this.meanIET = 0;
 		this.nrofSamplesIET = 0;
 		this.meanENC = 0;
 		this.nrofSamplesENC = 0;
-		this.nrofTotENC = 0;
 	}
 	
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
+			this.costsFrom.clear(); // invalidate old cost estimates
 			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
@@ -211,34 +205,27 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	protected boolean updateEstimators(DTNHost host) {		
 		/* First estimate the mean InterEncounter Time */
 		double currentTime = SimClock.getTime();
-		if (meetings.containsKey(host)) {
-			double timeDiff = currentTime - meetings.get(host);
-			// System.out.printf("current time: %f\t last time:  %f\n",currentTime,meetings.get(host));
+		/* number of encounters between the encounters with the host */
+		int encounterNro = meetings.getMeetingsSince(host) + 1;
+		if (meetings.getNrofMeetings(host) > 0) {
+			double timeDiff = currentTime - meetings.getLastSeenTime(host);
 
 			nrofSamplesIET++;
 			meanIET = (((double)nrofSamplesIET -1) / (double)nrofSamplesIET) * meanIET
 			+ (1 / (double)nrofSamplesIET) * timeDiff;
-			meetings.put(host, currentTime);
-		} else {
-			/* nothing to update */
-			meetings.put(host,currentTime);
-		}		
+		}
+		meetings.meet(host, currentTime);
+
 		/* Then estimate the number of encounters
 		 * 
 		 */
-		nrofTotENC++; // the number of encounter
-		if (encounters.containsKey(host)) {
-			int encounterNro = nrofTotENC - encounters.get(host);
-			// System.out.printf("current time: %f\t last time:  %f\n",currentTime,meetings.get(host));
-
+		if (encounterNro > 0) {
 			nrofSamplesENC++;
 			meanENC = (((double)nrofSamplesENC -1) / (double)nrofSamplesENC) * meanENC
 			+ (1 / (double)nrofSamplesENC) * (double)encounterNro;
-			encounters.put(host,nrofTotENC);
 			return true;
 		} else {
 			/* nothing to update */
-			encounters.put(host,nrofTotENC);
 			return false;
 		}		
 	}
@@ -329,7 +316,6 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -428,33 +414,26 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs from a host to all other hosts
+	 * are calculated at once and cached until the meeting probabilities
+	 * change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
 	 * Double.MAX_VALUE if such a path doesn't exist
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
-		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		/* check if the costs from the host are cached */
+		double[] costs = this.costsFrom.get(from.getAddress());
+		if (costs == null) {
+			/* no cached costs -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costs = dijkstra.getAllCosts(from.getAddress());
+			this.costsFrom.put(from.getAddress(), costs);
 		}
 		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+		if (to.getAddress() < costs.length) {
+			return costs[to.getAddress()];
 		}
 		else {
 			/* there's no known path to the given host */
@@ -486,8 +465,8 @@ public class MaxPropRouterWithEstimation extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (peerHasMessage(m, con) ||
+						m.isOnPath(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
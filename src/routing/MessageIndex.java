@@ -0,0 +1,27 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import core.Message;
+
+/**
+ * An index of the messages in a router's buffer that keeps the messages in
+ * some order, so that e.g. the message to drop first is found without
+ * scanning the whole buffer. The router adds and removes the messages as
+ * its buffer changes; iterating the index gives the messages in the order.
+ */
+public interface MessageIndex extends Iterable<Message> {
+	/**
+	 * Adds a message to the index
+	 * @param m The message
+	 */
+	public void add(Message m);
+
+	/**
+	 * Removes a message from the index
+	 * @param m The message
+	 */
+	public void remove(Message m);
+}
@@ -15,6 +15,7 @@ import java.util.Random;
 import core.Application;
 import core.Connection;
 import core.DTNHost;
+import core.LongHashMap;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
@@ -66,16 +67,25 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred with keys made of the message ID
+	 * handles and the addresses of the sending hosts
+	 * (see {@link #incomingKey(int, DTNHost)}) */
+	private LongHashMap<Message> incomingMessages;
+	/** The numbers of the incoming messages by their ID handles */
+	private LongHashMap<int[]> incomingCounts;
 	/** The messages this router is carrying */
 	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
+	/** The messages this router is carrying by their ID handles */
+	private LongHashMap<Message> messagesByHandle;
+	/** The messages this router has received as the final recipient by
+	 * their ID handles */
+	private LongHashMap<Message> deliveredMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
 	private int bufferSize;
+	/** sum of the sizes of the messages in the buffer */
+	private long occupancy;
 	/** TTL for all messages */
 	protected int msgTtl;
 	/** Queue mode for sending messages */
@@ -122,9 +132,12 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
+		this.incomingMessages = new LongHashMap<Message>();
+		this.incomingCounts = new LongHashMap<int[]>();
 		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.messagesByHandle = new LongHashMap<Message>();
+		this.deliveredMessages = new LongHashMap<Message>();
+		this.occupancy = 0;
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -158,6 +171,25 @@ public abstract class MessageRouter {
 			}
 		}
 	}
+
+	/**
+	 * Returns the next simulation time when this router has something to do
+	 * even if no messages or connections change before that, i.e., when
+	 * {@link #update()} should be called next. A time that is not greater
+	 * than the current simulation time means that the router should be
+	 * updated at every update interval. This implementation requests
+	 * regular updates only if there are applications to update.
+	 * Routers that do time based work in their update method must override
+	 * this method.
+	 * @return The next time the router has something to do or
+	 * Double.MAX_VALUE if it is idle until something external happens
+	 */
+	public double getNextActivityTime() {
+		if (this.applications.isEmpty()) {
+			return Double.MAX_VALUE;
+		}
+		return SimClock.getTime();
+	}
 	
 	/**
 	 * Informs the router about change in connections state.
@@ -174,6 +206,16 @@ public abstract class MessageRouter {
 		return this.messages.get(id);
 	}
 	
+	/**
+	 * Returns a message by ID handle.
+	 * @param idHandle Handle of the message's identifier
+	 * (see {@link Message#getIdHandle()})
+	 * @return The message or null if there's no such message in the buffer
+	 */
+	protected Message getMessage(int idHandle) {
+		return this.messagesByHandle.get(idHandle);
+	}
+	
 	/**
 	 * Checks if this router has a message with certain id buffered.
 	 * @param id Identifier of the message
@@ -182,6 +224,16 @@ public abstract class MessageRouter {
 	protected boolean hasMessage(String id) {
 		return this.messages.containsKey(id);
 	}
+
+	/**
+	 * Checks if this router has a message with certain ID handle buffered.
+	 * @param idHandle Handle of the message's identifier
+	 * (see {@link Message#getIdHandle()})
+	 * @return True if the router has message with this ID, false if not
+	 */
+	protected boolean hasMessage(int idHandle) {
+		return this.messagesByHandle.containsKey(idHandle);
+	}
 	
 	/**
 	 * Returns true if a full message with same ID as the given message has been
@@ -192,7 +244,25 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.containsKey(m.getIdHandle()));
+	}
+	
+	/**
+	 * Creates a summary vector of the messages this router is carrying and
+	 * the messages it has received as the final recipient
+	 * @return A new summary vector
+	 */
+	protected SummaryVector createSummaryVector() {
+		int[] handles = new int[this.messages.size() + 
+		                        this.deliveredMessages.size()];
+		int count = 0;
+		for (Message m : this.messages.values()) {
+			handles[count++] = m.getIdHandle();
+		}
+		for (Message m : this.deliveredMessages.values()) {
+			handles[count++] = m.getIdHandle();
+		}
+		return new SummaryVector(handles, count);
 	}
 	
 	/**
@@ -231,17 +301,12 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)Math.max(Integer.MIN_VALUE,
+				this.getBufferSize() - this.occupancy);
 	}
 	
 	/**
@@ -259,12 +324,10 @@ public abstract class MessageRouter {
 	 */
 	public void sendMessage(String id, DTNHost to) {
 		Message m = getMessage(id);
-		Message m2;
 		if (m == null) throw new SimError("no message for id " +
 				id + " to send at " + this.host);
  
-		m2 = m.replicate();	// send a replicate of the message
-		to.receiveMessage(m2, this.host);
+		to.receiveMessage(m, this.host); // receiver makes the replicate
 	}
 	
 	/**
@@ -341,7 +404,7 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.deliveredMessages.put(aMessage.getIdHandle(), aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -359,7 +422,16 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int idHandle = m.getIdHandle();
+		if (this.incomingMessages.put(incomingKey(idHandle, from), m) != null) {
+			return; // replaced a message from the same host
+		}
+		int[] count = this.incomingCounts.get(idHandle);
+		if (count == null) {
+			count = new int[1];
+			this.incomingCounts.put(idHandle, count);
+		}
+		count[0]++;
 	}
 	
 	/**
@@ -370,7 +442,28 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int idHandle = Message.getIdHandle(id);
+		if (idHandle < 0) {
+			return null;
+		}
+		Message m = this.incomingMessages.remove(incomingKey(idHandle, from));
+		if (m != null) {
+			int[] count = this.incomingCounts.get(idHandle);
+			if (--count[0] == 0) {
+				this.incomingCounts.remove(idHandle);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Returns the key of an incoming message in the incoming buffer
+	 * @param idHandle The message's ID handle
+	 * @param from The host that sent this message (previous hop)
+	 * @return The key
+	 */
+	private static long incomingKey(int idHandle, DTNHost from) {
+		return ((long)idHandle << 32) | (from.getAddress() & 0xFFFFFFFFL);
 	}
 	
 	/**
@@ -380,7 +473,19 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		int idHandle = Message.getIdHandle(id);
+		return idHandle >= 0 && isIncomingMessage(idHandle);
+	}
+
+	/**
+	 * Returns true if a message with the given ID handle is one of the
+	 * currently incoming messages, false if not
+	 * @param idHandle Handle of the message's identifier
+	 * (see {@link Message#getIdHandle()})
+	 * @return True if such message is incoming right now
+	 */
+	protected boolean isIncomingMessage(int idHandle) {
+		return this.incomingCounts.containsKey(idHandle);
 	}
 	
 	/**
@@ -391,7 +496,12 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getId(), m);
+		if (old != null) {
+			this.occupancy -= old.getSize();
+		}
+		this.occupancy += m.getSize();
+		this.messagesByHandle.put(m.getIdHandle(), m);
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -407,6 +517,10 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			this.messagesByHandle.remove(m.getIdHandle());
+			this.occupancy -= m.getSize();
+		}
 		return m;
 	}
 	
@@ -4,19 +4,15 @@
  */
 package routing;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.prophet.DeliveryPredictabilities;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.MessageListener;
 import core.Settings;
-import core.SimClock;
 import core.Tuple;
 
 /**
@@ -52,9 +48,9 @@ public class ProphetRouter extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredictabilities preds;
+	/** the message-connection tuples that could be forwarded */
+	private ForwardingCandidates candidates;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -87,10 +83,17 @@ public class ProphetRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes the predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(secondsInTimeUnit);
+	}
+
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		this.candidates = new ForwardingCandidates(this,
+				new ProphetForwardingPolicy(), new TupleComparator());
 	}
 
 	@Override
@@ -99,6 +102,7 @@ public class ProphetRouter extends ActiveRouter {
 			DTNHost otherHost = con.getOtherNode(getHost());
 			updateDeliveryPredFor(otherHost);
 			updateTransitivePreds(otherHost);
+			candidates.stateChanged();
 		}
 	}
 	
@@ -110,7 +114,7 @@ public class ProphetRouter extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 	
 	/**
@@ -121,12 +125,7 @@ public class ProphetRouter extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 	
 	/**
@@ -141,18 +140,10 @@ public class ProphetRouter extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		DeliveryPredictabilities othersPreds = 
 			((ProphetRouter)otherRouter).getDeliveryPreds();
 		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.addTransitive(othersPreds, getHost(), pForHost, beta);
 	}
 
 	/**
@@ -162,26 +153,14 @@ public class ProphetRouter extends ActiveRouter {
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
+		preds.age(GAMMA);
 	}
 	
 	/**
 	 * Returns a map of this router's delivery predictions
 	 * @return a map of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private DeliveryPredictabilities getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -201,47 +180,59 @@ public class ProphetRouter extends ActiveRouter {
 		tryOtherMessages();		
 	}
 	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		candidates.messageAdded(m);
+	}
+	
 	/**
 	 * Tries to send all other messages to all connected hosts ordered by
-	 * their delivery probability
+	 * their delivery probability. The sorted message-connection tuples are
+	 * kept in a {@link ForwardingCandidates} list that is built again only
+	 * when the predictabilities of this or the other host change (aging
+	 * doesn't change the order).
 	 * @return The return value of {@link #tryMessagesForConnected(List)}
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
 		List<Tuple<Message, Connection>> messages = 
-			new ArrayList<Tuple<Message, Connection>>(); 
-	
-		Collection<Message> msgCollection = getMessageCollection();
-		
-		/* for all connected hosts collect all messages that have a higher
-		   probability of delivery by the other host */
-		for (Connection con : getConnections()) {
-			DTNHost other = con.getOtherNode(getHost());
-			ProphetRouter othRouter = (ProphetRouter)other.getRouter();
-			
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
-			
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
-					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m,con));
-				}
-			}			
-		}
+			candidates.getCandidates();
 		
 		if (messages.size() == 0) {
 			return null;
 		}
 		
-		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
 		return tryMessagesForConnected(messages);	// try to send messages
 	}
 	
+	/**
+	 * Forwarding policy that selects the messages that have a higher
+	 * probability of delivery by the other host
+	 */
+	private class ProphetForwardingPolicy 
+		implements ForwardingCandidates.Policy {
+		
+		public boolean isCandidate(Message m, Connection con) {
+			ProphetRouter othRouter = 
+				(ProphetRouter)con.getOtherNode(getHost()).getRouter();
+			return othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo());
+		}
+		
+		public boolean canTryNow(Message m, Connection con) {
+			ProphetRouter othRouter = 
+				(ProphetRouter)con.getOtherNode(getHost()).getRouter();
+			/* skip hosts that are transferring and messages that the other
+			   one has */
+			return !othRouter.isTransferring() && 
+				!peerHasMessage(m, con);
+		}
+		
+		public int getPeerVersion(Connection con) {
+			return ((ProphetRouter)con.getOtherNode(getHost()).getRouter()).
+				candidates.getVersion();
+		}
+	}
+	
 	/**
 	 * Comparator for Message-Connection-Tuples that orders the tuples by
 	 * their delivery probability by the host on the other side of the 
@@ -282,9 +273,9 @@ public class ProphetRouter extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < preds.size(); i++) {
+			DTNHost host = preds.getHostAt(i);
+			double value = preds.get(host);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -8,10 +8,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+import routing.prophet.DeliveryPredictabilities;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -69,15 +68,13 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private double ptavg;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private DeliveryPredictabilities preds;
 
 	/** last meeting time with a node */
-	private Map<DTNHost, Double> meetings;
+	private EncounterHistory meetings;
 	private int nrofSamples;
 	private double meanIET;
 
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
 
 
 	/**
@@ -120,17 +117,17 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes the predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(1);
 	}
 
 	/**
 	 * Initializes interencounter time estimator
 	 */
 	private void initMeetings() {
-		this.meetings = new HashMap<DTNHost, Double>();
+		this.meetings = new EncounterHistory();
 		this.meanIET = 0;
 		this.nrofSamples = 0;
 	}
@@ -154,18 +151,17 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private boolean updateIET(DTNHost host) {		
 		/* First estimate the mean InterEncounter Time */
 		double currentTime = SimClock.getTime();
-		if (meetings.containsKey(host)) {
-			double timeDiff = currentTime - meetings.get(host);
-			// System.out.printf("current time: %f\t last time:  %f\n",currentTime,meetings.get(host));
+		if (meetings.getNrofMeetings(host) > 0) {
+			double timeDiff = currentTime - meetings.getLastSeenTime(host);
 
 			nrofSamples++;
 			meanIET = (((double)nrofSamples -1) / (double)nrofSamples) * meanIET
 			+ (1 / (double)nrofSamples) * timeDiff;
-			meetings.put(host, currentTime);
+			meetings.meet(host, currentTime);
 			return true;
 		} else {
 			/* nothing to update */
-			meetings.put(host,currentTime);
+			meetings.meet(host, currentTime);
 			return false;
 		}		
 	}
@@ -322,7 +318,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private void updateDeliveryPredFor(DTNHost host) {
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * pinit;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 	}
 
 	/**
@@ -333,12 +329,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -353,18 +344,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		" with other routers of same type";
 
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		DeliveryPredictabilities othersPreds = 
 			((ProphetRouterWithEstimation)otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		
+		preds.addTransitive(othersPreds, getHost(), pForHost, beta);
 	}
 
 	/**
@@ -374,25 +357,14 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate);
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-
-		this.lastAgeUpdate = SimClock.getTime();
+		preds.age(gamma);
 	}
 
 	/**
 	 * Returns a map of this router's delivery predictions
 	 * @return a map of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private DeliveryPredictabilities getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -434,7 +406,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 			}
 
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (peerHasMessage(m, con)) {
 					continue; // skip messages that the other one has
 				}
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -493,9 +465,9 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 		" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < preds.size(); i++) {
+			DTNHost host = preds.getHostAt(i);
+			double value = preds.get(host);
 
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -16,6 +16,7 @@ import java.util.Random;
 
 
 
+import routing.prophet.DeliveryPredictabilities;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -58,14 +59,11 @@ public class ProphetV2Router extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private DeliveryPredictabilities preds;
 
 	/** last encouter timestamp (sim)time */
 	private Map<DTNHost, Double> lastEncouterTime;
 	
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
-	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
 	 * the given Settings object.
@@ -107,10 +105,10 @@ public class ProphetV2Router extends ActiveRouter {
 	}
 
 		/**
-	 * Initializes predictability hash
+	 * Initializes the predictability table
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(secondsInTimeUnit);
 	}
 	
 	@Override
@@ -146,7 +144,7 @@ public class ProphetV2Router extends ActiveRouter {
 
 		double oldValue = getPredFor(host);
 		double newValue = oldValue + (1 - oldValue) * PEnc;
-		preds.put(host, newValue);
+		preds.set(host, newValue);
 		lastEncouterTime.put(host, simTime);
 	}
 	
@@ -173,12 +171,7 @@ public class ProphetV2Router extends ActiveRouter {
 	 */
 	public double getPredFor(DTNHost host) {
 		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 	
 	/**
@@ -193,21 +186,10 @@ public class ProphetV2Router extends ActiveRouter {
 			" with other routers of same type";
 		
 		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
+		DeliveryPredictabilities othersPreds = 
 			((ProphetV2Router)otherRouter).getDeliveryPreds();
 		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-//ProphetV2 max(old,new)
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pForHost * e.getValue() * beta;
-			if(pNew>pOld)
-				preds.put(e.getKey(), pNew);
-		
-		}
+		preds.maxTransitive(othersPreds, getHost(), pForHost, beta);
 	}
 
 	/**
@@ -217,26 +199,14 @@ public class ProphetV2Router extends ActiveRouter {
 	 * @see #SECONDS_IN_UNIT_S
 	 */
 	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
-		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
+		preds.age(GAMMA);
 	}
 	
 	/**
 	 * Returns a map of this router's delivery predictions
 	 * @return a map of this router's delivery predictions
 	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
+	private DeliveryPredictabilities getDeliveryPreds() {
 		ageDeliveryPreds(); // make sure the aging is done
 		return this.preds;
 	}
@@ -278,7 +248,7 @@ public class ProphetV2Router extends ActiveRouter {
 			}
 			
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (peerHasMessage(m, con)) {
 					continue; // skip messages that the other one has
 				}
 				if((othRouter.getPredFor(m.getTo()) >= getPredFor(m.getTo())))
@@ -338,9 +308,9 @@ public class ProphetV2Router extends ActiveRouter {
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			DTNHost host = e.getKey();
-			Double value = e.getValue();
+		for (int i = 0; i < preds.size(); i++) {
+			DTNHost host = preds.getHostAt(i);
+			double value = preds.get(host);
 			
 			ri.addMoreInfo(new RoutingInfo(String.format("%s : %.6f", 
 					host, value)));
@@ -0,0 +1,68 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import core.Message;
+
+/**
+ * Message index that keeps the messages in a sorted set, so adding and
+ * removing a message and finding the first message take O(log n) time.
+ * The order must not change while a message is in the index.
+ */
+public class SortedMessageIndex implements MessageIndex {
+	/** orders messages by their receive time; messages received at the same
+	 * time are ordered by their unique IDs, i.e., by the time the
+	 * replicates were made */
+	public static final Comparator<Message> RECEIVE_TIME_ORDER =
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			int c = Double.compare(m1.getReceiveTime(), m2.getReceiveTime());
+			if (c != 0) {
+				return c;
+			}
+			return m1.getUniqueId() - m2.getUniqueId();
+		}
+	};
+
+	/** orders messages by their expiry time (see
+	 * {@link Message#getExpiryTime()}); messages that expire at the same
+	 * time are ordered by their unique IDs */
+	public static final Comparator<Message> EXPIRY_TIME_ORDER =
+		new Comparator<Message>() {
+		public int compare(Message m1, Message m2) {
+			int c = Double.compare(m1.getExpiryTime(), m2.getExpiryTime());
+			if (c != 0) {
+				return c;
+			}
+			return m1.getUniqueId() - m2.getUniqueId();
+		}
+	};
+
+	private TreeSet<Message> messages;
+
+	/**
+	 * Creates a new index
+	 * @param order The order of the messages
+	 */
+	public SortedMessageIndex(Comparator<Message> order) {
+		this.messages = new TreeSet<Message>(order);
+	}
+
+	public void add(Message m) {
+		this.messages.add(m);
+	}
+
+	public void remove(Message m) {
+		this.messages.remove(m);
+	}
+
+	public Iterator<Message> iterator() {
+		return this.messages.iterator();
+	}
+}
@@ -26,14 +26,17 @@ public class SprayAndFocusRouter extends ActiveRouter
 	
 	protected static final String SUMMARY_XCHG_IDPREFIX = "summary";
 	protected static final double defaultTransitivityThreshold = 60.0;
-	protected static int protocolMsgIdx = 0;
 	
 	protected int initialNrofCopies;
 	protected double transitivityTimerThreshold;
 	
 	/** Stores information about nodes with which this host has come in contact */
-	protected Map<DTNHost, EncounterInfo> recentEncounters;
-	protected Map<DTNHost, Map<DTNHost, EncounterInfo>> neighborEncounters;
+	protected EncounterHistory recentEncounters;
+	/** The encounter histories of the connected neighbors */
+	protected Map<DTNHost, EncounterHistory> neighborEncounters;
+	/** Versions of the neighbors' histories when they were last merged
+	 * (kept over contacts so only the changes need to be merged) */
+	protected Map<DTNHost, Integer> mergedVersions;
 	
 	public SprayAndFocusRouter(Settings s)
 	{
@@ -46,8 +49,9 @@ public class SprayAndFocusRouter extends ActiveRouter
 		else
 			transitivityTimerThreshold = defaultTransitivityThreshold;
 		
-		recentEncounters = new HashMap<DTNHost, EncounterInfo>();
-		neighborEncounters = new HashMap<DTNHost, Map<DTNHost, EncounterInfo>>();
+		recentEncounters = new EncounterHistory();
+		neighborEncounters = new HashMap<DTNHost, EncounterHistory>();
+		mergedVersions = new HashMap<DTNHost, Integer>();
 	}
 	
 	/**
@@ -60,8 +64,9 @@ public class SprayAndFocusRouter extends ActiveRouter
 		super(r);
 		this.initialNrofCopies = r.initialNrofCopies;
 		
-		recentEncounters = new HashMap<DTNHost, EncounterInfo>();
-		neighborEncounters = new HashMap<DTNHost, Map<DTNHost, EncounterInfo>>();
+		recentEncounters = new EncounterHistory();
+		neighborEncounters = new HashMap<DTNHost, EncounterHistory>();
+		mergedVersions = new HashMap<DTNHost, Integer>();
 	}
 	
 	@Override
@@ -91,15 +96,10 @@ public class SprayAndFocusRouter extends ActiveRouter
 		DTNHost peer = con.getOtherNode(thisHost);
 		
 		//do this when con is up and goes down (might have been up for awhile)
-		if(recentEncounters.containsKey(peer))
-		{ 
-			EncounterInfo info = recentEncounters.get(peer);
-			info.updateEncounterTime(SimClock.getTime());
-		}
+		if(con.isUp())
+			recentEncounters.meet(peer, SimClock.getTime());
 		else
-		{
-			recentEncounters.put(peer, new EncounterInfo(SimClock.getTime()));
-		}
+			recentEncounters.setLastSeenTime(peer, SimClock.getTime());
 		
 		if(!con.isUp())
 		{
@@ -109,12 +109,16 @@ public class SprayAndFocusRouter extends ActiveRouter
 		
 		/*
 		 * For this simulator, we just need a way to give the other node in this connection
-		 * access to the peers we recently encountered; so we duplicate the recentEncounters
-		 * Map and attach it to a message.
+		 * access to the peers we recently encountered; so we attach the recentEncounters
+		 * history to a message. The receiver reads only the entries that have changed
+		 * since it last read the history, so only those are counted to the size.
 		 */
-		int msgSize = recentEncounters.size() * 64 + getMessageCollection().size() * 8;
-		Message newMsg = new Message(thisHost, peer, SUMMARY_XCHG_IDPREFIX + protocolMsgIdx++, msgSize);
-		newMsg.addProperty(SUMMARY_XCHG_PROP, /*new HashMap<DTNHost, EncounterInfo>(*/recentEncounters);
+		DTNHost[] changed = getChangedSinceMerged(peer);
+		int nrofEntries = changed == null ? recentEncounters.size() : changed.length;
+		int msgSize = nrofEntries * 64 + getMessageCollection().size() * 8;
+		Message newMsg = new Message(thisHost, peer, SUMMARY_XCHG_IDPREFIX + 
+				RunContext.current().nextCount(SprayAndFocusRouter.class), msgSize);
+		newMsg.addProperty(SUMMARY_XCHG_PROP, recentEncounters);
 		
 		createNewMessage(newMsg);
 	}
@@ -138,7 +142,7 @@ public class SprayAndFocusRouter extends ActiveRouter
 		 * Here we update our last encounter times based on the information sent
 		 * from our peer. 
 		 */
-		Map<DTNHost, EncounterInfo> peerEncounters = (Map<DTNHost, EncounterInfo>)m.getProperty(SUMMARY_XCHG_PROP);
+		EncounterHistory peerEncounters = (EncounterHistory)m.getProperty(SUMMARY_XCHG_PROP);
 		if(isDeliveredMessage(m) && peerEncounters != null)
 		{
 			double distTo = getHost().getLocation().distance(from.getLocation());
@@ -154,13 +158,22 @@ public class SprayAndFocusRouter extends ActiveRouter
 			 */
 			neighborEncounters.put(from, peerEncounters); 
 			
-			for(Map.Entry<DTNHost, EncounterInfo> entry : peerEncounters.entrySet())
+			Integer merged = mergedVersions.get(from);
+			DTNHost[] changed = merged == null ? null :
+				peerEncounters.getChangedSince(merged);
+			if(changed == null)
+			{
+				changed = new DTNHost[peerEncounters.size()];
+				for(int i = 0; i < changed.length; i++)
+					changed[i] = peerEncounters.getHostAt(i);
+			}
+			mergedVersions.put(from, peerEncounters.getVersion());
+			
+			for(DTNHost h : changed)
 			{
-				DTNHost h = entry.getKey();
 				if(h == getHost()) continue;
 				
-				EncounterInfo peerEncounter = entry.getValue();
-				EncounterInfo info = recentEncounters.get(h);
+				double peerLastSeen = peerEncounters.getLastSeenTime(h);
 				
 				/*
 				 * We set our timestamp for some node, h, with whom our peer has come in contact
@@ -170,18 +183,16 @@ public class SprayAndFocusRouter extends ActiveRouter
 				 * fixed timestamps here to accomplish the same effect, but the computations
 				 * here are consequently a little different from the paper. 
 				 */
-				if(!recentEncounters.containsKey(h))
+				if(!recentEncounters.isKnown(h))
 				{
-					info = new EncounterInfo(peerEncounter.getLastSeenTime() - timediff);
-					recentEncounters.put(h, info);
+					recentEncounters.setLastSeenTime(h, peerLastSeen - timediff);
 					continue;
 				}
 				
 				
-				if(info.getLastSeenTime() + timediff < peerEncounter.getLastSeenTime())
+				if(recentEncounters.getLastSeenTime(h) + timediff < peerLastSeen)
 				{
-					recentEncounters.get(h).updateEncounterTime(peerEncounter.getLastSeenTime() - 
-							timediff);
+					recentEncounters.setLastSeenTime(h, peerLastSeen - timediff);
 				}
 			}
 			return m;
@@ -277,11 +288,11 @@ public class SprayAndFocusRouter extends ActiveRouter
 				for(Connection c : getConnections())
 				{
 					DTNHost peer = c.getOtherNode(getHost());
-					Map<DTNHost, EncounterInfo> peerEncounters = neighborEncounters.get(peer);
+					EncounterHistory peerEncounters = neighborEncounters.get(peer);
 					double peerLastSeen = 0.0;
 					
-					if(peerEncounters != null && peerEncounters.containsKey(dest))
-						peerLastSeen = neighborEncounters.get(peer).get(dest).getLastSeenTime();
+					if(peerEncounters != null)
+						peerLastSeen = peerEncounters.getLastSeenTime(dest);
 					
 					/*
 					 * We need to pick only one peer to send the copy on to; so lets find the
@@ -312,43 +323,34 @@ public class SprayAndFocusRouter extends ActiveRouter
 		}
 	}
 
-	protected double getLastEncounterTimeForHost(DTNHost host)
+	/**
+	 * Returns the hosts of this router's encounter history that have changed
+	 * since the peer last merged the history
+	 * @param peer The peer
+	 * @return The changed hosts or null if the peer should read the whole
+	 * history
+	 */
+	protected DTNHost[] getChangedSinceMerged(DTNHost peer)
 	{
-		if(recentEncounters.containsKey(host))
-			return recentEncounters.get(host).getLastSeenTime();
-		else
-			return 0.0;
+		MessageRouter otherRouter = peer.getRouter();
+		if(!(otherRouter instanceof SprayAndFocusRouter))
+			return null;
+		
+		Integer merged = ((SprayAndFocusRouter)otherRouter).mergedVersions.get(getHost());
+		return merged == null ? null : recentEncounters.getChangedSince(merged);
 	}
-	
+
 	/**
-	 * Stores all necessary info about encounters made by this host to some other host.
-	 * At the moment, all that's needed is the timestamp of the last time these two hosts
-	 * met.
-	 * 
-	 * @author PJ Dillon, University of Pittsburgh
+	 * Returns the encounter history of this router
+	 * @return The encounter history
 	 */
-	protected class EncounterInfo
+	public EncounterHistory getEncounterHistory()
 	{
-		protected double seenAtTime;
-		
-		public EncounterInfo(double atTime)
-		{
-			this.seenAtTime = atTime;
-		}
-		
-		public void updateEncounterTime(double atTime)
-		{
-			this.seenAtTime = atTime;
-		}
-		
-		public double getLastSeenTime()
-		{
-			return seenAtTime;
-		}
-		
-		public void updateLastSeenTime(double atTime)
-		{
-			this.seenAtTime = atTime;
-		}
+		return recentEncounters;
+	}
+
+	protected double getLastEncounterTimeForHost(DTNHost host)
+	{
+		return recentEncounters.getLastSeenTime(host);
 	}
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Arrays;
+
+/**
+ * Summary vector of the messages a host has, i.e., the messages in the
+ * buffer and the messages it has received as the final recipient. The
+ * messages are identified by their ID handles (see
+ * {@link core.Message#getIdHandle()}) that are kept in a sorted array.
+ * Routers exchange summary vectors when they start to use a connection so
+ * they don't need to offer the messages the other host already has.
+ */
+public class SummaryVector {
+	/** the ID handles in ascending order */
+	private int[] handles;
+	/** number of handles */
+	private int size;
+	/** the time when the summary vector has been received */
+	private double receiveTime;
+
+	/**
+	 * Creates a summary vector of the given ID handles
+	 * @param handles The ID handles. The array is sorted and used by the
+	 * summary vector.
+	 * @param count How many handles (from the beginning of the array) are
+	 * included
+	 */
+	public SummaryVector(int[] handles, int count) {
+		Arrays.sort(handles, 0, count);
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (n == 0 || handles[n - 1] != handles[i]) {
+				handles[n++] = handles[i]; // skip duplicates
+			}
+		}
+		this.handles = handles;
+		this.size = n;
+		this.receiveTime = 0;
+	}
+
+	/**
+	 * Returns true if the summary vector contains a message
+	 * @param idHandle ID handle of the message
+	 * @return true if the summary vector contains the message
+	 */
+	public boolean contains(int idHandle) {
+		return Arrays.binarySearch(this.handles, 0, this.size, idHandle) >= 0;
+	}
+
+	/**
+	 * Adds a message to the summary vector (e.g., when the other host is
+	 * learned to have received it)
+	 * @param idHandle ID handle of the message
+	 */
+	public void add(int idHandle) {
+		int pos = Arrays.binarySearch(this.handles, 0, this.size, idHandle);
+		if (pos >= 0) {
+			return; // already included
+		}
+
+		pos = -(pos + 1);
+		if (this.size == this.handles.length) {
+			this.handles = Arrays.copyOf(this.handles,
+					Math.max(8, this.size * 2));
+		}
+		System.arraycopy(this.handles, pos, this.handles, pos + 1,
+				this.size - pos);
+		this.handles[pos] = idHandle;
+		this.size++;
+	}
+
+	/**
+	 * Returns the number of messages in the summary vector
+	 * @return the number of messages in the summary vector
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Sets the time when the summary vector has been received
+	 * @param time The receive time
+	 */
+	public void setReceiveTime(double time) {
+		this.receiveTime = time;
+	}
+
+	/**
+	 * Returns the time when the summary vector has been received
+	 * @return the time when the summary vector has been received
+	 */
+	public double getReceiveTime() {
+		return this.receiveTime;
+	}
+}
@@ -4,36 +4,35 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The distances and the priority queue of the search are kept in arrays
+ * that are indexed by the node addresses.
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
-
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	private static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** Distances of the nodes from the source node */
+	private double[] distancesFromStart;
+	/** Which nodes are already visited (the shortest path is known) */
+	private boolean[] visited;
+	/** Binary heap of the unvisited nodes discovered so far */
+	private int[] unvisited;
+	/** Positions of the nodes in the heap (-1 for nodes not in the heap) */
+	private int[] heapIndex;
+	/** Number of nodes in the heap */
+	private int nrofUnvisited;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
-	
+
 	/**
 	 * Constructor.
 	 * @param probs A reference to the mapping of the known hosts meeting
@@ -41,28 +40,40 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.visited = new boolean[INIT_SIZE];
+		this.heapIndex = new int[INIT_SIZE];
+		this.unvisited = new int[INIT_SIZE];
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
-		
+	private void initWith(int firstHop) {
+		int size = this.visited.length;
+		while (size <= firstHop) {
+			size *= 2;
+		}
+		if (size != this.visited.length) {
+			this.visited = new boolean[size];
+			this.heapIndex = new int[size];
+			this.unvisited = new int[size];
+		}
+
+		this.distancesFromStart = new double[size];
+		Arrays.fill(this.distancesFromStart, INFINITY);
+		Arrays.fill(this.visited, false);
+		Arrays.fill(this.heapIndex, -1);
+		this.nrofUnvisited = 0;
+
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
-	
+
 	/**
-	 * Calculates total costs to the given set of target nodes. The cost to 
+	 * Calculates total costs to the given set of target nodes. The cost to
 	 * a node is the sum of complements of probabilities that all the links
-	 * come up as the next contact of the nodes. 
+	 * come up as the next contact of the nodes.
 	 * @param from The index (address) of the start node
 	 * @param to The address set of destination nodes
 	 * @return A map of (destination node, cost) tuples
@@ -70,155 +81,180 @@ public class MaxPropDijkstra {
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
 		int nrofNodesToFind = to.size();
-		
+
 		initWith(from);
-		Integer node = null;
-		
+		int node;
+
 		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
+		while ((node = poll()) >= 0) {
 			if (to.contains(node)) {
 				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
+				distMap.put(node, distancesFromStart[node]);
 				nrofNodesToFind--;
 				if (nrofNodesToFind == 0) {
 					break; // all requested nodes found
 				}
-			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
+			}
+
+			relax(node); // add/update neighbor nodes' distances
 		}
-			
+
 		return distMap;
 	}
-	
+
+	/**
+	 * Calculates total costs to all the nodes that can be reached from
+	 * the start node (see {@link #getCosts(Integer, Set)}).
+	 * @param from The index (address) of the start node
+	 * @return An array of costs indexed by the node addresses. The cost is
+	 * Double.MAX_VALUE for the nodes that can't be reached and for the nodes
+	 * whose address is beyond the end of the array.
+	 */
+	public double[] getAllCosts(int from) {
+		initWith(from);
+		int node;
+		while ((node = poll()) >= 0) {
+			relax(node);
+		}
+		return this.distancesFromStart;
+	}
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
-		
-		if (!this.probs.containsKey(node)) {
+	private void relax(int node) {
+		double nodeDist = distancesFromStart[node];
+		MeetingProbabilitySet mps = this.probs.get(node);
+
+		if (mps == null) {
 			return; // node's neighbors are not known
 		}
-		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+
+		for (int i = 0, n = mps.size(); i < n; i++) {
+			int neighbor = mps.getNodeAt(i);
+			ensureSize(neighbor);
+			if (visited[neighbor]) {
 				continue; // skip visited nodes
 			}
-						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
-			
-			if (distancesFromStart.get(n) > nDist) { 
+
+			// neighbor node's distance from path's source node
+			double nDist = nodeDist + (1 - mps.getProbAt(i));
+
+			if (distancesFromStart[neighbor] > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+				setDistance(neighbor, nDist);
 			}
 		}
 	}
-	
+
 	/**
-	 * Sets the distance from source node to a node
+	 * Sets the distance from source node to a node and moves the node to
+	 * its new place in the queue (or adds it to the queue)
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance) {
+		distancesFromStart[n] = distance;
+		if (heapIndex[n] < 0) {
+			heapIndex[n] = nrofUnvisited;
+			unvisited[nrofUnvisited++] = n;
+		}
+		siftUp(heapIndex[n]);
 	}
-	
+
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Removes the node with the shortest distance from the queue and marks
+	 * it visited
+	 * @return The node or -1 if the queue was empty
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private int poll() {
+		if (nrofUnvisited == 0) {
+			return -1;
+		}
+		int first = unvisited[0];
+		heapIndex[first] = -1;
+		visited[first] = true;
+
+		nrofUnvisited--;
+		if (nrofUnvisited > 0) {
+			unvisited[0] = unvisited[nrofUnvisited];
+			heapIndex[unvisited[0]] = 0;
+			siftDown(0);
+		}
+		return first;
 	}
-	
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+
+	private void siftUp(int pos) {
+		int node = unvisited[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!isBefore(node, unvisited[parent])) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			unvisited[pos] = unvisited[parent];
+			heapIndex[unvisited[pos]] = pos;
+			pos = parent;
+		}
+		unvisited[pos] = node;
+		heapIndex[node] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int node = unvisited[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= nrofUnvisited) {
+				break;
+			}
+			if (child + 1 < nrofUnvisited &&
+					isBefore(unvisited[child + 1], unvisited[child])) {
+				child++;
 			}
-			else {
-				return node1.compareTo(node2);
+			if (!isBefore(unvisited[child], node)) {
+				break;
 			}
+			unvisited[pos] = unvisited[child];
+			heapIndex[unvisited[pos]] = pos;
+			pos = child;
 		}
+		unvisited[pos] = node;
+		heapIndex[node] = pos;
 	}
-	
+
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Compares two nodes by their distance from the source node. Nodes with
+	 * the same distance are ordered by their addresses.
+	 * @return true if node1 should be visited before node2
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
+	private boolean isBefore(int node1, int node2) {
+		double dist1 = distancesFromStart[node1];
+		double dist2 = distancesFromStart[node2];
+		if (dist1 != dist2) {
+			return dist1 < dist2;
 		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
+		return node1 < node2;
+	}
+
+	/**
+	 * Makes sure that the node arrays can hold the given node
+	 * @param node Address of the node
+	 */
+	private void ensureSize(int node) {
+		int oldSize = visited.length;
+		if (node < oldSize) {
+			return;
 		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+
+		int size = oldSize;
+		while (size <= node) {
+			size *= 2;
 		}
+		visited = Arrays.copyOf(visited, size);
+		unvisited = Arrays.copyOf(unvisited, size);
+		heapIndex = Arrays.copyOf(heapIndex, size);
+		Arrays.fill(heapIndex, oldSize, size, -1);
+		distancesFromStart = Arrays.copyOf(distancesFromStart, size);
+		Arrays.fill(distancesFromStart, oldSize, size, INFINITY);
 	}
 }
\ No newline at end of file
@@ -4,7 +4,8 @@
  */
 package routing.maxprop;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,18 +13,29 @@ import core.SimClock;
 
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
- * router module.
+ * router module. The probabilities are stored in arrays that are ordered by
+ * the node indexes. Replicas share the arrays with the original set until
+ * either of them is modified.
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** initial capacity of the probability arrays */
+	private static final int INIT_CAPACITY = 8;
+	/** node indexes of the probabilities in ascending order */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * in the same order as the nodes */
+	private double[] probs;
+	/** number of probabilities in the set */
+	private int size;
+	/** are the arrays shared with a replica (copy before modifying) */
+	private boolean shared;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping.
@@ -32,17 +44,18 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
+		this.nodes = new int[INIT_CAPACITY];
+		this.probs = new double[INIT_CAPACITY];
+		this.size = 0;
+		this.shared = false;
 		this.lastUpdateTime = 0;
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with empty node-probability
 	 * mapping and infinite set size
@@ -50,86 +63,118 @@ public class MeetingProbabilitySet {
 	public MeetingProbabilitySet() {
 		this(INFINITE_SET_SIZE, 1);
 	}
-	
+
 	/**
 	 * Constructor. Creates a probability set with equal probability for
 	 * all the given node indexes.
 	 */
-	public MeetingProbabilitySet(double alpha, 
+	public MeetingProbabilitySet(double alpha,
 				List<Integer> initiallyKnownNodes) {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
-	
+
 	/**
 	 * Updates meeting probability for the given node index.
 	 * <PRE> P(b) = P(b)_old + alpha
-	 * Normalize{P}</PRE> 
+	 * Normalize{P}</PRE>
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
 	 * @param index The node index to update the probability for
 	 */
 	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
+        int smallestPos = -1;
         double smallestValue = Double.MAX_VALUE;
 
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+
+		if (size == 0) { // first entry
+			put(index, 1.0);
 			return;
 		}
-		
+
 		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
+		put(index, newValue);
 
 		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
+		 * normalize to one by dividing all the entries by 1+alpha */
+		for (int i = 0; i < size; i++) {
+			probs[i] = probs[i] / (1+alpha);
+            if (probs[i] < smallestValue) {
+                smallestPos = i;
+                smallestValue = probs[i];
             }
-
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+            core.Debug.p("Probsize: " + size + " dropping " +
+                    removeAt(smallestPos));
         }
 	}
-	
+
 	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+		put(index, iet);
 	}
-	
+
 	/**
-	 * Returns the current delivery probability value for the given node index 
+	 * Returns the current delivery probability value for the given node index
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
 	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+		int pos = Arrays.binarySearch(nodes, 0, size, index);
+		if (pos >= 0) {
+			return probs[pos];
 		}
 		else {
 			/* the node with the given index has not been met */
 			return 0.0;
 		}
 	}
-	
+
+	/**
+	 * Returns the number of probabilities in this set
+	 * @return the number of probabilities in this set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the node index of the i:th probability of this set. The
+	 * probabilities are ordered by their node indexes.
+	 * @param i Position of the probability (0 -- {@link #size()}-1)
+	 * @return The node index
+	 */
+	public int getNodeAt(int i) {
+		return this.nodes[i];
+	}
+
+	/**
+	 * Returns the i:th probability of this set (see {@link #getNodeAt(int)})
+	 * @param i Position of the probability (0 -- {@link #size()}-1)
+	 * @return The probability
+	 */
+	public double getProbAt(int i) {
+		return this.probs[i];
+	}
+
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the probabilities of this set as a node index to probability
+	 * map. The map is a copy; changing it doesn't change this set.
+	 * @return the probabilities of this set mapped by the node indexes
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new LinkedHashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			map.put(nodes[i], probs[i]);
+		}
+		return map;
 	}
-	
+
 	/**
 	 * Returns the time when this probability set was last updated
 	 * @return the time when this probability set was last updated
@@ -137,37 +182,92 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
-	
+
 	/**
 	 * Enables changing the alpha parameter dynamically
 	 */
 	public void setAlpha(double alpha) {
 		this.alpha = alpha;
 	}
-	
+
 	/**
-	 * Returns a deep copy of the probability set
-	 * @return a deep copy of the probability set
+	 * Returns a copy of the probability set. The copy shares the
+	 * probability arrays with this set until either of them is modified.
+	 * @return a copy of the probability set
 	 */
 	public MeetingProbabilitySet replicate() {
 		MeetingProbabilitySet replica = new MeetingProbabilitySet(
 				this.maxSetSize, alpha);
-		
-		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
-		
+
+		replica.nodes = this.nodes;
+		replica.probs = this.probs;
+		replica.size = this.size;
+		replica.shared = this.shared = true;
+
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
-	
+
+	/**
+	 * Sets the probability for a node index
+	 * @param index The node index
+	 * @param value The probability
+	 */
+	private void put(int index, double value) {
+		int pos = Arrays.binarySearch(nodes, 0, size, index);
+		if (pos >= 0) {
+			ensureOwnArrays(size);
+			probs[pos] = value;
+			return;
+		}
+
+		pos = -(pos + 1);
+		ensureOwnArrays(size + 1);
+		System.arraycopy(nodes, pos, nodes, pos + 1, size - pos);
+		System.arraycopy(probs, pos, probs, pos + 1, size - pos);
+		nodes[pos] = index;
+		probs[pos] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the probability at the given position
+	 * @param pos The position
+	 * @return The removed probability
+	 */
+	private double removeAt(int pos) {
+		ensureOwnArrays(size);
+		double value = probs[pos];
+		System.arraycopy(nodes, pos + 1, nodes, pos, size - pos - 1);
+		System.arraycopy(probs, pos + 1, probs, pos, size - pos - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 * Makes sure that the arrays are not shared with replicas and that they
+	 * have room for the given number of probabilities
+	 * @param capacity The required capacity
+	 */
+	private void ensureOwnArrays(int capacity) {
+		if (!shared && capacity <= nodes.length) {
+			return;
+		}
+		int newCapacity = Math.max(nodes.length, INIT_CAPACITY);
+		while (newCapacity < capacity) {
+			newCapacity *= 2;
+		}
+		nodes = Arrays.copyOf(nodes, newCapacity);
+		probs = Arrays.copyOf(probs, newCapacity);
+		shared = false;
+	}
+
 	/**
 	 * Returns a String presentation of the probabilities
 	 * @return a String presentation of the probabilities
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.prophet;
+
+import java.util.Arrays;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * <P>Delivery predictabilities of a PRoPHET router. The predictabilities are
+ * stored in an array that is indexed by the host addresses.</P>
+ *
+ * <P>Aging multiplies all the predictabilities with the same value so,
+ * instead of multiplying every value, the values are stored relative to a
+ * base time and multiplied, when read, by a common scale <CODE>gamma ^ k
+ * </CODE>, where k is the number of time units since the base time. The
+ * scale is folded into the values only when it gets too small to be
+ * represented accurately or when gamma changes. The base times are
+ * multiples of the same epoch length in all the tables that use the same
+ * gamma so tables with identical histories have identical values.</P>
+ */
+public class DeliveryPredictabilities {
+	/** smallest scale that is used before moving the base time */
+	private static final double MIN_SCALE = 1e-100;
+	/** initial size of the arrays */
+	private static final int INIT_SIZE = 16;
+
+	/** the predictabilities divided by the scale (indexed by address) */
+	private double[] values;
+	/** hosts of the predictabilities (indexed by address; null for
+	 * the hosts with no predictability) */
+	private DTNHost[] hosts;
+	/** addresses of the hosts with a predictability in the order they
+	 * got their first predictability */
+	private int[] known;
+	/** number of hosts with a predictability */
+	private int size;
+	/** common multiplier of all the values (gamma ^ time units since the
+	 * base time) */
+	private double scale;
+	/** the time the values are relative to */
+	private double baseTime;
+	/** how much time can pass before the base time is moved */
+	private double epochLength;
+	/** the aging constant of the current scale */
+	private double gamma;
+	/** the time when the predictabilities were last aged */
+	private double lastAgeUpdate;
+	/** length of a time unit in aging (seconds) */
+	private double secondsInTimeUnit;
+
+	/**
+	 * Creates a new empty predictability table
+	 * @param secondsInTimeUnit How many seconds one time unit is in aging
+	 */
+	public DeliveryPredictabilities(double secondsInTimeUnit) {
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.values = new double[INIT_SIZE];
+		this.hosts = new DTNHost[INIT_SIZE];
+		this.known = new int[INIT_SIZE];
+		this.size = 0;
+		this.scale = 1;
+		this.baseTime = 0;
+		this.gamma = Double.NaN;
+		this.lastAgeUpdate = 0;
+	}
+
+	/**
+	 * Ages all the predictabilities to the current simulation time.
+	 * <CODE>P(a,b) = P(a,b)_old * (gamma ^ k)</CODE>, where k is number of
+	 * time units that have elapsed since the last time the predictabilities
+	 * were aged. If gamma has changed since the last aging, the new gamma
+	 * is used for the whole time. Takes a constant time unless gamma has
+	 * changed or an epoch has passed.
+	 * @param gamma The aging constant
+	 */
+	public void age(double gamma) {
+		double now = SimClock.getTime();
+
+		if (gamma != this.gamma) {
+			if (!Double.isNaN(this.gamma)) {
+				/* values at the last aging time become the new base */
+				multiplyValues(this.scale);
+				this.baseTime = this.lastAgeUpdate;
+				this.scale = 1;
+			}
+			this.gamma = gamma;
+			if (gamma < 1) {
+				this.epochLength = Math.floor(Math.log(MIN_SCALE) /
+						Math.log(gamma)) * this.secondsInTimeUnit;
+			}
+			else {
+				this.epochLength = Double.MAX_VALUE;
+			}
+		}
+
+		if (now == this.lastAgeUpdate) {
+			return;
+		}
+
+		if (now - this.baseTime >= this.epochLength) {
+			double newBase = this.baseTime + this.epochLength *
+				Math.floor((now - this.baseTime) / this.epochLength);
+			multiplyValues(Math.pow(gamma,
+					(newBase - this.baseTime) / this.secondsInTimeUnit));
+			this.baseTime = newBase;
+		}
+
+		this.scale = Math.pow(gamma,
+				(now - this.baseTime) / this.secondsInTimeUnit);
+		this.lastAgeUpdate = now;
+	}
+
+	/**
+	 * Returns the predictability for a host
+	 * @param host The host
+	 * @return The predictability or 0 if the host has no predictability
+	 */
+	public double get(DTNHost host) {
+		int address = host.getAddress();
+		if (address >= this.values.length) {
+			return 0;
+		}
+		return this.values[address] * this.scale;
+	}
+
+	/**
+	 * Sets the predictability for a host. The table should be aged to the
+	 * current time first.
+	 * @param host The host
+	 * @param pred The new predictability
+	 */
+	public void set(DTNHost host, double pred) {
+		int address = host.getAddress();
+		ensureSize(address);
+		if (this.hosts[address] == null) {
+			this.hosts[address] = host;
+			this.known[this.size++] = address;
+		}
+		this.values[address] = pred / this.scale;
+	}
+
+	/**
+	 * Updates the transitive (A->B->C) predictabilities from the
+	 * predictabilities of the met host. For all the hosts C, except for
+	 * this table's own host:
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * beta
+	 * </CODE>
+	 * @param other The predictabilities of the met host (B)
+	 * @param self The host of this table (A)
+	 * @param pForHost The predictability for the met host (P(a,b))
+	 * @param beta The transitivity scaling constant
+	 */
+	public void addTransitive(DeliveryPredictabilities other, DTNHost self,
+			double pForHost, double beta) {
+		for (int i = 0; i < other.size; i++) {
+			int c = other.known[i];
+			DTNHost host = other.hosts[c];
+			if (host == self) {
+				continue; // don't add yourself
+			}
+
+			double pOld = get(host); // P(a,c)_old
+			double pNew = pOld +
+				(1 - pOld) * pForHost * (other.values[c] * other.scale) * beta;
+			set(host, pNew);
+		}
+	}
+
+	/**
+	 * Updates the transitive (A->B->C) predictabilities from the
+	 * predictabilities of the met host as in PRoPHETv2. For all the hosts C,
+	 * except for this table's own host, the predictability is
+	 * <CODE>max(P(a,c)_old, P(a,b) * P(b,c) * beta)</CODE>
+	 * @param other The predictabilities of the met host (B)
+	 * @param self The host of this table (A)
+	 * @param pForHost The predictability for the met host (P(a,b))
+	 * @param beta The transitivity scaling constant
+	 */
+	public void maxTransitive(DeliveryPredictabilities other, DTNHost self,
+			double pForHost, double beta) {
+		for (int i = 0; i < other.size; i++) {
+			int c = other.known[i];
+			DTNHost host = other.hosts[c];
+			if (host == self) {
+				continue; // don't add yourself
+			}
+
+			double pNew = pForHost * (other.values[c] * other.scale) * beta;
+			if (pNew > get(host)) {
+				set(host, pNew);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of hosts with a predictability
+	 * @return the number of hosts with a predictability
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the i:th host with a predictability. The hosts are in the
+	 * order they got their first predictability.
+	 * @param i Index of the host (0 -- {@link #size()}-1)
+	 * @return The host
+	 */
+	public DTNHost getHostAt(int i) {
+		return this.hosts[this.known[i]];
+	}
+
+	/**
+	 * Multiplies all the stored values
+	 * @param mult The multiplier
+	 */
+	private void multiplyValues(double mult) {
+		for (int i = 0; i < this.size; i++) {
+			this.values[this.known[i]] *= mult;
+		}
+	}
+
+	/**
+	 * Makes sure that the arrays can hold the given address
+	 * @param address The address
+	 */
+	private void ensureSize(int address) {
+		if (address < this.values.length) {
+			return;
+		}
+
+		int newSize = this.values.length;
+		while (newSize <= address) {
+			newSize *= 2;
+		}
+		this.values = Arrays.copyOf(this.values, newSize);
+		this.hosts = Arrays.copyOf(this.hosts, newSize);
+		this.known = Arrays.copyOf(this.known, newSize);
+	}
+}
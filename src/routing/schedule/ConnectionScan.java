@@ -0,0 +1,216 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package routing.schedule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <P>Earliest arrival searches over the entries of a schedule using the
+ * Connection Scan Algorithm. The entries are stored once in arrays that are
+ * sorted by the departure times and the nodes are mapped to dense indexes,
+ * so a search is a single pass over the arrays.</P>
+ *
+ * <P>A search from a source node finds the earliest arrival times to all
+ * the nodes. The results are cached by the source and the time bucket of
+ * the start time: a search is done from the beginning of the bucket and
+ * its path to a destination is used for all the queries in the same
+ * bucket whose start time is not after the first departure of the path
+ * (then the path is the fastest one for the later start time too).</P>
+ */
+public class ConnectionScan {
+	/** Default length of the time buckets of the cached searches */
+	public static final double DEFAULT_BUCKET_SIZE = 60;
+	/** How many searches are cached before the cache is cleared */
+	private static final int MAX_CACHED = 1024;
+	/** Value for infinite time */
+	private static final double INFINITY = Double.MAX_VALUE;
+
+	/** the entries sorted by departure (and arrival) time */
+	private ScheduleEntry[] entries;
+	private double[] departures;
+	private double[] arrivals;
+	/** indexes of the source nodes of the entries */
+	private int[] fromIndexes;
+	/** indexes of the destination nodes of the entries */
+	private int[] toIndexes;
+	/** dense indexes of the nodes */
+	private Map<Integer, Integer> nodeIndexes;
+
+	private double bucketSize;
+	/** cached searches by the source index and the time bucket */
+	private Map<Long, Search> cache;
+
+	/**
+	 * Creates the arrays from schedule entries
+	 * @param list The schedule entries
+	 * @param bucketSize Length of the time buckets of the cached searches
+	 */
+	public ConnectionScan(List<ScheduleEntry> list, double bucketSize) {
+		this.bucketSize = bucketSize;
+		this.cache = new HashMap<Long, Search>();
+		this.nodeIndexes = new HashMap<Integer, Integer>();
+
+		this.entries = list.toArray(new ScheduleEntry[list.size()]);
+		Arrays.sort(this.entries, new Comparator<ScheduleEntry>() {
+			public int compare(ScheduleEntry e1, ScheduleEntry e2) {
+				int c = Double.compare(e1.getTime(), e2.getTime());
+				if (c != 0) {
+					return c;
+				}
+				return Double.compare(e1.getDestinationTime(),
+						e2.getDestinationTime());
+			}
+		});
+
+		int n = this.entries.length;
+		this.departures = new double[n];
+		this.arrivals = new double[n];
+		this.fromIndexes = new int[n];
+		this.toIndexes = new int[n];
+		for (int i = 0; i < n; i++) {
+			ScheduleEntry se = this.entries[i];
+			this.departures[i] = se.getTime();
+			this.arrivals[i] = se.getDestinationTime();
+			this.fromIndexes[i] = indexOf(se.getFrom());
+			this.toIndexes[i] = indexOf(se.getTo());
+		}
+	}
+
+	/**
+	 * Returns the fastest path between two nodes
+	 * @param from The source of the path
+	 * @param to The destination of the path
+	 * @param time The time when the path starts
+	 * @return The schedule entries of the path or an empty list if there is
+	 * no path
+	 */
+	public List<ScheduleEntry> getPath(int from, int to, double time) {
+		List<ScheduleEntry> path = new ArrayList<ScheduleEntry>();
+		Integer source = this.nodeIndexes.get(from);
+		Integer target = this.nodeIndexes.get(to);
+		if (from == to || source == null || target == null) {
+			return path;
+		}
+
+		Search search = getSearch(source, time);
+		if (search.arrival[target] == INFINITY) {
+			return path; // no path even from the beginning of the bucket
+		}
+		if (search.firstDeparture[target] < time) {
+			/* the cached path leaves too early; search for this time */
+			search = new Search(source, time);
+		}
+
+		for (int c = search.prevEntry[target]; c >= 0;
+				c = search.prevEntry[this.fromIndexes[c]]) {
+			path.add(this.entries[c]);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Returns the cached search for the bucket of the start time (the search
+	 * is done if it is not in the cache)
+	 * @param source Index of the source node
+	 * @param time The start time
+	 * @return The search
+	 */
+	private Search getSearch(int source, double time) {
+		long bucket = (long)Math.floor(time / this.bucketSize);
+		Long key = (((long)source) << 32) ^ bucket;
+		Search search = this.cache.get(key);
+		if (search == null) {
+			if (this.cache.size() >= MAX_CACHED) {
+				this.cache.clear();
+			}
+			search = new Search(source, bucket * this.bucketSize);
+			this.cache.put(key, search);
+		}
+		return search;
+	}
+
+	/**
+	 * Returns the dense index of a node (adds the node if it's new)
+	 * @param node The node
+	 * @return The index
+	 */
+	private int indexOf(int node) {
+		Integer index = this.nodeIndexes.get(node);
+		if (index == null) {
+			index = this.nodeIndexes.size();
+			this.nodeIndexes.put(node, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Earliest arrival times from a source node to all the nodes
+	 */
+	private class Search {
+		/** the earliest arrival times */
+		private double[] arrival;
+		/** the last entry of the path to the nodes (-1 for none) */
+		private int[] prevEntry;
+		/** departure time of the first entry of the path to the nodes */
+		private double[] firstDeparture;
+
+		/**
+		 * Scans the entries departing at or after the start time
+		 * @param source Index of the source node
+		 * @param start The start time
+		 */
+		public Search(int source, double start) {
+			int n = nodeIndexes.size();
+			this.arrival = new double[n];
+			this.prevEntry = new int[n];
+			this.firstDeparture = new double[n];
+			Arrays.fill(this.arrival, INFINITY);
+			Arrays.fill(this.prevEntry, -1);
+			this.arrival[source] = start;
+			this.firstDeparture[source] = INFINITY;
+
+			int c = firstEntryAfter(start);
+			for (int nrof = departures.length; c < nrof; c++) {
+				int f = fromIndexes[c];
+				int t = toIndexes[c];
+				if (this.arrival[f] > departures[c] ||
+						arrivals[c] >= this.arrival[t]) {
+					continue; // can't catch the entry or it isn't faster
+				}
+				this.arrival[t] = arrivals[c];
+				this.prevEntry[t] = c;
+				this.firstDeparture[t] = (f == source ?
+						departures[c] : this.firstDeparture[f]);
+			}
+		}
+
+		/**
+		 * Returns the index of the first entry departing at or after a time
+		 * @param time The time
+		 * @return The index
+		 */
+		private int firstEntryAfter(double time) {
+			int low = 0;
+			int high = departures.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (departures[mid] < time) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
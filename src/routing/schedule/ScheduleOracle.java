@@ -14,6 +14,8 @@ public class ScheduleOracle implements Serializable{
 	private static final long serialVersionUID = 42L;
 	
 	Map<Integer, List<ScheduleEntry>> schedules;
+	/** the searches over the current entries (null if not created yet) */
+	private transient ConnectionScan connectionScan;
 	
 	public ScheduleOracle() {
 		this.schedules = new HashMap<Integer, List<ScheduleEntry>>();
@@ -37,6 +39,7 @@ public class ScheduleOracle implements Serializable{
 		}
 
 		list.add(new ScheduleEntry(start, from, via, to, duration));
+		entriesChanged();
 	}
 
 	/**
@@ -74,6 +77,28 @@ public class ScheduleOracle implements Serializable{
 		return connected;
 	}
 	
+	/**
+	 * Returns the earliest arrival searches over the schedule entries. The
+	 * searches (and their cached results) are shared by all the users of
+	 * this oracle until the entries change.
+	 * @return the earliest arrival searches
+	 */
+	public ConnectionScan getConnectionScan() {
+		if (this.connectionScan == null) {
+			this.connectionScan = new ConnectionScan(getEntries(),
+					ConnectionScan.DEFAULT_BUCKET_SIZE);
+		}
+		return this.connectionScan;
+	}
+
+	/**
+	 * Discards the searches over the entries. Must be called if the time
+	 * of an entry is changed (see {@link ScheduleEntry#setDelta(double)}).
+	 */
+	public void entriesChanged() {
+		this.connectionScan = null;
+	}
+	
 	/**
 	 * Returns all schedule entries
 	 * @return all schedule entries
@@ -27,11 +27,14 @@ public class AllTests {
 		suite.addTestSuite(ConnectionTest.class);
 		suite.addTestSuite(ExternalMovementReaderTest.class);
 		suite.addTestSuite(ExternalMovementTest.class);
+		suite.addTestSuite(TrajectoryCacheTest.class);
 		suite.addTestSuite(WKTReaderTest.class);
+		suite.addTestSuite(BinaryMapReaderTest.class);
 		suite.addTestSuite(WKTPointReaderTest.class);
 		suite.addTestSuite(MapNodeTest.class);
 		suite.addTestSuite(MapBasedMovementTest.class);
 		suite.addTestSuite(CoordTest.class);
+		suite.addTestSuite(HostPositionsTest.class);
 		suite.addTestSuite(DistanceDelayReportTest.class);
 		suite.addTestSuite(AdjacencyGraphvizReportTest.class);
 		suite.addTestSuite(MessageGraphvizReportTest.class);
@@ -39,9 +42,11 @@ public class AllTests {
 		suite.addTestSuite(ContactTimesReportTest.class);
 		suite.addTestSuite(TotalContactTimeReportTest.class);
 		suite.addTestSuite(EpidemicRouterTest.class);
+		suite.addTestSuite(EpidemicOracleRouterTest.class);
 		suite.addTestSuite(ProphetRouterTest.class);
 		suite.addTestSuite(SettingsTest.class);
 		suite.addTestSuite(DijkstraPathFinderTest.class);
+		suite.addTestSuite(MapNodeGridTest.class);
 		suite.addTestSuite(PointsOfInterestTest.class);
 		suite.addTestSuite(ActivenessHandlerTest.class);
 		suite.addTestSuite(MaxPropDijkstraTest.class);
@@ -49,6 +54,17 @@ public class AllTests {
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(HostActivityQueueTest.class);
+		suite.addTestSuite(RunContextTest.class);
+		suite.addTestSuite(SweepAndPruneOptimizerTest.class);
+		suite.addTestSuite(RangeCrossingTimeTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
+		suite.addTestSuite(TimingWheelTest.class);
+		suite.addTestSuite(DeliveryPredictabilitiesTest.class);
+		suite.addTestSuite(SummaryVectorTest.class);
+		suite.addTestSuite(VBRConnectionTest.class);
+		suite.addTestSuite(EncounterHistoryTest.class);
+		suite.addTestSuite(SprayAndFocusRouterTest.class);
 		//$JUnit-END$
 		return suite;
 	}
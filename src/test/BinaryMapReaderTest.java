@@ -0,0 +1,81 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import input.BinaryMapReader;
+import input.WKTMapReader;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.SimMap;
+
+/**
+ * Tests for storing and reading binary map files.
+ */
+public class BinaryMapReaderTest extends TestCase {
+	private static final String ROADS =
+		"LINESTRING (1.0 1.0, 2.0 1.0, 3.0 1.0, 8.0 1.0)\n" +
+		"LINESTRING (2.0 1.0, 2.0 0.0, 3.0 0.0, 3.0 1.0)";
+	private static final String PATHS = "LINESTRING (1.0 1.0, 1.0 3.0)";
+	private static final String ISLAND = "LINESTRING (5.0 5.0, 6.0 5.0)";
+
+	private File tmpFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		tmpFile = File.createTempFile("TempMapTest",
+				BinaryMapReader.BINARY_EXT);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		assertTrue(tmpFile.delete());
+	}
+
+	private SimMap readWkt(String ... maps) throws Exception {
+		WKTMapReader r = new WKTMapReader(true);
+		for (int i = 0; i < maps.length; i++) {
+			r.addPaths(new StringReader(maps[i]), i + 1);
+		}
+		return r.getMap();
+	}
+
+	public void testStoreAndRead() throws Exception {
+		SimMap map = readWkt(ROADS, PATHS);
+		BinaryMapReader.storeToBinaryFile(tmpFile.getAbsolutePath(), map, 2);
+		assertTrue(BinaryMapReader.isBinaryMapFile(tmpFile));
+
+		BinaryMapReader r = new BinaryMapReader(tmpFile);
+		assertEquals(2, r.getNrofMapFiles());
+		assertTrue(r.isConnected());
+
+		List<MapNode> orig = map.getNodes();
+		List<MapNode> read = r.getMap().getNodes();
+		assertEquals(orig.size(), read.size());
+		for (int i = 0; i < orig.size(); i++) {
+			MapNode o = orig.get(i);
+			MapNode n = read.get(i);
+			assertEquals(o.getLocation(), n.getLocation());
+			assertEquals(o.isType(1), n.isType(1));
+			assertEquals(o.isType(2), n.isType(2));
+			assertEquals(o.getNeighbors().size(), n.getNeighbors().size());
+			for (int j = 0; j < o.getNeighbors().size(); j++) {
+				assertEquals(o.getNeighbors().get(j).getLocation(),
+						n.getNeighbors().get(j).getLocation());
+			}
+		}
+		assertEquals(map.getMaxBound(), r.getMap().getMaxBound());
+	}
+
+	public void testNotConnected() throws Exception {
+		BinaryMapReader.storeToBinaryFile(tmpFile.getAbsolutePath(),
+				readWkt(ROADS, ISLAND), 2);
+		assertFalse(new BinaryMapReader(tmpFile).isConnected());
+	}
+}
@@ -25,18 +25,31 @@ import core.SimClock;
 public class ContactTimesReportTest extends TestCase {
 	private BufferedReader ctReader;
 	private BufferedReader ictReader;
+	private ContactTimesReport ctr;
+	private InterContactTimesReport ictr;
+	private TestUtils utils;
+	private File outFile;
+	private File iOutFile;
 	
 	private SimClock clock;
 	private final static String SET_PREFIX = "ContactTimesReport.";
 	private final static String I_SET_PREFIX = "InterContactTimesReport.";
 	
 	private void setUpWithGranularity(double gran) throws IOException {
-		ContactTimesReport ctr;
-		InterContactTimesReport ictr;
+		createReports(gran);
+		generateConnections(utils);
+		ctr.done();
+		ictr.done();
+		ctReader = new BufferedReader(new FileReader(outFile));
+		ictReader = new BufferedReader(new FileReader(iOutFile));
+
+	}
+
+	private void createReports(double gran) throws IOException {
 		TestSettings ts = new TestSettings();
 		
-		File outFile = File.createTempFile("cttest", ".tmp");
-		File iOutFile = File.createTempFile("icttest", ".tmp");
+		outFile = File.createTempFile("cttest", ".tmp");
+		iOutFile = File.createTempFile("icttest", ".tmp");
 		outFile.deleteOnExit();
 		iOutFile.deleteOnExit();
 		
@@ -59,13 +72,7 @@ public class ContactTimesReportTest extends TestCase {
 		cl.add(ctr);
 		cl.add(ictr);
 		
-		TestUtils utils = new TestUtils(cl, null, ts);
-		generateConnections(utils);
-		ctr.done();
-		ictr.done();
-		ctReader = new BufferedReader(new FileReader(outFile));
-		ictReader = new BufferedReader(new FileReader(iOutFile));
-
+		utils = new TestUtils(cl, null, ts);
 	}
 	
 	private void generateConnections(TestUtils utils) {
@@ -126,6 +133,28 @@ public class ContactTimesReportTest extends TestCase {
 		assertEquals(null,ictReader.readLine());		
 	}
 	
+	public void testExplicitTimes() throws IOException {
+		String[] ctValues = {"0.0 0", "1.0 0", "2.0 0", "3.0 1", "4.0 0"};
+		String[] ictValues = {"0.0 0", "1.0 1", "2.0 0"};
+
+		createReports(1.0);
+		DTNHost h1 = utils.createHost(new Coord(0,0));
+		DTNHost h2 = utils.createHost(new Coord(1,0));
+
+		/* the times given to the listeners are used instead of the clock */
+		clock.setTime(100);
+		ctr.hostsConnected(h1, h2, 10);
+		ctr.hostsDisconnected(h1, h2, 13.5);
+		ictr.hostsDisconnected(h1, h2, 13.5);
+		ictr.hostsConnected(h1, h2, 15.2);
+		ctr.done();
+		ictr.done();
+		ctReader = new BufferedReader(new FileReader(outFile));
+		ictReader = new BufferedReader(new FileReader(iOutFile));
+
+		checkValues(ctValues, ictValues);
+	}
+
 	public void testGranularity2() throws IOException {
 		String[] ctValues = {"0.0 0", "2.0 3", "4.0 0",
 				"6.0 1", "8.0 0"};
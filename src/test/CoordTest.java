@@ -26,6 +26,16 @@ public class CoordTest extends TestCase {
 		c5.translate(1, 1);
 		assertTrue(c5.hashCode() != c6.hashCode());
 		
+		assertTrue(new Coord(0.0, -0.0).hashCode() ==
+			new Coord(-0.0, 0.0).hashCode());
+	}
+
+	public void testDistanceSquared() {
+		Coord c1 = new Coord(1,1);
+		Coord c2 = new Coord(4,5);
+		assertEquals(25.0, c1.distanceSquared(c2));
+		assertEquals(c1.distance(c2) * c1.distance(c2),
+				c2.distanceSquared(c1));
 	}
 
 }
@@ -0,0 +1,114 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.prophet.DeliveryPredictabilities;
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Tests for the DeliveryPredictabilities of the PRoPHET routers
+ */
+public class DeliveryPredictabilitiesTest extends TestCase {
+	private static final double DELTA = 1e-12;
+	private static final double GAMMA = 0.98;
+	private SimClock clock;
+	private DTNHost h1, h2, h3, h4;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock = SimClock.getInstance();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+		h4 = utils.createHost();
+	}
+
+	public void testAging() {
+		DeliveryPredictabilities p = new DeliveryPredictabilities(30);
+		p.age(GAMMA);
+		p.set(h2, 0.75);
+		assertEquals(0.0, p.get(h3));
+
+		clock.advance(60);
+		p.age(GAMMA);
+		assertEquals(0.75 * GAMMA * GAMMA, p.get(h2), DELTA);
+
+		/* a value set after aging is aged only from the time it was set */
+		p.set(h3, 0.5);
+		clock.advance(30);
+		p.age(GAMMA);
+		assertEquals(0.75 * Math.pow(GAMMA, 3), p.get(h2), DELTA);
+		assertEquals(0.5 * GAMMA, p.get(h3), DELTA);
+
+		/* over the epoch length where the base time is moved */
+		clock.advance(30 * 20000);
+		p.age(GAMMA);
+		assertEquals(0.0, p.get(h2), DELTA);
+		p.set(h2, 0.75);
+		clock.advance(30);
+		p.age(GAMMA);
+		assertEquals(0.75 * GAMMA, p.get(h2), DELTA);
+	}
+
+	public void testGammaChange() {
+		DeliveryPredictabilities p = new DeliveryPredictabilities(1);
+		p.age(0.5);
+		p.set(h2, 0.8);
+		clock.advance(1);
+		p.age(0.5);
+		assertEquals(0.4, p.get(h2), DELTA);
+
+		/* new gamma is used for all the time since the last aging */
+		clock.advance(2);
+		p.age(0.9);
+		assertEquals(0.4 * 0.81, p.get(h2), DELTA);
+	}
+
+	public void testSymmetricValues() {
+		DeliveryPredictabilities p1 = new DeliveryPredictabilities(30);
+		DeliveryPredictabilities p2 = new DeliveryPredictabilities(30);
+		clock.advance(10);
+		p1.age(GAMMA);
+		clock.advance(17);
+		p1.age(GAMMA);
+		p2.age(GAMMA);
+		p1.set(h2, 0.75);
+		p2.set(h1, 0.75);
+		clock.advance(1234.5);
+		p1.age(GAMMA);
+		clock.advance(100);
+		p1.age(GAMMA);
+		p2.age(GAMMA);
+		assertTrue(p1.get(h2) == p2.get(h1));
+	}
+
+	public void testTransitive() {
+		DeliveryPredictabilities p1 = new DeliveryPredictabilities(30);
+		DeliveryPredictabilities p2 = new DeliveryPredictabilities(30);
+		p2.set(h1, 0.5);
+		p2.set(h3, 0.5);
+		p2.set(h4, 0.2);
+		p1.set(h4, 0.3);
+
+		p1.addTransitive(p2, h1, 0.75, 0.25);
+		assertEquals(0.0, p1.get(h1));
+		assertEquals(0.75 * 0.5 * 0.25, p1.get(h3), DELTA);
+		assertEquals(0.3 + 0.7 * 0.75 * 0.2 * 0.25, p1.get(h4), DELTA);
+		assertEquals(2, p1.size());
+		assertEquals(h4, p1.getHostAt(0));
+		assertEquals(h3, p1.getHostAt(1));
+
+		DeliveryPredictabilities p3 = new DeliveryPredictabilities(30);
+		p3.set(h4, 0.3);
+		p3.maxTransitive(p2, h1, 0.9, 1);
+		assertEquals(0.45, p3.get(h3), DELTA);
+		assertEquals(0.3, p3.get(h4), DELTA);
+		assertEquals(0.0, p3.get(h1));
+	}
+}
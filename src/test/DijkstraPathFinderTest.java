@@ -4,11 +4,14 @@
  */
 package test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import movement.map.DijkstraPathFinder;
 import movement.map.MapNode;
+import movement.map.SimMap;
 import core.Coord;
 
 public class DijkstraPathFinderTest extends TestCase {
@@ -73,6 +76,26 @@ public class DijkstraPathFinderTest extends TestCase {
 		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
 	}
 	
+	public void testSharedFinder() {
+		Map<Coord, MapNode> nodes = new HashMap<Coord, MapNode>();
+		for (MapNode n : new MapNode[] {n1, n2, n3, n4, n5, n6, n7, n8}) {
+			nodes.put(n.getLocation(), n);
+		}
+		SimMap map = new SimMap(nodes);
+		r = map.getPathFinder(null);
+		assertSame(r, map.getPathFinder(null));
+		assertNotSame(r, map.getPathFinder(new int[] {1}));
+		assertNotSame(r, map.getPathFinder(new int[0]));
+		assertSame(map.getPathFinder(new int[] {1, 2}),
+				map.getPathFinder(new int[] {2, 1}));
+		assertNotSame(map.getPathFinder(new int[] {1}),
+				map.getPathFinder(new int[] {1, 2}));
+		
+		checkPath(getPath(n1,n6), n1, n2, n5, n6);
+		checkPath(getPath(n1,n6), n1, n2, n5, n6); // from the path cache
+		checkPath(getPath(n8,n4), n8, n7, n6, n5, n4);
+	}
+	
 	private void checkPath(List<MapNode> path, MapNode ... nodes) {
 		assertEquals(nodes.length,path.size());
 		
@@ -0,0 +1,80 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.EncounterHistory;
+import core.DTNHost;
+
+/**
+ * Tests for the EncounterHistory of the routers
+ */
+public class EncounterHistoryTest extends TestCase {
+	private static final double DELTA = 1e-12;
+	private DTNHost h1, h2, h3;
+	private EncounterHistory eh;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		h3 = utils.createHost();
+		eh = new EncounterHistory();
+	}
+
+	public void testMeetings() {
+		assertFalse(eh.isKnown(h1));
+		assertEquals(0.0, eh.getLastSeenTime(h1));
+		assertEquals(-1, eh.getMeetingsSince(h1));
+
+		eh.meet(h1, 10);
+		eh.meet(h2, 20);
+		eh.meet(h1, 40);
+		eh.meet(h3, 50);
+		eh.meet(h1, 100);
+
+		assertEquals(3, eh.getNrofMeetings(h1));
+		assertEquals(100.0, eh.getLastSeenTime(h1));
+		assertEquals(45.0, eh.getMeanInterMeetingTime(h1), DELTA);
+		assertEquals(0.0, eh.getMeanInterMeetingTime(h2));
+		assertEquals(0, eh.getMeetingsSince(h1));
+		assertEquals(3, eh.getMeetingsSince(h2));
+	}
+
+	public void testLastSeenIsNotMeeting() {
+		eh.setLastSeenTime(h2, 30);
+		assertTrue(eh.isKnown(h2));
+		assertEquals(30.0, eh.getLastSeenTime(h2));
+		assertEquals(0, eh.getNrofMeetings(h2));
+		assertEquals(-1, eh.getMeetingsSince(h2));
+		assertEquals(1, eh.size());
+		assertEquals(h2, eh.getHostAt(0));
+	}
+
+	public void testChangedSince() {
+		eh.meet(h1, 10);
+		int version = eh.getVersion();
+		assertEquals(0, eh.getChangedSince(version).length);
+
+		eh.meet(h2, 20);
+		eh.setLastSeenTime(h3, 5);
+		DTNHost[] changed = eh.getChangedSince(version);
+		assertEquals(2, changed.length);
+		assertEquals(h2, changed[0]);
+		assertEquals(h3, changed[1]);
+
+		/* hosts that changed many times are included only once */
+		eh.setLastSeenTime(h2, 30);
+		eh.setLastSeenTime(h2, 40);
+		assertEquals(2, eh.getChangedSince(version).length);
+
+		/* too many changes to remember */
+		for (int i = 0; i < 1000; i++) {
+			eh.setLastSeenTime(h1, i);
+		}
+		assertNull(eh.getChangedSince(version));
+	}
+}
@@ -0,0 +1,68 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.EpidemicOracleRouter;
+import routing.MessageRouter;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the delivery oracle of EpidemicOracleRouter
+ */
+public class EpidemicOracleRouterTest extends AbstractRouterTest {
+	private static final int NROF_HOLDERS = 50;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new EpidemicOracleRouter(ts));
+		super.setUp();
+	}
+
+	/**
+	 * Tests that delivering a message held by many routers removes every
+	 * copy of it from the routers other than the sender
+	 */
+	public void testDeliveryPurgesAllCopies() {
+		List<DTNHost> holders = new ArrayList<DTNHost>();
+		h0.createNewMessage(new Message(h0, h1, msgId1, 1));
+		holders.add(h0);
+
+		/* flood the message to a chain of routers */
+		DTNHost prev = h0;
+		for (int i=0; i<NROF_HOLDERS; i++) {
+			DTNHost h = utils.createHost(c0, "holder" + i);
+			h.forceConnection(prev, null, true);
+			holders.add(h);
+			prev = h;
+		}
+		for (DTNHost h : holders) {
+			assertEquals(h + " has no copy", 1, h.getNrofMessages());
+		}
+		mc.reset();
+
+		/* deliver the message from the middle of the chain */
+		DTNHost from = holders.get(NROF_HOLDERS / 2);
+		h1.forceConnection(from, null, true);
+
+		boolean delivered = false;
+		while (mc.next()) {
+			if (mc.getLastType() == mc.TYPE_RELAY && mc.getLastTo() == h1) {
+				assertTrue(mc.getLastFirstDelivery());
+				delivered = true;
+			}
+		}
+		assertTrue("Message was not delivered", delivered);
+		for (DTNHost h : holders) {
+			/* the oracle does not touch the copy of the sending router */
+			int expected = (h == from ? 1 : 0);
+			assertEquals(h + " copies", expected, h.getNrofMessages());
+		}
+	}
+}
@@ -4,10 +4,12 @@
  */
 package test;
 
+import routing.ActiveRouter;
 import routing.EpidemicRouter;
 import routing.MessageRouter;
 import core.DTNHost;
 import core.Message;
+import core.World;
 
 /**
  * Tests for EpidemicRouter and, due the simple nature of Epidemic router,
@@ -499,6 +501,65 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 	
+	public void testExactTtlDrop() {
+		String exact = World.SETTINGS_NS + "." + World.EXACT_TTL_DROPS_S;
+		ts.putSetting(exact, "true");
+		ts.putSetting(MessageRouter.MSG_TTL_S, "1");
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		ts.putSetting(exact, "false");
+		ts.putSetting(MessageRouter.MSG_TTL_S, ""+TTL);
+		DTNHost h = utils.createHost(farAway, "h7");
+		
+		Message m1 = new Message(h, h3, msgId1, 1);
+		h.createNewMessage(m1);
+		checkCreates(1);
+		
+		clock.advance(59);
+		h.update(true);
+		assertFalse(mc.next()); // TTL of one minute hasn't passed yet
+		assertEquals(1, h.getNrofMessages());
+		
+		clock.advance(1);
+		h.update(true);
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(msgId1, mc.getLastMsg().getId());
+		assertEquals(0, h.getNrofMessages());
+	}
+	
+	public void testDropExpiringFirst() {
+		String policy = ActiveRouter.DROP_POLICY_S;
+		ts.putSetting(policy, "" + ActiveRouter.DROP_EXPIRING);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		ts.putSetting(policy, "" + ActiveRouter.DROP_OLDEST);
+		DTNHost h = utils.createHost(c0, "h7");
+		ts.putSetting(MessageRouter.MSG_TTL_S, "1");
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		ts.putSetting(MessageRouter.MSG_TTL_S, ""+TTL);
+		DTNHost shortTtl = utils.createHost(c0, "h8");
+		
+		h.createNewMessage(new Message(h, h3, msgId1, 40));
+		clock.advance(10);
+		shortTtl.createNewMessage(new Message(shortTtl, h4, msgId2, 40));
+		checkCreates(2);
+		
+		// h receives msgId2 after msgId1 but its TTL runs out first
+		shortTtl.connect(h);
+		deliverMessage(shortTtl, h, msgId2, 40, false);
+		disconnect(shortTtl);
+		h.update(true); // notices that the connection went down
+		assertEquals(2, h.getNrofMessages());
+		mc.reset();
+		
+		h.createNewMessage(new Message(h, h5, msgId3, 40));
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_DELETE, mc.getLastType());
+		assertEquals(msgId2, mc.getLastMsg().getId());
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_CREATE, mc.getLastType());
+		assertEquals(2, h.getNrofMessages());
+	}
+	
 	public void testResponse() {
 		Message m1 = new Message(h1,h3, msgId1, 1);
 		m1.setResponseSize(1);
@@ -5,13 +5,17 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.ConnectionEvent;
+import input.ContactTraceReader;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
 import input.MessageCreateEvent;
 import input.StandardEventsReader;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.util.List;
 
@@ -81,6 +85,33 @@ public class ExternalEventsQueueTest extends TestCase {
 		assertTrue(tmpBinFile.delete()); // make sure all locks are gone
 	}
 	
+	public void testContactTraceEEQ() throws Exception {
+		File traceFile = File.createTempFile("TempTraceTest",
+				ContactTraceReader.TRACE_EXT);
+		DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(traceFile));
+		out.writeInt(ContactTraceReader.MAGIC);
+		for (int i=0; i < msgTimes.length; i++) {
+			out.writeDouble(msgTimes[i]);
+			out.writeInt(i);
+			out.writeInt(i + 1);
+			out.writeByte(i % 2 == 0 ? 1 : 0);
+		}
+		out.close();
+		
+		eeq = new ExternalEventsQueue(traceFile.getAbsolutePath(), 3);
+		assertEquals(3, eeq.eventsLeftInBuffer());
+		for (int i=0; i < msgTimes.length; i++) {
+			assertEquals(msgTimes[i],eeq.nextEventsTime());
+			ExternalEvent ee = eeq.nextEvent();
+			assertTrue(ee instanceof ConnectionEvent);
+			assertEquals(msgTimes[i], ee.getTime());
+		}
+		assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+		
+		assertTrue(traceFile.delete());
+	}
+	
 	
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
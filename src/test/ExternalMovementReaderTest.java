@@ -16,6 +16,7 @@ import core.Tuple;
 
 public class ExternalMovementReaderTest extends TestCase {
 	private ExternalMovementReader r;
+	private File tmpFile;
 	private static final String INPUT = 
 		"0 0 0 0 0 0\n"+
 		"10 1 10 10\n"+ 
@@ -39,7 +40,7 @@ public class ExternalMovementReaderTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		
-		File tmpFile = File.createTempFile("EMRTest","tmp");
+		tmpFile = File.createTempFile("EMRTest","tmp");
 		tmpFile.deleteOnExit();
 		
 		PrintWriter pw = new PrintWriter(tmpFile);
@@ -61,6 +62,26 @@ public class ExternalMovementReaderTest extends TestCase {
 		list = r.readNextMovements();
 		assertEquals(0, list.size());
 	}
+	
+	public void testPrefetch() {
+		r.setPrefetch(1);
+		testReader();
+	}
+	
+	public void testBinaryReader() throws Exception {
+		File binFile = File.createTempFile("EMRTest", 
+				ExternalMovementReader.BINARY_EXT);
+		binFile.deleteOnExit();
+		ExternalMovementReader.storeToBinaryFile(tmpFile.getAbsolutePath(),
+				binFile.getAbsolutePath());
+		assertTrue(ExternalMovementReader.isBinaryFile(binFile));
+		assertFalse(ExternalMovementReader.isBinaryFile(tmpFile));
+		
+		r = new ExternalMovementReader(binFile.getAbsolutePath());
+		testReader();
+		assertEquals(3, r.getNrofIds());
+		assertEquals("2", r.getId(1));
+	}
 
 	private void checkTuples(List<Tuple<String, Coord>> list, String[] ids,
 			Coord[] coords) {
@@ -0,0 +1,88 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.DTNHost;
+import core.HostActivityQueue;
+import core.SimClock;
+
+/**
+ * Tests for the HostActivityQueue
+ */
+public class HostActivityQueueTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private static final int NROF_HOSTS = 5;
+	private HostActivityQueue haq;
+	private DTNHost[] h;
+	private SimClock sc = SimClock.getInstance();
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h = new DTNHost[NROF_HOSTS];
+		for (int i=0; i<NROF_HOSTS; i++) {
+			h[i] = utils.createHost();
+		}
+		haq = new HostActivityQueue(NROF_HOSTS);
+	}
+
+	public void testOrder() {
+		assertEquals(MAX, haq.nextTime());
+		haq.set(h[0], 5);
+		haq.set(h[1], 2);
+		haq.set(h[2], MAX);
+		haq.set(h[3], 5);
+
+		assertEquals(2.0, haq.nextTime());
+		List<DTNHost> due = haq.pollDue(1);
+		assertEquals(0, due.size());
+
+		due = haq.pollDue(5);
+		assertEquals(3, due.size());
+		assertEquals(h[1], due.get(0));
+		assertEquals(h[0], due.get(1)); // ties in address order
+		assertEquals(h[3], due.get(2));
+		assertEquals(MAX, haq.nextTime());
+	}
+
+	public void testReplacedTimes() {
+		haq.set(h[0], 3);
+		haq.set(h[1], 4);
+		haq.set(h[0], 10);
+		assertEquals(4.0, haq.nextTime());
+
+		haq.set(h[0], 3); // back to the old time
+		List<DTNHost> due = haq.pollDue(20);
+		assertEquals(2, due.size());
+		assertEquals(h[0], due.get(0));
+		assertEquals(h[1], due.get(1));
+		assertEquals(MAX, haq.nextTime());
+	}
+
+	public void testRegular() {
+		sc.setTime(10);
+		haq.set(h[0], 20);
+		haq.set(h[1], 10); // not in the future -> regular
+		assertEquals(HostActivityQueue.REGULAR, haq.nextTime());
+
+		haq.set(h[1], 15);
+		assertEquals(15.0, haq.nextTime());
+	}
+
+	public void testManyUpdates() {
+		for (int i=0; i<100; i++) {
+			for (int j=0; j<NROF_HOSTS; j++) {
+				haq.set(h[j], 100 + i + j);
+			}
+		}
+		assertEquals(199.0, haq.nextTime());
+		assertEquals(NROF_HOSTS, haq.pollDue(MAX).size());
+	}
+}
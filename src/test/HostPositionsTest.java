@@ -0,0 +1,68 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+
+/**
+ * Tests for the primitive position store of the hosts and the Coord views
+ * of the host locations
+ */
+public class HostPositionsTest extends TestCase {
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		DTNHost.reset();
+		utils = new TestUtils(null, null, new TestSettings());
+	}
+
+	public void testViewWritesThrough() {
+		DTNHost h = utils.createHost(new Coord(10, 20));
+		Coord loc = h.getLocation();
+		assertEquals(10.0, h.getLocationX());
+		assertEquals(20.0, h.getLocationY());
+
+		loc.translate(5, -5);
+		assertEquals(15.0, h.getLocationX());
+		assertEquals(15.0, h.getLocationY());
+
+		loc.setLocation(1, 2);
+		assertEquals(1.0, h.getLocationX());
+		assertEquals(2.0, h.getLocationY());
+	}
+
+	public void testClonesAreDetached() {
+		DTNHost h = utils.createHost(new Coord(10, 20));
+		Coord c = h.getLocation().clone();
+		c.translate(100, 100);
+		assertEquals(10.0, h.getLocationX());
+		assertEquals(new Coord(10, 20), h.getLocation());
+	}
+
+	public void testSetLocation() {
+		DTNHost h = utils.createHost(new Coord(10, 20));
+		Coord old = h.getLocation();
+		h.setLocation(new Coord(30, 40));
+		assertEquals(30.0, h.getLocationX());
+		assertEquals(new Coord(10, 20), old);
+
+		// the old location object doesn't move the host anymore
+		old.translate(1, 1);
+		assertEquals(new Coord(30, 40), h.getLocation());
+		assertEquals(40.0, h.getLocationY());
+	}
+
+	public void testHostsHaveOwnPositions() {
+		DTNHost h1 = utils.createHost(new Coord(1, 1));
+		DTNHost h2 = utils.createHost(new Coord(2, 2));
+		h1.getLocation().translate(10, 0);
+		assertEquals(11.0, h1.getLocationX());
+		assertEquals(2.0, h2.getLocationX());
+		assertEquals(new Coord(2, 2), h2.getLocation());
+	}
+}
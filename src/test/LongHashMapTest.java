@@ -0,0 +1,76 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.LongHashMap;
+
+/**
+ * Tests for the LongHashMap
+ */
+public class LongHashMapTest extends TestCase {
+	private LongHashMap<String> map;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		map = new LongHashMap<String>();
+	}
+
+	public void testPutAndGet() {
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5L << 32, "b"));
+		assertEquals("a", map.put(1, "c"));
+
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(-5L << 32));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(1));
+		assertFalse(map.containsKey(2));
+	}
+
+	public void testRemove() {
+		for (int i = 0; i < 100; i++) {
+			map.put(i, "v" + i);
+		}
+		for (int i = 0; i < 100; i += 2) {
+			assertEquals("v" + i, map.remove(i));
+		}
+		assertNull(map.remove(0));
+		assertEquals(50, map.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i % 2 == 1, map.containsKey(i));
+		}
+		assertEquals(50, map.values().size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * Compares random operations with a HashMap
+	 */
+	public void testRandomOperations() {
+		HashMap<Long, String> reference = new HashMap<Long, String>();
+		Random rng = new Random(1);
+
+		for (int i = 0; i < 10000; i++) {
+			long key = rng.nextInt(200);
+			if (rng.nextBoolean()) {
+				assertEquals(reference.put(key, "v" + i), map.put(key, "v" + i));
+			}
+			else {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+		for (long key = 0; key < 200; key++) {
+			assertEquals(reference.get(key), map.get(key));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.map.MapNode;
+import movement.map.MapNodeGrid;
+import core.Coord;
+
+/**
+ * Tests for the spatial index of map nodes. The results are compared to
+ * linear searches over the nodes.
+ */
+public class MapNodeGridTest extends TestCase {
+	private static final int NROF_NODES = 500;
+	private List<MapNode> nodes;
+	private MapNodeGrid grid;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		rng = new Random(1);
+		nodes = new ArrayList<MapNode>();
+		for (int i = 0; i < NROF_NODES; i++) {
+			/* integer coordinates to get also equally distant nodes */
+			nodes.add(new MapNode(new Coord(rng.nextInt(1000),
+					rng.nextInt(300))));
+		}
+		grid = new MapNodeGrid(nodes);
+	}
+
+	private Coord randomCoord() {
+		/* also coordinates outside the area of the nodes */
+		return new Coord(rng.nextInt(1400) - 200, rng.nextInt(700) - 200);
+	}
+
+	public void testNearestNode() {
+		for (int i = 0; i < 1000; i++) {
+			Coord c = randomCoord();
+			MapNode nearest = null;
+			double minDistance = Double.MAX_VALUE;
+			for (MapNode n : nodes) {
+				double distance = n.getLocation().distance(c);
+				if (distance < minDistance) {
+					minDistance = distance;
+					nearest = n;
+				}
+			}
+			assertSame("Wrong node for " + c, nearest, grid.getNearestNode(c));
+		}
+	}
+
+	public void testNearestNodes() {
+		for (int i = 0; i < 100; i++) {
+			Coord c = randomCoord();
+			List<MapNode> nearest = grid.getNearestNodes(c, 10);
+			assertEquals(10, nearest.size());
+			assertSame(grid.getNearestNode(c), nearest.get(0));
+
+			double tenth = nearest.get(9).getLocation().distance(c);
+			int nrofCloser = 0;
+			for (MapNode n : nodes) {
+				if (n.getLocation().distance(c) < tenth) {
+					nrofCloser++;
+					assertTrue(nearest.contains(n));
+				}
+			}
+			assertTrue(nrofCloser < 10);
+		}
+		assertEquals(NROF_NODES, grid.getNearestNodes(new Coord(0, 0),
+				NROF_NODES + 1).size());
+	}
+
+	public void testNodesWithin() {
+		for (int i = 0; i < 100; i++) {
+			Coord c = randomCoord();
+			List<MapNode> expected = new ArrayList<MapNode>();
+			for (MapNode n : nodes) {
+				if (n.getLocation().distance(c) <= 50) {
+					expected.add(n);
+				}
+			}
+			assertEquals(expected, grid.getNodesWithin(c, 50));
+		}
+	}
+}
@@ -121,6 +121,45 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals(1-0.0625, result.get(2));
 		assertEquals(1-0.625, result.get(4));
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
+		
+		double[] all = mpd.getAllCosts(0);
+		for (Map.Entry<Integer, Double> e : result.entrySet()) {
+			assertEquals(e.getValue(), all[e.getKey()]);
+		}
+		assertEquals(0.0, all[0]);
+	}
+	
+	public void testReplicaIsIndependent() {
+		MeetingProbabilitySet mps = mapping.get(0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		
+		MeetingProbabilitySet replica = mps.replicate();
+		mps.updateMeetingProbFor(3);
+		assertEquals(0.5, replica.getProbFor(1));
+		assertEquals(0.5, replica.getProbFor(2));
+		assertEquals(0.0, replica.getProbFor(3));
+		assertEquals(2, replica.size());
+		assertEquals(0.5, mps.getProbFor(3));
+		assertEquals(3, mps.size());
+		
+		replica.updateMeetingProbFor(1);
+		assertEquals(0.25, mps.getProbFor(1));
+		assertEquals(0.75, replica.getProbFor(1));
+	}
+	
+	public void testMaxSetSize() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(3, 1.0);
+		mps.updateMeetingProbFor(5);
+		mps.updateMeetingProbFor(1);
+		/* 1 and 5 have the smallest values; the first one (1) is dropped */
+		mps.updateMeetingProbFor(3);
+		
+		assertEquals(2, mps.size());
+		assertEquals(3, mps.getNodeAt(0));
+		assertEquals(5, mps.getNodeAt(1));
+		assertEquals(0.0, mps.getProbFor(1));
+		assertEquals(0.5, mps.getProbAt(0));
 	}
 	
 	
@@ -60,5 +60,40 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testReplicateProperties() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+		assertEquals("value1", rep.getProperty("foo"));
+
+		rep.updateProperty("foo", "value2");
+		assertEquals("value1", msg.getProperty("foo"));
+		assertEquals("value2", rep.getProperty("foo"));
+
+		msg.addProperty("bar", "value3");
+		assertNull(rep.getProperty("bar"));
+	}
+
+	@Test
+	public void testReplicateHops() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h3, "M2", 100);
+		m.addNodeOnPath(h2);
+
+		Message rep = m.replicate();
+		rep.addNodeOnPath(h3);
+		assertEquals(1, m.getHopCount());
+		assertEquals(2, rep.getHopCount());
+		assertEquals(2, m.getHops().size());
+		assertEquals(h1, rep.getHops().get(0));
+		assertEquals(h3, rep.getHops().get(2));
+		assertTrue(rep.isOnPath(h3));
+		assertFalse(m.isOnPath(h3));
+		assertTrue(m.isOnPath(h2));
+	}
+
 
 }
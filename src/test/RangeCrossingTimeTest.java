@@ -0,0 +1,159 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import routing.PassiveRouter;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for solving the times when hosts get in and out of range
+ */
+public class RangeCrossingTimeTest extends TestCase {
+	private static final double RANGE = 10;
+	private SimClock clock = SimClock.getInstance();
+	private DTNHost mover;
+	private DTNHost stationary;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		mover = createHost(new LineMovement(new Coord(0, 0),
+				new Coord(100, 0), 1));
+		stationary = createHost(new StationaryMovement(new Coord(50, 0)));
+	}
+
+	private DTNHost createHost(MovementModel mm) {
+		ModuleCommunicationBus comBus = new ModuleCommunicationBus();
+		comBus.addProperty(NetworkInterface.RANGE_ID, RANGE);
+		comBus.addProperty(NetworkInterface.SPEED_ID, 1);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(new CrossingInterface(RANGE, 1));
+		return new DTNHost(null, null, "h", li, comBus, mm,
+				new PassiveRouter(new TestSettings()));
+	}
+
+	/**
+	 * Moves the moving host for the given time and advances the clock
+	 */
+	private void moveFor(double time) {
+		mover.move(time);
+		stationary.move(time);
+		clock.advance(time);
+	}
+
+	private double crossingTime(boolean entering) {
+		CrossingInterface ni = (CrossingInterface)mover.getInterfaces().get(0);
+		return ni.crossingTime(stationary.getInterfaces().get(0), entering);
+	}
+
+	public void testEntering() {
+		moveFor(30);
+		moveFor(15); // distance 5 at the end
+		assertEquals(40.0, crossingTime(true), 0.0001);
+		assertEquals(45.0, crossingTime(false), 0.0); // did not get out
+	}
+
+	public void testLeaving() {
+		moveFor(50);
+		moveFor(15); // distance 15 at the end
+		assertEquals(60.0, crossingTime(false), 0.0001);
+		assertEquals(65.0, crossingTime(true), 0.0); // did not get in
+	}
+
+	public void testNotCrossing() {
+		moveFor(10);
+		assertEquals(10.0, crossingTime(true), 0.0);
+		assertEquals(10.0, crossingTime(false), 0.0);
+	}
+
+	public void testLocationAt() {
+		moveFor(20);
+		moveFor(10);
+		assertEquals(new Coord(25, 0), mover.getLocationAt(25));
+		assertEquals(new Coord(20, 0), mover.getLocationAt(5));
+		assertEquals(new Coord(30, 0), mover.getLocationAt(40));
+		assertEquals(new Coord(50, 0), stationary.getLocationAt(25));
+	}
+
+	/**
+	 * Interface that gives access to the range crossing time
+	 */
+	private static class CrossingInterface extends TestInterface {
+		public CrossingInterface(double range, int speed) {
+			super(range, speed);
+		}
+
+		public CrossingInterface(CrossingInterface ci) {
+			super(ci);
+		}
+
+		public NetworkInterface replicate() {
+			return new CrossingInterface(this);
+		}
+
+		public double crossingTime(NetworkInterface other, boolean entering) {
+			return getRangeCrossingTime(other, entering);
+		}
+	}
+
+	/**
+	 * Movement model that moves once along a line at a constant speed
+	 */
+	private static class LineMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private double speed;
+		private boolean moved;
+
+		public LineMovement(Coord from, Coord to, double speed) {
+			this.from = from;
+			this.to = to;
+			this.speed = speed;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			if (moved) {
+				return null;
+			}
+			moved = true;
+			Path p = new Path(speed);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return moved ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public LineMovement replicate() {
+			return new LineMovement(from, to, speed);
+		}
+	}
+}
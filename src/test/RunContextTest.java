@@ -0,0 +1,89 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.ContextRandom;
+import core.RunContext;
+import core.SimClock;
+
+/**
+ * Tests for the RunContext and ContextRandom classes
+ */
+public class RunContextTest extends TestCase {
+
+	protected void tearDown() throws Exception {
+		RunContext.unbind();
+		super.tearDown();
+	}
+
+	public void testClock() {
+		SimClock.reset();
+		SimClock.getInstance().setTime(10);
+
+		RunContext c1 = new RunContext();
+		c1.bind();
+		assertEquals(0.0, SimClock.getTime());
+		SimClock clock = SimClock.getInstance(); // the clock of c1's run
+		clock.setTime(20);
+		assertEquals(20.0, SimClock.getTime());
+		assertEquals(20.0, clock.getCurrentTime());
+
+		RunContext.unbind();
+		assertEquals(10.0, SimClock.getTime()); // default context
+		assertNotSame(clock, SimClock.getInstance());
+		c1.bind();
+		assertEquals(20.0, SimClock.getTime());
+	}
+
+	public void testCounters() {
+		RunContext c1 = new RunContext();
+		RunContext c2 = new RunContext();
+		Object key = new Object();
+
+		assertEquals(0, c1.nextCount(key));
+		assertEquals(1, c1.nextCount(key));
+		assertEquals(0, c2.nextCount(key));
+		assertEquals(2, c1.getCount(key));
+		c1.resetCount(key);
+		assertEquals(0, c1.nextCount(key));
+	}
+
+	public void testState() {
+		RunContext c1 = new RunContext();
+		RunContext.StateFactory<StringBuilder> f = 
+			new RunContext.StateFactory<StringBuilder>() {
+			public StringBuilder create() {
+				return new StringBuilder();
+			}
+		};
+
+		StringBuilder s1 = c1.getState(this, f);
+		assertSame(s1, c1.getState(this, f));
+		assertNotSame(s1, new RunContext().getState(this, f));
+		c1.removeState(this);
+		assertNotSame(s1, c1.getState(this, f));
+	}
+
+	public void testContextRandom() {
+		ContextRandom rng = new ContextRandom(this, 
+				new RunContext.StateFactory<Random>() {
+			public Random create() {
+				return new Random(42);
+			}
+		});
+		Random expected = new Random(42);
+
+		new RunContext().bind();
+		double first = rng.nextDouble();
+		assertEquals(expected.nextDouble(), first);
+		assertEquals(expected.nextInt(10), rng.nextInt(10));
+
+		new RunContext().bind(); // a new run starts from the beginning
+		assertEquals(first, rng.nextDouble());
+	}
+}
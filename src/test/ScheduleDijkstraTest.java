@@ -96,4 +96,26 @@ public class ScheduleDijkstraTest extends TestCase {
 		comparePaths(new int[]{3,12,13,14,20}, d.getShortestPath(3, 20, 40));		
 	}
 
+	public void testStartTimesInSameBucket() {
+		oracle.addEntry(35, 2, 10, 10);
+		oracle.addEntry(45, 1, 10, 5);
+		
+		/* via 2 (departing @ 10) arrives @ 45, direct arrives @ 50 */
+		List<ScheduleEntry> path = d.getShortestPath(1, 10, 0);
+		comparePaths(new int[]{1,2,10}, path);
+		assertEquals(10.0, path.get(0).getTime());
+		
+		/* the same search works for later start times... */
+		comparePaths(new int[]{1,2,10}, d.getShortestPath(1, 10, 5));
+		
+		/* ...until the first hop leaves before the start time */
+		path = d.getShortestPath(1, 10, 15);
+		comparePaths(new int[]{1,10}, path);
+		assertEquals(45.0, path.get(0).getTime());
+		
+		/* new entries are used in the next searches */
+		oracle.addEntry(16, 1, 2, 1);
+		comparePaths(new int[]{1,2,10}, d.getShortestPath(1, 10, 15));
+	}
+
 }
@@ -0,0 +1,148 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import movement.MovementModel;
+import movement.Path;
+import routing.EncounterHistory;
+import routing.MessageRouter;
+import routing.SprayAndFocusRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the encounter history exchange of SprayAndFocusRouter
+ */
+public class SprayAndFocusRouterTest extends AbstractRouterTest {
+	private static final double DELTA = 1e-9;
+	private static final double HOST_SPEED = 0.5;
+	private static final int ENTRY_SIZE = 64;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, "10000");
+		ts.putSetting(SprayAndFocusRouter.SPRAYANDFOCUS_NS + "." +
+				SprayAndFocusRouter.NROF_COPIES_S, "4");
+		setRouterProto(new SprayAndFocusRouter(ts));
+		super.setUp();
+	}
+
+	/**
+	 * Tests that the second contact with the same neighbor exchanges and
+	 * merges only the hosts that have changed since the first contact
+	 */
+	public void testDeltaExchange() {
+		DTNHost a = utils.createHost(new SlowMovement(c0), "a");
+		DTNHost b = utils.createHost(new Coord(0.8, 0), "b");
+		a.move(0); // gets a path with a speed
+
+		meet(a, h2);
+		meet(a, h3);
+
+		/* first contact: the whole history is sent and merged */
+		a.connect(b);
+		assertEquals(3, getSummaryEntries(a, b));
+		exchange(a, b);
+		EncounterHistory ha = getHistory(a);
+		EncounterHistory hb = getHistory(b);
+		double timeDiff = 0.8 / HOST_SPEED;
+		assertEquals(ha.getLastSeenTime(h2) - timeDiff,
+				hb.getLastSeenTime(h2), DELTA);
+		assertEquals(ha.getLastSeenTime(h3) - timeDiff,
+				hb.getLastSeenTime(h3), DELTA);
+		double h2SeenByB = hb.getLastSeenTime(h2);
+		disconnect(b);
+
+		meet(a, h4);
+
+		/* second contact (closer): only b and h4 have changed in a's history */
+		b.setLocation(new Coord(0.2, 0));
+		a.connect(b);
+		assertEquals(2, getSummaryEntries(a, b));
+		int version = hb.getVersion();
+		exchange(a, b);
+		assertEquals(ha.getLastSeenTime(h4) - 0.2 / HOST_SPEED,
+				hb.getLastSeenTime(h4), DELTA);
+		// a merge of the whole history would update h2 with the new distance
+		assertEquals(h2SeenByB, hb.getLastSeenTime(h2), DELTA);
+		assertEquals(version + 1, hb.getVersion());
+	}
+
+	private void meet(DTNHost host, DTNHost other) {
+		host.connect(other);
+		clock.advance(10);
+		disconnect(other);
+	}
+
+	private void exchange(DTNHost from, DTNHost to) {
+		for (int i = 0; i < 10; i++) {
+			from.update(true);
+			to.update(true);
+			clock.advance(5);
+		}
+	}
+
+	private EncounterHistory getHistory(DTNHost host) {
+		return ((SprayAndFocusRouter)host.getRouter()).getEncounterHistory();
+	}
+
+	/**
+	 * Returns the number of history entries the size of the latest summary
+	 * message from host to peer was counted for
+	 */
+	private int getSummaryEntries(DTNHost host, DTNHost peer) {
+		Message summary = null;
+		for (Message m : host.getMessageCollection()) {
+			if (m.getTo() == peer && m.getProperty(
+					SprayAndFocusRouter.SUMMARY_XCHG_PROP) != null) {
+				summary = m;
+			}
+		}
+		assertNotNull(summary);
+		int otherMessages = (host.getNrofMessages() - 1) * 8;
+		return (summary.getSize() - otherMessages) / ENTRY_SIZE;
+	}
+
+	/**
+	 * Movement model where the host stays in its location but has a path
+	 * with a speed (that is used for estimating the distance in time)
+	 */
+	private static class SlowMovement extends MovementModel {
+		private Coord loc;
+
+		public SlowMovement(Coord loc) {
+			this.loc = loc;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return loc.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			Path p = new Path(HOST_SPEED);
+			p.addWaypoint(loc.clone());
+			p.addWaypoint(new Coord(loc.getX(), loc.getY() + 1000));
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return 0;
+		}
+
+		@Override
+		public SlowMovement replicate() {
+			return new SlowMovement(loc);
+		}
+	}
+}
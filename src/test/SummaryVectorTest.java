@@ -0,0 +1,40 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.SummaryVector;
+
+/**
+ * Tests for the SummaryVector
+ */
+public class SummaryVectorTest extends TestCase {
+
+	public void testContains() {
+		SummaryVector sv = new SummaryVector(new int[] {7, 3, 9, 3, 1, 0}, 5);
+		assertEquals(4, sv.size());
+		assertTrue(sv.contains(1));
+		assertTrue(sv.contains(3));
+		assertTrue(sv.contains(7));
+		assertTrue(sv.contains(9));
+		assertFalse(sv.contains(0)); // beyond the count
+		assertFalse(sv.contains(5));
+	}
+
+	public void testAdd() {
+		SummaryVector sv = new SummaryVector(new int[0], 0);
+		assertEquals(0, sv.size());
+		assertFalse(sv.contains(4));
+
+		for (int i = 20; i > 0; i -= 2) {
+			sv.add(i);
+		}
+		sv.add(4);
+		assertEquals(10, sv.size());
+		for (int i = 1; i <= 21; i++) {
+			assertEquals("" + i, i % 2 == 0, sv.contains(i));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.Collection;
+import java.util.Random;
+
+import interfaces.SweepAndPruneOptimizer;
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the SweepAndPruneOptimizer
+ */
+public class SweepAndPruneOptimizerTest extends TestCase {
+	private static final double RANGE = 1.0;
+	private TestUtils utils;
+	private SweepAndPruneOptimizer sap;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		DTNHost.reset();
+		SweepAndPruneOptimizer.reset();
+		utils = new TestUtils(null, null, new TestSettings());
+		utils.setTransmitRange(RANGE);
+		sap = SweepAndPruneOptimizer.getOptimizer(0, RANGE);
+	}
+
+	private NetworkInterface createInterface(double x, double y) {
+		DTNHost h = utils.createHost(new Coord(x, y));
+		NetworkInterface ni = h.getInterfaces().get(0);
+		sap.addInterface(ni);
+		return ni;
+	}
+
+	private void move(NetworkInterface ni, double x, double y) {
+		ni.getHost().setLocation(new Coord(x, y));
+		sap.updateLocation(ni);
+	}
+
+	public void testNearInterfaces() {
+		NetworkInterface n0 = createInterface(0, 0);
+		NetworkInterface n1 = createInterface(0.5, 0);
+		NetworkInterface n2 = createInterface(5, 0);
+		NetworkInterface n3 = createInterface(0, 0.9);
+		NetworkInterface n4 = createInterface(0, 3);
+
+		Collection<NetworkInterface> near = sap.getNearInterfaces(n0);
+		assertEquals(2, near.size());
+		assertTrue(near.contains(n1));
+		assertTrue(near.contains(n3));
+		assertEquals(0, sap.getNearInterfaces(n2).size());
+		assertEquals(0, sap.getNearInterfaces(n4).size());
+		assertEquals(5, sap.getAllInterfaces().size());
+	}
+
+	public void testMoving() {
+		NetworkInterface n0 = createInterface(0, 0);
+		NetworkInterface n1 = createInterface(0.5, 0);
+		NetworkInterface n2 = createInterface(5, 0);
+
+		move(n2, 0.8, 0);
+		assertTrue(sap.getNearInterfaces(n0).contains(n2));
+		assertTrue(sap.getNearInterfaces(n2).contains(n0));
+
+		move(n1, 10, 0);
+		assertFalse(sap.getNearInterfaces(n0).contains(n1));
+		assertEquals(0, sap.getNearInterfaces(n1).size());
+
+		move(n1, -1, 0); // exactly at the range
+		assertTrue(sap.getNearInterfaces(n0).contains(n1));
+		assertFalse(sap.getNearInterfaces(n2).contains(n1));
+	}
+
+	/**
+	 * Moves interfaces randomly and checks that all interfaces within range
+	 * are near and that no far away interface is
+	 */
+	public void testRandomMoves() {
+		Random rng = new Random(42);
+		NetworkInterface[] nis = new NetworkInterface[50];
+		for (int i = 0; i < nis.length; i++) {
+			nis[i] = createInterface(rng.nextDouble() * 10,
+					rng.nextDouble() * 10);
+		}
+
+		for (int round = 0; round < 20; round++) {
+			for (NetworkInterface ni : nis) {
+				Coord c = ni.getLocation();
+				move(ni, c.getX() + rng.nextDouble() * 2 - 1,
+						c.getY() + rng.nextDouble() * 2 - 1);
+			}
+
+			for (NetworkInterface ni : nis) {
+				Collection<NetworkInterface> near = sap.getNearInterfaces(ni);
+				for (NetworkInterface other : nis) {
+					if (other == ni) {
+						assertFalse(near.contains(other));
+						continue;
+					}
+					Coord c1 = ni.getLocation();
+					Coord c2 = other.getLocation();
+					if (c1.distance(c2) <= RANGE) {
+						assertTrue(near.contains(other));
+					}
+					if (Math.abs(c1.getX() - c2.getX()) > RANGE * 1.01 ||
+							Math.abs(c1.getY() - c2.getY()) > RANGE * 1.01) {
+						assertFalse(near.contains(other));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.TimingWheel;
+
+/**
+ * Tests for the TimingWheel
+ */
+public class TimingWheelTest extends TestCase {
+	private TimingWheel<String> wheel;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		wheel = new TimingWheel<String>(1.0);
+	}
+
+	public void testEmpty() {
+		assertTrue(wheel.isEmpty());
+		assertEquals(Double.MAX_VALUE, wheel.getNextTime());
+		assertEquals(0, wheel.pollDue(1000).size());
+	}
+
+	public void testPollDue() {
+		wheel.schedule("c", 100.5);
+		wheel.schedule("a", 10.2);
+		wheel.schedule("b", 10.7);
+		wheel.schedule("d", 5000);
+		assertEquals(4, wheel.size());
+		assertEquals(10.2, wheel.getNextTime());
+
+		assertEquals(0, wheel.pollDue(10.1).size());
+		List<String> due = wheel.pollDue(10.5);
+		assertEquals(1, due.size());
+		assertEquals("a", due.get(0));
+		assertEquals(10.7, wheel.getNextTime());
+
+		due = wheel.pollDue(200);
+		assertEquals(2, due.size());
+		assertEquals("b", due.get(0));
+		assertEquals("c", due.get(1));
+		assertEquals(5000.0, wheel.getNextTime());
+
+		assertEquals(0, wheel.pollDue(4999.9).size());
+		due = wheel.pollDue(5000);
+		assertEquals(1, due.size());
+		assertEquals("d", due.get(0));
+		assertTrue(wheel.isEmpty());
+	}
+
+	public void testPastItems() {
+		wheel.pollDue(100);
+		wheel.schedule("a", 50);
+		assertEquals(50.0, wheel.getNextTime());
+		List<String> due = wheel.pollDue(100);
+		assertEquals(1, due.size());
+		assertEquals("a", due.get(0));
+	}
+
+	public void testFarFuture() {
+		double far = 1e9; /* beyond the levels of the wheel */
+		wheel.schedule("far", far);
+		wheel.schedule("near", 30);
+		assertEquals(30.0, wheel.getNextTime());
+		assertEquals(1, wheel.pollDue(1e6).size());
+		assertEquals(far, wheel.getNextTime());
+		assertEquals(0, wheel.pollDue(far - 1).size());
+		assertEquals(1, wheel.pollDue(far).size());
+		assertTrue(wheel.isEmpty());
+	}
+
+	public void testRandomSchedule() {
+		Random rng = new Random(1);
+		List<Double> times = new ArrayList<Double>();
+		double now = 0;
+
+		for (int i = 0; i < 5000; i++) {
+			double time = now + rng.nextDouble() * 100000;
+			times.add(time);
+			wheel.schedule("" + time, time);
+
+			if (i % 10 == 0) {
+				now += rng.nextDouble() * 500;
+				Collections.sort(times);
+				if (!times.isEmpty()) {
+					assertEquals(times.get(0), wheel.getNextTime());
+				}
+				for (String s : wheel.pollDue(now)) {
+					double t = Double.parseDouble(s);
+					assertTrue(t <= now);
+					assertEquals(times.remove(0), t);
+				}
+				assertTrue(times.isEmpty() || times.get(0) > now);
+			}
+		}
+		assertEquals(times.size(), wheel.size());
+
+		List<String> rest = wheel.pollDue(now + 100000);
+		assertEquals(times.size(), rest.size());
+		assertTrue(wheel.isEmpty());
+	}
+}
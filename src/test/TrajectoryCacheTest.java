@@ -0,0 +1,129 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.CachedTrajectoryMovement;
+import movement.MapBasedMovement;
+import movement.MovementModel;
+import movement.Path;
+import movement.RandomWaypoint;
+import movement.TrajectoryCache;
+import core.SimScenario;
+
+public class TrajectoryCacheTest extends TestCase {
+	private static final int NROF_HOSTS = 3;
+	private static final int NROF_PATHS = 5;
+	private TestSettings ts;
+	private File cacheDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		cacheDir = File.createTempFile("TCTest", "");
+		cacheDir.delete();
+		cacheDir.mkdir();
+		ts.putSetting(TrajectoryCache.TRAJECTORY_CACHE_NS + "." +
+				TrajectoryCache.CACHE_DIR_S, cacheDir.getAbsolutePath());
+		ts.putSetting(SimScenario.GROUP_NS + "." + MovementModel.SPEED, "1,5");
+		ts.putSetting(SimScenario.GROUP_NS + "." + MovementModel.WAIT_TIME,
+				"0,10");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		for (File f : cacheDir.listFiles()) {
+			f.delete();
+		}
+		cacheDir.delete();
+		MovementModel.reset();
+	}
+
+	public void testRecordAndReplay() {
+		TrajectoryCache recording = newCache();
+		assertFalse(recording.isCached());
+		MovementModel proto = recording.record(new RandomWaypoint(
+				new TestSettings(SimScenario.GROUP_NS)));
+		List<String> trace = drive(proto);
+		recording.store();
+		assertTrue(recording.getCacheFile().exists());
+
+		TrajectoryCache replaying = newCache();
+		assertTrue(replaying.isCached());
+		assertEquals(recording.getCacheFile(), replaying.getCacheFile());
+		MovementModel replay = new CachedTrajectoryMovement(
+				new TestSettings(SimScenario.GROUP_NS), replaying);
+		assertEquals(trace, drive(replay));
+	}
+
+	public void testKey() {
+		File file = newCache().getCacheFile();
+
+		ts.putSetting(SimScenario.GROUP_NS + "." + SimScenario.ROUTER_S,
+				"EpidemicRouter");
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S,
+				"other");
+		assertEquals(file, newCache().getCacheFile());
+
+		ts.putSetting(SimScenario.GROUP_NS + "." + MovementModel.SPEED, "2,5");
+		assertFalse(file.equals(newCache().getCacheFile()));
+	}
+
+	public void testKeyFiles() throws IOException {
+		File map = new File(cacheDir, "map.wkt");
+		writeFile(map, "LINESTRING (0 0, 10 0)\n");
+		ts.putSetting(MapBasedMovement.MAP_BASE_MOVEMENT_NS + "." +
+				MapBasedMovement.FILE_S + 1, map.getAbsolutePath());
+		File file = newCache().getCacheFile();
+		assertEquals(file, newCache().getCacheFile());
+
+		writeFile(map, "LINESTRING (0 0, 10 0, 10 10)\n");
+		assertFalse(file.equals(newCache().getCacheFile()));
+	}
+
+	private void writeFile(File f, String contents) throws IOException {
+		FileWriter out = new FileWriter(f);
+		out.write(contents);
+		out.close();
+	}
+
+	private TrajectoryCache newCache() {
+		return new TrajectoryCache(
+				new TestSettings(TrajectoryCache.TRAJECTORY_CACHE_NS));
+	}
+
+	/**
+	 * Replicates models for hosts and asks paths from them
+	 * @return String presentation of the locations, waypoints, speeds and
+	 * times the models gave
+	 */
+	private List<String> drive(MovementModel proto) {
+		List<MovementModel> models = new ArrayList<MovementModel>();
+		List<String> trace = new ArrayList<String>();
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			MovementModel mm = proto.replicate();
+			trace.add("init " + mm.getInitialLocation());
+			trace.add("next " + mm.nextPathAvailable());
+			models.add(mm);
+		}
+
+		for (int i = 0; i < NROF_PATHS; i++) {
+			for (MovementModel mm : models) {
+				Path p = mm.getPath();
+				while (p.hasNext()) {
+					trace.add(p.getNextWaypoint() + "@" + p.getSpeed());
+				}
+				trace.add("next " + mm.nextPathAvailable());
+			}
+		}
+		return trace;
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Connection;
+import core.Message;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.VBRConnection;
+
+/**
+ * Tests for the byte accounting of the VBRConnection class.
+ */
+public class VBRConnectionTest extends TestCase {
+	private static final double START_TIME = 10.0;
+	private static final int SPEED = 100;
+	private SimClock clock = SimClock.getInstance();
+	private VBRConnection con;
+	private TestDTNHost from;
+	private Message msg;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		clock.setTime(START_TIME);
+
+		from = newHost();
+		TestDTNHost to = newHost();
+		con = new VBRConnection(from, from.getInterfaces().get(0),
+				to, to.getInterfaces().get(0));
+		msg = new Message(from, to, "M", 250);
+		con.startTransfer(from, msg);
+		con.update(); // sets the speed for the first interval
+	}
+
+	private TestDTNHost newHost() {
+		NetworkInterface ni = new TestInterface(1.0, SPEED);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		ModuleCommunicationBus comBus = new ModuleCommunicationBus();
+		comBus.addProperty(NetworkInterface.RANGE_ID, 1.0);
+		comBus.addProperty(NetworkInterface.SPEED_ID, SPEED);
+		return new TestDTNHost(li, comBus);
+	}
+
+	public void testBytesFollowTime() {
+		assertEquals(250, con.getRemainingByteCount());
+
+		clock.setTime(START_TIME + 0.5);
+		con.update();
+		assertEquals(200, con.getRemainingByteCount());
+
+		clock.setTime(START_TIME + 2.0);
+		con.update();
+		assertEquals(50, con.getRemainingByteCount());
+		assertFalse(con.isMessageTransferred());
+
+		clock.setTime(START_TIME + 2.5);
+		con.update();
+		assertEquals(0, con.getRemainingByteCount());
+		assertTrue(con.isMessageTransferred());
+	}
+
+	public void testRepeatedUpdates() {
+		clock.setTime(START_TIME + 1.0);
+		con.update();
+		con.update(); // e.g., by the other end of the connection
+		con.update();
+		assertEquals(150, con.getRemainingByteCount());
+	}
+
+	public void testSharedSpeed() {
+		List<VBRConnection> cons = new ArrayList<VBRConnection>();
+		for (int i = 0; i < 3; i++) {
+			TestDTNHost to = newHost();
+			VBRConnection c = new VBRConnection(from,
+					from.getInterfaces().get(0), to, to.getInterfaces().get(0));
+			addConnection(c);
+			cons.add(c);
+		}
+		for (VBRConnection c : cons) {
+			c.startTransfer(from, new Message(from, c.getOtherNode(from),
+					"M" + cons.indexOf(c), 100));
+		}
+
+		double total = 0;
+		for (VBRConnection c : cons) {
+			total += c.getSpeed();
+		}
+		assertEquals(SPEED, total, 1e-9);
+
+		clock.setTime(START_TIME + 3.0);
+		for (VBRConnection c : cons) {
+			c.update();
+			assertTrue(c.isMessageTransferred());
+		}
+	}
+
+	private void addConnection(Connection c) {
+		from.getInterfaces().get(0).getConnections().add(c);
+		c.getOtherNode(from).getInterfaces().get(0).getConnections().add(c);
+	}
+
+	public void testSmallSteps() {
+		for (int i = 1; i <= 25; i++) {
+			clock.setTime(START_TIME + i * 0.1);
+			con.update();
+		}
+		assertTrue(con.isMessageTransferred());
+	}
+}
@@ -5,15 +5,28 @@
 package test;
 
 import input.EventQueue;
+import interfaces.SimpleBroadcastInterface;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import report.ContactTimesReport;
+import report.Report;
+import routing.PassiveRouter;
+import core.ConnectionListener;
 import core.DTNHost;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
+import core.RunContext;
 import core.SimClock;
+import core.SimScenario;
 import core.UpdateListener;
 import core.World;
 
@@ -99,6 +112,91 @@ public class WorldTest extends TestCase {
 	}
 	
 
+	public void testParallelUpdate() throws IOException {
+		List<String> serial = runRandomWorld(false);
+		List<String> parallel = runRandomWorld(true);
+
+		assertTrue(serial.size() > 100); // plenty of connection events
+		assertEquals(serial, parallel);
+	}
+
+	/**
+	 * Runs a world of randomly moving hosts (with the same random number
+	 * seed) in a new run context
+	 * @param parallel Should the world use parallel updates
+	 * @return The connection events and the contact time report lines
+	 */
+	private List<String> runRandomWorld(boolean parallel) throws IOException {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.SETTINGS_NS + "." + World.PARALLEL_UPDATE_S,
+				"" + parallel);
+		ts.putSetting(World.SETTINGS_NS + "." + World.NROF_THREADS_S, "4");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "1");
+		ts.putSetting(SimScenario.GROUP_NS + "." + MovementModel.SPEED, "1,5");
+		ts.putSetting(SimScenario.GROUP_NS + "." + MovementModel.WAIT_TIME,
+				"0,10");
+		File reportFile = File.createTempFile("wtest", ".tmp");
+		reportFile.deleteOnExit();
+		ts.putSetting("ContactTimesReport." + Report.OUTPUT_SETTING,
+				reportFile.getAbsolutePath());
+		ts.putSetting("ContactTimesReport." + Report.INTERVAL_SETTING, "");
+		ts.putSetting("wtInterface." + NetworkInterface.TRANSMIT_RANGE_S,
+				"50");
+		ts.putSetting("wtInterface." + NetworkInterface.TRANSMIT_SPEED_S,
+				"1");
+
+		new RunContext().bind();
+		try {
+			final List<String> events = new ArrayList<String>();
+			ContactTimesReport report = new ContactTimesReport();
+			List<ConnectionListener> cl = new ArrayList<ConnectionListener>();
+			cl.add(report);
+			cl.add(new ConnectionListener() {
+				public void hostsConnected(DTNHost h1, DTNHost h2) {
+					events.add(SimClock.getTime() + " up " + h1 + " " + h2);
+				}
+				public void hostsDisconnected(DTNHost h1, DTNHost h2) {
+					events.add(SimClock.getTime() + " down " + h1 + " " + h2);
+				}
+			});
+
+			NetworkInterface ni = new SimpleBroadcastInterface(
+					new TestSettings("wtInterface"));
+			ni.setClisteners(cl);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			MovementModel mm = new RandomWaypoint(
+					new TestSettings(SimScenario.GROUP_NS));
+			List<DTNHost> hosts = new ArrayList<DTNHost>();
+			for (int i=0; i<100; i++) {
+				hosts.add(new DTNHost(null, null, "n", li,
+						new ModuleCommunicationBus(), mm,
+						new PassiveRouter(ts)));
+			}
+
+			World w = new World(hosts, 1000, 1000, 1.0,
+					new ArrayList<UpdateListener>(), true,
+					new ArrayList<EventQueue>());
+			for (int i=0; i<500; i++) {
+				w.update();
+			}
+			w.done();
+			report.done();
+
+			BufferedReader reader = new BufferedReader(
+					new FileReader(reportFile));
+			for (String line = reader.readLine(); line != null;
+					line = reader.readLine()) {
+				events.add(line);
+			}
+			reader.close();
+			return events;
+		} finally {
+			RunContext.unbind();
+		}
+	}
+
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}
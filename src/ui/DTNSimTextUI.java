@@ -14,6 +14,23 @@ public class DTNSimTextUI extends DTNSimUI {
 	private long startTime; // simulation start time
 	/** How often the UI view is updated (milliseconds) */
 	public static final long UI_UP_INTERVAL = 60000;
+	/** should the UI print nothing (e.g., when many runs are run at once) */
+	private boolean quiet;
+
+	/**
+	 * Creates a text UI that prints the progress of the simulation
+	 */
+	public DTNSimTextUI() {
+		this(false);
+	}
+
+	/**
+	 * Creates a text UI
+	 * @param quiet If true, nothing is printed
+	 */
+	public DTNSimTextUI(boolean quiet) {
+		this.quiet = quiet;
+	}
 
 	protected void runSim() {
 		double simTime = SimClock.getTime();
@@ -68,7 +85,9 @@ public class DTNSimTextUI extends DTNSimUI {
 	}
 	
 	private void print(String txt) {
-		System.out.println(txt);
+		if (!quiet) {
+			System.out.println(txt);
+		}
 	}
 	
 }
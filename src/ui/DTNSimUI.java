@@ -6,6 +6,7 @@ package ui;
 
 import java.util.Vector;
 
+import movement.TrajectoryCache;
 import report.Report;
 import core.ApplicationListener;
 import core.ConnectionListener;
@@ -127,9 +128,17 @@ public abstract class DTNSimUI {
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
 	public void done() {
+		if (this.world != null) {
+			this.world.done();
+		}
 		for (Report r : this.reports) {
 			r.done();
 		}
+		
+		TrajectoryCache cache = this.scen.getTrajectoryCache();
+		if (cache != null && this.simDone && !this.simCancelled) {
+			cache.store(); // only complete runs' trajectories are cached
+		}
 	}
 	
 	/**